@@ -0,0 +1,72 @@
+package io.github.multiffi.ffi;
+
+import multiffi.ffi.Memory;
+import multiffi.ffi.MemoryArena;
+
+import java.util.Arrays;
+
+public abstract class ChunkedMemoryArena extends MemoryArena {
+
+    private static final long MAX_CHUNK_SIZE = 1024 * 1024;
+
+    private final long maxChunkSize;
+    private long nextChunkSize;
+    private long[] chunks = new long[8];
+    private int chunkCount = 0;
+    private volatile long reservedBytes = 0;
+
+    protected ChunkedMemoryArena(long chunkSize) {
+        if (chunkSize <= 0) throw new IllegalArgumentException("chunk size must be positive");
+        this.nextChunkSize = chunkSize;
+        this.maxChunkSize = Math.max(chunkSize, MAX_CHUNK_SIZE);
+    }
+
+    protected static void checkAllocation(long size, long alignment) {
+        if (size < 0) throw new IllegalArgumentException("size must be non-negative");
+        if (alignment <= 0 || (alignment & (alignment - 1)) != 0) throw new IllegalArgumentException("alignment must be a power-of-two value");
+    }
+
+    protected static long align(long address, long alignment) {
+        return (address + alignment - 1) & -alignment;
+    }
+
+    /**
+     * Whether a request of {@code paddedSize} bytes should get a chunk of its own rather than retiring the current one.
+     */
+    protected boolean isOversized(long paddedSize) {
+        return paddedSize > nextChunkSize >>> 1;
+    }
+
+    /**
+     * Returns the size of the next regular chunk; chunks double up to 1 MiB (or the initial chunk size, if larger).
+     */
+    protected long nextChunkSize() {
+        long chunkSize = nextChunkSize;
+        nextChunkSize = Math.min(chunkSize << 1, maxChunkSize);
+        return chunkSize;
+    }
+
+    protected long allocateChunk(long size) {
+        long address = Memory.allocate(size);
+        if (address == 0) throw new OutOfMemoryError("Failed to allocate arena chunk of " + size + " bytes");
+        if (chunkCount == chunks.length) chunks = Arrays.copyOf(chunks, chunkCount * 2);
+        chunks[chunkCount ++] = address;
+        reservedBytes += size;
+        return address;
+    }
+
+    protected void freeChunks() {
+        for (int i = 0; i < chunkCount; i ++) {
+            Memory.free(chunks[i]);
+        }
+        chunks = new long[0];
+        chunkCount = 0;
+        reservedBytes = 0;
+    }
+
+    @Override
+    public long reservedBytes() {
+        return reservedBytes;
+    }
+
+}
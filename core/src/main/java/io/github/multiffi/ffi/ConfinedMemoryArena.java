@@ -0,0 +1,67 @@
+package io.github.multiffi.ffi;
+
+public class ConfinedMemoryArena extends ChunkedMemoryArena {
+
+    private final Thread owner = Thread.currentThread();
+    private boolean alive = true;
+    private long position = 0;
+    private long limit = 0;
+    private long allocatedBytes = 0;
+
+    public ConfinedMemoryArena(long chunkSize) {
+        super(chunkSize);
+    }
+
+    private void checkAccess() {
+        if (Thread.currentThread() != owner) throw new IllegalStateException("Attempted access outside owning thread");
+        if (!alive) throw new IllegalStateException("Already closed");
+    }
+
+    @Override
+    public long allocateAddress(long size, long alignment) {
+        checkAccess();
+        checkAllocation(size, alignment);
+        long address = align(position, alignment);
+        if (position != 0 && size <= limit - address) {
+            allocatedBytes += address + size - position;
+            position = address + size;
+            return address;
+        }
+        long paddedSize = Math.addExact(size, alignment - 1);
+        if (isOversized(paddedSize)) {
+            allocatedBytes += size;
+            return align(allocateChunk(paddedSize), alignment);
+        }
+        long chunkSize = nextChunkSize();
+        long chunk = allocateChunk(chunkSize);
+        address = align(chunk, alignment);
+        position = address + size;
+        limit = chunk + chunkSize;
+        allocatedBytes += position - chunk;
+        return address;
+    }
+
+    @Override
+    public Thread owner() {
+        return owner;
+    }
+
+    @Override
+    public boolean isAlive() {
+        return alive;
+    }
+
+    @Override
+    public long allocatedBytes() {
+        return allocatedBytes;
+    }
+
+    @Override
+    public void close() {
+        checkAccess();
+        alive = false;
+        position = limit = 0;
+        freeChunks();
+    }
+
+}
@@ -0,0 +1,27 @@
+package io.github.multiffi.ffi;
+
+import multiffi.ffi.Memory;
+import multiffi.ffi.MemoryAdvice;
+
+public class DirectMappedMemoryHandle extends DirectMemoryHandle {
+
+    public DirectMappedMemoryHandle(long address, long size) {
+        super(address, size);
+    }
+
+    @Override
+    public boolean advise(MemoryAdvice advice) {
+        return Memory.advise(address(), size(), advice);
+    }
+
+    @Override
+    public void sync() {
+        Memory.sync(address(), size());
+    }
+
+    @Override
+    protected void free(long address) {
+        Memory.unmap(address, size());
+    }
+
+}
@@ -0,0 +1,25 @@
+package io.github.multiffi.ffi;
+
+import multiffi.ffi.Memory;
+import multiffi.ffi.MemoryAdvice;
+
+public class DirectPageMemoryHandle extends DirectMemoryHandle {
+
+    private final boolean hugePages;
+
+    public DirectPageMemoryHandle(long address, long size, boolean hugePages) {
+        super(address, size);
+        this.hugePages = hugePages;
+    }
+
+    @Override
+    public boolean advise(MemoryAdvice advice) {
+        return Memory.advise(address(), size(), advice);
+    }
+
+    @Override
+    protected void free(long address) {
+        Memory.freePages(address, size(), hugePages);
+    }
+
+}
@@ -0,0 +1,71 @@
+package io.github.multiffi.ffi;
+
+import multiffi.ffi.FunctionHandle;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Array;
+import java.lang.reflect.Method;
+
+/**
+ * Links interface methods to downcall method handles, shared by the reflective proxies and the lazily linked generated ones.
+ */
+public final class DowncallLinker {
+
+    private DowncallLinker() {
+        throw new AssertionError("No io.github.multiffi.ffi.DowncallLinker instances for you!");
+    }
+
+    private static final MethodHandle TO_OBJECT_ARRAY;
+    static {
+        try {
+            TO_OBJECT_ARRAY = MethodHandles.lookup().findStatic(DowncallLinker.class, "toObjectArray",
+                    MethodType.methodType(Object[].class, Object.class));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            throw new IllegalStateException("Unexpected exception", e);
+        }
+    }
+
+    private static Object[] toObjectArray(Object array) {
+        if (array instanceof Object[]) return (Object[]) array;
+        int length = Array.getLength(array);
+        Object[] objects = new Object[length];
+        for (int i = 0; i < length; i ++) {
+            objects[i] = Array.get(array, i);
+        }
+        return objects;
+    }
+
+    /**
+     * Returns the method handle of {@code functionHandle} with its parameter count checked against {@code method}, and a
+     * primitive variadic array parameter of {@code method} boxed into the {@code Object[]} the handle takes.
+     */
+    public static MethodHandle adaptVarargs(FunctionHandle functionHandle, Method method) {
+        Class<?>[] parameterTypes = method.getParameterTypes();
+        MethodHandle methodHandle = functionHandle.asMethodHandle();
+        if (methodHandle.type().parameterCount() != parameterTypes.length) throw new ArrayIndexOutOfBoundsException("length mismatch");
+        if (functionHandle.isDynCall()) {
+            Class<?> varargsType = parameterTypes[parameterTypes.length - 1];
+            if (!varargsType.isArray()) throw new IllegalArgumentException("Last argument must be array as variadic arguments");
+            if (varargsType.getComponentType().isPrimitive()) methodHandle = MethodHandles.filterArguments(methodHandle,
+                    parameterTypes.length - 1, TO_OBJECT_ARRAY.asType(MethodType.methodType(Object[].class, varargsType)));
+        }
+        return methodHandle;
+    }
+
+    /**
+     * Returns the method handle of {@code functionHandle} adapted to the type of {@code method}, whose mapping types must
+     * match the handle exactly apart from the element type of a variadic array.
+     */
+    public static MethodHandle linkMethod(FunctionHandle functionHandle, Method method) {
+        MethodType methodType = MethodType.methodType(method.getReturnType(), method.getParameterTypes());
+        MethodHandle methodHandle = adaptVarargs(functionHandle, method);
+        MethodType expected = methodHandle.type();
+        if (functionHandle.isDynCall()) expected = expected.changeParameterType(expected.parameterCount() - 1,
+                methodType.parameterType(methodType.parameterCount() - 1));
+        if (!expected.equals(methodType)) throw new IllegalArgumentException("Illegal mapping type; expected " + methodHandle.type());
+        return methodHandle.asType(methodType);
+    }
+
+}
@@ -0,0 +1,163 @@
+package io.github.multiffi.ffi;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Objects;
+import java.util.ServiceLoader;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Receiver of diagnostic events, enabled with {@code multiffi.events}.
+ *
+ * <p>The implementation is looked up like the other providers, first from {@code multiffi.events.provider}, then through
+ * {@link ServiceLoader}. If there is none, as on runtimes without JDK Flight Recorder, {@link #ENABLED} stays {@code false}
+ * and no event is ever produced. Every backend reports its symbol lookups, allocations, downcall links, upcall stubs and
+ * sampled call durations here.</p>
+ */
+public abstract class ForeignEvents {
+
+    private static final ForeignEvents IMPLEMENTATION = Util.getBooleanProperty("multiffi.events", false) ? load() : null;
+    public static final boolean ENABLED = IMPLEMENTATION != null;
+    /**
+     * One out of this many downcalls and upcalls is timed.
+     */
+    public static final int CALL_SAMPLING = Math.max(1, Util.getIntProperty("multiffi.events.callSampling", 64));
+
+    private static ForeignEvents load() {
+        try {
+            return (ForeignEvents) Class
+                    .forName(Objects.requireNonNull(System.getProperty("multiffi.events.provider")))
+                    .getConstructor()
+                    .newInstance();
+        } catch (Throwable e) {
+            try {
+                for (ForeignEvents events : ServiceLoader.load(ForeignEvents.class)) {
+                    if (events != null) return events;
+                }
+            }
+            catch (Throwable ignored) {
+            }
+            return null;
+        }
+    }
+
+    public static void symbolLookup(String symbolName, long address, long elapsedNanos) {
+        IMPLEMENTATION.onSymbolLookup(symbolName, address, elapsedNanos);
+    }
+
+    public static void allocate(MemoryAccounting.Kind kind, long address, long size) {
+        if (address != 0) IMPLEMENTATION.onAllocate(kind, address, size);
+    }
+
+    public static void reallocate(MemoryAccounting.Kind kind, long address, long newAddress, long size) {
+        if (newAddress == 0) return;
+        if (address != 0) IMPLEMENTATION.onFree(kind, address);
+        IMPLEMENTATION.onAllocate(kind, newAddress, size);
+    }
+
+    public static void free(MemoryAccounting.Kind kind, long address) {
+        if (address != 0) IMPLEMENTATION.onFree(kind, address);
+    }
+
+    public static void downcallLink(long address, MethodType methodType, long elapsedNanos) {
+        IMPLEMENTATION.onDowncallLink(address, methodType.toString(), elapsedNanos);
+    }
+
+    public static void upcallStub(Object method, long address, long elapsedNanos) {
+        IMPLEMENTATION.onUpcallStub(method.toString(), address, elapsedNanos);
+    }
+
+    private static final long NOT_SAMPLED = Long.MIN_VALUE;
+
+    /**
+     * Returns the start time of a sampled call, to be passed to {@link #endDowncall} or {@link #endUpcall} once it returns.
+     */
+    public static long beginCall() {
+        return ThreadLocalRandom.current().nextInt(CALL_SAMPLING) == 0 ? System.nanoTime() : NOT_SAMPLED;
+    }
+
+    public static void endDowncall(long address, long start) {
+        if (start != NOT_SAMPLED) IMPLEMENTATION.onDowncall(address, System.nanoTime() - start);
+    }
+
+    public static void endUpcall(String method, long start) {
+        if (start != NOT_SAMPLED) IMPLEMENTATION.onUpcall(method, System.nanoTime() - start);
+    }
+
+    // kept apart so that the lookups only happen once events are enabled
+    private static final class Timing {
+        private Timing() {
+            throw new AssertionError("No io.github.multiffi.ffi.ForeignEvents.Timing instances for you!");
+        }
+        private static final MethodHandle BEGIN_CALL;
+        private static final MethodHandle END_DOWNCALL;
+        private static final MethodHandle END_UPCALL;
+        static {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            try {
+                BEGIN_CALL = lookup.findStatic(ForeignEvents.class, "beginCall", MethodType.methodType(long.class));
+                END_DOWNCALL = lookup.findStatic(ForeignEvents.class, "endDowncall",
+                        MethodType.methodType(void.class, long.class, long.class));
+                END_UPCALL = lookup.findStatic(ForeignEvents.class, "endUpcall",
+                        MethodType.methodType(void.class, String.class, long.class));
+            } catch (NoSuchMethodException | IllegalAccessException e) {
+                throw new IllegalStateException("Unexpected exception", e);
+            }
+        }
+        // (args) -> { start = beginCall(); result = target(args); end(start); return result; }, calls that throw are not timed
+        private static MethodHandle time(MethodHandle methodHandle, MethodHandle end) {
+            MethodType methodType = methodHandle.type();
+            Class<?> returnType = methodType.returnType();
+            MethodHandle after = returnType == void.class ? end : MethodHandles.foldArguments(
+                    MethodHandles.dropArguments(MethodHandles.identity(returnType), 1, long.class),
+                    MethodHandles.dropArguments(end, 0, returnType));
+            int parameterCount = methodType.parameterCount();
+            int[] reorder = new int[parameterCount + 1];
+            for (int i = 0; i < parameterCount; i ++) {
+                reorder[i] = i + 1;
+            }
+            MethodHandle timed = MethodHandles.permuteArguments(MethodHandles.collectArguments(after, 0, methodHandle),
+                    methodType.insertParameterTypes(0, long.class), reorder);
+            return MethodHandles.foldArguments(timed, BEGIN_CALL);
+        }
+    }
+
+    /**
+     * Wraps a downcall method handle so that sampled invocations record their duration.
+     */
+    public static MethodHandle timeDowncall(MethodHandle methodHandle, long address) {
+        return Timing.time(methodHandle, MethodHandles.insertArguments(Timing.END_DOWNCALL, 0, address));
+    }
+
+    /**
+     * Wraps an upcall target so that sampled invocations record their duration.
+     */
+    public static MethodHandle timeUpcall(MethodHandle methodHandle, Object method) {
+        return Timing.time(methodHandle, MethodHandles.insertArguments(Timing.END_UPCALL, 0, method.toString()));
+    }
+
+    /**
+     * Wraps a downcall delegate so that sampled invocations record their duration.
+     */
+    public static <T, R> InvocationDelegate<T, R> timeDowncall(InvocationDelegate<T, R> delegate, long address) {
+        return args -> {
+            long start = beginCall();
+            try {
+                return delegate.invoke(args);
+            }
+            finally {
+                endDowncall(address, start);
+            }
+        };
+    }
+
+    protected abstract void onSymbolLookup(String symbolName, long address, long elapsedNanos);
+    protected abstract void onAllocate(MemoryAccounting.Kind kind, long address, long size);
+    protected abstract void onFree(MemoryAccounting.Kind kind, long address);
+    protected abstract void onDowncallLink(long address, String signature, long elapsedNanos);
+    protected abstract void onDowncall(long address, long elapsedNanos);
+    protected abstract void onUpcallStub(String method, long address, long elapsedNanos);
+    protected abstract void onUpcall(String method, long elapsedNanos);
+
+}
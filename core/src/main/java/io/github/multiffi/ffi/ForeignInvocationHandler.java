@@ -3,10 +3,12 @@ package io.github.multiffi.ffi;
 import multiffi.ffi.CallOption;
 import multiffi.ffi.ForeignType;
 import multiffi.ffi.FunctionHandle;
-import multiffi.ffi.MemoryHandle;
 import multiffi.ffi.FunctionOptionVisitor;
 import multiffi.ffi.spi.ForeignProvider;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
@@ -16,56 +18,127 @@ import java.util.Map;
 
 public class ForeignInvocationHandler implements InvocationHandler {
 
-    private final Map<Method, InvocationHandlerDelegate> delegateMap;
+    private static final MethodType DISPATCH_TYPE = MethodType.methodType(Object.class, Object.class, Object[].class);
+    private static final MethodHandle PROXY_HASH_CODE;
+    private static final MethodHandle PROXY_EQUALS;
+    private static final MethodHandle PROXY_TO_STRING;
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            PROXY_HASH_CODE = lookup.findVirtual(ForeignInvocationHandler.class, "proxyHashCode", DISPATCH_TYPE);
+            PROXY_EQUALS = lookup.findVirtual(ForeignInvocationHandler.class, "proxyEquals", DISPATCH_TYPE);
+            PROXY_TO_STRING = lookup.findVirtual(ForeignInvocationHandler.class, "proxyToString", DISPATCH_TYPE);
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            throw new IllegalStateException("Unexpected exception", e);
+        }
+    }
+
+    private Object proxyHashCode(Object proxy, Object[] args) {
+        return hashCode();
+    }
+
+    private Object proxyEquals(Object proxy, Object[] args) {
+        Object other = args[0];
+        if (other == null) return false;
+        if (Proxy.isProxyClass(other.getClass())) return this == Proxy.getInvocationHandler(other);
+        else return this == other;
+    }
+
+    private Object proxyToString(Object proxy, Object[] args) {
+        return proxy.getClass().getName() + "@" + Integer.toHexString(hashCode());
+    }
+
+    private static MethodHandle dispatchHandle(FunctionHandle functionHandle, Method method) {
+        MethodType methodType = MethodType.methodType(method.getReturnType(), method.getParameterTypes());
+        MethodHandle methodHandle = DowncallLinker.adaptVarargs(functionHandle, method);
+        int parameterCount = methodType.parameterCount();
+        // explicit casts keep the lenient Number conversions of the boxed invoke path
+        methodHandle = MethodHandles.explicitCastArguments(methodHandle, methodType)
+                .asSpreader(Object[].class, parameterCount)
+                .asType(MethodType.methodType(Object.class, Object[].class));
+        return MethodHandles.dropArguments(methodHandle, 0, Object.class);
+    }
+
+    private static boolean isObjectMethod(Method method, String methodName, Class<?> returnType, Class<?>[] parameterTypes) {
+        if (methodName.equals("hashCode")) return returnType == int.class && parameterTypes.length == 0;
+        else if (methodName.equals("equals")) return returnType == boolean.class && parameterTypes.length == 1;
+        else if (methodName.equals("toString")) return returnType == String.class && parameterTypes.length == 0;
+        else return method.getDeclaringClass() == Object.class;
+    }
+
+    private final Map<Method, MethodHandle> dispatchMap;
+    // Proxy passes the same Method instances on every call, so an identity table avoids Method.equals/hashCode
+    private volatile Object[] dispatchTable;
     public ForeignInvocationHandler(ForeignProvider foreign, Class<?>[] classes, FunctionOptionVisitor functionOptionVisitor) {
-        Map<Method, InvocationHandlerDelegate> delegateMap = new HashMap<>();
+        Map<Method, MethodHandle> dispatchMap = new HashMap<>();
         for (Class<?> clazz : classes) {
             for (Method method : clazz.getMethods()) {
                 String methodName = method.getName();
                 Class<?> returnType = method.getReturnType();
                 Class<?>[] parameterTypes = method.getParameterTypes();
-                if (methodName.equals("hashCode") && returnType == int.class && parameterTypes.length == 0) delegateMap.put(method,
-                        (proxy, handler, args) -> handler.hashCode());
-                else if (methodName.equals("equals") && returnType == boolean.class && parameterTypes.length == 1) delegateMap.put(method,
-                        (proxy, handler, args) -> {
-                    Object other = args[0];
-                    if (other == null) return false;
-                    if (Proxy.isProxyClass(other.getClass())) return handler == Proxy.getInvocationHandler(other);
-                    else return handler == other;
-                });
-                else if (methodName.equals("toString") && returnType == String.class && parameterTypes.length == 0) delegateMap.put(method,
-                        (proxy, handler, args) -> proxy.getClass().getName() + "@" + Integer.toHexString(hashCode()));
-                else {
-                    long address = functionOptionVisitor.visitAddress(method);
-                    int firstVarArgIndex = functionOptionVisitor.visitFirstVarArgIndex(method);
-                    ForeignType returnForeignType = functionOptionVisitor.visitReturnType(method);
-                    ForeignType[] parameterForeignTypes = functionOptionVisitor.visitParameterTypes(method);
-                    CallOption[] callOptions = functionOptionVisitor.visitCallOptions(method);
-                    FunctionHandle functionHandle = foreign.downcallHandle(address, firstVarArgIndex, returnForeignType, parameterForeignTypes, callOptions);
-                    InvocationHandlerDelegate delegate;
-                    if (returnType == void.class) delegate = (proxy, handler, args) -> {
-                        functionHandle.invokeVoid(args);
-                        return null;
-                    };
-                    else if (returnType == boolean.class) delegate = (proxy, handler, args) -> (Boolean) functionHandle.invoke(args);
-                    else if (returnType == char.class) delegate = (proxy, handler, args) -> (Character) functionHandle.invoke(args);
-                    else if (returnType == byte.class) delegate = (proxy, handler, args) -> ((Number) functionHandle.invoke(args)).byteValue();
-                    else if (returnType == short.class) delegate = (proxy, handler, args) -> ((Number) functionHandle.invoke(args)).shortValue();
-                    else if (returnType == int.class) delegate = (proxy, handler, args) -> ((Number) functionHandle.invoke(args)).intValue();
-                    else if (returnType == long.class) delegate = (proxy, handler, args) -> ((Number) functionHandle.invoke(args)).longValue();
-                    else if (returnType == float.class) delegate = (proxy, handler, args) -> ((Number) functionHandle.invoke(args)).floatValue();
-                    else if (returnType == double.class) delegate = (proxy, handler, args) -> ((Number) functionHandle.invoke(args)).doubleValue();
-                    else delegate = (proxy, handler, args) -> (MemoryHandle) functionHandle.invoke(args);
-                    delegateMap.put(method, delegate);
-                }
+                if (isObjectMethod(method, methodName, returnType, parameterTypes)) continue;
+                long address = functionOptionVisitor.visitAddress(method);
+                int firstVarArgIndex = functionOptionVisitor.visitFirstVarArgIndex(method);
+                ForeignType returnForeignType = functionOptionVisitor.visitReturnType(method);
+                ForeignType[] parameterForeignTypes = functionOptionVisitor.visitParameterTypes(method);
+                CallOption[] callOptions = functionOptionVisitor.visitCallOptions(method);
+                FunctionHandle functionHandle = foreign.downcallHandle(address, firstVarArgIndex, returnForeignType, parameterForeignTypes, callOptions);
+                dispatchMap.put(method, dispatchHandle(functionHandle, method));
             }
         }
-        this.delegateMap = Collections.unmodifiableMap(delegateMap);
+        this.dispatchMap = Collections.unmodifiableMap(dispatchMap);
+        int capacity = 8;
+        while (capacity < (dispatchMap.size() + 3) * 2) capacity <<= 1;
+        this.dispatchTable = new Object[capacity * 2];
+    }
+
+    private MethodHandle lookupSlow(Method method) {
+        MethodHandle methodHandle = dispatchMap.get(method);
+        if (methodHandle == null) {
+            String methodName = method.getName();
+            Class<?>[] parameterTypes = method.getParameterTypes();
+            if (isObjectMethod(method, methodName, method.getReturnType(), parameterTypes)) {
+                if (methodName.equals("hashCode") && parameterTypes.length == 0) methodHandle = PROXY_HASH_CODE.bindTo(this);
+                else if (methodName.equals("equals") && parameterTypes.length == 1) methodHandle = PROXY_EQUALS.bindTo(this);
+                else if (methodName.equals("toString") && parameterTypes.length == 0) methodHandle = PROXY_TO_STRING.bindTo(this);
+            }
+            if (methodHandle == null) throw new IllegalArgumentException(method + " not supported");
+        }
+        synchronized (this) {
+            Object[] table = dispatchTable;
+            int capacity = table.length >> 1;
+            int count = 0;
+            for (int i = 0; i < capacity; i ++) {
+                if (table[i << 1] != null) count ++;
+            }
+            if (count * 2 < capacity) {
+                table = table.clone();
+                int mask = capacity - 1;
+                int index = System.identityHashCode(method) & mask;
+                while (table[index << 1] != null && table[index << 1] != method) index = (index + 1) & mask;
+                table[index << 1] = method;
+                table[(index << 1) + 1] = methodHandle;
+                dispatchTable = table;
+            }
+        }
+        return methodHandle;
     }
 
     @Override
     public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
-        return delegateMap.get(method).invoke(proxy, this, args);
+        Object[] table = dispatchTable;
+        int mask = (table.length >> 1) - 1;
+        int index = System.identityHashCode(method) & mask;
+        MethodHandle methodHandle = null;
+        for (Object key; (key = table[index << 1]) != null; index = (index + 1) & mask) {
+            if (key == method) {
+                methodHandle = (MethodHandle) table[(index << 1) + 1];
+                break;
+            }
+        }
+        if (methodHandle == null) methodHandle = lookupSlow(method);
+        if (args == null) args = Util.EMPTY_OBJECT_ARRAY;
+        return methodHandle.invokeExact(proxy, args);
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,54 @@
+package io.github.multiffi.ffi;
+
+import java.util.regex.Pattern;
+
+/**
+ * The signature rules of {@code SimpleFunctionOptionVisitor}, expressed over type and constant names so that the annotation
+ * processor resolves pregenerated proxies with the same rules without loading {@code ScalarType}.
+ */
+public final class MarshalTypes {
+
+    private MarshalTypes() {
+        throw new AssertionError("No io.github.multiffi.ffi.MarshalTypes instances for you!");
+    }
+
+    private static final Pattern ADDRESS_PATTERN = Pattern.compile("(const\\s+)?([a-z]|[A-Z]|_)([0-9]|[a-z]|[A-Z]|_)+\\s*\\*");
+
+    /**
+     * Returns the name of the {@code ScalarType} constant the primitive type {@code typeName} maps to when marshaled as
+     * {@code marshalTypeName}, or {@code null} if it is not a mappable primitive type.
+     */
+    public static String scalarTypeName(String typeName, String marshalTypeName) {
+        if (marshalTypeName == null) marshalTypeName = "";
+        switch (typeName) {
+            case "boolean": return "BOOLEAN";
+            case "byte": return "INT8";
+            case "char": return "UTF16";
+            case "short": return "INT16";
+            case "int": return "wchar_t".equalsIgnoreCase(marshalTypeName) ? "WCHAR" : "INT32";
+            case "long":
+                if (ADDRESS_PATTERN.matcher(marshalTypeName).matches()) return "ADDRESS";
+                else if ("size_t".equalsIgnoreCase(marshalTypeName)) return "SIZE";
+                else if ("long".equalsIgnoreCase(marshalTypeName)) return "LONG";
+                else if ("int".equalsIgnoreCase(marshalTypeName)) return "INT";
+                else if ("short".equalsIgnoreCase(marshalTypeName)) return "SHORT";
+                else return "INT64";
+            case "float": return "FLOAT";
+            case "double": return "DOUBLE";
+            default: return null;
+        }
+    }
+
+    /**
+     * Returns the name of the {@code StandardCallOption} constant a {@code CallOptions} value names, or {@code null}.
+     */
+    public static String callOptionName(String callOptionString) {
+        if ("dyncall".equalsIgnoreCase(callOptionString)) return "DYNCALL";
+        else if ("stdcall".equalsIgnoreCase(callOptionString)) return "STDCALL";
+        else if ("critical".equalsIgnoreCase(callOptionString)) return "CRITICAL";
+        else if ("trivial".equalsIgnoreCase(callOptionString)) return "TRIVIAL";
+        else if ("saveErrno".equalsIgnoreCase(callOptionString)) return "SAVE_ERRNO";
+        else return null;
+    }
+
+}
@@ -0,0 +1,233 @@
+package io.github.multiffi.ffi;
+
+import javax.management.ObjectName;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bookkeeping of the native memory obtained through {@link multiffi.ffi.Memory}, enabled with {@code multiffi.memory.accounting}.
+ *
+ * <p>Counters are kept per {@link Kind} in striped adders, so accounting adds no shared write to the allocation path. The
+ * sizes of {@link Kind#PAGES} and {@link Kind#MAPPED} blocks are passed back when they are released, so their live bytes are exact.
+ * The sizes of {@link Kind#MALLOC} and {@link Kind#ALIGNED} blocks are only kept for the fraction {@code multiffi.memory.sizeSampling}
+ * (1/64 by default) of allocations, and the live bytes of those kinds are extrapolated from the sampled blocks still live.</p>
+ *
+ * <p>When {@code multiffi.memory.leakSampling} is set to a fraction in {@code (0, 1]} (which implies accounting), that fraction of
+ * allocations also records the allocating stack trace, and the sampled blocks still live at exit are reported to
+ * {@code System.err}.</p>
+ */
+public final class MemoryAccounting {
+
+    private MemoryAccounting() {
+        throw new AssertionError("No io.github.multiffi.ffi.MemoryAccounting instances for you!");
+    }
+
+    public enum Kind {
+        MALLOC,
+        ALIGNED,
+        PAGES,
+        MAPPED
+    }
+
+    public static final double LEAK_SAMPLING = Math.max(0, Math.min(1, Util.getDoubleProperty("multiffi.memory.leakSampling", 0)));
+    public static final boolean ENABLED = LEAK_SAMPLING > 0 || Util.getBooleanProperty("multiffi.memory.accounting", false);
+    public static final double SIZE_SAMPLING = Math.max(LEAK_SAMPLING,
+            Math.max(0, Math.min(1, Util.getDoubleProperty("multiffi.memory.sizeSampling", 1.0 / 64))));
+
+    private static final class AllocationTrace extends Throwable {
+        private static final long serialVersionUID = 1L;
+        private AllocationTrace(Kind kind, long address, long size) {
+            super(size + " bytes of " + kind + " memory at 0x" + Long.toHexString(address) + " allocated by "
+                    + Thread.currentThread().getName());
+            StackTraceElement[] stackTrace = getStackTrace();
+            int start = 0;
+            while (start < stackTrace.length && (stackTrace[start].getClassName().startsWith(MemoryAccounting.class.getName())
+                    || stackTrace[start].getClassName().equals("multiffi.ffi.Memory"))) start ++;
+            setStackTrace(Arrays.copyOfRange(stackTrace, start, stackTrace.length));
+        }
+    }
+
+    private static final class Allocation {
+        private final long size;
+        private final AllocationTrace trace;
+        private Allocation(long size, AllocationTrace trace) {
+            this.size = size;
+            this.trace = trace;
+        }
+    }
+
+    private static final class Counters implements NativeMemoryMXBean {
+        private final Kind kind;
+        // whether frees pass the size back, otherwise live bytes are extrapolated from the sampled blocks
+        private final boolean sized;
+        private final ConcurrentHashMap<Long, Allocation> sampledAllocations = new ConcurrentHashMap<>();
+        private final LongAdder allocationCount = new LongAdder();
+        private final LongAdder freeCount = new LongAdder();
+        private final LongAdder allocatedBytes = new LongAdder();
+        private final LongAdder freedBytes = new LongAdder();
+        private final LongAdder sampledLiveBytes = new LongAdder();
+        private final AtomicLong peakBytes = new AtomicLong();
+        private Counters(Kind kind) {
+            this.kind = kind;
+            this.sized = kind == Kind.PAGES || kind == Kind.MAPPED;
+        }
+        private void allocate(long address, long size) {
+            allocationCount.increment();
+            allocatedBytes.add(size);
+            double sampling = sized ? LEAK_SAMPLING : SIZE_SAMPLING;
+            double random = sampling > 0 ? ThreadLocalRandom.current().nextDouble() : 1;
+            if (random < sampling) {
+                AllocationTrace trace = random < LEAK_SAMPLING ? new AllocationTrace(kind, address, size) : null;
+                sampledAllocations.put(address, new Allocation(size, trace));
+                if (!sized) sampledLiveBytes.add(size);
+            }
+            // the peak is only as fresh as the last sampled allocation, summing the adders on every allocation would cost what they save
+            if (sized || random < sampling) {
+                long live = getLiveBytes();
+                if (live > peakBytes.get()) peakBytes.accumulateAndGet(live, Math::max);
+            }
+        }
+        private void free(long address, long size) {
+            freeCount.increment();
+            Allocation allocation = sampledAllocations.remove(address);
+            if (sized) freedBytes.add(size);
+            else if (allocation != null) sampledLiveBytes.add(-allocation.size);
+        }
+        private List<AllocationTrace> sampledLiveAllocations() {
+            List<AllocationTrace> traces = new ArrayList<>();
+            for (Allocation allocation : sampledAllocations.values()) {
+                if (allocation.trace != null) traces.add(allocation.trace);
+            }
+            return traces;
+        }
+        @Override
+        public String getKind() {
+            return kind.name();
+        }
+        @Override
+        public long getLiveBytes() {
+            if (sized) return allocatedBytes.sum() - freedBytes.sum();
+            else return SIZE_SAMPLING > 0 ? (long) (sampledLiveBytes.sum() / SIZE_SAMPLING) : 0;
+        }
+        @Override
+        public long getPeakBytes() {
+            return peakBytes.get();
+        }
+        @Override
+        public long getLiveCount() {
+            return allocationCount.sum() - freeCount.sum();
+        }
+        @Override
+        public long getAllocationCount() {
+            return allocationCount.sum();
+        }
+        @Override
+        public long getFreeCount() {
+            return freeCount.sum();
+        }
+        @Override
+        public long getAllocatedBytes() {
+            return allocatedBytes.sum();
+        }
+        @Override
+        public String[] getSampledLiveAllocations() {
+            List<AllocationTrace> traces = sampledLiveAllocations();
+            String[] result = new String[traces.size()];
+            for (int i = 0; i < result.length; i ++) {
+                StringWriter writer = new StringWriter();
+                traces.get(i).printStackTrace(new PrintWriter(writer));
+                result[i] = writer.toString();
+            }
+            return result;
+        }
+    }
+
+    private static final Counters[] COUNTERS = new Counters[Kind.values().length];
+    static {
+        for (Kind kind : Kind.values()) {
+            COUNTERS[kind.ordinal()] = new Counters(kind);
+        }
+        if (ENABLED) {
+            MXBeanRegistration.register();
+            if (LEAK_SAMPLING > 0) Runtime.getRuntime().addShutdownHook(new Thread(MemoryAccounting::reportLeaks,
+                    "Multiffi/FFI Leak Report Thread"));
+        }
+    }
+
+    // kept apart so that platforms without java.lang.management never resolve it
+    private static final class MXBeanRegistration {
+        private MXBeanRegistration() {
+            throw new AssertionError("No io.github.multiffi.ffi.MemoryAccounting.MXBeanRegistration instances for you!");
+        }
+        private static void register() {
+            try {
+                for (Counters counters : COUNTERS) {
+                    ManagementFactory.getPlatformMBeanServer().registerMBean(counters,
+                            new ObjectName("multiffi.ffi:type=NativeMemory,kind=" + counters.kind.name()));
+                }
+            }
+            catch (Throwable ignored) {
+            }
+        }
+    }
+
+    public static void allocate(Kind kind, long address, long size) {
+        if (address != 0) COUNTERS[kind.ordinal()].allocate(address, size);
+    }
+
+    public static void reallocate(Kind kind, long address, long newAddress, long size) {
+        if (newAddress == 0) return;
+        Counters counters = COUNTERS[kind.ordinal()];
+        if (address != 0) counters.free(address, -1);
+        counters.allocate(newAddress, size);
+    }
+
+    public static void free(Kind kind, long address) {
+        if (address != 0) COUNTERS[kind.ordinal()].free(address, -1);
+    }
+
+    public static void free(Kind kind, long address, long size) {
+        if (address != 0) COUNTERS[kind.ordinal()].free(address, size);
+    }
+
+    public static NativeMemoryMXBean counters(Kind kind) {
+        return COUNTERS[kind.ordinal()];
+    }
+
+    public static long liveBytes() {
+        long liveBytes = 0;
+        for (Counters counters : COUNTERS) {
+            liveBytes += counters.getLiveBytes();
+        }
+        return liveBytes;
+    }
+
+    /**
+     * Returns the stack traces of the sampled allocations that are still live.
+     */
+    public static List<Throwable> sampledLiveAllocations() {
+        List<Throwable> traces = new ArrayList<>();
+        for (Counters counters : COUNTERS) {
+            traces.addAll(counters.sampledLiveAllocations());
+        }
+        return traces;
+    }
+
+    public static void reportLeaks() {
+        List<Throwable> traces = sampledLiveAllocations();
+        if (traces.isEmpty()) return;
+        System.err.println("Multiffi/FFI: " + traces.size() + " sampled native allocations were never freed");
+        for (Throwable trace : traces) {
+            trace.printStackTrace();
+        }
+    }
+
+}
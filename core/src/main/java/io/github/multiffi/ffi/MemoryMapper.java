@@ -0,0 +1,406 @@
+package io.github.multiffi.ffi;
+
+import multiffi.ffi.CallOption;
+import multiffi.ffi.ErrnoException;
+import multiffi.ffi.Foreign;
+import multiffi.ffi.ForeignType;
+import multiffi.ffi.Memory;
+import multiffi.ffi.MemoryAdvice;
+import multiffi.ffi.MemoryHandle;
+import multiffi.ffi.ScalarType;
+import multiffi.ffi.StandardCallOption;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * File and anonymous mappings on top of the platform API (mmap on POSIX, file mapping views and VirtualAlloc on Windows),
+ * linked through the installed {@link multiffi.ffi.spi.ForeignProvider} so every backend shares one implementation.
+ */
+public final class MemoryMapper {
+
+    private MemoryMapper() {
+        throw new AssertionError("No io.github.multiffi.ffi.MemoryMapper instances for you!");
+    }
+
+    private static final String OS_NAME = System.getProperty("os.name").toLowerCase();
+    private static final boolean IS_WINDOWS = OS_NAME.startsWith("windows");
+    private static final boolean IS_LINUX = OS_NAME.startsWith("linux");
+    private static final boolean IS_MAC = OS_NAME.startsWith("mac") || OS_NAME.startsWith("darwin");
+    private static final boolean IS_FREEBSD = OS_NAME.startsWith("freebsd");
+
+    /**
+     * The alignment of mapping offsets: the page size on POSIX, the allocation granularity on Windows.
+     */
+    public static final long GRANULARITY = IS_WINDOWS ? 65536L : Foreign.pageSize();
+
+    private static final long LINUX_HUGE_PAGE_SIZE;
+    static {
+        long hugePageSize = 2L * 1024 * 1024;
+        if (IS_LINUX) {
+            try (BufferedReader reader = Files.newBufferedReader(Paths.get("/proc/meminfo"))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.startsWith("Hugepagesize:")) {
+                        hugePageSize = Long.parseLong(line.substring(13).replace("kB", "").trim()) * 1024;
+                        break;
+                    }
+                }
+            } catch (IOException | NumberFormatException ignored) {
+            }
+        }
+        LINUX_HUGE_PAGE_SIZE = hugePageSize;
+    }
+
+    // links a function with every argument and the return value (if any) widened to long
+    private static MethodHandle downcallHandle(String symbolName, boolean saveErrno, ForeignType returnType, ForeignType... parameterTypes) {
+        CallOption[] callOptions = IS_WINDOWS ? (saveErrno ? new CallOption[] { StandardCallOption.STDCALL, StandardCallOption.SAVE_ERRNO }
+                : new CallOption[] { StandardCallOption.STDCALL }) : (saveErrno ? new CallOption[] { StandardCallOption.SAVE_ERRNO }
+                : Util.EMPTY_CALL_OPTION_ARRAY);
+        MethodHandle methodHandle = Foreign.downcallHandle(Foreign.getSymbolAddress(symbolName), returnType, parameterTypes, callOptions)
+                .asMethodHandle();
+        Class<?>[] parameterClasses = new Class<?>[parameterTypes.length];
+        Arrays.fill(parameterClasses, long.class);
+        return MethodHandles.explicitCastArguments(methodHandle,
+                MethodType.methodType(returnType == null ? void.class : long.class, parameterClasses));
+    }
+
+    private static MethodHandle dropReturnValue(MethodHandle methodHandle) {
+        return methodHandle.asType(methodHandle.type().changeReturnType(void.class));
+    }
+
+    private static MethodHandle downcallHandleOrNull(String symbolName, ForeignType returnType, ForeignType... parameterTypes) {
+        try {
+            return downcallHandle(symbolName, false, returnType, parameterTypes);
+        }
+        catch (UnsatisfiedLinkError e) {
+            return null;
+        }
+    }
+
+    private static final class Posix {
+        private Posix() {
+            throw new AssertionError("No io.github.multiffi.ffi.MemoryMapper.Posix instances for you!");
+        }
+        private static final long O_RDONLY = 0;
+        private static final long O_RDWR = 2;
+        private static final long PROT_READ = 1;
+        private static final long PROT_WRITE = 2;
+        private static final long MAP_SHARED = 1;
+        private static final long MAP_PRIVATE = 2;
+        private static final long MAP_ANONYMOUS = IS_LINUX ? 0x20 : 0x1000;
+        private static final long MAP_HUGETLB = 0x40000;
+        private static final long MAP_FAILED = -1;
+        private static final long MADV_HUGEPAGE = 14;
+        private static final long MS_SYNC = IS_LINUX ? 4 : (IS_MAC ? 0x10 : (IS_FREEBSD ? 0 : 4));
+        private static final MethodHandle OPEN = downcallHandle("open", true, ScalarType.INT32, ScalarType.ADDRESS, ScalarType.INT32);
+        private static final MethodHandle CLOSE = dropReturnValue(downcallHandle("close", false, ScalarType.INT32, ScalarType.INT32));
+        // off_t is only 64-bit wide by default on LP64, 32-bit glibc has mmap64 for that
+        private static final MethodHandle MMAP = downcallHandle(IS_LINUX && Foreign.addressSize() == 4 ? "mmap64" : "mmap", true,
+                ScalarType.ADDRESS, ScalarType.ADDRESS, ScalarType.SIZE, ScalarType.INT32, ScalarType.INT32, ScalarType.INT32, ScalarType.INT64);
+        private static final MethodHandle MUNMAP = downcallHandle("munmap", true, ScalarType.INT32, ScalarType.ADDRESS, ScalarType.SIZE);
+        private static final MethodHandle MADVISE = downcallHandle("madvise", false, ScalarType.INT32, ScalarType.ADDRESS, ScalarType.SIZE, ScalarType.INT32);
+        private static final MethodHandle MSYNC = downcallHandle("msync", true, ScalarType.INT32, ScalarType.ADDRESS, ScalarType.SIZE, ScalarType.INT32);
+    }
+
+    private static final class Windows {
+        private Windows() {
+            throw new AssertionError("No io.github.multiffi.ffi.MemoryMapper.Windows instances for you!");
+        }
+        static {
+            Foreign.loadLibrary("kernel32");
+        }
+        private static final long GENERIC_READ = 0x80000000L;
+        private static final long GENERIC_WRITE = 0x40000000L;
+        private static final long FILE_SHARE_ALL = 0x7;
+        private static final long OPEN_EXISTING = 3;
+        private static final long FILE_ATTRIBUTE_NORMAL = 0x80;
+        private static final long INVALID_HANDLE_VALUE = -1;
+        private static final long PAGE_READONLY = 0x02;
+        private static final long PAGE_READWRITE = 0x04;
+        private static final long PAGE_WRITECOPY = 0x08;
+        private static final long FILE_MAP_COPY = 0x01;
+        private static final long FILE_MAP_WRITE = 0x02;
+        private static final long FILE_MAP_READ = 0x04;
+        private static final long CURRENT_PROCESS = -1;
+        private static final MethodHandle CREATE_FILE = downcallHandle("CreateFileW", true, ScalarType.ADDRESS,
+                ScalarType.ADDRESS, ScalarType.INT32, ScalarType.INT32, ScalarType.ADDRESS, ScalarType.INT32, ScalarType.INT32, ScalarType.ADDRESS);
+        private static final MethodHandle CREATE_FILE_MAPPING = downcallHandle("CreateFileMappingW", true, ScalarType.ADDRESS,
+                ScalarType.ADDRESS, ScalarType.ADDRESS, ScalarType.INT32, ScalarType.INT32, ScalarType.INT32, ScalarType.ADDRESS);
+        private static final MethodHandle MAP_VIEW_OF_FILE = downcallHandle("MapViewOfFile", true, ScalarType.ADDRESS,
+                ScalarType.ADDRESS, ScalarType.INT32, ScalarType.INT32, ScalarType.INT32, ScalarType.SIZE);
+        private static final MethodHandle UNMAP_VIEW_OF_FILE = downcallHandle("UnmapViewOfFile", true, ScalarType.INT32, ScalarType.ADDRESS);
+        private static final MethodHandle FLUSH_VIEW_OF_FILE = downcallHandle("FlushViewOfFile", true, ScalarType.INT32, ScalarType.ADDRESS, ScalarType.SIZE);
+        private static final MethodHandle CLOSE_HANDLE = dropReturnValue(downcallHandle("CloseHandle", false, ScalarType.INT32, ScalarType.ADDRESS));
+        private static final long MEM_COMMIT_RESERVE = 0x3000;
+        private static final long MEM_LARGE_PAGES = 0x20000000;
+        private static final long MEM_RELEASE = 0x8000;
+        private static final MethodHandle VIRTUAL_ALLOC = downcallHandle("VirtualAlloc", false, ScalarType.ADDRESS,
+                ScalarType.ADDRESS, ScalarType.SIZE, ScalarType.INT32, ScalarType.INT32);
+        private static final MethodHandle VIRTUAL_FREE = downcallHandle("VirtualFree", true, ScalarType.INT32,
+                ScalarType.ADDRESS, ScalarType.SIZE, ScalarType.INT32);
+        private static final long LARGE_PAGE_MINIMUM;
+        static {
+            MethodHandle getLargePageMinimum = downcallHandleOrNull("GetLargePageMinimum", ScalarType.SIZE);
+            long largePageMinimum;
+            try {
+                largePageMinimum = getLargePageMinimum == null ? 0 : (long) getLargePageMinimum.invokeExact();
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new IllegalStateException("Unexpected exception", e);
+            }
+            LARGE_PAGE_MINIMUM = largePageMinimum;
+        }
+        // Windows 8+
+        private static final MethodHandle PREFETCH_VIRTUAL_MEMORY = downcallHandleOrNull("PrefetchVirtualMemory", ScalarType.INT32,
+                ScalarType.ADDRESS, ScalarType.SIZE, ScalarType.ADDRESS, ScalarType.INT32);
+    }
+
+    /**
+     * Maps a region of a file; the returned address points at {@code offset}, which does not need to be aligned.
+     * {@link FileChannel.MapMode#READ_WRITE} mappings grow the file to cover the region, like {@link FileChannel#map}.
+     */
+    public static long map(Path path, FileChannel.MapMode mode, long offset, long size) {
+        Objects.requireNonNull(path);
+        Objects.requireNonNull(mode);
+        if (offset < 0) throw new IllegalArgumentException("offset must be non-negative");
+        if (size <= 0) throw new IllegalArgumentException("size must be positive");
+        long end = Math.addExact(offset, size);
+        if (mode == FileChannel.MapMode.READ_WRITE) {
+            try {
+                if (Files.size(path) < end) {
+                    try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+                        file.setLength(end);
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        long base = offset & -GRANULARITY;
+        long shift = offset - base;
+        try {
+            return (IS_WINDOWS ? mapWindows(path, mode, base, size + shift) : mapPosix(path, mode, base, size + shift)) + shift;
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException("Unexpected exception", e);
+        }
+    }
+
+    private static long mapPosix(Path path, FileChannel.MapMode mode, long offset, long size) throws Throwable {
+        boolean readOnly = mode == FileChannel.MapMode.READ_ONLY;
+        long fd;
+        try (MemoryHandle pathname = MemoryHandle.allocateDirect(path.toString())) {
+            fd = (long) Posix.OPEN.invokeExact(pathname.address(), mode == FileChannel.MapMode.READ_WRITE ? Posix.O_RDWR : Posix.O_RDONLY);
+        }
+        if (fd < 0) throw new ErrnoException();
+        try {
+            long address = (long) Posix.MMAP.invokeExact(0L, size, readOnly ? Posix.PROT_READ : Posix.PROT_READ | Posix.PROT_WRITE,
+                    mode == FileChannel.MapMode.PRIVATE ? Posix.MAP_PRIVATE : Posix.MAP_SHARED, fd, offset);
+            if (address == Posix.MAP_FAILED) throw new ErrnoException();
+            return address;
+        }
+        finally {
+            Posix.CLOSE.invokeExact(fd);
+        }
+    }
+
+    private static long mapWindows(Path path, FileChannel.MapMode mode, long offset, long size) throws Throwable {
+        boolean readWrite = mode == FileChannel.MapMode.READ_WRITE;
+        long file;
+        try (MemoryHandle filename = MemoryHandle.allocateDirect(path.toString(), Foreign.wideCharset())) {
+            file = (long) Windows.CREATE_FILE.invokeExact(filename.address(), readWrite ? Windows.GENERIC_READ | Windows.GENERIC_WRITE : Windows.GENERIC_READ,
+                    Windows.FILE_SHARE_ALL, 0L, Windows.OPEN_EXISTING, Windows.FILE_ATTRIBUTE_NORMAL, 0L);
+        }
+        if (file == Windows.INVALID_HANDLE_VALUE) throw new ErrnoException();
+        long mapping = 0;
+        try {
+            mapping = (long) Windows.CREATE_FILE_MAPPING.invokeExact(file, 0L, readWrite ? Windows.PAGE_READWRITE
+                    : (mode == FileChannel.MapMode.PRIVATE ? Windows.PAGE_WRITECOPY : Windows.PAGE_READONLY), 0L, 0L, 0L);
+            if (mapping == 0) throw new ErrnoException();
+            long address = (long) Windows.MAP_VIEW_OF_FILE.invokeExact(mapping, readWrite ? Windows.FILE_MAP_WRITE
+                    : (mode == FileChannel.MapMode.PRIVATE ? Windows.FILE_MAP_COPY : Windows.FILE_MAP_READ), offset >>> 32, offset & 0xFFFFFFFFL, size);
+            if (address == 0) throw new ErrnoException();
+            return address;
+        }
+        finally {
+            // the view keeps the mapping and the file open
+            if (mapping != 0) Windows.CLOSE_HANDLE.invokeExact(mapping);
+            Windows.CLOSE_HANDLE.invokeExact(file);
+        }
+    }
+
+    /**
+     * Unmaps a region returned by {@link #map(Path, FileChannel.MapMode, long, long)}.
+     */
+    public static void unmap(long address, long size) {
+        long base = address & -GRANULARITY;
+        try {
+            if (IS_WINDOWS) {
+                if ((long) Windows.UNMAP_VIEW_OF_FILE.invokeExact(base) == 0) throw new ErrnoException();
+            }
+            else if (!munmap(base, size + (address - base))) throw new ErrnoException();
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException("Unexpected exception", e);
+        }
+    }
+
+    /**
+     * Returns the size of the pages backing {@link #allocatePages(long, boolean)} with huge pages requested,
+     * or the regular page size if the platform has no huge pages.
+     */
+    public static long hugePageSize() {
+        if (IS_LINUX) return LINUX_HUGE_PAGE_SIZE;
+        else if (IS_WINDOWS && Windows.LARGE_PAGE_MINIMUM > 0) return Windows.LARGE_PAGE_MINIMUM;
+        else return Foreign.pageSize();
+    }
+
+    private static boolean munmap(long address, long size) throws Throwable {
+        return (long) Posix.MUNMAP.invokeExact(address, size) == 0;
+    }
+
+    private static boolean madvise(long address, long size, long advice) throws Throwable {
+        return (long) Posix.MADVISE.invokeExact(address, size, advice) == 0;
+    }
+
+    private static long roundUp(long size, long pageSize) {
+        return Util.unsignedAddExact(size, pageSize - 1) & -pageSize;
+    }
+
+    /**
+     * Allocates zeroed, page-aligned memory directly from the OS. With {@code hugePages}, explicit huge pages
+     * (MAP_HUGETLB, MEM_LARGE_PAGES) are tried first, then transparent huge pages on Linux, then normal pages.
+     * The memory must be released by {@link #freePages(long, long, boolean)} with the same arguments.
+     *
+     * @return the address of the memory, or 0 on failure.
+     */
+    public static long allocatePages(long size, boolean hugePages) {
+        if (size <= 0) throw new IllegalArgumentException("size must be positive");
+        try {
+            if (IS_WINDOWS) {
+                long address = 0;
+                if (hugePages && Windows.LARGE_PAGE_MINIMUM > 0) {
+                    // needs SeLockMemoryPrivilege
+                    address = (long) Windows.VIRTUAL_ALLOC.invokeExact(0L, roundUp(size, Windows.LARGE_PAGE_MINIMUM),
+                            Windows.MEM_COMMIT_RESERVE | Windows.MEM_LARGE_PAGES, Windows.PAGE_READWRITE);
+                }
+                if (address == 0) address = (long) Windows.VIRTUAL_ALLOC.invokeExact(0L, size, Windows.MEM_COMMIT_RESERVE, Windows.PAGE_READWRITE);
+                return address;
+            }
+            long flags = Posix.MAP_PRIVATE | Posix.MAP_ANONYMOUS;
+            if (!hugePages || !IS_LINUX) {
+                long address = (long) Posix.MMAP.invokeExact(0L, size, Posix.PROT_READ | Posix.PROT_WRITE, flags, -1L, 0L);
+                return address == Posix.MAP_FAILED ? 0 : address;
+            }
+            size = roundUp(size, LINUX_HUGE_PAGE_SIZE);
+            long address = (long) Posix.MMAP.invokeExact(0L, size, Posix.PROT_READ | Posix.PROT_WRITE, flags | Posix.MAP_HUGETLB, -1L, 0L);
+            if (address != Posix.MAP_FAILED) return address;
+            // no reserved huge pages, align regular pages to the huge page size so that transparent huge pages can back them
+            address = (long) Posix.MMAP.invokeExact(0L, size + LINUX_HUGE_PAGE_SIZE, Posix.PROT_READ | Posix.PROT_WRITE, flags, -1L, 0L);
+            if (address == Posix.MAP_FAILED) return 0;
+            long aligned = roundUp(address, LINUX_HUGE_PAGE_SIZE);
+            long head = aligned - address;
+            if (head != 0) munmap(address, head);
+            munmap(aligned + size, LINUX_HUGE_PAGE_SIZE - head);
+            madvise(aligned, size, Posix.MADV_HUGEPAGE);
+            return aligned;
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException("Unexpected exception", e);
+        }
+    }
+
+    public static void freePages(long address, long size, boolean hugePages) {
+        try {
+            if (IS_WINDOWS) {
+                if ((long) Windows.VIRTUAL_FREE.invokeExact(address, 0L, Windows.MEM_RELEASE) == 0) throw new ErrnoException();
+            }
+            else if (!munmap(address, hugePages && IS_LINUX ? roundUp(size, LINUX_HUGE_PAGE_SIZE) : size)) throw new ErrnoException();
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException("Unexpected exception", e);
+        }
+    }
+
+    /**
+     * Passes an access pattern hint for the pages spanning the given range.
+     *
+     * @return whether the hint is supported and was accepted.
+     */
+    public static boolean advise(long address, long size, MemoryAdvice advice) {
+        Objects.requireNonNull(advice);
+        if (size == 0) return true;
+        try {
+            if (IS_WINDOWS) {
+                if (advice != MemoryAdvice.WILL_NEED || Windows.PREFETCH_VIRTUAL_MEMORY == null) return false;
+                Memory.pushStack();
+                try {
+                    long entry = Memory.allocateAlignedOnStack(Foreign.addressSize() * 2, Foreign.addressSize());
+                    Memory.setAddress(entry, address);
+                    Memory.setAddress(entry + Foreign.addressSize(), size);
+                    return (long) Windows.PREFETCH_VIRTUAL_MEMORY.invokeExact(Windows.CURRENT_PROCESS, 1L, entry, 0L) != 0;
+                }
+                finally {
+                    Memory.popStack();
+                }
+            }
+            long value;
+            switch (advice) {
+                case NORMAL: value = 0; break;
+                case RANDOM: value = 1; break;
+                case SEQUENTIAL: value = 2; break;
+                case WILL_NEED: value = 3; break;
+                case DONT_NEED: value = 4; break;
+                case HUGE_PAGE:
+                    if (!IS_LINUX) return false;
+                    value = Posix.MADV_HUGEPAGE;
+                    break;
+                default: return false;
+            }
+            long base = address & -Foreign.pageSize();
+            return madvise(base, size + (address - base), value);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException("Unexpected exception", e);
+        }
+    }
+
+    /**
+     * Writes modified pages spanning the given range back to the mapped file, waiting for completion.
+     */
+    public static void sync(long address, long size) {
+        if (size == 0) return;
+        try {
+            if (IS_WINDOWS) {
+                if ((long) Windows.FLUSH_VIEW_OF_FILE.invokeExact(address, size) == 0) throw new ErrnoException();
+            }
+            else {
+                long base = address & -Foreign.pageSize();
+                if ((long) Posix.MSYNC.invokeExact(base, size + (address - base), Posix.MS_SYNC) != 0) throw new ErrnoException();
+            }
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException("Unexpected exception", e);
+        }
+    }
+
+}
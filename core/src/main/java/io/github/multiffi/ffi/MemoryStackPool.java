@@ -0,0 +1,60 @@
+package io.github.multiffi.ffi;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public final class MemoryStackPool {
+
+    private MemoryStackPool() {
+        throw new AssertionError("No io.github.multiffi.ffi.MemoryStackPool instances for you!");
+    }
+
+    public static final int CAPACITY = Math.max(0, Util.getIntProperty("multiffi.allocator.stackPoolSize",
+            Runtime.getRuntime().availableProcessors() * 2));
+
+    private static final ConcurrentLinkedQueue<SegmentedMemoryStack> POOL = new ConcurrentLinkedQueue<>();
+    private static final AtomicInteger POOLED_COUNT = new AtomicInteger();
+    private static final AtomicInteger IN_USE_COUNT = new AtomicInteger();
+
+    public static SegmentedMemoryStack acquire(long segmentSize) {
+        SegmentedMemoryStack stack;
+        while ((stack = POOL.poll()) != null) {
+            POOLED_COUNT.decrementAndGet();
+            if (stack.segmentSize() == segmentSize) break;
+            stack.free();
+        }
+        if (stack == null) stack = new SegmentedMemoryStack(segmentSize);
+        IN_USE_COUNT.incrementAndGet();
+        return stack;
+    }
+
+    public static void release(SegmentedMemoryStack stack) {
+        IN_USE_COUNT.decrementAndGet();
+        stack.reset();
+        stack.trim();
+        int pooledCount;
+        do {
+            pooledCount = POOLED_COUNT.get();
+            if (pooledCount >= CAPACITY) {
+                stack.free();
+                return;
+            }
+        } while (!POOLED_COUNT.compareAndSet(pooledCount, pooledCount + 1));
+        POOL.offer(stack);
+    }
+
+    /**
+     * Returns the number of idle stacks held by the pool.
+     */
+    public static int pooledCount() {
+        return POOLED_COUNT.get();
+    }
+
+    /**
+     * Returns the number of stacks currently bound to threads.
+     */
+    public static int inUseCount() {
+        return IN_USE_COUNT.get();
+    }
+
+}
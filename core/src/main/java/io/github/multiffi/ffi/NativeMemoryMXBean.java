@@ -0,0 +1,25 @@
+package io.github.multiffi.ffi;
+
+/**
+ * Native memory counters of one {@link MemoryAccounting.Kind}, registered as
+ * {@code multiffi.ffi:type=NativeMemory,kind=<kind>} when accounting is enabled.
+ */
+public interface NativeMemoryMXBean {
+
+    String getKind();
+
+    long getLiveBytes();
+
+    long getPeakBytes();
+
+    long getLiveCount();
+
+    long getAllocationCount();
+
+    long getFreeCount();
+
+    long getAllocatedBytes();
+
+    String[] getSampledLiveAllocations();
+
+}
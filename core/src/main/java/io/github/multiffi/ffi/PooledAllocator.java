@@ -0,0 +1,319 @@
+package io.github.multiffi.ffi;
+
+import multiffi.ffi.spi.MemoryProvider;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A thread-caching size-class allocator for small native blocks.
+ *
+ * <p>Blocks of up to {@link #MAX_POOLED_SIZE} bytes are carved from 64 KiB slabs, each dedicated to one size class, which are in turn
+ * cut from 1 MiB chunks obtained from the underlying {@link MemoryProvider}. Every thread keeps a magazine of free blocks per size class;
+ * when a magazine overflows, half of it is handed back to a per-class lock-free depot, which is where blocks freed by other threads
+ * are picked up again. Larger (and zero-sized) requests, as well as addresses that do not belong to a slab, go straight to the
+ * underlying provider.</p>
+ *
+ * <p>Slabs are retained for the lifetime of the process. Pooled addresses must only be released through this allocator, never through
+ * the C library {@code free}.</p>
+ */
+public final class PooledAllocator {
+
+    private PooledAllocator() {
+        throw new AssertionError("No io.github.multiffi.ffi.PooledAllocator instances for you!");
+    }
+
+    public static final boolean ENABLED = Util.getBooleanProperty("multiffi.allocator.pooled", false);
+    public static final long MAX_POOLED_SIZE = 512;
+
+    private static final int[] SIZE_CLASSES = new int[] {16, 32, 48, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320, 384, 448, 512};
+    private static final byte[] SIZE_CLASS_INDICES = new byte[(int) (MAX_POOLED_SIZE >>> 4) + 1];
+    private static final int[] MAGAZINE_CAPACITIES = new int[SIZE_CLASSES.length];
+    static {
+        for (int i = 1, sizeClass = 0; i < SIZE_CLASS_INDICES.length; i ++) {
+            while ((i << 4) > SIZE_CLASSES[sizeClass]) sizeClass ++;
+            SIZE_CLASS_INDICES[i] = (byte) sizeClass;
+        }
+        for (int i = 0; i < SIZE_CLASSES.length; i ++) {
+            MAGAZINE_CAPACITIES[i] = Math.max(16, Math.min(128, 8192 / SIZE_CLASSES[i]));
+        }
+    }
+
+    private static final int SLAB_SHIFT = 16;
+    private static final long SLAB_SIZE = 1L << SLAB_SHIFT;
+    private static final int CHUNK_SLABS = 16;
+    private static final long CHUNK_SIZE = SLAB_SIZE * CHUNK_SLABS;
+
+    private static final MemoryProvider BACKING = MemoryProvider.getImplementation();
+
+    // Treiber stacks threaded through the free blocks themselves; only ever popped as a whole, so there is no ABA hazard
+    private static final AtomicLongArray DEPOTS = new AtomicLongArray(SIZE_CLASSES.length);
+    private static final Object[] CARVE_LOCKS = new Object[SIZE_CLASSES.length];
+    private static final long[] CARVE_POSITIONS = new long[SIZE_CLASSES.length];
+    private static final long[] CARVE_LIMITS = new long[SIZE_CLASSES.length];
+    static {
+        for (int i = 0; i < CARVE_LOCKS.length; i ++) {
+            CARVE_LOCKS[i] = new Object();
+        }
+    }
+
+    private static final Object SLAB_LOCK = new Object();
+    private static final long[] SPARE_SLABS = new long[CHUNK_SLABS];
+    private static int spareSlabCount = 0;
+    private static int slabCount = 0;
+    // entries are slab base | (size class + 1), published copy-on-write
+    private static volatile long[] slabTable = new long[64];
+
+    private static final AtomicLong RETAINED_BYTES = new AtomicLong();
+    private static final LongAdder IN_USE_BYTES = new LongAdder();
+
+    private static final class ThreadCache {
+        private final WeakReference<Thread> owner = new WeakReference<>(Thread.currentThread());
+        private final long[][] magazines = new long[SIZE_CLASSES.length][];
+        private final int[] counts = new int[SIZE_CLASSES.length];
+        private final long[] chains = new long[SIZE_CLASSES.length];
+        private long[] magazine(int sizeClass) {
+            long[] magazine = magazines[sizeClass];
+            if (magazine == null) magazines[sizeClass] = magazine = new long[MAGAZINE_CAPACITIES[sizeClass]];
+            return magazine;
+        }
+        private boolean isDead() {
+            Thread thread = owner.get();
+            return thread == null || !thread.isAlive();
+        }
+    }
+    private static final ConcurrentLinkedQueue<ThreadCache> THREAD_CACHES = new ConcurrentLinkedQueue<>();
+    private static final ThreadLocal<ThreadCache> THREAD_CACHE_THREAD_LOCAL = new ThreadLocal<ThreadCache>() {
+        @Override
+        protected ThreadCache initialValue() {
+            ThreadCache cache = new ThreadCache();
+            THREAD_CACHES.add(cache);
+            return cache;
+        }
+    };
+
+    private static int slabHash(long key, int mask) {
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+    }
+
+    private static int sizeClassOf(long address) {
+        long key = address >>> SLAB_SHIFT;
+        long[] table = slabTable;
+        int mask = table.length - 1;
+        for (int index = slabHash(key, mask); ; index = (index + 1) & mask) {
+            long entry = table[index];
+            if (entry == 0) return -1;
+            else if (entry >>> SLAB_SHIFT == key) return (int) (entry & (SLAB_SIZE - 1)) - 1;
+        }
+    }
+
+    private static void registerSlab(long slab, int sizeClass) {
+        long[] table = slabTable;
+        if ((slabCount + 1) * 2 > table.length) {
+            long[] newTable = new long[table.length * 2];
+            for (long entry : table) {
+                if (entry != 0) insertSlab(newTable, entry);
+            }
+            table = newTable;
+        }
+        else table = table.clone();
+        insertSlab(table, slab | (sizeClass + 1));
+        slabCount ++;
+        slabTable = table;
+    }
+
+    private static void insertSlab(long[] table, long entry) {
+        int mask = table.length - 1;
+        int index = slabHash(entry >>> SLAB_SHIFT, mask);
+        while (table[index] != 0) index = (index + 1) & mask;
+        table[index] = entry;
+    }
+
+    private static long newSlab(int sizeClass) {
+        synchronized (SLAB_LOCK) {
+            if (spareSlabCount == 0) {
+                long chunk = BACKING.allocateAligned(CHUNK_SIZE, SLAB_SIZE);
+                if (chunk == 0) return 0;
+                RETAINED_BYTES.addAndGet(CHUNK_SIZE);
+                for (int i = CHUNK_SLABS - 1; i >= 0; i --) {
+                    SPARE_SLABS[spareSlabCount ++] = chunk + ((long) i << SLAB_SHIFT);
+                }
+            }
+            long slab = SPARE_SLABS[-- spareSlabCount];
+            registerSlab(slab, sizeClass);
+            return slab;
+        }
+    }
+
+    private static int carve(int sizeClass, long[] magazine) {
+        int blockSize = SIZE_CLASSES[sizeClass];
+        int count = 0;
+        synchronized (CARVE_LOCKS[sizeClass]) {
+            long position = CARVE_POSITIONS[sizeClass];
+            long limit = CARVE_LIMITS[sizeClass];
+            if (limit - position < blockSize) {
+                // before growing the pool, hand back what exited threads left behind
+                reclaimDeadThreadCaches();
+                long slab = newSlab(sizeClass);
+                if (slab == 0) return 0;
+                position = slab;
+                limit = slab + SLAB_SIZE;
+            }
+            int batch = magazine.length >>> 1;
+            while (count < batch && limit - position >= blockSize) {
+                magazine[count ++] = position;
+                position += blockSize;
+            }
+            CARVE_POSITIONS[sizeClass] = position;
+            CARVE_LIMITS[sizeClass] = limit;
+        }
+        return count;
+    }
+
+    private static void pushChain(int sizeClass, long head, long tail) {
+        long top;
+        do {
+            top = DEPOTS.get(sizeClass);
+            BACKING.setInt64(tail, top);
+        } while (!DEPOTS.compareAndSet(sizeClass, top, head));
+    }
+
+    private static void pushMagazine(int sizeClass, long[] magazine, int from, int to) {
+        if (from >= to) return;
+        for (int i = from; i < to - 1; i ++) {
+            BACKING.setInt64(magazine[i], magazine[i + 1]);
+        }
+        pushChain(sizeClass, magazine[from], magazine[to - 1]);
+    }
+
+    private static long refill(ThreadCache cache, int sizeClass) {
+        long[] magazine = cache.magazine(sizeClass);
+        int count = 0;
+        long head = cache.chains[sizeClass];
+        if (head == 0) head = DEPOTS.getAndSet(sizeClass, 0);
+        while (head != 0 && count < magazine.length) {
+            magazine[count ++] = head;
+            head = BACKING.getInt64(head);
+        }
+        cache.chains[sizeClass] = head;
+        if (count == 0) count = carve(sizeClass, magazine);
+        if (count == 0) return 0;
+        cache.counts[sizeClass] = -- count;
+        return magazine[count];
+    }
+
+    private static void release(ThreadCache cache) {
+        for (int sizeClass = 0; sizeClass < SIZE_CLASSES.length; sizeClass ++) {
+            long[] magazine = cache.magazines[sizeClass];
+            if (magazine != null) pushMagazine(sizeClass, magazine, 0, cache.counts[sizeClass]);
+            cache.counts[sizeClass] = 0;
+            long head = cache.chains[sizeClass];
+            if (head != 0) {
+                long tail = head;
+                for (long next; (next = BACKING.getInt64(tail)) != 0; tail = next) {}
+                pushChain(sizeClass, head, tail);
+                cache.chains[sizeClass] = 0;
+            }
+        }
+    }
+
+    private static void reclaimDeadThreadCaches() {
+        for (ThreadCache cache : THREAD_CACHES) {
+            if (cache.isDead() && THREAD_CACHES.remove(cache)) release(cache);
+        }
+    }
+
+    /**
+     * Returns the blocks cached by the current thread to the shared depots.
+     *
+     * <p>Threads that exit without calling this are reclaimed lazily, the next time the pool needs a new slab.</p>
+     */
+    public static void releaseThreadCache() {
+        ThreadCache cache = THREAD_CACHE_THREAD_LOCAL.get();
+        THREAD_CACHE_THREAD_LOCAL.remove();
+        THREAD_CACHES.remove(cache);
+        release(cache);
+    }
+
+    public static boolean isPooled(long address) {
+        return address != 0 && sizeClassOf(address) >= 0;
+    }
+
+    public static long allocate(long size) {
+        if (size <= 0 || size > MAX_POOLED_SIZE) return BACKING.allocate(size);
+        int sizeClass = SIZE_CLASS_INDICES[(int) ((size + 15) >>> 4)];
+        ThreadCache cache = THREAD_CACHE_THREAD_LOCAL.get();
+        int count = cache.counts[sizeClass];
+        long address;
+        if (count > 0) {
+            address = cache.magazines[sizeClass][-- count];
+            cache.counts[sizeClass] = count;
+        }
+        else if ((address = refill(cache, sizeClass)) == 0) return BACKING.allocate(size);
+        IN_USE_BYTES.add(SIZE_CLASSES[sizeClass]);
+        return address;
+    }
+
+    public static long allocateInitialized(long count, long size) {
+        if (count <= 0 || size <= 0 || size > MAX_POOLED_SIZE || count > MAX_POOLED_SIZE / size)
+            return BACKING.allocateInitialized(count, size);
+        size *= count;
+        long address = allocate(size);
+        if (address != 0) BACKING.fill(address, (byte) 0, size);
+        return address;
+    }
+
+    public static long reallocate(long address, long size) {
+        if (address == 0) return allocate(size);
+        int sizeClass = sizeClassOf(address);
+        if (sizeClass < 0) return BACKING.reallocate(address, size);
+        if (size <= 0) {
+            free(address);
+            return 0;
+        }
+        int blockSize = SIZE_CLASSES[sizeClass];
+        if (size <= blockSize) return address;
+        long newAddress = allocate(size);
+        if (newAddress == 0) return 0;
+        BACKING.copy(newAddress, address, blockSize);
+        free(address);
+        return newAddress;
+    }
+
+    public static void free(long address) {
+        int sizeClass = address == 0 ? -1 : sizeClassOf(address);
+        if (sizeClass < 0) {
+            BACKING.free(address);
+            return;
+        }
+        IN_USE_BYTES.add(-SIZE_CLASSES[sizeClass]);
+        ThreadCache cache = THREAD_CACHE_THREAD_LOCAL.get();
+        long[] magazine = cache.magazine(sizeClass);
+        int count = cache.counts[sizeClass];
+        if (count == magazine.length) {
+            int half = count >>> 1;
+            pushMagazine(sizeClass, magazine, half, count);
+            count = half;
+        }
+        magazine[count ++] = address;
+        cache.counts[sizeClass] = count;
+    }
+
+    /**
+     * Returns the number of bytes of native memory held by the pool, whether in use or cached.
+     */
+    public static long retainedBytes() {
+        return RETAINED_BYTES.get();
+    }
+
+    /**
+     * Returns the number of bytes currently handed out from the pool, rounded up to the size classes.
+     */
+    public static long inUseBytes() {
+        return IN_USE_BYTES.sum();
+    }
+
+}
@@ -0,0 +1,200 @@
+package io.github.multiffi.ffi;
+
+import multiffi.ffi.CallOption;
+import multiffi.ffi.ForeignType;
+import multiffi.ffi.FunctionOptionVisitor;
+
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+public final class ProxyCache {
+
+    public static final boolean ENABLED = Util.getBooleanProperty("multiffi.foreign.proxyCache", true);
+
+    @FunctionalInterface
+    public interface Generator {
+        Object generate(ClassLoader classLoader, Class<?>[] classes, FunctionOptionVisitor functionOptionVisitor);
+    }
+
+    private static final class Signature {
+        private final Method method;
+        private final long address;
+        private final int firstVarArgIndex;
+        private final ForeignType returnType;
+        private final ForeignType[] parameterTypes;
+        private final CallOption[] callOptions;
+        private final int hashCode;
+        private Signature(Method method, long address, int firstVarArgIndex, ForeignType returnType, ForeignType[] parameterTypes, CallOption[] callOptions) {
+            this.method = method;
+            this.address = address;
+            this.firstVarArgIndex = firstVarArgIndex;
+            this.returnType = returnType;
+            this.parameterTypes = parameterTypes;
+            this.callOptions = callOptions;
+            int hashCode = method.hashCode();
+            hashCode = 31 * hashCode + Long.hashCode(address);
+            hashCode = 31 * hashCode + firstVarArgIndex;
+            hashCode = 31 * hashCode + System.identityHashCode(returnType);
+            if (parameterTypes != null) {
+                for (ForeignType parameterType : parameterTypes) {
+                    hashCode = 31 * hashCode + System.identityHashCode(parameterType);
+                }
+            }
+            this.hashCode = 31 * hashCode + Arrays.hashCode(callOptions);
+        }
+        // ForeignType.equals compares sizes only, so types are compared by identity
+        private static boolean identical(Object[] a, Object[] b) {
+            if (a == b) return true;
+            if (a == null || b == null || a.length != b.length) return false;
+            for (int i = 0; i < a.length; i ++) {
+                if (a[i] != b[i]) return false;
+            }
+            return true;
+        }
+        @Override
+        public boolean equals(Object object) {
+            if (this == object) return true;
+            if (!(object instanceof Signature)) return false;
+            Signature that = (Signature) object;
+            return hashCode == that.hashCode && address == that.address && firstVarArgIndex == that.firstVarArgIndex
+                    && returnType == that.returnType && method.equals(that.method)
+                    && identical(parameterTypes, that.parameterTypes) && Arrays.equals(callOptions, that.callOptions);
+        }
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+
+    private static final class Key {
+        private final Class<?>[] classes;
+        private final Signature[] signatures;
+        private final int hashCode;
+        private Key(Class<?>[] classes, Signature[] signatures) {
+            this.classes = classes;
+            this.signatures = signatures;
+            this.hashCode = 31 * Arrays.hashCode(classes) + Arrays.hashCode(signatures);
+        }
+        @Override
+        public boolean equals(Object object) {
+            if (this == object) return true;
+            if (!(object instanceof Key)) return false;
+            Key that = (Key) object;
+            return hashCode == that.hashCode && Arrays.equals(classes, that.classes) && Arrays.equals(signatures, that.signatures);
+        }
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+
+    private static final class ResolvedFunctionOptionVisitor implements FunctionOptionVisitor {
+        private final Map<Method, Signature> signatures;
+        private final FunctionOptionVisitor functionOptionVisitor;
+        private ResolvedFunctionOptionVisitor(Map<Method, Signature> signatures, FunctionOptionVisitor functionOptionVisitor) {
+            this.signatures = signatures;
+            this.functionOptionVisitor = functionOptionVisitor;
+        }
+        @Override
+        public long visitAddress(Method method) {
+            Signature signature = signatures.get(method);
+            return signature == null ? functionOptionVisitor.visitAddress(method) : signature.address;
+        }
+        @Override
+        public int visitFirstVarArgIndex(Method method) {
+            Signature signature = signatures.get(method);
+            return signature == null ? functionOptionVisitor.visitFirstVarArgIndex(method) : signature.firstVarArgIndex;
+        }
+        @Override
+        public ForeignType visitReturnType(Method method) {
+            Signature signature = signatures.get(method);
+            return signature == null ? functionOptionVisitor.visitReturnType(method) : signature.returnType;
+        }
+        @Override
+        public ForeignType[] visitParameterTypes(Method method) {
+            Signature signature = signatures.get(method);
+            if (signature == null) return functionOptionVisitor.visitParameterTypes(method);
+            else return signature.parameterTypes == null ? null : signature.parameterTypes.clone();
+        }
+        @Override
+        public CallOption[] visitCallOptions(Method method) {
+            Signature signature = signatures.get(method);
+            if (signature == null) return functionOptionVisitor.visitCallOptions(method);
+            else return signature.callOptions == null ? null : signature.callOptions.clone();
+        }
+    }
+
+    private static boolean isObjectMethod(Method method) {
+        String methodName = method.getName();
+        int parameterCount = method.getParameterCount();
+        return (methodName.equals("hashCode") && parameterCount == 0)
+                || (methodName.equals("equals") && parameterCount == 1 && method.getParameterTypes()[0] == Object.class)
+                || (methodName.equals("toString") && parameterCount == 0);
+    }
+
+    private final ClassValue<ConcurrentHashMap<Key, WeakReference<Object>>> proxies = new ClassValue<ConcurrentHashMap<Key, WeakReference<Object>>>() {
+        @Override
+        protected ConcurrentHashMap<Key, WeakReference<Object>> computeValue(Class<?> type) {
+            return new ConcurrentHashMap<>();
+        }
+    };
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public long hitCount() {
+        return hits.sum();
+    }
+
+    public long missCount() {
+        return misses.sum();
+    }
+
+    public Object get(ClassLoader classLoader, Class<?>[] classes, FunctionOptionVisitor functionOptionVisitor, Generator generator) {
+        // proxies defined in another loader than the first interface's would be pinned by its ClassValue
+        if (!ENABLED || classes == null || classes.length == 0 || classes[0] == null || classes[0].getClassLoader() != classLoader)
+            return generator.generate(classLoader, classes, functionOptionVisitor);
+        Map<Method, Signature> signatureMap = new HashMap<>();
+        List<Signature> signatureList = new ArrayList<>();
+        for (Class<?> clazz : classes) {
+            for (Method method : clazz.getMethods()) {
+                if (method.isDefault() || method.getDeclaringClass() == Object.class || Modifier.isStatic(method.getModifiers())
+                        || isObjectMethod(method)) continue;
+                ForeignType[] parameterTypes = functionOptionVisitor.visitParameterTypes(method);
+                CallOption[] callOptions = functionOptionVisitor.visitCallOptions(method);
+                Signature signature = new Signature(method, functionOptionVisitor.visitAddress(method),
+                        functionOptionVisitor.visitFirstVarArgIndex(method), functionOptionVisitor.visitReturnType(method),
+                        parameterTypes == null ? null : parameterTypes.clone(), callOptions == null ? null : callOptions.clone());
+                signatureMap.put(method, signature);
+                signatureList.add(signature);
+            }
+        }
+        Key key = new Key(classes.clone(), signatureList.toArray(new Signature[0]));
+        ConcurrentHashMap<Key, WeakReference<Object>> cache = proxies.get(classes[0]);
+        WeakReference<Object> reference = cache.get(key);
+        Object proxy = reference == null ? null : reference.get();
+        if (proxy != null) {
+            hits.increment();
+            return proxy;
+        }
+        misses.increment();
+        proxy = generator.generate(classLoader, classes, new ResolvedFunctionOptionVisitor(signatureMap, functionOptionVisitor));
+        if (proxy != null) {
+            Iterator<WeakReference<Object>> iterator = cache.values().iterator();
+            while (iterator.hasNext()) {
+                if (iterator.next().get() == null) iterator.remove();
+            }
+            cache.put(key, new WeakReference<>(proxy));
+        }
+        return proxy;
+    }
+
+}
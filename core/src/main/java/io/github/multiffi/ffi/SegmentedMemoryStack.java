@@ -0,0 +1,161 @@
+package io.github.multiffi.ffi;
+
+import multiffi.ffi.Memory;
+
+import java.util.Arrays;
+
+/**
+ * An off-heap memory stack made of chained segments.
+ *
+ * <p>Unlike {@link MemoryStack}, this stack never overflows: when an allocation does not fit in the current segment, the next segment
+ * is used, allocating it (at least as large as the request) on first use. Segments beyond the first are kept across frames and
+ * released by {@link #trim()}.</p>
+ * <p>This class is not thread-safe.</p>
+ */
+public class SegmentedMemoryStack implements AutoCloseable {
+
+    private final long segmentSize;
+    private long[] segmentAddresses = new long[4];
+    private long[] segmentSizes = new long[4];
+    private int segmentCount = 0;
+    private int segment = 0;
+    private long pointer = 0;
+    private int[] frameSegments = new int[8];
+    private long[] framePointers = new long[8];
+    private int frameIndex = 0;
+
+    public SegmentedMemoryStack(long segmentSize) {
+        if (segmentSize <= 0) throw new IllegalArgumentException("segment size must be positive");
+        this.segmentSize = segmentSize;
+        newSegment(0, segmentSize);
+    }
+
+    private void newSegment(int index, long size) {
+        long address = Memory.allocate(size);
+        if (address == 0) throw new OutOfMemoryError("Failed to allocate stack segment of " + size + " bytes");
+        if (index == segmentAddresses.length) {
+            segmentAddresses = Arrays.copyOf(segmentAddresses, index * 2);
+            segmentSizes = Arrays.copyOf(segmentSizes, index * 2);
+        }
+        segmentAddresses[index] = address;
+        segmentSizes[index] = size;
+        if (index == segmentCount) segmentCount ++;
+    }
+
+    public SegmentedMemoryStack push() {
+        if (frameIndex == frameSegments.length) {
+            frameSegments = Arrays.copyOf(frameSegments, frameIndex * 3 / 2);
+            framePointers = Arrays.copyOf(framePointers, frameIndex * 3 / 2);
+        }
+        frameSegments[frameIndex] = segment;
+        framePointers[frameIndex ++] = pointer;
+        return this;
+    }
+
+    public SegmentedMemoryStack pop() {
+        if (frameIndex == 0) throw new IndexOutOfBoundsException("Stack underflow");
+        frameIndex --;
+        segment = frameSegments[frameIndex];
+        pointer = framePointers[frameIndex];
+        return this;
+    }
+
+    @Override
+    public void close() {
+        pop();
+    }
+
+    /**
+     * Returns the current frame index.
+     */
+    public int frame() {
+        return frameIndex;
+    }
+
+    public long segmentSize() {
+        return segmentSize;
+    }
+
+    /**
+     * Returns the number of bytes of native memory held by all segments.
+     */
+    public long reservedBytes() {
+        long reservedBytes = 0;
+        for (int i = 0; i < segmentCount; i ++) {
+            reservedBytes += segmentSizes[i];
+        }
+        return reservedBytes;
+    }
+
+    public long allocate(long size) {
+        return allocateAligned(size, 1);
+    }
+
+    public long allocateInitialized(long count, long size) {
+        size = Math.multiplyExact(count, size);
+        long address = allocate(size);
+        Memory.fill(address, 0, size);
+        return address;
+    }
+
+    public long allocateAligned(long size, long alignment) {
+        if (size < 0) throw new IllegalArgumentException("size must be non-negative");
+        if (alignment <= 0 || (alignment & (alignment - 1)) != 0) throw new IllegalArgumentException("alignment must be a power-of-two value");
+        long base = segmentAddresses[segment];
+        long address = (base + pointer + alignment - 1) & -alignment;
+        if (size <= base + segmentSizes[segment] - address) {
+            pointer = address + size - base;
+            return address;
+        }
+        long paddedSize = Math.addExact(size, alignment - 1);
+        int next = segment + 1;
+        // segments past the current one are not referenced by any frame, so an undersized one can be replaced
+        if (next < segmentCount && segmentSizes[next] < paddedSize) {
+            Memory.free(segmentAddresses[next]);
+            newSegment(next, Math.max(segmentSize, paddedSize));
+        }
+        else if (next == segmentCount) newSegment(next, Math.max(segmentSize, paddedSize));
+        segment = next;
+        base = segmentAddresses[next];
+        address = (base + alignment - 1) & -alignment;
+        pointer = address + size - base;
+        return address;
+    }
+
+    public long allocateInitializedAligned(long count, long size, long alignment) {
+        size = Math.multiplyExact(count, size);
+        long address = allocateAligned(size, alignment);
+        Memory.fill(address, 0, size);
+        return address;
+    }
+
+    /**
+     * Drops all frames and allocations.
+     */
+    public void reset() {
+        frameIndex = 0;
+        segment = 0;
+        pointer = 0;
+    }
+
+    /**
+     * Frees all segments past the one in use.
+     */
+    public void trim() {
+        for (int i = segment + 1; i < segmentCount; i ++) {
+            Memory.free(segmentAddresses[i]);
+        }
+        segmentCount = segment + 1;
+    }
+
+    /**
+     * Frees all segments; the stack must not be used afterwards.
+     */
+    public void free() {
+        for (int i = 0; i < segmentCount; i ++) {
+            Memory.free(segmentAddresses[i]);
+        }
+        segmentCount = 0;
+    }
+
+}
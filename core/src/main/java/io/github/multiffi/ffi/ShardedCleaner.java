@@ -0,0 +1,201 @@
+package io.github.multiffi.ffi;
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A cleaner split into independent shards, each with its own reference queue, cleanup thread and registration lock.
+ *
+ * <p>Registrations are spread over shards by the identity hash of the referent, so concurrent registrations rarely contend
+ * and the cleanups of even a single registering thread run on every cleaner thread in parallel. When {@code multiffi.cleaner.inlineDrain} is positive, every registration
+ * also runs up to that many already enqueued cleanups of its shard on the calling thread, which throttles producers that
+ * outpace the cleanup threads.</p>
+ */
+public final class ShardedCleaner {
+
+    private ShardedCleaner() {
+        throw new AssertionError("No io.github.multiffi.ffi.ShardedCleaner instances for you!");
+    }
+
+    public static final int THREADS = Math.max(1, Util.getIntProperty("multiffi.cleaner.threads",
+            Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2))));
+    public static final int INLINE_DRAIN = Math.max(0, Util.getIntProperty("multiffi.cleaner.inlineDrain", 0));
+
+    private static final LongAdder REGISTERED_COUNT = new LongAdder();
+    private static final LongAdder CLEANED_COUNT = new LongAdder();
+    private static final LongAdder INLINE_CLEANED_COUNT = new LongAdder();
+    private static final LongAdder EXPLICIT_CLEANED_COUNT = new LongAdder();
+
+    private static final class Cleanable extends PhantomReference<Object> implements Runnable {
+        private final Shard shard;
+        private Runnable cleanup;
+        private Cleanable previous, next;
+        private Cleanable(Object referent, Shard shard, Runnable cleanup) {
+            super(referent, shard.queue);
+            this.shard = shard;
+            this.cleanup = cleanup;
+        }
+        @Override
+        public void run() {
+            clear();
+            Runnable cleanup = shard.remove(this);
+            if (cleanup != null) {
+                EXPLICIT_CLEANED_COUNT.increment();
+                cleanup.run();
+            }
+        }
+    }
+
+    private static final class Shard implements Runnable {
+        private final ReferenceQueue<Object> queue = new ReferenceQueue<>();
+        // sentinel of the list that keeps registered cleanables strongly reachable
+        private final Cleanable list = new Cleanable(null, this, null);
+        private final int index;
+        private volatile boolean started = false;
+        private Shard(int index) {
+            this.index = index;
+            list.previous = list.next = list;
+        }
+        private Cleanable register(Object object, Runnable cleanup) {
+            Cleanable cleanable = new Cleanable(object, this, cleanup);
+            synchronized (list) {
+                cleanable.previous = list;
+                cleanable.next = list.next;
+                list.next.previous = cleanable;
+                list.next = cleanable;
+            }
+            if (!started) start();
+            return cleanable;
+        }
+        private Runnable remove(Cleanable cleanable) {
+            synchronized (list) {
+                if (cleanable.next == null) return null;
+                cleanable.previous.next = cleanable.next;
+                cleanable.next.previous = cleanable.previous;
+                cleanable.previous = cleanable.next = null;
+                Runnable cleanup = cleanable.cleanup;
+                cleanable.cleanup = null;
+                return cleanup;
+            }
+        }
+        private synchronized void start() {
+            if (started) return;
+            Thread thread = new Thread(this, "Multiffi/FFI Cleaner Thread #" + index);
+            thread.setDaemon(true);
+            thread.start();
+            started = true;
+        }
+        private int drain(int maxCount) {
+            int count = 0;
+            Reference<?> reference;
+            while (count < maxCount && (reference = queue.poll()) != null) {
+                Runnable cleanup = remove((Cleanable) reference);
+                if (cleanup != null) {
+                    INLINE_CLEANED_COUNT.increment();
+                    clean(cleanup);
+                    count ++;
+                }
+            }
+            return count;
+        }
+        private static void clean(Runnable cleanup) {
+            try {
+                cleanup.run();
+            }
+            catch (Throwable ignored) {
+                // cleanup actions must not kill the cleaner, same as java.lang.ref.Cleaner
+            }
+        }
+        @Override
+        public void run() {
+            while (true) {
+                try {
+                    Runnable cleanup = remove((Cleanable) queue.remove());
+                    if (cleanup != null) {
+                        CLEANED_COUNT.increment();
+                        clean(cleanup);
+                    }
+                }
+                catch (InterruptedException ignored) {
+                }
+            }
+        }
+    }
+
+    private static final Shard[] SHARDS = new Shard[THREADS];
+    static {
+        for (int i = 0; i < THREADS; i ++) {
+            SHARDS[i] = new Shard(i);
+        }
+    }
+
+    private static Shard shard(Object object) {
+        return SHARDS[(System.identityHashCode(object) & Integer.MAX_VALUE) % SHARDS.length];
+    }
+
+    /**
+     * Registers a cleanup action to run once {@code object} becomes phantom reachable.
+     *
+     * <p>The returned {@link Runnable} runs the action on demand; the action runs at most once either way.</p>
+     */
+    public static Runnable register(Object object, Runnable cleanup) {
+        Objects.requireNonNull(object);
+        Objects.requireNonNull(cleanup);
+        Shard shard = shard(object);
+        if (INLINE_DRAIN > 0) shard.drain(INLINE_DRAIN);
+        REGISTERED_COUNT.increment();
+        return shard.register(object, cleanup);
+    }
+
+    /**
+     * Runs every cleanup action already enqueued by the garbage collector on the calling thread.
+     *
+     * @return the number of actions run
+     */
+    public static long drain() {
+        long count = 0;
+        for (Shard shard : SHARDS) {
+            count += shard.drain(Integer.MAX_VALUE);
+        }
+        return count;
+    }
+
+    /**
+     * Returns the number of cleanup actions registered so far.
+     */
+    public static long registeredCount() {
+        return REGISTERED_COUNT.sum();
+    }
+
+    /**
+     * Returns the number of cleanup actions run by the cleaner threads.
+     */
+    public static long cleanedCount() {
+        return CLEANED_COUNT.sum();
+    }
+
+    /**
+     * Returns the number of cleanup actions run by registering threads or {@link #drain()}.
+     */
+    public static long inlineCleanedCount() {
+        return INLINE_CLEANED_COUNT.sum();
+    }
+
+    /**
+     * Returns the number of cleanup actions run on demand.
+     */
+    public static long explicitCleanedCount() {
+        return EXPLICIT_CLEANED_COUNT.sum();
+    }
+
+    /**
+     * Returns the number of registered cleanup actions that have not run yet.
+     */
+    public static long pendingCount() {
+        return registeredCount() - cleanedCount() - inlineCleanedCount() - explicitCleanedCount();
+    }
+
+}
@@ -0,0 +1,86 @@
+package io.github.multiffi.ffi;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+public class SharedMemoryArena extends ChunkedMemoryArena {
+
+    private static final class Chunk {
+        private final long limit;
+        private final AtomicLong position;
+        private Chunk(long address, long size) {
+            this.limit = address + size;
+            this.position = new AtomicLong(address);
+        }
+    }
+
+    private volatile boolean alive = true;
+    private volatile Chunk current = null;
+    private final LongAdder allocatedBytes = new LongAdder();
+
+    public SharedMemoryArena(long chunkSize) {
+        super(chunkSize);
+    }
+
+    private void checkAlive() {
+        if (!alive) throw new IllegalStateException("Already closed");
+    }
+
+    @Override
+    public long allocateAddress(long size, long alignment) {
+        checkAlive();
+        checkAllocation(size, alignment);
+        while (true) {
+            Chunk chunk = current;
+            if (chunk != null) {
+                long position = chunk.position.get();
+                long address = align(position, alignment);
+                if (size <= chunk.limit - address) {
+                    if (chunk.position.compareAndSet(position, address + size)) {
+                        allocatedBytes.add(address + size - position);
+                        return address;
+                    }
+                    else continue;
+                }
+            }
+            synchronized (this) {
+                checkAlive();
+                // another thread may have installed a fresh chunk meanwhile
+                if (current != chunk) continue;
+                long paddedSize = Math.addExact(size, alignment - 1);
+                if (isOversized(paddedSize)) {
+                    allocatedBytes.add(size);
+                    return align(allocateChunk(paddedSize), alignment);
+                }
+                long chunkSize = nextChunkSize();
+                current = new Chunk(allocateChunk(chunkSize), chunkSize);
+            }
+        }
+    }
+
+    @Override
+    public Thread owner() {
+        return null;
+    }
+
+    @Override
+    public boolean isAlive() {
+        return alive;
+    }
+
+    @Override
+    public long allocatedBytes() {
+        return allocatedBytes.sum();
+    }
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            checkAlive();
+            alive = false;
+            current = null;
+            freeChunks();
+        }
+    }
+
+}
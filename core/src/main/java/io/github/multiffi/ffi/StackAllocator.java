@@ -1,5 +1,11 @@
 package io.github.multiffi.ffi;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
 public final class StackAllocator {
 
     private StackAllocator() {
@@ -17,46 +23,122 @@ public final class StackAllocator {
         if (multiplier > 1) memoryString = memoryString.substring(0, memoryString.length() - 1);
         return Math.multiplyExact(multiplier, Long.parseLong(memoryString));
     }
-    private static final long STACK_SIZE;
+    public static final long STACK_SIZE;
     static {
         long value;
         try {
             value = parseMemoryBytes(System.getProperty("multiffi.allocator.stackSize"));
         }
         catch (Throwable e) {
-            value = -1;
+            value = 64 * 1024;
         }
         STACK_SIZE = value;
     }
-    private static final ThreadLocal<MemoryStack> STACK_THREAD_LOCAL = new ThreadLocal<MemoryStack>() {
-        @Override
-        protected MemoryStack initialValue() {
-            return STACK_SIZE == -1 ? new MemoryStack() : new MemoryStack(STACK_SIZE);
+    // "pooled" binds a stack to a thread only while it has open frames; virtual threads always behave this way
+    private static final boolean POOLED_STACKS = "pooled".equalsIgnoreCase(System.getProperty("multiffi.allocator.stackMode"));
+    private static final MethodHandle IS_VIRTUAL;
+    static {
+        MethodHandle isVirtual;
+        try {
+            isVirtual = MethodHandles.publicLookup().findVirtual(Thread.class, "isVirtual", MethodType.methodType(boolean.class));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            isVirtual = null;
+        }
+        IS_VIRTUAL = isVirtual;
+    }
+    private static boolean isTransient(Thread thread) {
+        if (POOLED_STACKS) return true;
+        else if (IS_VIRTUAL == null) return false;
+        try {
+            return (boolean) IS_VIRTUAL.invokeExact(thread);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException("Unexpected exception", e);
+        }
+    }
+
+    private static final class BoundStack {
+        private final WeakReference<Thread> owner;
+        private final SegmentedMemoryStack stack;
+        private BoundStack(Thread owner, SegmentedMemoryStack stack) {
+            this.owner = new WeakReference<>(owner);
+            this.stack = stack;
+        }
+        private boolean isDead() {
+            Thread thread = owner.get();
+            return thread == null || !thread.isAlive();
+        }
+    }
+    private static final ConcurrentLinkedQueue<BoundStack> BOUND_STACKS = new ConcurrentLinkedQueue<>();
+    private static final ThreadLocal<SegmentedMemoryStack> STACK_THREAD_LOCAL = new ThreadLocal<>();
+
+    private static void reclaimDeadThreadStacks() {
+        for (BoundStack boundStack : BOUND_STACKS) {
+            if (boundStack.isDead() && BOUND_STACKS.remove(boundStack)) MemoryStackPool.release(boundStack.stack);
+        }
+    }
+
+    private static SegmentedMemoryStack stack() {
+        SegmentedMemoryStack stack = STACK_THREAD_LOCAL.get();
+        if (stack == null) {
+            Thread thread = Thread.currentThread();
+            boolean bound = !isTransient(thread);
+            if (bound && MemoryStackPool.pooledCount() == 0) reclaimDeadThreadStacks();
+            stack = MemoryStackPool.acquire(STACK_SIZE);
+            STACK_THREAD_LOCAL.set(stack);
+            if (bound) BOUND_STACKS.add(new BoundStack(thread, stack));
         }
-    };
+        return stack;
+    }
+
+    // a transient thread's stack goes back to the pool when its last frame is popped, so it must not be allocated from outside one
+    private static SegmentedMemoryStack frameStack() {
+        SegmentedMemoryStack stack = STACK_THREAD_LOCAL.get();
+        if (stack != null) return stack;
+        else if (isTransient(Thread.currentThread())) throw new IllegalStateException("No stack frame pushed");
+        else return stack();
+    }
+
+    /**
+     * Returns the number of bytes of native memory held by the current thread's stack, or 0 if it has none.
+     */
+    public static long reservedBytes() {
+        SegmentedMemoryStack stack = STACK_THREAD_LOCAL.get();
+        return stack == null ? 0 : stack.reservedBytes();
+    }
 
     public static void push() {
-        STACK_THREAD_LOCAL.get().push();
+        stack().push();
     }
 
     public static void pop() {
-        STACK_THREAD_LOCAL.get().pop();
+        SegmentedMemoryStack stack = STACK_THREAD_LOCAL.get();
+        if (stack == null) throw new IndexOutOfBoundsException("Stack underflow");
+        stack.pop();
+        if (stack.frame() == 0) {
+            if (isTransient(Thread.currentThread())) {
+                STACK_THREAD_LOCAL.remove();
+                MemoryStackPool.release(stack);
+            }
+            else stack.trim();
+        }
     }
 
     public static long allocate(long size) {
-        return STACK_THREAD_LOCAL.get().allocate(size);
+        return frameStack().allocate(size);
     }
 
     public static long allocateInitialized(long count, long size) {
-        return STACK_THREAD_LOCAL.get().allocateInitialized(count, size);
+        return frameStack().allocateInitialized(count, size);
     }
 
     public static long allocateAligned(long size, long alignment) {
-        return STACK_THREAD_LOCAL.get().allocateAligned(size, alignment);
+        return frameStack().allocateAligned(size, alignment);
     }
 
     public static long allocateInitializedAligned(long count, long size, long alignment) {
-        return STACK_THREAD_LOCAL.get().allocateInitializedAligned(count, size, alignment);
+        return frameStack().allocateInitializedAligned(count, size, alignment);
     }
 
 }
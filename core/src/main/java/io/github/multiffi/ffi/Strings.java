@@ -0,0 +1,355 @@
+package io.github.multiffi.ffi;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Helpers for decoding and encoding zero-terminated strings without intermediate copies.
+ */
+public final class Strings {
+
+    private Strings() {
+        throw new AssertionError("No io.github.multiffi.ffi.Strings instances for you!");
+    }
+
+    // strings up to this many bytes are staged in a per-thread buffer instead of a fresh array
+    public static final int SCRATCH_SIZE = Math.max(0, Util.getIntProperty("multiffi.memory.stringScratchSize", 1024));
+    // chars converted per step, kept positive when the scratch buffers are small or disabled
+    public static final int CHUNK_SIZE = Math.max(16, SCRATCH_SIZE >>> 1);
+
+    private static final ThreadLocal<byte[]> BYTE_SCRATCH = new ThreadLocal<byte[]>() {
+        @Override
+        protected byte[] initialValue() {
+            return new byte[SCRATCH_SIZE];
+        }
+    };
+    private static final ThreadLocal<char[]> CHAR_SCRATCH = new ThreadLocal<char[]>() {
+        @Override
+        protected char[] initialValue() {
+            return new char[SCRATCH_SIZE >>> 1];
+        }
+    };
+
+    /**
+     * Returns a buffer of at least {@code length} bytes, only valid until the next call on the same thread.
+     */
+    public static byte[] byteScratch(int length) {
+        return length <= SCRATCH_SIZE ? BYTE_SCRATCH.get() : new byte[length];
+    }
+
+    /**
+     * Returns a buffer of at least {@code length} chars, only valid until the next call on the same thread.
+     */
+    public static char[] charScratch(int length) {
+        return length <= SCRATCH_SIZE >>> 1 ? CHAR_SCRATCH.get() : new char[length];
+    }
+
+    private static final Charset UTF_32LE = Charset.forName("UTF-32LE");
+    private static final Charset UTF_32BE = Charset.forName("UTF-32BE");
+
+    private static final ConcurrentHashMap<Charset, Integer> TERMINATOR_SIZES = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<Charset, Boolean> ASCII_COMPATIBLE = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the size in bytes of the encoded {@code '\0'} terminating strings in {@code charset}.
+     */
+    public static int terminatorSize(Charset charset) {
+        if (charset == StandardCharsets.UTF_8 || charset == StandardCharsets.ISO_8859_1 || charset == StandardCharsets.US_ASCII) return 1;
+        Integer size = TERMINATOR_SIZES.get(charset);
+        if (size == null) {
+            // the difference cancels out any byte order mark
+            size = "\0\0".getBytes(charset).length - "\0".getBytes(charset).length;
+            if (size != 1 && size != 2 && size != 4) throw new IllegalArgumentException("Unsupported charset: " + charset.name());
+            TERMINATOR_SIZES.putIfAbsent(charset, size);
+        }
+        return size;
+    }
+
+    /**
+     * Returns whether {@code charset} encodes every ASCII character as the single byte of the same value.
+     */
+    public static boolean isAsciiCompatible(Charset charset) {
+        if (charset == StandardCharsets.UTF_8 || charset == StandardCharsets.ISO_8859_1 || charset == StandardCharsets.US_ASCII) return true;
+        Boolean compatible = ASCII_COMPATIBLE.get(charset);
+        if (compatible == null) {
+            byte[] ascii = new byte[128];
+            for (int i = 0; i < ascii.length; i ++) {
+                ascii[i] = (byte) i;
+            }
+            compatible = charset.canEncode() && new String(ascii, StandardCharsets.ISO_8859_1).equals(new String(ascii, charset));
+            ASCII_COMPATIBLE.putIfAbsent(charset, compatible);
+        }
+        return compatible;
+    }
+
+    private static boolean isAscii(byte[] array, int offset, int length) {
+        // an or-reduction without early exit, which C2 vectorizes
+        int bits = 0;
+        for (int i = offset, end = offset + length; i < end; i ++) {
+            bits |= array[i];
+        }
+        return bits >= 0;
+    }
+
+    /**
+     * Decodes {@code length} bytes of {@code array}; ASCII text in any ASCII compatible charset is copied without decoding.
+     */
+    public static String decode(byte[] array, int offset, int length, Charset charset) {
+        // the JDK already special-cases these
+        if (charset == StandardCharsets.UTF_8 || charset == StandardCharsets.ISO_8859_1 || charset == StandardCharsets.US_ASCII)
+            return new String(array, offset, length, charset);
+        else if (isAsciiCompatible(charset) && isAscii(array, offset, length))
+            return new String(array, offset, length, StandardCharsets.ISO_8859_1);
+        else return new String(array, offset, length, charset);
+    }
+
+    /**
+     * Copies {@code string.subSequence(start, end)} into {@code array} from {@code index}.
+     */
+    public static void getChars(CharSequence string, int start, int end, char[] array, int index) {
+        if (string instanceof String) ((String) string).getChars(start, end, array, index);
+        else if (string instanceof StringBuilder) ((StringBuilder) string).getChars(start, end, array, index);
+        else {
+            for (int i = start; i < end; i ++) {
+                array[index + i - start] = string.charAt(i);
+            }
+        }
+    }
+
+    /**
+     * Encodes a string and its terminator chunk by chunk into a reusable buffer, replacing malformed and unmappable input
+     * like {@link String#getBytes(Charset)}. Chars go through cached {@link CharsetEncoder}s over heap buffers, where the JDK
+     * stores ASCII runs without per-char work; UTF-16 and UTF-32, whose JDK encoders have no such path, are encoded inline.
+     */
+    public static final class StringEncoder {
+
+        private static final int CODER = 0;
+        private static final int UTF_16 = 1;
+        private static final int UTF_32 = 2;
+
+        private final char[] chars = new char[CHUNK_SIZE];
+        private final CharBuffer charBuffer = CharBuffer.wrap(chars);
+        // up to 4 bytes per char and a terminator
+        private final byte[] bytes = new byte[(chars.length << 2) + 4];
+        private final ByteBuffer byteBuffer = ByteBuffer.wrap(bytes);
+        private final HashMap<Charset, CharsetEncoder> encoders = new HashMap<>();
+        private CharSequence string;
+        private int position;
+        private int end;
+        private int terminatorSize;
+        private int mode;
+        private boolean bigEndian;
+        private CharsetEncoder encoder;
+        private boolean flushing;
+        private boolean done;
+
+        private StringEncoder() {
+        }
+
+        private StringEncoder reset(CharSequence string, int index, int length, Charset charset) {
+            this.string = string;
+            this.position = index;
+            this.end = index + length;
+            this.terminatorSize = terminatorSize(charset);
+            if (charset == StandardCharsets.UTF_16LE || charset == StandardCharsets.UTF_16BE) {
+                mode = UTF_16;
+                bigEndian = charset == StandardCharsets.UTF_16BE;
+            }
+            else if (charset.equals(UTF_32LE) || charset.equals(UTF_32BE)) {
+                mode = UTF_32;
+                bigEndian = charset.equals(UTF_32BE);
+            }
+            else {
+                mode = CODER;
+                encoder = encoders.get(charset);
+                if (encoder == null) {
+                    encoder = charset.newEncoder()
+                            .onMalformedInput(CodingErrorAction.REPLACE)
+                            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+                    encoders.put(charset, encoder);
+                }
+                encoder.reset();
+                ((Buffer) charBuffer).clear().flip();
+            }
+            this.flushing = false;
+            this.done = false;
+            return this;
+        }
+
+        public byte[] array() {
+            return bytes;
+        }
+
+        /**
+         * Returns whether the last chunk returned by {@link #next()} ended with the terminator.
+         */
+        public boolean isDone() {
+            return done;
+        }
+
+        /**
+         * Encodes the next chunk into {@link #array()}, returning its size, or {@code -1} once the whole string and its
+         * terminator are written.
+         */
+        public int next() {
+            if (done) return -1;
+            else if (mode == CODER) return encode();
+            int count = Math.min(end - position, chars.length);
+            if (count == 0) return terminate(0);
+            getChars(string, position, position + count, chars, 0);
+            // a surrogate pair never spans two chunks
+            if (position + count < end && Character.isHighSurrogate(chars[count - 1])) count --;
+            int size = mode == UTF_16 ? encodeUTF16(count) : encodeUTF32(count);
+            position += count;
+            return position == end ? terminate(size) : size;
+        }
+
+        private int encode() {
+            // keeps room for the terminator
+            ((Buffer) byteBuffer).clear().limit(bytes.length - 4);
+            while (!flushing) {
+                boolean endOfInput = position == end;
+                if (encoder.encode(charBuffer, byteBuffer, endOfInput).isOverflow()) break;
+                else if (endOfInput) flushing = true;
+                else {
+                    // compacting keeps an unconsumed high surrogate in front of the next chars
+                    charBuffer.compact();
+                    int count = Math.min(charBuffer.remaining(), end - position);
+                    getChars(string, position, position + count, chars, charBuffer.position());
+                    ((Buffer) charBuffer).position(charBuffer.position() + count).flip();
+                    position += count;
+                }
+            }
+            if (flushing && !encoder.flush(byteBuffer).isOverflow()) return terminate(byteBuffer.position());
+            else return byteBuffer.position();
+        }
+
+        private int encodeUTF16(int count) {
+            int size = 0;
+            for (int i = 0; i < count; i ++) {
+                char c = chars[i];
+                if (Character.isSurrogate(c)) {
+                    if (Character.isHighSurrogate(c) && i + 1 < count && Character.isLowSurrogate(chars[i + 1])) {
+                        size = putUTF16(size, c);
+                        c = chars[++ i];
+                    }
+                    else c = '\uFFFD';
+                }
+                size = putUTF16(size, c);
+            }
+            return size;
+        }
+
+        private int putUTF16(int index, char c) {
+            bytes[bigEndian ? index : index + 1] = (byte) (c >>> 8);
+            bytes[bigEndian ? index + 1 : index] = (byte) c;
+            return index + 2;
+        }
+
+        private int encodeUTF32(int count) {
+            int size = 0;
+            for (int i = 0; i < count; i ++, size += 4) {
+                int codePoint = chars[i];
+                if (Character.isSurrogate((char) codePoint)) {
+                    if (Character.isHighSurrogate((char) codePoint) && i + 1 < count && Character.isLowSurrogate(chars[i + 1]))
+                        codePoint = Character.toCodePoint((char) codePoint, chars[++ i]);
+                    else codePoint = 0xFFFD;
+                }
+                for (int j = 0; j < 4; j ++) {
+                    bytes[size + (bigEndian ? 3 - j : j)] = (byte) (codePoint >>> (j << 3));
+                }
+            }
+            return size;
+        }
+
+        private int terminate(int size) {
+            for (int i = 0; i < terminatorSize; i ++) {
+                bytes[size ++] = 0;
+            }
+            string = null;
+            done = true;
+            return size;
+        }
+
+    }
+
+    private static final ThreadLocal<StringEncoder> ENCODER = new ThreadLocal<StringEncoder>() {
+        @Override
+        protected StringEncoder initialValue() {
+            return new StringEncoder();
+        }
+    };
+
+    /**
+     * Returns this thread's encoder, set up for {@code length} chars of {@code string} from {@code index}; it is only
+     * valid until the next call on the same thread.
+     */
+    public static StringEncoder encoder(CharSequence string, int index, int length, Charset charset) {
+        return ENCODER.get().reset(string, index, length, charset);
+    }
+
+    /**
+     * Returns the exact number of bytes {@link StringEncoder} produces for {@code length} chars of {@code string} from
+     * {@code index}, terminator included.
+     */
+    public static long encodedSize(CharSequence string, int index, int length, Charset charset) {
+        if (charset == StandardCharsets.UTF_16LE || charset == StandardCharsets.UTF_16BE) return ((long) length << 1) + 2;
+        else if (charset.equals(UTF_32LE) || charset.equals(UTF_32BE)) {
+            // every code point takes four bytes, including the U+FFFD replacing a lone surrogate
+            long size = 4;
+            for (int i = index, end = index + length; i < end; i ++, size += 4) {
+                if (Character.isHighSurrogate(string.charAt(i)) && i + 1 < end && Character.isLowSurrogate(string.charAt(i + 1))) i ++;
+            }
+            return size;
+        }
+        else if (charset == StandardCharsets.UTF_8) {
+            // a lone surrogate is replaced by a single '?'
+            long size = length + 1;
+            for (int i = index, end = index + length; i < end; i ++) {
+                char c = string.charAt(i);
+                if (c < 0x80) continue;
+                else if (c < 0x800) size ++;
+                else if (!Character.isSurrogate(c)) size += 2;
+                else if (Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(string.charAt(i + 1))) {
+                    size += 2;
+                    i ++;
+                }
+            }
+            return size;
+        }
+        else if (charset == StandardCharsets.ISO_8859_1 || charset == StandardCharsets.US_ASCII) {
+            // one byte per char, a surrogate pair being replaced by a single '?'
+            long size = length + 1;
+            for (int i = index, end = index + length; i < end; i ++) {
+                if (Character.isHighSurrogate(string.charAt(i)) && i + 1 < end && Character.isLowSurrogate(string.charAt(i + 1))) {
+                    size --;
+                    i ++;
+                }
+            }
+            return size;
+        }
+        StringEncoder encoder = encoder(string, index, length, charset);
+        long size = 0;
+        for (int count; (count = encoder.next()) != -1; ) {
+            size += count;
+        }
+        return size;
+    }
+
+    /**
+     * Returns whether {@link #encodedSize(CharSequence, int, int, Charset)} counts chars rather than running an encoder.
+     */
+    public static boolean isSizeCounted(Charset charset) {
+        return charset == StandardCharsets.UTF_8 || charset == StandardCharsets.ISO_8859_1 || charset == StandardCharsets.US_ASCII
+                || charset == StandardCharsets.UTF_16LE || charset == StandardCharsets.UTF_16BE
+                || charset.equals(UTF_32LE) || charset.equals(UTF_32BE);
+    }
+
+}
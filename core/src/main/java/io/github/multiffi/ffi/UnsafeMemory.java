@@ -0,0 +1,116 @@
+package io.github.multiffi.ffi;
+
+import sun.misc.Unsafe;
+
+import java.lang.reflect.Field;
+
+/**
+ * Memory loops over {@code sun.misc.Unsafe} shared by the backends that address heap arrays and native memory alike, a
+ * {@code null} base meaning native memory.
+ */
+@SuppressWarnings({"deprecation", "removal"})
+public final class UnsafeMemory {
+
+    private UnsafeMemory() {
+        throw new AssertionError("No io.github.multiffi.ffi.UnsafeMemory instances for you!");
+    }
+
+    public static final Unsafe UNSAFE;
+    static {
+        try {
+            Field field = Unsafe.class.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            UNSAFE = (Unsafe) field.get(null);
+        } catch (NoSuchFieldException | IllegalAccessException e) {
+            throw new IllegalStateException("Failed to get the sun.misc.Unsafe instance");
+        }
+    }
+
+    // same as java.nio.Bits, large copies are split so that a single call does not hold off safepoints for long
+    private static final long UNSAFE_COPY_THRESHOLD = 1L << 20;
+
+    public static void copyMemory(Object srcBase, long srcOffset, Object destBase, long destOffset, long size) {
+        while (size > 0) {
+            long count = Math.min(size, UNSAFE_COPY_THRESHOLD);
+            UNSAFE.copyMemory(srcBase, srcOffset, destBase, destOffset, count);
+            size -= count;
+            srcOffset += count;
+            destOffset += count;
+        }
+    }
+
+    /**
+     * Returns the index of the first byte equal to {@code value} within {@code length} bytes at {@code base} and
+     * {@code offset}, or {@code -1}.
+     */
+    public static long search(Object base, long offset, byte value, long length) {
+        long i = 0;
+        if (Words.UNALIGNED) {
+            long pattern = Words.broadcast(value);
+            for (; i + 16 <= length; i += 16) {
+                long a = UNSAFE.getLong(base, offset + i) ^ pattern;
+                long b = UNSAFE.getLong(base, offset + i + 8) ^ pattern;
+                if ((Words.hasZeroByte(a) | Words.hasZeroByte(b)) != 0) break;
+            }
+            for (; i + 8 <= length; i += 8) {
+                long mask = Words.zeroBytes(UNSAFE.getLong(base, offset + i) ^ pattern);
+                if (mask != 0) return i + Words.firstByte(mask);
+            }
+        }
+        for (; i < length; i ++) {
+            if (UNSAFE.getByte(base, offset + i) == value) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Compares {@code size} bytes like {@code memcmp}.
+     */
+    public static int compare(Object aBase, long aOffset, Object bBase, long bOffset, long size) {
+        long i = 0;
+        if (Words.UNALIGNED) {
+            for (; i + 8 <= size; i += 8) {
+                long a = UNSAFE.getLong(aBase, aOffset + i);
+                long b = UNSAFE.getLong(bBase, bOffset + i);
+                if (a != b) return Words.compare(a, b);
+            }
+        }
+        for (; i < size; i ++) {
+            int cmp = Util.compareUnsigned(UNSAFE.getByte(aBase, aOffset + i), UNSAFE.getByte(bBase, bOffset + i));
+            if (cmp != 0) return cmp;
+        }
+        return 0;
+    }
+
+    /**
+     * Returns the number of bytes before the first all-zero unit of {@code unitSize} bytes within {@code maxLength} (an unsigned
+     * value) bytes at {@code base} and {@code offset}, or the size of the
+     * units that fit if there is none; units are tested a word at a time once the offset is word-aligned, so that no load
+     * crosses a page boundary of an unbounded native string.
+     */
+    public static long zeroTerminatedLength(Object base, long offset, int unitSize, long maxLength) {
+        long i = 0;
+        if ((offset & (unitSize - 1)) == 0) {
+            for (; (offset + i & 7) != 0 && Long.compareUnsigned(maxLength - i, unitSize) >= 0; i += unitSize) {
+                if (isZeroUnit(base, offset + i, unitSize)) return i;
+            }
+            long unitBits = Words.unitBits(unitSize);
+            for (; Long.compareUnsigned(maxLength - i, 8) >= 0; i += 8) {
+                long mask = Words.zeroUnits(UNSAFE.getLong(base, offset + i), unitBits);
+                if (mask != 0) return i + (Words.firstByte(mask) & -unitSize);
+            }
+        }
+        for (; Long.compareUnsigned(maxLength - i, unitSize) >= 0; i += unitSize) {
+            if (isZeroUnit(base, offset + i, unitSize)) return i;
+        }
+        return i;
+    }
+
+    private static boolean isZeroUnit(Object base, long offset, int unitSize) {
+        for (int i = 0; i < unitSize; i ++) {
+            if (UNSAFE.getByte(base, offset + i) != 0) return false;
+        }
+        return true;
+    }
+
+}
@@ -6,6 +6,10 @@ import multiffi.ffi.ForeignType;
 import multiffi.ffi.MemoryHandle;
 import multiffi.ffi.ScalarType;
 import multiffi.ffi.SimpleFunctionOptionVisitor;
+import multiffi.ffi.spi.ForeignProvider;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
 
 public final class Util {
 
@@ -35,6 +39,13 @@ public final class Util {
         return Byte.toUnsignedInt(a) - Byte.toUnsignedInt(b);
     }
 
+    public static void checkArrayRange(int arrayLength, int index, int length) {
+        if (index < 0) throw new ArrayIndexOutOfBoundsException(index);
+        else if (length < 0) throw new ArrayIndexOutOfBoundsException(length);
+        int size = Math.addExact(index, length);
+        if (size > arrayLength) throw new ArrayIndexOutOfBoundsException(size);
+    }
+
     public static long unsignedAddExact(long x, long y) {
         long sum = x + y;
         if (Long.compareUnsigned(x, sum) > 0) throw new ArithmeticException("long overflow");
@@ -103,20 +114,78 @@ public final class Util {
         }
     }
 
-    public static void checkType(ForeignType type, Class<?> clazz) {
-        Class<?> expected;
-        if (type == ScalarType.BOOLEAN) expected = boolean.class;
-        else if (type == ScalarType.UTF16) expected = char.class;
-        else if (type == ScalarType.INT8 || type == ScalarType.CHAR) expected = byte.class;
-        else if (type == ScalarType.INT16) expected = short.class;
-        else if (type == ScalarType.INT32 || type == ScalarType.WCHAR) expected = int.class;
+    public static int getIntProperty(String propertyName, int defaultValue) {
+        try {
+            return Integer.parseInt(System.getProperty(propertyName, Integer.toString(defaultValue)));
+        } catch (Throwable e) {
+            return defaultValue;
+        }
+    }
+
+    public static double getDoubleProperty(String propertyName, double defaultValue) {
+        try {
+            return Double.parseDouble(System.getProperty(propertyName, Double.toString(defaultValue)));
+        } catch (Throwable e) {
+            return defaultValue;
+        }
+    }
+
+    public static Class<?> getMappingType(ForeignType type) {
+        if (type == null) return void.class;
+        else if (type == ScalarType.BOOLEAN) return boolean.class;
+        else if (type == ScalarType.UTF16) return char.class;
+        else if (type == ScalarType.INT8 || type == ScalarType.CHAR) return byte.class;
+        else if (type == ScalarType.INT16) return short.class;
+        else if (type == ScalarType.INT32 || type == ScalarType.WCHAR) return int.class;
         else if (type == ScalarType.INT64 || type == ScalarType.SHORT || type == ScalarType.INT
                 || type == ScalarType.LONG || type == ScalarType.SIZE || type == ScalarType.ADDRESS)
-            expected = long.class;
-        else if (type == ScalarType.FLOAT) expected = float.class;
-        else if (type == ScalarType.DOUBLE) expected = double.class;
-        else expected = MemoryHandle.class;
+            return long.class;
+        else if (type == ScalarType.FLOAT) return float.class;
+        else if (type == ScalarType.DOUBLE) return double.class;
+        else return MemoryHandle.class;
+    }
+
+    public static void checkType(ForeignType type, Class<?> clazz) {
+        Class<?> expected = getMappingType(type);
         if (clazz != expected) throw new IllegalArgumentException("Illegal mapping type; expected " + expected);
     }
 
+    public static final boolean PREGENERATED_PROXIES = getBooleanProperty("multiffi.foreign.pregeneratedProxies", true);
+    public static final String PREGENERATED_PROXY_SUFFIX = "$$ForeignProxy";
+
+    private static final ClassValue<Constructor<?>> PREGENERATED_PROXY_CONSTRUCTORS = new ClassValue<Constructor<?>>() {
+        @Override
+        protected Constructor<?> computeValue(Class<?> type) {
+            try {
+                Class<?> proxyClass = Class.forName(type.getName() + PREGENERATED_PROXY_SUFFIX, false, type.getClassLoader());
+                return type.isAssignableFrom(proxyClass) ? proxyClass.getConstructor(ForeignProvider.class) : null;
+            } catch (ClassNotFoundException | NoSuchMethodException | LinkageError e) {
+                return null;
+            }
+        }
+    };
+
+    public static Object newPregeneratedProxy(ForeignProvider foreignProvider, ClassLoader classLoader, Class<?>[] classes) {
+        if (!PREGENERATED_PROXIES || classes == null || classes.length != 1 || !classes[0].isInterface()) return null;
+        Constructor<?> constructor = PREGENERATED_PROXY_CONSTRUCTORS.get(classes[0]);
+        if (constructor == null) return null;
+        if (classLoader != null) {
+            try {
+                if (Class.forName(classes[0].getName(), false, classLoader) != classes[0]) return null;
+            } catch (ClassNotFoundException e) {
+                return null;
+            }
+        }
+        try {
+            return constructor.newInstance(foreignProvider);
+        } catch (InvocationTargetException e) {
+            Throwable cause = e.getTargetException();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            else if (cause instanceof Error) throw (Error) cause;
+            else throw new IllegalStateException("Unexpected exception", cause);
+        } catch (InstantiationException | IllegalAccessException e) {
+            throw new IllegalStateException("Unexpected exception", e);
+        }
+    }
+
 }
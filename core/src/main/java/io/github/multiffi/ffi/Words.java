@@ -0,0 +1,124 @@
+package io.github.multiffi.ffi;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Helpers for processing memory eight bytes at a time (SWAR).
+ *
+ * <p>The word operations assume words loaded in native byte order, so that the first byte in memory is the least
+ * significant one on little-endian platforms and the most significant one on big-endian platforms.</p>
+ */
+public final class Words {
+
+    private Words() {
+        throw new AssertionError("No io.github.multiffi.ffi.Words instances for you!");
+    }
+
+    public static final boolean BIG_ENDIAN = ByteOrder.nativeOrder().equals(ByteOrder.BIG_ENDIAN);
+    /**
+     * Whether unaligned 8-byte loads are safe and cheap, same list of architectures as {@code java.nio.Bits}.
+     */
+    public static final boolean UNALIGNED;
+    static {
+        String arch = System.getProperty("os.arch", "");
+        UNALIGNED = Util.getBooleanProperty("multiffi.memory.unaligned", arch.equals("i386") || arch.equals("x86")
+                || arch.equals("amd64") || arch.equals("x86_64") || arch.equals("aarch64")
+                || arch.equals("ppc64") || arch.equals("ppc64le") || arch.equals("s390x"));
+    }
+
+    private static final long LOW_BITS = 0x0101010101010101L;
+    private static final long HIGH_BITS = 0x8080808080808080L;
+    private static final long SEVEN_BITS = 0x7F7F7F7F7F7F7F7FL;
+
+    /**
+     * Returns a word with every byte set to {@code value}.
+     */
+    public static long broadcast(byte value) {
+        return (value & 0xFFL) * LOW_BITS;
+    }
+
+    /**
+     * Returns a non-zero value exactly when some byte of {@code word} is zero; cheaper than {@link #zeroBytes(long)}, but the set bits
+     * may also flag bytes following a zero byte.
+     */
+    public static long hasZeroByte(long word) {
+        return (word - LOW_BITS) & ~word & HIGH_BITS;
+    }
+
+    /**
+     * Returns a word with the high bit set in exactly those bytes of {@code word} that are zero.
+     */
+    public static long zeroBytes(long word) {
+        return ~(((word & SEVEN_BITS) + SEVEN_BITS) | word | SEVEN_BITS);
+    }
+
+    /**
+     * Returns the low-order bits of every unit of {@code unitSize} bytes (1, 2, 4 or 8), for {@link #zeroUnits(long, long)}.
+     */
+    public static long unitBits(int unitSize) {
+        switch (unitSize) {
+            case 1: return SEVEN_BITS;
+            case 2: return 0x7FFF7FFF7FFF7FFFL;
+            case 4: return 0x7FFFFFFF7FFFFFFFL;
+            case 8: return Long.MAX_VALUE;
+            default: throw new IllegalArgumentException("Illegal unit size: " + unitSize);
+        }
+    }
+
+    /**
+     * Returns a word with the high bit set in exactly those units of {@code word} that are zero, {@code unitBits} coming from
+     * {@link #unitBits(int)}; the byte holding a unit's flag may be any byte of that unit.
+     */
+    public static long zeroUnits(long word, long unitBits) {
+        return ~(((word & unitBits) + unitBits) | word | unitBits);
+    }
+
+    /**
+     * Returns the memory index of the first byte flagged in a non-zero {@code mask}.
+     */
+    public static int firstByte(long mask) {
+        return (BIG_ENDIAN ? Long.numberOfLeadingZeros(mask) : Long.numberOfTrailingZeros(mask)) >>> 3;
+    }
+
+    /**
+     * Compares two words the way {@code memcmp} compares the eight bytes they were loaded from.
+     */
+    public static int compare(long a, long b) {
+        return BIG_ENDIAN ? Long.compareUnsigned(a, b) : Long.compareUnsigned(Long.reverseBytes(a), Long.reverseBytes(b));
+    }
+
+    // java.util.Arrays.mismatch(byte[], int, int, byte[], int, int), vectorized by the JDK since 9
+    private static final MethodHandle BYTE_ARRAY_MISMATCH;
+    static {
+        MethodHandle mismatch;
+        try {
+            mismatch = MethodHandles.publicLookup().findStatic(Arrays.class, "mismatch", MethodType.methodType(int.class,
+                    byte[].class, int.class, int.class, byte[].class, int.class, int.class));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            mismatch = null;
+        }
+        BYTE_ARRAY_MISMATCH = mismatch;
+    }
+
+    public static boolean isMismatchSupported() {
+        return BYTE_ARRAY_MISMATCH != null;
+    }
+
+    /**
+     * Returns the index relative to the offsets of the first byte that differs, or {@code -1}; requires {@link #isMismatchSupported()}.
+     */
+    public static int mismatch(byte[] a, int aOffset, byte[] b, int bOffset, int length) {
+        try {
+            return (int) BYTE_ARRAY_MISMATCH.invokeExact(a, aOffset, aOffset + length, b, bOffset, bOffset + length);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException("Unexpected exception", e);
+        }
+    }
+
+}
@@ -2,6 +2,8 @@ package multiffi.ffi;
 
 import io.github.multiffi.ffi.Util;
 
+import java.nio.charset.Charset;
+
 public abstract class AbstractDirectMemoryHandle extends MemoryHandle {
 
     @Override
@@ -34,6 +36,15 @@ public abstract class AbstractDirectMemoryHandle extends MemoryHandle {
         return 0;
     }
 
+    @Override
+    public boolean advise(MemoryAdvice advice) {
+        return false;
+    }
+
+    @Override
+    public void sync() {
+    }
+
     @Override
     public boolean getBoolean(long offset) {
         checkBounds(offset, 1);
@@ -135,7 +146,7 @@ public abstract class AbstractDirectMemoryHandle extends MemoryHandle {
         checkBounds(srcOffset, size);
         destMemoryHandle.checkBounds(destOffset, size);
         if (destMemoryHandle.isDirect()) Memory.copy(destMemoryHandle.address() + destOffset, address() + srcOffset, size);
-        else Memory.copy(destMemoryHandle.array(), destOffset, address() + srcOffset, size);
+        else Memory.copy(destMemoryHandle.array(), destMemoryHandle.arrayOffset() + destOffset, address() + srcOffset, size);
     }
 
     @Override
@@ -148,7 +159,7 @@ public abstract class AbstractDirectMemoryHandle extends MemoryHandle {
         checkBounds(destOffset, size);
         srcMemoryHandle.checkBounds(srcOffset, size);
         if (srcMemoryHandle.isDirect()) Memory.copy(address() + destOffset, srcMemoryHandle.address() + srcOffset, size);
-        else Memory.copy(address() + destOffset, srcMemoryHandle.array(), srcOffset, size);
+        else Memory.copy(address() + destOffset, srcMemoryHandle.array(), srcMemoryHandle.arrayOffset() + srcOffset, size);
     }
 
     @Override
@@ -156,6 +167,174 @@ public abstract class AbstractDirectMemoryHandle extends MemoryHandle {
         transferFrom(0, srcMemoryHandle, 0, size);
     }
 
+    @Override
+    public void getBooleanArray(long offset, boolean[] array, int index, int length) {
+        Util.checkArrayRange(array.length, index, length);
+        checkBounds(offset, length);
+        Memory.getBooleanArray(address() + offset, array, index, length);
+    }
+
+    @Override
+    public void setBooleanArray(long offset, boolean[] array, int index, int length) {
+        Util.checkArrayRange(array.length, index, length);
+        checkBounds(offset, length);
+        Memory.setBooleanArray(address() + offset, array, index, length);
+    }
+
+    @Override
+    public void getInt8Array(long offset, byte[] array, int index, int length) {
+        Util.checkArrayRange(array.length, index, length);
+        checkBounds(offset, length);
+        Memory.getInt8Array(address() + offset, array, index, length);
+    }
+
+    @Override
+    public void setInt8Array(long offset, byte[] array, int index, int length) {
+        Util.checkArrayRange(array.length, index, length);
+        checkBounds(offset, length);
+        Memory.setInt8Array(address() + offset, array, index, length);
+    }
+
+    @Override
+    public void getInt16Array(long offset, short[] array, int index, int length) {
+        Util.checkArrayRange(array.length, index, length);
+        checkBounds(offset, (long) length << 1);
+        Memory.getInt16Array(address() + offset, array, index, length);
+    }
+
+    @Override
+    public void setInt16Array(long offset, short[] array, int index, int length) {
+        Util.checkArrayRange(array.length, index, length);
+        checkBounds(offset, (long) length << 1);
+        Memory.setInt16Array(address() + offset, array, index, length);
+    }
+
+    @Override
+    public void getUTF16Array(long offset, char[] array, int index, int length) {
+        Util.checkArrayRange(array.length, index, length);
+        checkBounds(offset, (long) length << 1);
+        Memory.getUTF16Array(address() + offset, array, index, length);
+    }
+
+    @Override
+    public void setUTF16Array(long offset, char[] array, int index, int length) {
+        Util.checkArrayRange(array.length, index, length);
+        checkBounds(offset, (long) length << 1);
+        Memory.setUTF16Array(address() + offset, array, index, length);
+    }
+
+    @Override
+    public void getInt32Array(long offset, int[] array, int index, int length) {
+        Util.checkArrayRange(array.length, index, length);
+        checkBounds(offset, (long) length << 2);
+        Memory.getInt32Array(address() + offset, array, index, length);
+    }
+
+    @Override
+    public void setInt32Array(long offset, int[] array, int index, int length) {
+        Util.checkArrayRange(array.length, index, length);
+        checkBounds(offset, (long) length << 2);
+        Memory.setInt32Array(address() + offset, array, index, length);
+    }
+
+    @Override
+    public void getInt64Array(long offset, long[] array, int index, int length) {
+        Util.checkArrayRange(array.length, index, length);
+        checkBounds(offset, (long) length << 3);
+        Memory.getInt64Array(address() + offset, array, index, length);
+    }
+
+    @Override
+    public void setInt64Array(long offset, long[] array, int index, int length) {
+        Util.checkArrayRange(array.length, index, length);
+        checkBounds(offset, (long) length << 3);
+        Memory.setInt64Array(address() + offset, array, index, length);
+    }
+
+    @Override
+    public void getFloatArray(long offset, float[] array, int index, int length) {
+        Util.checkArrayRange(array.length, index, length);
+        checkBounds(offset, (long) length << 2);
+        Memory.getFloatArray(address() + offset, array, index, length);
+    }
+
+    @Override
+    public void setFloatArray(long offset, float[] array, int index, int length) {
+        Util.checkArrayRange(array.length, index, length);
+        checkBounds(offset, (long) length << 2);
+        Memory.setFloatArray(address() + offset, array, index, length);
+    }
+
+    @Override
+    public void getDoubleArray(long offset, double[] array, int index, int length) {
+        Util.checkArrayRange(array.length, index, length);
+        checkBounds(offset, (long) length << 3);
+        Memory.getDoubleArray(address() + offset, array, index, length);
+    }
+
+    @Override
+    public void setDoubleArray(long offset, double[] array, int index, int length) {
+        Util.checkArrayRange(array.length, index, length);
+        checkBounds(offset, (long) length << 3);
+        Memory.setDoubleArray(address() + offset, array, index, length);
+    }
+
+    @Override
+    public void getShortArray(long offset, long[] array, int index, int length) {
+        Util.checkArrayRange(array.length, index, length);
+        checkBounds(offset, (long) length * Foreign.shortSize());
+        Memory.getShortArray(address() + offset, array, index, length);
+    }
+
+    @Override
+    public void setShortArray(long offset, long[] array, int index, int length) {
+        Util.checkArrayRange(array.length, index, length);
+        checkBounds(offset, (long) length * Foreign.shortSize());
+        Memory.setShortArray(address() + offset, array, index, length);
+    }
+
+    @Override
+    public void getIntArray(long offset, long[] array, int index, int length) {
+        Util.checkArrayRange(array.length, index, length);
+        checkBounds(offset, (long) length * Foreign.intSize());
+        Memory.getIntArray(address() + offset, array, index, length);
+    }
+
+    @Override
+    public void setIntArray(long offset, long[] array, int index, int length) {
+        Util.checkArrayRange(array.length, index, length);
+        checkBounds(offset, (long) length * Foreign.intSize());
+        Memory.setIntArray(address() + offset, array, index, length);
+    }
+
+    @Override
+    public void getLongArray(long offset, long[] array, int index, int length) {
+        Util.checkArrayRange(array.length, index, length);
+        checkBounds(offset, (long) length * Foreign.longSize());
+        Memory.getLongArray(address() + offset, array, index, length);
+    }
+
+    @Override
+    public void setLongArray(long offset, long[] array, int index, int length) {
+        Util.checkArrayRange(array.length, index, length);
+        checkBounds(offset, (long) length * Foreign.longSize());
+        Memory.setLongArray(address() + offset, array, index, length);
+    }
+
+    @Override
+    public void getAddressArray(long offset, long[] array, int index, int length) {
+        Util.checkArrayRange(array.length, index, length);
+        checkBounds(offset, (long) length * Foreign.addressSize());
+        Memory.getAddressArray(address() + offset, array, index, length);
+    }
+
+    @Override
+    public void setAddressArray(long offset, long[] array, int index, int length) {
+        Util.checkArrayRange(array.length, index, length);
+        checkBounds(offset, (long) length * Foreign.addressSize());
+        Memory.setAddressArray(address() + offset, array, index, length);
+    }
+
     @Override
     public void checkBounds(long offset) throws IndexOutOfBoundsException {
         if (Long.compareUnsigned(offset, size()) >= 0) throw new IndexOutOfBoundsException("Index out of range: " + Long.toUnsignedString(offset));
@@ -188,46 +367,63 @@ public abstract class AbstractDirectMemoryHandle extends MemoryHandle {
         Memory.fill(address() + offset, value, size);
     }
 
+    // clamps a search length to the end of bounded memory
+    private long searchLength(long offset, long maxLength) {
+        if (!isBounded()) return maxLength;
+        long remaining = size() - offset;
+        return Long.compareUnsigned(maxLength, remaining) > 0 ? remaining : maxLength;
+    }
+
     @Override
     public long indexOf(long offset, byte value) {
-        checkBounds(offset);
-        long index = address() + offset;
-        return Memory.search(index, value) - address();
+        return indexOf(offset, value, Limits.ADDRESS_MAX);
     }
 
     @Override
     public long indexOf(long offset, int value) {
-        checkBounds(offset);
-        long index = address() + offset;
-        return Memory.search(index, value) - address();
+        return indexOf(offset, (byte) value, Limits.ADDRESS_MAX);
     }
 
     @Override
     public long indexOf(long offset, byte value, long maxLength) {
         checkBounds(offset);
-        long index = address() + offset;
-        return Memory.search(index, value, maxLength) - address();
+        long index = Memory.search(address() + offset, value, searchLength(offset, maxLength));
+        return index == 0 ? -1 : index - address();
     }
 
     @Override
     public long indexOf(long offset, int value, long maxLength) {
-        checkBounds(offset);
-        long index = address() + offset;
-        return Memory.search(index, value, maxLength) - address();
+        return indexOf(offset, (byte) value, maxLength);
     }
 
     @Override
     public long indexOf(long offset, Object valueArray, int valueArrayOffset, int valueSize) {
-        checkBounds(offset, valueSize);
-        long index = address() + offset;
-        return Memory.search(array(), index, valueArray, valueArrayOffset, valueSize, size()) - address();
+        return indexOf(offset, valueArray, valueArrayOffset, valueSize, Limits.ADDRESS_MAX);
     }
 
     @Override
     public long indexOf(long offset, Object valueArray, int valueArrayOffset, int valueSize, long maxLength) {
         checkBounds(offset, valueSize);
-        long index = address() + offset;
-        return Memory.search(array(), index, valueArray, valueArrayOffset, valueSize, maxLength) - address();
+        long index = Memory.search(address() + offset, valueArray, valueArrayOffset, valueSize, searchLength(offset, maxLength));
+        return index == 0 ? -1 : index - address();
+    }
+
+    @Override
+    public long indexOf(long offset, MemoryPattern pattern) {
+        return indexOf(offset, pattern, Limits.ADDRESS_MAX);
+    }
+
+    @Override
+    public long indexOf(long offset, MemoryPattern pattern, long maxLength) {
+        checkBounds(offset, pattern.size());
+        long index = pattern.search(address() + offset, searchLength(offset, maxLength));
+        return index == 0 ? -1 : index - address();
+    }
+
+    @Override
+    public long getZeroTerminatedStringLength(long offset, long maxLength, Charset charset) {
+        checkBounds(offset);
+        return Memory.getZeroTerminatedStringLength(address() + offset, searchLength(offset, maxLength), charset);
     }
 
     @Override
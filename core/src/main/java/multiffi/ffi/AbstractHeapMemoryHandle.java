@@ -2,6 +2,8 @@ package multiffi.ffi;
 
 import io.github.multiffi.ffi.Util;
 
+import java.nio.charset.Charset;
+
 public abstract class AbstractHeapMemoryHandle extends MemoryHandle {
 
     @Override
@@ -24,108 +26,117 @@ public abstract class AbstractHeapMemoryHandle extends MemoryHandle {
         return true;
     }
 
+    @Override
+    public boolean advise(MemoryAdvice advice) {
+        return false;
+    }
+
+    @Override
+    public void sync() {
+    }
+
     @Override
     public boolean getBoolean(long offset) {
         checkBounds(offset, 1);
-        return Memory.getBoolean(array(), offset);
+        return Memory.getBoolean(array(), arrayOffset() + offset);
     }
 
     @Override
     public byte getInt8(long offset) {
         checkBounds(offset, 1);
-        return Memory.getInt8(array(), offset);
+        return Memory.getInt8(array(), arrayOffset() + offset);
     }
 
     @Override
     public short getInt16(long offset) {
         checkBounds(offset, 2);
-        return Memory.getInt16(array(), offset);
+        return Memory.getInt16(array(), arrayOffset() + offset);
     }
 
     @Override
     public char getUTF16(long offset) {
         checkBounds(offset, 2);
-        return Memory.getUTF16(array(), offset);
+        return Memory.getUTF16(array(), arrayOffset() + offset);
     }
 
     @Override
     public int getInt32(long offset) {
         checkBounds(offset, 4);
-        return Memory.getInt32(array(), offset);
+        return Memory.getInt32(array(), arrayOffset() + offset);
     }
 
     @Override
     public long getInt64(long offset) {
         checkBounds(offset, 8);
-        return Memory.getInt64(array(), offset);
+        return Memory.getInt64(array(), arrayOffset() + offset);
     }
 
     @Override
     public float getFloat(long offset) {
         checkBounds(offset, 4);
-        return Memory.getFloat(array(), offset);
+        return Memory.getFloat(array(), arrayOffset() + offset);
     }
 
     @Override
     public double getDouble(long offset) {
         checkBounds(offset, 8);
-        return Memory.getDouble(array(), offset);
+        return Memory.getDouble(array(), arrayOffset() + offset);
     }
 
     @Override
     public void setBoolean(long offset, boolean value) {
         checkBounds(offset, 1);
-        Memory.setBoolean(array(), offset, value);
+        Memory.setBoolean(array(), arrayOffset() + offset, value);
     }
 
     @Override
     public void setInt8(long offset, byte value) {
         checkBounds(offset, 1);
-        Memory.setInt8(array(), offset, value);
+        Memory.setInt8(array(), arrayOffset() + offset, value);
     }
 
     @Override
     public void setInt16(long offset, short value) {
         checkBounds(offset, 2);
-        Memory.setInt16(array(), offset, value);
+        Memory.setInt16(array(), arrayOffset() + offset, value);
     }
 
     @Override
     public void setUTF16(long offset, char value) {
         checkBounds(offset, 2);
-        Memory.setUTF16(array(), offset, value);
+        Memory.setUTF16(array(), arrayOffset() + offset, value);
     }
 
     @Override
     public void setInt32(long offset, int value) {
         checkBounds(offset, 4);
-        Memory.setInt32(array(), offset, value);
+        Memory.setInt32(array(), arrayOffset() + offset, value);
     }
 
     @Override
     public void setInt64(long offset, long value) {
         checkBounds(offset, 8);
-        Memory.setInt64(array(), offset, value);
+        Memory.setInt64(array(), arrayOffset() + offset, value);
     }
 
     @Override
     public void setFloat(long offset, float value) {
         checkBounds(offset, 4);
-        Memory.setFloat(array(), offset, value);
+        Memory.setFloat(array(), arrayOffset() + offset, value);
     }
 
     @Override
     public void setDouble(long offset, double value) {
         checkBounds(offset, 8);
-        Memory.setDouble(array(), offset, value);
+        Memory.setDouble(array(), arrayOffset() + offset, value);
     }
 
     @Override
     public void transferTo(long srcOffset, MemoryHandle destMemoryHandle, long destOffset, long size) {
         checkBounds(srcOffset, size);
         destMemoryHandle.checkBounds(destOffset, size);
-        if (destMemoryHandle.hasArray()) Memory.copy(destMemoryHandle.array(), destOffset, array(), srcOffset, size);
-        else Memory.copy(destMemoryHandle.address() + destOffset, array(), srcOffset, size);
+        if (destMemoryHandle.hasArray()) Memory.copy(destMemoryHandle.array(), destMemoryHandle.arrayOffset() + destOffset, array(), arrayOffset() + srcOffset, size);
+        else Memory.copy(destMemoryHandle.address() + destOffset, array(), arrayOffset() + srcOffset, size);
     }
 
     @Override
@@ -137,8 +148,8 @@ public abstract class AbstractHeapMemoryHandle extends MemoryHandle {
     public void transferFrom(long destOffset, MemoryHandle srcMemoryHandle, long srcOffset, long size) {
         checkBounds(destOffset, size);
         srcMemoryHandle.checkBounds(srcOffset, size);
-        if (srcMemoryHandle.hasArray()) Memory.copy(array(), destOffset, srcMemoryHandle.array(), srcOffset, size);
-        else Memory.copy(array(), destOffset, Util.unsignedAddExact(srcMemoryHandle.address(), srcOffset), size);
+        if (srcMemoryHandle.hasArray()) Memory.copy(array(), arrayOffset() + destOffset, srcMemoryHandle.array(), srcMemoryHandle.arrayOffset() + srcOffset, size);
+        else Memory.copy(array(), arrayOffset() + destOffset, Util.unsignedAddExact(srcMemoryHandle.address(), srcOffset), size);
     }
 
     @Override
@@ -146,6 +157,174 @@ public abstract class AbstractHeapMemoryHandle extends MemoryHandle {
         transferFrom(0, srcMemoryHandle, 0, size);
     }
 
+    @Override
+    public void getBooleanArray(long offset, boolean[] array, int index, int length) {
+        Util.checkArrayRange(array.length, index, length);
+        checkBounds(offset, length);
+        Memory.getBooleanArray(array(), arrayOffset() + offset, array, index, length);
+    }
+
+    @Override
+    public void setBooleanArray(long offset, boolean[] array, int index, int length) {
+        Util.checkArrayRange(array.length, index, length);
+        checkBounds(offset, length);
+        Memory.setBooleanArray(array(), arrayOffset() + offset, array, index, length);
+    }
+
+    @Override
+    public void getInt8Array(long offset, byte[] array, int index, int length) {
+        Util.checkArrayRange(array.length, index, length);
+        checkBounds(offset, length);
+        Memory.getInt8Array(array(), arrayOffset() + offset, array, index, length);
+    }
+
+    @Override
+    public void setInt8Array(long offset, byte[] array, int index, int length) {
+        Util.checkArrayRange(array.length, index, length);
+        checkBounds(offset, length);
+        Memory.setInt8Array(array(), arrayOffset() + offset, array, index, length);
+    }
+
+    @Override
+    public void getInt16Array(long offset, short[] array, int index, int length) {
+        Util.checkArrayRange(array.length, index, length);
+        checkBounds(offset, (long) length << 1);
+        Memory.getInt16Array(array(), arrayOffset() + offset, array, index, length);
+    }
+
+    @Override
+    public void setInt16Array(long offset, short[] array, int index, int length) {
+        Util.checkArrayRange(array.length, index, length);
+        checkBounds(offset, (long) length << 1);
+        Memory.setInt16Array(array(), arrayOffset() + offset, array, index, length);
+    }
+
+    @Override
+    public void getUTF16Array(long offset, char[] array, int index, int length) {
+        Util.checkArrayRange(array.length, index, length);
+        checkBounds(offset, (long) length << 1);
+        Memory.getUTF16Array(array(), arrayOffset() + offset, array, index, length);
+    }
+
+    @Override
+    public void setUTF16Array(long offset, char[] array, int index, int length) {
+        Util.checkArrayRange(array.length, index, length);
+        checkBounds(offset, (long) length << 1);
+        Memory.setUTF16Array(array(), arrayOffset() + offset, array, index, length);
+    }
+
+    @Override
+    public void getInt32Array(long offset, int[] array, int index, int length) {
+        Util.checkArrayRange(array.length, index, length);
+        checkBounds(offset, (long) length << 2);
+        Memory.getInt32Array(array(), arrayOffset() + offset, array, index, length);
+    }
+
+    @Override
+    public void setInt32Array(long offset, int[] array, int index, int length) {
+        Util.checkArrayRange(array.length, index, length);
+        checkBounds(offset, (long) length << 2);
+        Memory.setInt32Array(array(), arrayOffset() + offset, array, index, length);
+    }
+
+    @Override
+    public void getInt64Array(long offset, long[] array, int index, int length) {
+        Util.checkArrayRange(array.length, index, length);
+        checkBounds(offset, (long) length << 3);
+        Memory.getInt64Array(array(), arrayOffset() + offset, array, index, length);
+    }
+
+    @Override
+    public void setInt64Array(long offset, long[] array, int index, int length) {
+        Util.checkArrayRange(array.length, index, length);
+        checkBounds(offset, (long) length << 3);
+        Memory.setInt64Array(array(), arrayOffset() + offset, array, index, length);
+    }
+
+    @Override
+    public void getFloatArray(long offset, float[] array, int index, int length) {
+        Util.checkArrayRange(array.length, index, length);
+        checkBounds(offset, (long) length << 2);
+        Memory.getFloatArray(array(), arrayOffset() + offset, array, index, length);
+    }
+
+    @Override
+    public void setFloatArray(long offset, float[] array, int index, int length) {
+        Util.checkArrayRange(array.length, index, length);
+        checkBounds(offset, (long) length << 2);
+        Memory.setFloatArray(array(), arrayOffset() + offset, array, index, length);
+    }
+
+    @Override
+    public void getDoubleArray(long offset, double[] array, int index, int length) {
+        Util.checkArrayRange(array.length, index, length);
+        checkBounds(offset, (long) length << 3);
+        Memory.getDoubleArray(array(), arrayOffset() + offset, array, index, length);
+    }
+
+    @Override
+    public void setDoubleArray(long offset, double[] array, int index, int length) {
+        Util.checkArrayRange(array.length, index, length);
+        checkBounds(offset, (long) length << 3);
+        Memory.setDoubleArray(array(), arrayOffset() + offset, array, index, length);
+    }
+
+    @Override
+    public void getShortArray(long offset, long[] array, int index, int length) {
+        Util.checkArrayRange(array.length, index, length);
+        checkBounds(offset, (long) length * Foreign.shortSize());
+        Memory.getShortArray(array(), arrayOffset() + offset, array, index, length);
+    }
+
+    @Override
+    public void setShortArray(long offset, long[] array, int index, int length) {
+        Util.checkArrayRange(array.length, index, length);
+        checkBounds(offset, (long) length * Foreign.shortSize());
+        Memory.setShortArray(array(), arrayOffset() + offset, array, index, length);
+    }
+
+    @Override
+    public void getIntArray(long offset, long[] array, int index, int length) {
+        Util.checkArrayRange(array.length, index, length);
+        checkBounds(offset, (long) length * Foreign.intSize());
+        Memory.getIntArray(array(), arrayOffset() + offset, array, index, length);
+    }
+
+    @Override
+    public void setIntArray(long offset, long[] array, int index, int length) {
+        Util.checkArrayRange(array.length, index, length);
+        checkBounds(offset, (long) length * Foreign.intSize());
+        Memory.setIntArray(array(), arrayOffset() + offset, array, index, length);
+    }
+
+    @Override
+    public void getLongArray(long offset, long[] array, int index, int length) {
+        Util.checkArrayRange(array.length, index, length);
+        checkBounds(offset, (long) length * Foreign.longSize());
+        Memory.getLongArray(array(), arrayOffset() + offset, array, index, length);
+    }
+
+    @Override
+    public void setLongArray(long offset, long[] array, int index, int length) {
+        Util.checkArrayRange(array.length, index, length);
+        checkBounds(offset, (long) length * Foreign.longSize());
+        Memory.setLongArray(array(), arrayOffset() + offset, array, index, length);
+    }
+
+    @Override
+    public void getAddressArray(long offset, long[] array, int index, int length) {
+        Util.checkArrayRange(array.length, index, length);
+        checkBounds(offset, (long) length * Foreign.addressSize());
+        Memory.getAddressArray(array(), arrayOffset() + offset, array, index, length);
+    }
+
+    @Override
+    public void setAddressArray(long offset, long[] array, int index, int length) {
+        Util.checkArrayRange(array.length, index, length);
+        checkBounds(offset, (long) length * Foreign.addressSize());
+        Memory.setAddressArray(array(), arrayOffset() + offset, array, index, length);
+    }
+
     @Override
     public void checkBounds(long offset) throws IndexOutOfBoundsException {
         if (offset < 0 || offset >= size()) throw new ArrayIndexOutOfBoundsException("Array index out of range: " + Long.toUnsignedString(offset));
@@ -170,54 +349,76 @@ public abstract class AbstractHeapMemoryHandle extends MemoryHandle {
 
     @Override
     public void fill(long offset, byte value, long size) {
-        Memory.fill(array(), offset, value, size);
+        Memory.fill(array(), arrayOffset() + offset, value, size);
     }
 
     @Override
     public void fill(long offset, int value, long size) {
-        Memory.fill(array(), offset, value, size);
+        Memory.fill(array(), arrayOffset() + offset, value, size);
+    }
+
+    // clamps a search length to the end of this memory, a negative length meaning no limit
+    private long searchLength(long offset, long maxLength) {
+        long remaining = size() - offset;
+        return maxLength < 0 || maxLength > remaining ? remaining : maxLength;
     }
 
     @Override
     public long indexOf(long offset, byte value) {
-        checkBounds(offset);
-        long index = offset + arrayOffset();
-        return Memory.search(array(), index, value) - arrayOffset();
+        return indexOf(offset, value, -1);
     }
 
     @Override
     public long indexOf(long offset, int value) {
-        checkBounds(offset);
-        long index = offset + arrayOffset();
-        return Memory.search(array(), index, value) - arrayOffset();
+        return indexOf(offset, (byte) value, -1);
     }
 
     @Override
     public long indexOf(long offset, byte value, long maxLength) {
         checkBounds(offset);
-        long index = offset + arrayOffset();
-        return Memory.search(array(), index, value, maxLength) - arrayOffset();
+        long index = Memory.search(array(), arrayOffset() + offset, value, searchLength(offset, maxLength));
+        return index == -1 ? -1 : index - arrayOffset();
     }
 
     @Override
     public long indexOf(long offset, int value, long maxLength) {
-        checkBounds(offset);
-        long index = offset + arrayOffset();
-        return Memory.search(array(), index, value, maxLength) - arrayOffset();
+        return indexOf(offset, (byte) value, maxLength);
     }
 
     @Override
     public long indexOf(long offset, Object valueArray, int valueArrayOffset, int valueSize) {
-        checkBounds(offset, valueSize);
-        long index = offset + arrayOffset();
-        return Memory.search(array(), index, valueArray, valueArrayOffset, valueSize) - arrayOffset();
+        return indexOf(offset, valueArray, valueArrayOffset, valueSize, -1);
     }
 
     @Override
     public long indexOf(long offset, Object valueArray, int valueArrayOffset, int valueSize, long maxLength) {
         checkBounds(offset, valueSize);
-        long index = offset + arrayOffset();
-        return Memory.search(array(), index, valueArray, valueArrayOffset, valueSize, maxLength) - arrayOffset();
+        long index = Memory.search(array(), arrayOffset() + offset, valueArray, valueArrayOffset, valueSize, searchLength(offset, maxLength));
+        return index == -1 ? -1 : index - arrayOffset();
+    }
+
+    @Override
+    public long indexOf(long offset, MemoryPattern pattern) {
+        return indexOf(offset, pattern, -1);
+    }
+
+    @Override
+    public long indexOf(long offset, MemoryPattern pattern, long maxLength) {
+        checkBounds(offset, pattern.size());
+        long index = pattern.search(array(), arrayOffset() + offset, searchLength(offset, maxLength));
+        return index == -1 ? -1 : index - arrayOffset();
+    }
+
+    @Override
+    public long getZeroTerminatedStringLength(long offset, long maxLength, Charset charset) {
+        checkBounds(offset);
+        return Memory.getZeroTerminatedStringLength(array(), arrayOffset() + offset, searchLength(offset, maxLength), charset);
+    }
+
+    @Override
+    public String getZeroTerminatedString(long offset, int maxLength, Charset charset) {
+        checkBounds(offset);
+        return Memory.getZeroTerminatedString(array(), arrayOffset() + offset, (int) searchLength(offset, maxLength), charset);
     }
 
 }
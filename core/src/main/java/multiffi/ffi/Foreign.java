@@ -1,5 +1,6 @@
 package multiffi.ffi;
 
+import io.github.multiffi.ffi.ForeignEvents;
 import multiffi.ffi.spi.ForeignProvider;
 
 import java.io.File;
@@ -137,7 +138,11 @@ public final class Foreign {
     }
 
     public static long getSymbolAddress(String symbolName) throws UnsatisfiedLinkError {
-        return IMPLEMENTATION.getSymbolAddress(symbolName);
+        if (!ForeignEvents.ENABLED) return IMPLEMENTATION.getSymbolAddress(symbolName);
+        long start = System.nanoTime();
+        long address = IMPLEMENTATION.getSymbolAddress(symbolName);
+        ForeignEvents.symbolLookup(symbolName, address, System.nanoTime() - start);
+        return address;
     }
 
     public static String mapLibraryName(String libraryName) {
@@ -1,5 +1,11 @@
 package multiffi.ffi;
 
+import io.github.multiffi.ffi.Util;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 
@@ -73,6 +79,152 @@ public abstract class FunctionHandle {
         return InvokeAdapter64.SIZE.invoke(this, args);
     }
 
+    public MethodType getMethodType() {
+        List<ForeignType> parameterTypes = getParameterTypes();
+        Class<?>[] parameterClasses = new Class<?>[parameterTypes.size() + (isDynCall() ? 1 : 0)];
+        for (int i = 0; i < parameterTypes.size(); i ++) {
+            parameterClasses[i] = Util.getMappingType(parameterTypes.get(i));
+        }
+        if (isDynCall()) parameterClasses[parameterClasses.length - 1] = Object[].class;
+        return MethodType.methodType(Util.getMappingType(getReturnType()), parameterClasses);
+    }
+
+    private volatile MethodHandle methodHandle = null;
+    public MethodHandle asMethodHandle() {
+        MethodHandle methodHandle = this.methodHandle;
+        if (methodHandle == null) {
+            methodHandle = createMethodHandle();
+            this.methodHandle = methodHandle;
+        }
+        return methodHandle;
+    }
+
+    protected MethodHandle createMethodHandle() {
+        MethodType methodType = getMethodType();
+        ForeignType returnType = getReturnType();
+        String methodName;
+        if (returnType == null) methodName = "invokeVoid";
+        else if (returnType == ScalarType.BOOLEAN) methodName = "invokeBoolean";
+        else if (returnType == ScalarType.UTF16) methodName = "invokeUTF16";
+        else if (returnType == ScalarType.INT8) methodName = "invokeInt8";
+        else if (returnType == ScalarType.CHAR) methodName = "invokeChar";
+        else if (returnType == ScalarType.INT16) methodName = "invokeInt16";
+        else if (returnType == ScalarType.INT32) methodName = "invokeInt32";
+        else if (returnType == ScalarType.WCHAR) methodName = "invokeWChar";
+        else if (returnType == ScalarType.INT64) methodName = "invokeInt64";
+        else if (returnType == ScalarType.SHORT) methodName = "invokeShort";
+        else if (returnType == ScalarType.INT) methodName = "invokeInt";
+        else if (returnType == ScalarType.LONG) methodName = "invokeLong";
+        else if (returnType == ScalarType.SIZE) methodName = "invokeSize";
+        else if (returnType == ScalarType.ADDRESS) methodName = "invokeAddress";
+        else if (returnType == ScalarType.FLOAT) methodName = "invokeFloat";
+        else if (returnType == ScalarType.DOUBLE) methodName = "invokeDouble";
+        else methodName = "invokeCompound";
+        try {
+            return MethodHandles.publicLookup().findVirtual(FunctionHandle.class, methodName,
+                            MethodType.methodType(methodType.returnType(), Object[].class))
+                    .bindTo(this).asFixedArity()
+                    .asCollector(Object[].class, methodType.parameterCount())
+                    .asType(methodType);
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            throw new IllegalStateException("Unexpected exception", e);
+        }
+    }
+
+    private static final class BatchFilters {
+        private BatchFilters() {
+            throw new UnsupportedOperationException();
+        }
+        private static final MethodHandle INT64_TO_BOOLEAN;
+        private static final MethodHandle INT64_TO_FLOAT;
+        private static final MethodHandle INT64_TO_DOUBLE;
+        private static final MethodHandle BOOLEAN_TO_INT64;
+        private static final MethodHandle FLOAT_TO_INT64;
+        private static final MethodHandle DOUBLE_TO_INT64;
+        static {
+            try {
+                INT64_TO_BOOLEAN = MethodHandles.lookup().findStatic(BatchFilters.class, "int64ToBoolean",
+                        MethodType.methodType(boolean.class, long.class));
+                INT64_TO_FLOAT = MethodHandles.lookup().findStatic(BatchFilters.class, "int64ToFloat",
+                        MethodType.methodType(float.class, long.class));
+                INT64_TO_DOUBLE = MethodHandles.lookup().findStatic(Double.class, "longBitsToDouble",
+                        MethodType.methodType(double.class, long.class));
+                BOOLEAN_TO_INT64 = MethodHandles.lookup().findStatic(BatchFilters.class, "booleanToInt64",
+                        MethodType.methodType(long.class, boolean.class));
+                FLOAT_TO_INT64 = MethodHandles.lookup().findStatic(BatchFilters.class, "floatToInt64",
+                        MethodType.methodType(long.class, float.class));
+                DOUBLE_TO_INT64 = MethodHandles.lookup().findStatic(Double.class, "doubleToRawLongBits",
+                        MethodType.methodType(long.class, double.class));
+            } catch (NoSuchMethodException | IllegalAccessException e) {
+                throw new IllegalStateException("Unexpected exception", e);
+            }
+        }
+        private static boolean int64ToBoolean(long value) {
+            return value != 0L;
+        }
+        private static float int64ToFloat(long value) {
+            return Float.intBitsToFloat((int) value);
+        }
+        private static long booleanToInt64(boolean value) {
+            return value ? 1L : 0L;
+        }
+        private static long floatToInt64(float value) {
+            return Float.floatToRawIntBits(value) & 0xFFFFFFFFL;
+        }
+    }
+
+    private volatile MethodHandle batchMethodHandle = null;
+    private MethodHandle batchMethodHandle() {
+        MethodHandle batchMethodHandle = this.batchMethodHandle;
+        if (batchMethodHandle == null) {
+            if (isDynCall()) throw new UnsupportedOperationException("Batch invocation of variadic function not supported");
+            MethodHandle methodHandle = asMethodHandle();
+            MethodType methodType = methodHandle.type();
+            for (int i = 0; i < methodType.parameterCount(); i ++) {
+                Class<?> parameterType = methodType.parameterType(i);
+                if (parameterType == boolean.class) methodHandle = MethodHandles.filterArguments(methodHandle, i, BatchFilters.INT64_TO_BOOLEAN);
+                else if (parameterType == float.class) methodHandle = MethodHandles.filterArguments(methodHandle, i, BatchFilters.INT64_TO_FLOAT);
+                else if (parameterType == double.class) methodHandle = MethodHandles.filterArguments(methodHandle, i, BatchFilters.INT64_TO_DOUBLE);
+                else if (!parameterType.isPrimitive()) throw new IllegalArgumentException("Batch invocation with compound parameter not supported");
+            }
+            Class<?> returnType = methodType.returnType();
+            if (returnType == boolean.class) methodHandle = MethodHandles.filterReturnValue(methodHandle, BatchFilters.BOOLEAN_TO_INT64);
+            else if (returnType == float.class) methodHandle = MethodHandles.filterReturnValue(methodHandle, BatchFilters.FLOAT_TO_INT64);
+            else if (returnType == double.class) methodHandle = MethodHandles.filterReturnValue(methodHandle, BatchFilters.DOUBLE_TO_INT64);
+            else if (!returnType.isPrimitive()) throw new IllegalArgumentException("Batch invocation with compound return not supported");
+            methodHandle = MethodHandles.explicitCastArguments(methodHandle,
+                    MethodType.methodType(long.class, Collections.nCopies(methodType.parameterCount(), long.class)));
+            batchMethodHandle = methodHandle.asSpreader(long[].class, methodType.parameterCount());
+            this.batchMethodHandle = batchMethodHandle;
+        }
+        return batchMethodHandle;
+    }
+
+    private static final long[][] EMPTY_COLUMNS = new long[0][];
+    public void invokeBatch(long[] results, long[]... columns) {
+        MethodHandle batchMethodHandle = batchMethodHandle();
+        int parameterCount = getParameterTypes().size();
+        if (columns == null) columns = EMPTY_COLUMNS;
+        if (columns.length != parameterCount) throw new ArrayIndexOutOfBoundsException("length mismatch");
+        int count = results != null ? results.length : (parameterCount == 0 ? 0 : columns[0].length);
+        for (long[] column : columns) {
+            if (column.length != count) throw new ArrayIndexOutOfBoundsException("length mismatch");
+        }
+        long[] arguments = new long[parameterCount];
+        try {
+            for (int i = 0; i < count; i ++) {
+                for (int j = 0; j < parameterCount; j ++) {
+                    arguments[j] = columns[j][i];
+                }
+                long result = (long) batchMethodHandle.invokeExact(arguments);
+                if (results != null) results[i] = result;
+            }
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
     @Override
     public String toString() {
         StringBuilder builder = new StringBuilder();
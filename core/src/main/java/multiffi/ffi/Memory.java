@@ -1,8 +1,13 @@
 package multiffi.ffi;
 
+import io.github.multiffi.ffi.ForeignEvents;
+import io.github.multiffi.ffi.MemoryAccounting;
+import io.github.multiffi.ffi.PooledAllocator;
 import multiffi.ffi.spi.MemoryProvider;
 
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
+import java.nio.file.Path;
 
 public final class Memory {
 
@@ -31,29 +36,83 @@ public final class Memory {
         return IMPLEMENTATION.allocateInitializedAlignedOnStack(count, size, alignment);
     }
     public static long allocate(long size) {
-        return IMPLEMENTATION.allocate(size);
+        long address = PooledAllocator.ENABLED ? PooledAllocator.allocate(size) : IMPLEMENTATION.allocate(size);
+        if (MemoryAccounting.ENABLED) MemoryAccounting.allocate(MemoryAccounting.Kind.MALLOC, address, size);
+        if (ForeignEvents.ENABLED) ForeignEvents.allocate(MemoryAccounting.Kind.MALLOC, address, size);
+        return address;
     }
     public static long allocateInitialized(long count, long size) {
-        return IMPLEMENTATION.allocateInitialized(count, size);
+        long address = PooledAllocator.ENABLED ? PooledAllocator.allocateInitialized(count, size) : IMPLEMENTATION.allocateInitialized(count, size);
+        if (MemoryAccounting.ENABLED) MemoryAccounting.allocate(MemoryAccounting.Kind.MALLOC, address, count * size);
+        if (ForeignEvents.ENABLED) ForeignEvents.allocate(MemoryAccounting.Kind.MALLOC, address, count * size);
+        return address;
     }
     public static long reallocate(long address, long size) {
-        return IMPLEMENTATION.reallocate(address, size);
+        long newAddress = PooledAllocator.ENABLED ? PooledAllocator.reallocate(address, size) : IMPLEMENTATION.reallocate(address, size);
+        if (MemoryAccounting.ENABLED) MemoryAccounting.reallocate(MemoryAccounting.Kind.MALLOC, address, newAddress, size);
+        if (ForeignEvents.ENABLED) ForeignEvents.reallocate(MemoryAccounting.Kind.MALLOC, address, newAddress, size);
+        return newAddress;
     }
     public static void free(long address) {
-        IMPLEMENTATION.free(address);
+        if (MemoryAccounting.ENABLED) MemoryAccounting.free(MemoryAccounting.Kind.MALLOC, address);
+        if (ForeignEvents.ENABLED) ForeignEvents.free(MemoryAccounting.Kind.MALLOC, address);
+        if (PooledAllocator.ENABLED) PooledAllocator.free(address);
+        else IMPLEMENTATION.free(address);
     }
     public static long allocateAligned(long size, long alignment) {
-        return IMPLEMENTATION.allocateAligned(size, alignment);
+        long address = IMPLEMENTATION.allocateAligned(size, alignment);
+        if (MemoryAccounting.ENABLED) MemoryAccounting.allocate(MemoryAccounting.Kind.ALIGNED, address, size);
+        if (ForeignEvents.ENABLED) ForeignEvents.allocate(MemoryAccounting.Kind.ALIGNED, address, size);
+        return address;
     }
     public static long allocateInitializedAligned(long count, long size, long alignment) {
-        return IMPLEMENTATION.allocateInitializedAligned(count, size, alignment);
+        long address = IMPLEMENTATION.allocateInitializedAligned(count, size, alignment);
+        if (MemoryAccounting.ENABLED) MemoryAccounting.allocate(MemoryAccounting.Kind.ALIGNED, address, count * size);
+        if (ForeignEvents.ENABLED) ForeignEvents.allocate(MemoryAccounting.Kind.ALIGNED, address, count * size);
+        return address;
     }
     public static long reallocateAligned(long address, long size, long alignment) {
-        return IMPLEMENTATION.reallocateAligned(address, size, alignment);
+        long newAddress = IMPLEMENTATION.reallocateAligned(address, size, alignment);
+        if (MemoryAccounting.ENABLED) MemoryAccounting.reallocate(MemoryAccounting.Kind.ALIGNED, address, newAddress, size);
+        if (ForeignEvents.ENABLED) ForeignEvents.reallocate(MemoryAccounting.Kind.ALIGNED, address, newAddress, size);
+        return newAddress;
     }
     public static void freeAligned(long address) {
+        if (MemoryAccounting.ENABLED) MemoryAccounting.free(MemoryAccounting.Kind.ALIGNED, address);
+        if (ForeignEvents.ENABLED) ForeignEvents.free(MemoryAccounting.Kind.ALIGNED, address);
         IMPLEMENTATION.freeAligned(address);
     }
+    public static long allocatePages(long size, boolean hugePages) {
+        long address = IMPLEMENTATION.allocatePages(size, hugePages);
+        if (MemoryAccounting.ENABLED) MemoryAccounting.allocate(MemoryAccounting.Kind.PAGES, address, size);
+        if (ForeignEvents.ENABLED) ForeignEvents.allocate(MemoryAccounting.Kind.PAGES, address, size);
+        return address;
+    }
+    public static void freePages(long address, long size, boolean hugePages) {
+        if (MemoryAccounting.ENABLED) MemoryAccounting.free(MemoryAccounting.Kind.PAGES, address, size);
+        if (ForeignEvents.ENABLED) ForeignEvents.free(MemoryAccounting.Kind.PAGES, address);
+        IMPLEMENTATION.freePages(address, size, hugePages);
+    }
+    public static long hugePageSize() {
+        return IMPLEMENTATION.hugePageSize();
+    }
+    public static long map(Path path, FileChannel.MapMode mode, long offset, long size) {
+        long address = IMPLEMENTATION.map(path, mode, offset, size);
+        if (MemoryAccounting.ENABLED) MemoryAccounting.allocate(MemoryAccounting.Kind.MAPPED, address, size);
+        if (ForeignEvents.ENABLED) ForeignEvents.allocate(MemoryAccounting.Kind.MAPPED, address, size);
+        return address;
+    }
+    public static void unmap(long address, long size) {
+        if (MemoryAccounting.ENABLED) MemoryAccounting.free(MemoryAccounting.Kind.MAPPED, address, size);
+        if (ForeignEvents.ENABLED) ForeignEvents.free(MemoryAccounting.Kind.MAPPED, address);
+        IMPLEMENTATION.unmap(address, size);
+    }
+    public static boolean advise(long address, long size, MemoryAdvice advice) {
+        return IMPLEMENTATION.advise(address, size, advice);
+    }
+    public static void sync(long address, long size) {
+        IMPLEMENTATION.sync(address, size);
+    }
 
     public static long search(long address, byte value, long maxLength) {
         return IMPLEMENTATION.search(address, value, maxLength);
@@ -79,6 +138,9 @@ public final class Memory {
     public static long search(Object array, long arrayOffset, int value) {
         return IMPLEMENTATION.search(array, arrayOffset, value);
     }
+    public static boolean isNativeSearchPreferred(long address, long maxLength) {
+        return IMPLEMENTATION.isNativeSearchPreferred(address, maxLength);
+    }
     public static long search(long address, long valueAddress, long valueSize, long maxLength) {
         return IMPLEMENTATION.search(address, valueAddress, valueSize, maxLength);
     }
@@ -504,6 +566,21 @@ public final class Memory {
     public static void setZeroTerminatedUTF16String(long address, String string, int index, int length) {
         IMPLEMENTATION.setZeroTerminatedUTF16String(address, string, index, length);
     }
+    public static long getZeroTerminatedStringSize(CharSequence string) {
+        return IMPLEMENTATION.getZeroTerminatedStringSize(string);
+    }
+    public static long getZeroTerminatedStringSize(CharSequence string, Charset charset) {
+        return IMPLEMENTATION.getZeroTerminatedStringSize(string, charset);
+    }
+    public static long getZeroTerminatedStringSize(CharSequence string, int index, int length, Charset charset) {
+        return IMPLEMENTATION.getZeroTerminatedStringSize(string, index, length, charset);
+    }
+    public static long getZeroTerminatedWStringSize(CharSequence string) {
+        return IMPLEMENTATION.getZeroTerminatedWStringSize(string);
+    }
+    public static long getZeroTerminatedUTF16StringSize(CharSequence string) {
+        return IMPLEMENTATION.getZeroTerminatedUTF16StringSize(string);
+    }
 
     public static boolean getBoolean(Object array, long arrayOffset) {
         return IMPLEMENTATION.getBoolean(array, arrayOffset);
@@ -0,0 +1,13 @@
+package multiffi.ffi;
+
+/**
+ * Access pattern hints for a range of native memory, see {@link MemoryHandle#advise(MemoryAdvice)}.
+ */
+public enum MemoryAdvice {
+    NORMAL,
+    RANDOM,
+    SEQUENTIAL,
+    WILL_NEED,
+    DONT_NEED,
+    HUGE_PAGE
+}
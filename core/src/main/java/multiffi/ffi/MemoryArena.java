@@ -0,0 +1,113 @@
+package multiffi.ffi;
+
+import io.github.multiffi.ffi.ConfinedMemoryArena;
+import io.github.multiffi.ffi.SharedMemoryArena;
+
+import java.nio.charset.Charset;
+
+/**
+ * A scope that owns a set of native memory blocks and releases them all at once.
+ *
+ * <p>Memory is bump-allocated from native chunks which grow as the arena fills up; sub-allocations cannot be freed individually.
+ * {@link #close()} frees every chunk, after which all {@code MemoryHandle}s obtained from this arena are dangling.</p>
+ *
+ * <p>A confined arena may only be used by the thread that opened it. A shared arena may be allocated from concurrently, but must
+ * not be closed while other threads are still using it.</p>
+ */
+public abstract class MemoryArena implements AutoCloseable {
+
+    public static final long DEFAULT_CHUNK_SIZE = 8192;
+
+    public static MemoryArena ofConfined() {
+        return new ConfinedMemoryArena(DEFAULT_CHUNK_SIZE);
+    }
+
+    public static MemoryArena ofConfined(long chunkSize) {
+        return new ConfinedMemoryArena(chunkSize);
+    }
+
+    public static MemoryArena ofShared() {
+        return new SharedMemoryArena(DEFAULT_CHUNK_SIZE);
+    }
+
+    public static MemoryArena ofShared(long chunkSize) {
+        return new SharedMemoryArena(chunkSize);
+    }
+
+    private static long naturalAlignment(long size) {
+        return size >= 16 ? 16 : Long.highestOneBit(Math.max(size, 1));
+    }
+
+    /**
+     * Bump-allocates a block of {@code size} bytes aligned to {@code alignment}.
+     *
+     * @param size the allocation size
+     * @param alignment the required alignment, a power of two
+     *
+     * @return the address of the block
+     */
+    public abstract long allocateAddress(long size, long alignment);
+
+    public long allocateAddress(long size) {
+        return allocateAddress(size, naturalAlignment(size));
+    }
+
+    public MemoryHandle allocate(long size, long alignment) {
+        return MemoryHandle.wrap(allocateAddress(size, alignment), size);
+    }
+
+    public MemoryHandle allocate(long size) {
+        return allocate(size, naturalAlignment(size));
+    }
+
+    public MemoryHandle allocate(ForeignType type) {
+        return allocate(type.size());
+    }
+
+    public MemoryHandle allocate(ForeignType type, long alignment) {
+        return allocate(type.size(), alignment);
+    }
+
+    public MemoryHandle allocateInitialized(long count, long size, long alignment) {
+        size = Math.multiplyExact(count, size);
+        long address = allocateAddress(size, alignment);
+        Memory.fill(address, 0, size);
+        return MemoryHandle.wrap(address, size);
+    }
+
+    public MemoryHandle allocateInitialized(long count, long size) {
+        return allocateInitialized(count, size, naturalAlignment(size));
+    }
+
+    public MemoryHandle allocate(CharSequence string) {
+        return allocate(string, null);
+    }
+
+    public MemoryHandle allocate(CharSequence string, Charset charset) {
+        return MemoryHandle.allocateString(string, charset, size -> allocate(size, 1));
+    }
+
+    /**
+     * Returns the thread this arena is confined to, or {@code null} if it is shared.
+     */
+    public abstract Thread owner();
+
+    public abstract boolean isAlive();
+
+    /**
+     * Returns the number of bytes handed out by this arena, including alignment padding.
+     */
+    public abstract long allocatedBytes();
+
+    /**
+     * Returns the number of bytes of native memory held by this arena's chunks.
+     */
+    public abstract long reservedBytes();
+
+    /**
+     * Frees all memory allocated by this arena.
+     */
+    @Override
+    public abstract void close();
+
+}
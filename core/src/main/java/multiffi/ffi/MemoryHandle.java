@@ -2,19 +2,29 @@ package multiffi.ffi;
 
 import io.github.multiffi.ffi.DirectAlignedMemoryHandle;
 import io.github.multiffi.ffi.DirectBufferMemoryHandle;
+import io.github.multiffi.ffi.DirectMappedMemoryHandle;
 import io.github.multiffi.ffi.DirectMemoryHandle;
+import io.github.multiffi.ffi.DirectPageMemoryHandle;
 import io.github.multiffi.ffi.DirectWrapperMemoryHandle;
 import io.github.multiffi.ffi.HeapMemoryHandle;
+import io.github.multiffi.ffi.Strings;
 import io.github.multiffi.ffi.Util;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.CharBuffer;
 import java.nio.DoubleBuffer;
 import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
 import java.nio.LongBuffer;
 import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Objects;
 
 /**
  * A wrapper class which represents a block of memory.
@@ -342,15 +352,7 @@ public abstract class MemoryHandle implements Comparable<MemoryHandle>, AutoClos
     }
 
     public static MemoryHandle allocate(CharSequence string, Charset charset) {
-        if (charset == null) charset = Foreign.ansiCharset();
-        byte[] bytes;
-        if (string instanceof String) bytes = ((String) string).getBytes(charset);
-        else bytes = charset.encode(CharBuffer.wrap(string)).array();
-        byte[] terminator = "\0".getBytes(charset);
-        MemoryHandle memoryHandle = allocate(bytes.length + terminator.length);
-        memoryHandle.setInt8Array(bytes.length, terminator);
-        memoryHandle.setInt8Array(0, bytes);
-        return memoryHandle;
+        return allocateString(string, charset, MemoryHandle::allocate);
     }
 
     public static MemoryHandle allocateDirect(long size) {
@@ -362,15 +364,7 @@ public abstract class MemoryHandle implements Comparable<MemoryHandle>, AutoClos
     }
 
     public static MemoryHandle allocateDirect(CharSequence string, Charset charset) {
-        if (charset == null) charset = Foreign.ansiCharset();
-        byte[] bytes;
-        if (string instanceof String) bytes = ((String) string).getBytes(charset);
-        else bytes = charset.encode(CharBuffer.wrap(string)).array();
-        byte[] terminator = "\0".getBytes(charset);
-        MemoryHandle memoryHandle = allocateDirect(bytes.length + terminator.length);
-        memoryHandle.setInt8Array(bytes.length, terminator);
-        memoryHandle.setInt8Array(0, bytes);
-        return memoryHandle;
+        return allocateString(string, charset, MemoryHandle::allocateDirect);
     }
 
     public static MemoryHandle allocateAlignedDirect(long size, long alignment) {
@@ -382,15 +376,7 @@ public abstract class MemoryHandle implements Comparable<MemoryHandle>, AutoClos
     }
 
     public static MemoryHandle allocateAlignedDirect(CharSequence string, Charset charset, long alignment) {
-        if (charset == null) charset = Foreign.ansiCharset();
-        byte[] bytes;
-        if (string instanceof String) bytes = ((String) string).getBytes(charset);
-        else bytes = charset.encode(CharBuffer.wrap(string)).array();
-        byte[] terminator = "\0".getBytes(charset);
-        MemoryHandle memoryHandle = allocateAlignedDirect(bytes.length + terminator.length, alignment);
-        memoryHandle.setInt8Array(bytes.length, terminator);
-        memoryHandle.setInt8Array(0, bytes);
-        return memoryHandle;
+        return allocateString(string, charset, size -> allocateAlignedDirect(size, alignment));
     }
 
     public static MemoryHandle allocateOnStack(long size) {
@@ -402,15 +388,7 @@ public abstract class MemoryHandle implements Comparable<MemoryHandle>, AutoClos
     }
 
     public static MemoryHandle allocateOnStack(CharSequence string, Charset charset) {
-        if (charset == null) charset = Foreign.ansiCharset();
-        byte[] bytes;
-        if (string instanceof String) bytes = ((String) string).getBytes(charset);
-        else bytes = charset.encode(CharBuffer.wrap(string)).array();
-        byte[] terminator = "\0".getBytes(charset);
-        MemoryHandle memoryHandle = allocateOnStack(bytes.length + terminator.length);
-        memoryHandle.setInt8Array(bytes.length, terminator);
-        memoryHandle.setInt8Array(0, bytes);
-        return memoryHandle;
+        return allocateString(string, charset, MemoryHandle::allocateOnStack);
     }
 
     public static MemoryHandle allocateAlignedOnStack(long size, long alignment) {
@@ -422,14 +400,27 @@ public abstract class MemoryHandle implements Comparable<MemoryHandle>, AutoClos
     }
 
     public static MemoryHandle allocateAlignedOnStack(CharSequence string, Charset charset, long alignment) {
+        return allocateString(string, charset, size -> allocateAlignedOnStack(size, alignment));
+    }
+
+    interface Allocator {
+        MemoryHandle allocate(long size);
+    }
+
+    static MemoryHandle allocateString(CharSequence string, Charset charset, Allocator allocator) {
         if (charset == null) charset = Foreign.ansiCharset();
-        byte[] bytes;
-        if (string instanceof String) bytes = ((String) string).getBytes(charset);
-        else bytes = charset.encode(CharBuffer.wrap(string)).array();
-        byte[] terminator = "\0".getBytes(charset);
-        MemoryHandle memoryHandle = allocateAlignedOnStack(bytes.length + terminator.length, alignment);
-        memoryHandle.setInt8Array(bytes.length, terminator);
-        memoryHandle.setInt8Array(0, bytes);
+        // a string fitting in one chunk is sized by encoding it, anything longer is measured first and encoded in place
+        if (string.length() <= Strings.CHUNK_SIZE || !Strings.isSizeCounted(charset)) {
+            Strings.StringEncoder encoder = Strings.encoder(string, 0, string.length(), charset);
+            int size = encoder.next();
+            if (encoder.isDone()) {
+                MemoryHandle memoryHandle = allocator.allocate(size);
+                memoryHandle.setInt8Array(0, encoder.array(), 0, size);
+                return memoryHandle;
+            }
+        }
+        MemoryHandle memoryHandle = allocator.allocate(Memory.getZeroTerminatedStringSize(string, charset));
+        memoryHandle.setZeroTerminatedString(0, string, charset);
         return memoryHandle;
     }
 
@@ -453,6 +444,50 @@ public abstract class MemoryHandle implements Comparable<MemoryHandle>, AutoClos
         return allocateAlignedOnStack(type.size(), alignment);
     }
 
+    /**
+     * Allocates zeroed, page-aligned memory directly from the OS, bypassing malloc.
+     * The memory is released by {@link #close()}.
+     *
+     * @param size the size of the memory in bytes.
+     * @param hugePages whether to back the memory with huge pages where available, falling back to normal pages.
+     * @return a {@code MemoryHandle} instance over the memory.
+     * @throws OutOfMemoryError if the memory cannot be allocated.
+     */
+    public static MemoryHandle allocatePages(long size, boolean hugePages) {
+        long address = Memory.allocatePages(size, hugePages);
+        if (address == 0) throw new OutOfMemoryError("Failed to allocate " + size + " bytes of pages");
+        return new DirectPageMemoryHandle(address, size, hugePages);
+    }
+
+    public static MemoryHandle ofMappedAddress(long address, long size) {
+        return new DirectMappedMemoryHandle(address, size);
+    }
+
+    /**
+     * Maps a region of a file into memory. The region does not need to be page-aligned;
+     * {@link FileChannel.MapMode#READ_WRITE} grows the file to cover it.
+     * The mapping is released by {@link #close()}.
+     *
+     * @param path the file to map.
+     * @param mode the mapping mode; {@link FileChannel.MapMode#PRIVATE} maps the file copy-on-write.
+     * @param offset the offset of the region within the file.
+     * @param size the size of the region in bytes.
+     * @return a {@code MemoryHandle} instance over the mapped region.
+     */
+    public static MemoryHandle map(Path path, FileChannel.MapMode mode, long offset, long size) {
+        return ofMappedAddress(Memory.map(path, mode, offset, size), size);
+    }
+
+    public static MemoryHandle map(Path path, FileChannel.MapMode mode) {
+        long size;
+        try {
+            size = Files.size(path);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return map(path, mode, 0, size);
+    }
+
     /**
      * Indicates whether this memory object represents a native memory address.
      *
@@ -1036,7 +1071,7 @@ public abstract class MemoryHandle implements Comparable<MemoryHandle>, AutoClos
         if (size > array.length) throw new ArrayIndexOutOfBoundsException(size);
         checkBounds(offset, (long) length << 1);
         for (int i = 0; i < length; i ++) {
-            array[index + i] = getInt16(offset + (long) i << 1);
+            array[index + i] = getInt16(offset + ((long) i << 1));
         }
     }
 
@@ -1071,7 +1106,7 @@ public abstract class MemoryHandle implements Comparable<MemoryHandle>, AutoClos
         if (size > array.length) throw new ArrayIndexOutOfBoundsException(size);
         checkBounds(offset, (long) length << 1);
         for (int i = 0; i < length; i ++) {
-            setInt16(offset + (long) i << 1, array[index + i]);
+            setInt16(offset + ((long) i << 1), array[index + i]);
         }
     }
 
@@ -1106,7 +1141,7 @@ public abstract class MemoryHandle implements Comparable<MemoryHandle>, AutoClos
         if (size > array.length) throw new ArrayIndexOutOfBoundsException(size);
         checkBounds(offset, (long) length << 1);
         for (int i = 0; i < length; i ++) {
-            array[index + i] = getUTF16(offset + (long) i << 1);
+            array[index + i] = getUTF16(offset + ((long) i << 1));
         }
     }
 
@@ -1141,7 +1176,7 @@ public abstract class MemoryHandle implements Comparable<MemoryHandle>, AutoClos
         if (size > array.length) throw new ArrayIndexOutOfBoundsException(size);
         checkBounds(offset, (long) length << 1);
         for (int i = 0; i < length; i ++) {
-            setUTF16(offset + (long) i << 1, array[index + i]);
+            setUTF16(offset + ((long) i << 1), array[index + i]);
         }
     }
 
@@ -1176,7 +1211,7 @@ public abstract class MemoryHandle implements Comparable<MemoryHandle>, AutoClos
         if (size > array.length) throw new ArrayIndexOutOfBoundsException(size);
         checkBounds(offset, (long) length << 2);
         for (int i = 0; i < length; i ++) {
-            array[index + i] = getInt32(offset + (long) i << 2);
+            array[index + i] = getInt32(offset + ((long) i << 2));
         }
     }
 
@@ -1211,7 +1246,7 @@ public abstract class MemoryHandle implements Comparable<MemoryHandle>, AutoClos
         if (size > array.length) throw new ArrayIndexOutOfBoundsException(size);
         checkBounds(offset, (long) length << 2);
         for (int i = 0; i < length; i ++) {
-            setInt32(offset + (long) i << 2, array[index + i]);
+            setInt32(offset + ((long) i << 2), array[index + i]);
         }
     }
 
@@ -1246,7 +1281,7 @@ public abstract class MemoryHandle implements Comparable<MemoryHandle>, AutoClos
         if (size > array.length) throw new ArrayIndexOutOfBoundsException(size);
         checkBounds(offset, (long) length << 3);
         for (int i = 0; i < length; i ++) {
-            array[index + i] = getInt64(offset + (long) i << 3);
+            array[index + i] = getInt64(offset + ((long) i << 3));
         }
     }
 
@@ -1281,7 +1316,7 @@ public abstract class MemoryHandle implements Comparable<MemoryHandle>, AutoClos
         if (size > array.length) throw new ArrayIndexOutOfBoundsException(size);
         checkBounds(offset, (long) length << 3);
         for (int i = 0; i < length; i ++) {
-            setInt64(offset + (long) i << 3, array[index + i]);
+            setInt64(offset + ((long) i << 3), array[index + i]);
         }
     }
 
@@ -1316,7 +1351,7 @@ public abstract class MemoryHandle implements Comparable<MemoryHandle>, AutoClos
         if (size > array.length) throw new ArrayIndexOutOfBoundsException(size);
         checkBounds(offset, (long) length << 2);
         for (int i = 0; i < length; i ++) {
-            array[index + i] = getFloat(offset + (long) i << 2);
+            array[index + i] = getFloat(offset + ((long) i << 2));
         }
     }
 
@@ -1351,7 +1386,7 @@ public abstract class MemoryHandle implements Comparable<MemoryHandle>, AutoClos
         if (size > array.length) throw new ArrayIndexOutOfBoundsException(size);
         checkBounds(offset, (long) length << 2);
         for (int i = 0; i < length; i ++) {
-            setFloat(offset + (long) i << 2, array[index + i]);
+            setFloat(offset + ((long) i << 2), array[index + i]);
         }
     }
 
@@ -1386,7 +1421,7 @@ public abstract class MemoryHandle implements Comparable<MemoryHandle>, AutoClos
         if (size > array.length) throw new ArrayIndexOutOfBoundsException(size);
         checkBounds(offset, (long) length << 3);
         for (int i = 0; i < length; i ++) {
-            array[index + i] = getDouble(offset + (long) i << 3);
+            array[index + i] = getDouble(offset + ((long) i << 3));
         }
     }
 
@@ -1421,7 +1456,7 @@ public abstract class MemoryHandle implements Comparable<MemoryHandle>, AutoClos
         if (size > array.length) throw new ArrayIndexOutOfBoundsException(size);
         checkBounds(offset, (long) length << 3);
         for (int i = 0; i < length; i ++) {
-            setDouble(offset + (long) i << 3, array[index + i]);
+            setDouble(offset + ((long) i << 3), array[index + i]);
         }
     }
 
@@ -1438,6 +1473,441 @@ public abstract class MemoryHandle implements Comparable<MemoryHandle>, AutoClos
         setDoubleArray(offset, array, 0, array.length);
     }
     
+    // values swapped per chunk when writing in the non-native byte order
+    private static final int SWAP_CHUNK_LENGTH = 1024;
+
+    /**
+     * Bulk get method for multiple {@code short} values stored in the given byte order.
+     *
+     * <p>The values are copied at once and then swapped in place if {@code order} is not the native byte order.
+     *
+     * @param offset The offset from the start of the memory this {@code MemoryHandle} represents at which the first value will be read.
+     * @param array The array into which values are to be stored.
+     * @param index the start index in the {@code array} array to begin storing the values.
+     * @param length the number of values to be read.
+     * @param order the byte order of the values in memory.
+     */
+    public void getInt16Array(long offset, short[] array, int index, int length, ByteOrder order) {
+        Objects.requireNonNull(order);
+        getInt16Array(offset, array, index, length);
+        if (order != Foreign.endianness()) {
+            for (int i = index; i < index + length; i ++) {
+                array[i] = Short.reverseBytes(array[i]);
+            }
+        }
+    }
+
+    /**
+     * Bulk get method for multiple {@code short} values stored in the given byte order.
+     *
+     * @param offset The offset from the start of the memory this {@code MemoryHandle} represents at which the first value will be read.
+     * @param array The array into which values are to be stored.
+     * @param order the byte order of the values in memory.
+     */
+    public void getInt16Array(long offset, short[] array, ByteOrder order) {
+        getInt16Array(offset, array, 0, array.length, order);
+    }
+
+    /**
+     * Bulk set method for multiple {@code short} values to be stored in the given byte order.
+     *
+     * <p>If {@code order} is not the native byte order, the values are swapped through a bounded scratch array
+     * and copied a chunk at a time; {@code array} itself is left untouched.
+     *
+     * @param offset the offset from the start of the memory this {@code MemoryHandle} represents at which the first value will be written.
+     * @param array the array to get values from.
+     * @param index the start index in the {@code array} array to begin reading values.
+     * @param length the number of values to be written.
+     * @param order the byte order of the values in memory.
+     */
+    public void setInt16Array(long offset, short[] array, int index, int length, ByteOrder order) {
+        Objects.requireNonNull(order);
+        if (order == Foreign.endianness()) setInt16Array(offset, array, index, length);
+        else {
+            Util.checkArrayRange(array.length, index, length);
+            checkBounds(offset, (long) length << 1);
+            short[] chunk = new short[Math.min(length, SWAP_CHUNK_LENGTH)];
+            for (int i = 0; i < length; i += chunk.length) {
+                int count = Math.min(chunk.length, length - i);
+                for (int j = 0; j < count; j ++) {
+                    chunk[j] = Short.reverseBytes(array[index + i + j]);
+                }
+                setInt16Array(offset + ((long) i << 1), chunk, 0, count);
+            }
+        }
+    }
+
+    /**
+     * Bulk set method for multiple {@code short} values to be stored in the given byte order.
+     *
+     * @param offset the offset from the start of the memory this {@code MemoryHandle} represents at which the first value will be written.
+     * @param array the array to get values from.
+     * @param order the byte order of the values in memory.
+     */
+    public void setInt16Array(long offset, short[] array, ByteOrder order) {
+        setInt16Array(offset, array, 0, array.length, order);
+    }
+
+    /**
+     * Bulk get method for multiple {@code char} values stored in the given byte order.
+     *
+     * <p>The values are copied at once and then swapped in place if {@code order} is not the native byte order.
+     *
+     * @param offset The offset from the start of the memory this {@code MemoryHandle} represents at which the first value will be read.
+     * @param array The array into which values are to be stored.
+     * @param index the start index in the {@code array} array to begin storing the values.
+     * @param length the number of values to be read.
+     * @param order the byte order of the values in memory.
+     */
+    public void getUTF16Array(long offset, char[] array, int index, int length, ByteOrder order) {
+        Objects.requireNonNull(order);
+        getUTF16Array(offset, array, index, length);
+        if (order != Foreign.endianness()) {
+            for (int i = index; i < index + length; i ++) {
+                array[i] = Character.reverseBytes(array[i]);
+            }
+        }
+    }
+
+    /**
+     * Bulk get method for multiple {@code char} values stored in the given byte order.
+     *
+     * @param offset The offset from the start of the memory this {@code MemoryHandle} represents at which the first value will be read.
+     * @param array The array into which values are to be stored.
+     * @param order the byte order of the values in memory.
+     */
+    public void getUTF16Array(long offset, char[] array, ByteOrder order) {
+        getUTF16Array(offset, array, 0, array.length, order);
+    }
+
+    /**
+     * Bulk set method for multiple {@code char} values to be stored in the given byte order.
+     *
+     * <p>If {@code order} is not the native byte order, the values are swapped through a bounded scratch array
+     * and copied a chunk at a time; {@code array} itself is left untouched.
+     *
+     * @param offset the offset from the start of the memory this {@code MemoryHandle} represents at which the first value will be written.
+     * @param array the array to get values from.
+     * @param index the start index in the {@code array} array to begin reading values.
+     * @param length the number of values to be written.
+     * @param order the byte order of the values in memory.
+     */
+    public void setUTF16Array(long offset, char[] array, int index, int length, ByteOrder order) {
+        Objects.requireNonNull(order);
+        if (order == Foreign.endianness()) setUTF16Array(offset, array, index, length);
+        else {
+            Util.checkArrayRange(array.length, index, length);
+            checkBounds(offset, (long) length << 1);
+            char[] chunk = new char[Math.min(length, SWAP_CHUNK_LENGTH)];
+            for (int i = 0; i < length; i += chunk.length) {
+                int count = Math.min(chunk.length, length - i);
+                for (int j = 0; j < count; j ++) {
+                    chunk[j] = Character.reverseBytes(array[index + i + j]);
+                }
+                setUTF16Array(offset + ((long) i << 1), chunk, 0, count);
+            }
+        }
+    }
+
+    /**
+     * Bulk set method for multiple {@code char} values to be stored in the given byte order.
+     *
+     * @param offset the offset from the start of the memory this {@code MemoryHandle} represents at which the first value will be written.
+     * @param array the array to get values from.
+     * @param order the byte order of the values in memory.
+     */
+    public void setUTF16Array(long offset, char[] array, ByteOrder order) {
+        setUTF16Array(offset, array, 0, array.length, order);
+    }
+
+    /**
+     * Bulk get method for multiple {@code int} values stored in the given byte order.
+     *
+     * <p>The values are copied at once and then swapped in place if {@code order} is not the native byte order.
+     *
+     * @param offset The offset from the start of the memory this {@code MemoryHandle} represents at which the first value will be read.
+     * @param array The array into which values are to be stored.
+     * @param index the start index in the {@code array} array to begin storing the values.
+     * @param length the number of values to be read.
+     * @param order the byte order of the values in memory.
+     */
+    public void getInt32Array(long offset, int[] array, int index, int length, ByteOrder order) {
+        Objects.requireNonNull(order);
+        getInt32Array(offset, array, index, length);
+        if (order != Foreign.endianness()) {
+            for (int i = index; i < index + length; i ++) {
+                array[i] = Integer.reverseBytes(array[i]);
+            }
+        }
+    }
+
+    /**
+     * Bulk get method for multiple {@code int} values stored in the given byte order.
+     *
+     * @param offset The offset from the start of the memory this {@code MemoryHandle} represents at which the first value will be read.
+     * @param array The array into which values are to be stored.
+     * @param order the byte order of the values in memory.
+     */
+    public void getInt32Array(long offset, int[] array, ByteOrder order) {
+        getInt32Array(offset, array, 0, array.length, order);
+    }
+
+    /**
+     * Bulk set method for multiple {@code int} values to be stored in the given byte order.
+     *
+     * <p>If {@code order} is not the native byte order, the values are swapped through a bounded scratch array
+     * and copied a chunk at a time; {@code array} itself is left untouched.
+     *
+     * @param offset the offset from the start of the memory this {@code MemoryHandle} represents at which the first value will be written.
+     * @param array the array to get values from.
+     * @param index the start index in the {@code array} array to begin reading values.
+     * @param length the number of values to be written.
+     * @param order the byte order of the values in memory.
+     */
+    public void setInt32Array(long offset, int[] array, int index, int length, ByteOrder order) {
+        Objects.requireNonNull(order);
+        if (order == Foreign.endianness()) setInt32Array(offset, array, index, length);
+        else {
+            Util.checkArrayRange(array.length, index, length);
+            checkBounds(offset, (long) length << 2);
+            int[] chunk = new int[Math.min(length, SWAP_CHUNK_LENGTH)];
+            for (int i = 0; i < length; i += chunk.length) {
+                int count = Math.min(chunk.length, length - i);
+                for (int j = 0; j < count; j ++) {
+                    chunk[j] = Integer.reverseBytes(array[index + i + j]);
+                }
+                setInt32Array(offset + ((long) i << 2), chunk, 0, count);
+            }
+        }
+    }
+
+    /**
+     * Bulk set method for multiple {@code int} values to be stored in the given byte order.
+     *
+     * @param offset the offset from the start of the memory this {@code MemoryHandle} represents at which the first value will be written.
+     * @param array the array to get values from.
+     * @param order the byte order of the values in memory.
+     */
+    public void setInt32Array(long offset, int[] array, ByteOrder order) {
+        setInt32Array(offset, array, 0, array.length, order);
+    }
+
+    /**
+     * Bulk get method for multiple {@code long} values stored in the given byte order.
+     *
+     * <p>The values are copied at once and then swapped in place if {@code order} is not the native byte order.
+     *
+     * @param offset The offset from the start of the memory this {@code MemoryHandle} represents at which the first value will be read.
+     * @param array The array into which values are to be stored.
+     * @param index the start index in the {@code array} array to begin storing the values.
+     * @param length the number of values to be read.
+     * @param order the byte order of the values in memory.
+     */
+    public void getInt64Array(long offset, long[] array, int index, int length, ByteOrder order) {
+        Objects.requireNonNull(order);
+        getInt64Array(offset, array, index, length);
+        if (order != Foreign.endianness()) {
+            for (int i = index; i < index + length; i ++) {
+                array[i] = Long.reverseBytes(array[i]);
+            }
+        }
+    }
+
+    /**
+     * Bulk get method for multiple {@code long} values stored in the given byte order.
+     *
+     * @param offset The offset from the start of the memory this {@code MemoryHandle} represents at which the first value will be read.
+     * @param array The array into which values are to be stored.
+     * @param order the byte order of the values in memory.
+     */
+    public void getInt64Array(long offset, long[] array, ByteOrder order) {
+        getInt64Array(offset, array, 0, array.length, order);
+    }
+
+    /**
+     * Bulk set method for multiple {@code long} values to be stored in the given byte order.
+     *
+     * <p>If {@code order} is not the native byte order, the values are swapped through a bounded scratch array
+     * and copied a chunk at a time; {@code array} itself is left untouched.
+     *
+     * @param offset the offset from the start of the memory this {@code MemoryHandle} represents at which the first value will be written.
+     * @param array the array to get values from.
+     * @param index the start index in the {@code array} array to begin reading values.
+     * @param length the number of values to be written.
+     * @param order the byte order of the values in memory.
+     */
+    public void setInt64Array(long offset, long[] array, int index, int length, ByteOrder order) {
+        Objects.requireNonNull(order);
+        if (order == Foreign.endianness()) setInt64Array(offset, array, index, length);
+        else {
+            Util.checkArrayRange(array.length, index, length);
+            checkBounds(offset, (long) length << 3);
+            long[] chunk = new long[Math.min(length, SWAP_CHUNK_LENGTH)];
+            for (int i = 0; i < length; i += chunk.length) {
+                int count = Math.min(chunk.length, length - i);
+                for (int j = 0; j < count; j ++) {
+                    chunk[j] = Long.reverseBytes(array[index + i + j]);
+                }
+                setInt64Array(offset + ((long) i << 3), chunk, 0, count);
+            }
+        }
+    }
+
+    /**
+     * Bulk set method for multiple {@code long} values to be stored in the given byte order.
+     *
+     * @param offset the offset from the start of the memory this {@code MemoryHandle} represents at which the first value will be written.
+     * @param array the array to get values from.
+     * @param order the byte order of the values in memory.
+     */
+    public void setInt64Array(long offset, long[] array, ByteOrder order) {
+        setInt64Array(offset, array, 0, array.length, order);
+    }
+
+    /**
+     * Bulk get method for multiple {@code float} values stored in the given byte order.
+     *
+     * <p>The values are copied at once and then swapped in place if {@code order} is not the native byte order.
+     *
+     * @param offset The offset from the start of the memory this {@code MemoryHandle} represents at which the first value will be read.
+     * @param array The array into which values are to be stored.
+     * @param index the start index in the {@code array} array to begin storing the values.
+     * @param length the number of values to be read.
+     * @param order the byte order of the values in memory.
+     */
+    public void getFloatArray(long offset, float[] array, int index, int length, ByteOrder order) {
+        Objects.requireNonNull(order);
+        getFloatArray(offset, array, index, length);
+        if (order != Foreign.endianness()) {
+            for (int i = index; i < index + length; i ++) {
+                array[i] = Float.intBitsToFloat(Integer.reverseBytes(Float.floatToRawIntBits(array[i])));
+            }
+        }
+    }
+
+    /**
+     * Bulk get method for multiple {@code float} values stored in the given byte order.
+     *
+     * @param offset The offset from the start of the memory this {@code MemoryHandle} represents at which the first value will be read.
+     * @param array The array into which values are to be stored.
+     * @param order the byte order of the values in memory.
+     */
+    public void getFloatArray(long offset, float[] array, ByteOrder order) {
+        getFloatArray(offset, array, 0, array.length, order);
+    }
+
+    /**
+     * Bulk set method for multiple {@code float} values to be stored in the given byte order.
+     *
+     * <p>If {@code order} is not the native byte order, the values are swapped through a bounded scratch array
+     * and copied a chunk at a time; {@code array} itself is left untouched.
+     *
+     * @param offset the offset from the start of the memory this {@code MemoryHandle} represents at which the first value will be written.
+     * @param array the array to get values from.
+     * @param index the start index in the {@code array} array to begin reading values.
+     * @param length the number of values to be written.
+     * @param order the byte order of the values in memory.
+     */
+    public void setFloatArray(long offset, float[] array, int index, int length, ByteOrder order) {
+        Objects.requireNonNull(order);
+        if (order == Foreign.endianness()) setFloatArray(offset, array, index, length);
+        else {
+            Util.checkArrayRange(array.length, index, length);
+            checkBounds(offset, (long) length << 2);
+            float[] chunk = new float[Math.min(length, SWAP_CHUNK_LENGTH)];
+            for (int i = 0; i < length; i += chunk.length) {
+                int count = Math.min(chunk.length, length - i);
+                for (int j = 0; j < count; j ++) {
+                    chunk[j] = Float.intBitsToFloat(Integer.reverseBytes(Float.floatToRawIntBits(array[index + i + j])));
+                }
+                setFloatArray(offset + ((long) i << 2), chunk, 0, count);
+            }
+        }
+    }
+
+    /**
+     * Bulk set method for multiple {@code float} values to be stored in the given byte order.
+     *
+     * @param offset the offset from the start of the memory this {@code MemoryHandle} represents at which the first value will be written.
+     * @param array the array to get values from.
+     * @param order the byte order of the values in memory.
+     */
+    public void setFloatArray(long offset, float[] array, ByteOrder order) {
+        setFloatArray(offset, array, 0, array.length, order);
+    }
+
+    /**
+     * Bulk get method for multiple {@code double} values stored in the given byte order.
+     *
+     * <p>The values are copied at once and then swapped in place if {@code order} is not the native byte order.
+     *
+     * @param offset The offset from the start of the memory this {@code MemoryHandle} represents at which the first value will be read.
+     * @param array The array into which values are to be stored.
+     * @param index the start index in the {@code array} array to begin storing the values.
+     * @param length the number of values to be read.
+     * @param order the byte order of the values in memory.
+     */
+    public void getDoubleArray(long offset, double[] array, int index, int length, ByteOrder order) {
+        Objects.requireNonNull(order);
+        getDoubleArray(offset, array, index, length);
+        if (order != Foreign.endianness()) {
+            for (int i = index; i < index + length; i ++) {
+                array[i] = Double.longBitsToDouble(Long.reverseBytes(Double.doubleToRawLongBits(array[i])));
+            }
+        }
+    }
+
+    /**
+     * Bulk get method for multiple {@code double} values stored in the given byte order.
+     *
+     * @param offset The offset from the start of the memory this {@code MemoryHandle} represents at which the first value will be read.
+     * @param array The array into which values are to be stored.
+     * @param order the byte order of the values in memory.
+     */
+    public void getDoubleArray(long offset, double[] array, ByteOrder order) {
+        getDoubleArray(offset, array, 0, array.length, order);
+    }
+
+    /**
+     * Bulk set method for multiple {@code double} values to be stored in the given byte order.
+     *
+     * <p>If {@code order} is not the native byte order, the values are swapped through a bounded scratch array
+     * and copied a chunk at a time; {@code array} itself is left untouched.
+     *
+     * @param offset the offset from the start of the memory this {@code MemoryHandle} represents at which the first value will be written.
+     * @param array the array to get values from.
+     * @param index the start index in the {@code array} array to begin reading values.
+     * @param length the number of values to be written.
+     * @param order the byte order of the values in memory.
+     */
+    public void setDoubleArray(long offset, double[] array, int index, int length, ByteOrder order) {
+        Objects.requireNonNull(order);
+        if (order == Foreign.endianness()) setDoubleArray(offset, array, index, length);
+        else {
+            Util.checkArrayRange(array.length, index, length);
+            checkBounds(offset, (long) length << 3);
+            double[] chunk = new double[Math.min(length, SWAP_CHUNK_LENGTH)];
+            for (int i = 0; i < length; i += chunk.length) {
+                int count = Math.min(chunk.length, length - i);
+                for (int j = 0; j < count; j ++) {
+                    chunk[j] = Double.longBitsToDouble(Long.reverseBytes(Double.doubleToRawLongBits(array[index + i + j])));
+                }
+                setDoubleArray(offset + ((long) i << 3), chunk, 0, count);
+            }
+        }
+    }
+
+    /**
+     * Bulk set method for multiple {@code double} values to be stored in the given byte order.
+     *
+     * @param offset the offset from the start of the memory this {@code MemoryHandle} represents at which the first value will be written.
+     * @param array the array to get values from.
+     * @param order the byte order of the values in memory.
+     */
+    public void setDoubleArray(long offset, double[] array, ByteOrder order) {
+        setDoubleArray(offset, array, 0, array.length, order);
+    }
+
     /**
      * Bulk get method for multiple native {@code char} values.
      *
@@ -1908,9 +2378,26 @@ public abstract class MemoryHandle implements Comparable<MemoryHandle>, AutoClos
         return getZeroTerminatedStringLength(offset, Limits.ADDRESS_MAX, charset);
     }
 
+    /**
+     * Returns the size in bytes of the string at the given offset, not counting its terminator, or the size of the whole
+     * characters within {@code maxLength} (an unsigned value) bytes if there is no terminator, like {@code strnlen}.
+     *
+     * @param offset the offset from the start of the memory this {@code MemoryHandle} represents at which the string starts.
+     * @param maxLength the maximum size of memory to search for a '\0' character.
+     * @param charset the {@code Charset} of the string, which determines the size of its terminator.
+     * @return the size of the string in bytes.
+     */
     public long getZeroTerminatedStringLength(long offset, long maxLength, Charset charset) {
-        byte[] terminator = "\0".getBytes(charset == null ? Foreign.ansiCharset() : charset);
-        return indexOf(offset, terminator, 0, terminator.length, maxLength) - offset;
+        int terminatorSize = Strings.terminatorSize(charset == null ? Foreign.ansiCharset() : charset);
+        if (isBounded()) maxLength = Util.unsignedMin(maxLength, size() - offset);
+        long length = 0;
+        loop: for (; Long.compareUnsigned(maxLength - length, terminatorSize) >= 0; length += terminatorSize) {
+            for (int i = 0; i < terminatorSize; i ++) {
+                if (getInt8(offset + length + i) != 0) continue loop;
+            }
+            return length;
+        }
+        return length;
     }
 
     public long getZeroTerminatedUTF16StringLength(long offset) {
@@ -1944,9 +2431,7 @@ public abstract class MemoryHandle implements Comparable<MemoryHandle>, AutoClos
     public byte[] getZeroTerminatedCharArray(long offset, int maxLength, Charset charset) {
         int length = (int) getZeroTerminatedStringLength(offset, maxLength, charset);
         byte[] array = new byte[length];
-        for (int i = 0; i < length; i ++) {
-            array[i] = getChar(offset + i);
-        }
+        getInt8Array(offset, array, 0, length);
         return array;
     }
     
@@ -1955,11 +2440,9 @@ public abstract class MemoryHandle implements Comparable<MemoryHandle>, AutoClos
     }
 
     public char[] getZeroTerminatedUTF16Array(long offset, int maxLength) {
-        int length = (int) getZeroTerminatedUTF16StringLength(offset, maxLength) >>> 1;
+        int length = (int) (getZeroTerminatedUTF16StringLength(offset, maxLength) >>> 1);
         char[] array = new char[length];
-        for (int i = 0; i < length; i ++) {
-            array[i] = getUTF16(offset + (long) i << 1);
-        }
+        getUTF16Array(offset, array, 0, length);
         return array;
     }
 
@@ -2024,7 +2507,11 @@ public abstract class MemoryHandle implements Comparable<MemoryHandle>, AutoClos
      * @return the {@code String} value read from memory.
      */
     public String getZeroTerminatedString(long offset, int maxLength, Charset charset) {
-        return new String(getZeroTerminatedCharArray(offset, maxLength, charset), charset == null ? Foreign.ansiCharset() : charset);
+        if (charset == null) charset = Foreign.ansiCharset();
+        int length = (int) getZeroTerminatedStringLength(offset, maxLength, charset);
+        byte[] buffer = Strings.byteScratch(length);
+        getInt8Array(offset, buffer, 0, length);
+        return Strings.decode(buffer, 0, length, charset);
     }
 
     public String getZeroTerminatedUTF16String(long offset) {
@@ -2032,7 +2519,10 @@ public abstract class MemoryHandle implements Comparable<MemoryHandle>, AutoClos
     }
 
     public String getZeroTerminatedUTF16String(long offset, int maxLength) {
-        return getZeroTerminatedString(offset, maxLength, Foreign.utf16Charset());
+        int length = (int) (getZeroTerminatedUTF16StringLength(offset, maxLength) >>> 1);
+        char[] buffer = Strings.charScratch(length);
+        getUTF16Array(offset, buffer, 0, length);
+        return new String(buffer, 0, length);
     }
 
     public void setZeroTerminatedCharArray(long offset, byte[] array) {
@@ -2056,10 +2546,14 @@ public abstract class MemoryHandle implements Comparable<MemoryHandle>, AutoClos
     }
 
     public void setZeroTerminatedCharArray(long offset, byte[] array, int index, int length, Charset charset) {
-        for (int i = 0; i < length; i ++) {
-            setChar(offset + i, array[index + i]);
+        setInt8Array(offset, array, index, length);
+        setTerminator(offset + length, Strings.terminatorSize(charset == null ? Foreign.ansiCharset() : charset));
+    }
+
+    private void setTerminator(long offset, int size) {
+        for (int i = 0; i < size; i ++) {
+            setInt8(offset + i, (byte) 0);
         }
-        setCharArray(offset + length, "\0".getBytes(charset == null ? Foreign.ansiCharset() : charset));
     }
     
     public void setZeroTerminatedUTF16Array(long offset, char[] array) {
@@ -2067,10 +2561,8 @@ public abstract class MemoryHandle implements Comparable<MemoryHandle>, AutoClos
     }
 
     public void setZeroTerminatedUTF16Array(long offset, char[] array, int index, int length) {
-        for (int i = 0; i < length; i ++) {
-            setUTF16(offset + (long) i << 1, array[index + i]);
-        }
-        setUTF16(offset + (long) length << 1, '\0');
+        setUTF16Array(offset, array, index, length);
+        setUTF16(offset + ((long) length << 1), '\0');
     }
 
     /**
@@ -2112,12 +2604,24 @@ public abstract class MemoryHandle implements Comparable<MemoryHandle>, AutoClos
         setZeroTerminatedString(offset, string, 0, string.length(), charset);
     }
 
+    /**
+     * Writes {@code length} chars of a {@code CharSequence} from {@code index} at the given offset, using a specific {@code Charset}.
+     * The chars are encoded chunk by chunk straight into this memory with a per-thread encoder, ASCII text being stored as is;
+     * {@link Memory#getZeroTerminatedStringSize(CharSequence, int, int, Charset)} tells the exact number of bytes written.
+     *
+     * @param offset the offset from the start of the memory this {@code MemoryHandle} represents at which the value will be written.
+     * @param string the string to be written.
+     * @param index the index of the first char to write.
+     * @param length the number of chars to write.
+     * @param charset the {@code Charset} to use to encode the string.
+     */
     public void setZeroTerminatedString(long offset, CharSequence string, int index, int length, Charset charset) {
         if (charset == null) charset = Foreign.ansiCharset();
-        byte[] bytes;
-        if (string instanceof String) bytes = ((String) string).getBytes(charset);
-        else bytes = charset.encode(CharBuffer.wrap(string)).array();
-        setZeroTerminatedCharArray(offset, bytes, index, length, charset);
+        Util.checkArrayRange(string.length(), index, length);
+        Strings.StringEncoder encoder = Strings.encoder(string, index, length, charset);
+        for (int size; (size = encoder.next()) != -1; offset += size) {
+            setInt8Array(offset, encoder.array(), 0, size);
+        }
     }
 
     public void setZeroTerminatedUTF16String(long offset, CharSequence string) {
@@ -2125,10 +2629,15 @@ public abstract class MemoryHandle implements Comparable<MemoryHandle>, AutoClos
     }
 
     public void setZeroTerminatedUTF16String(long offset, CharSequence string, int index, int length) {
-        for (int i = 0; i < length; i ++) {
-            setUTF16(offset + (long) i << 1, string.charAt(index + i));
+        Util.checkArrayRange(string.length(), index, length);
+        char[] buffer = Strings.charScratch(Math.min(length, Strings.CHUNK_SIZE));
+        for (int i = 0; i < length; ) {
+            int count = Math.min(length - i, buffer.length);
+            Strings.getChars(string, index + i, index + i + count, buffer, 0);
+            setUTF16Array(offset + ((long) i << 1), buffer, 0, count);
+            i += count;
         }
-        setUTF16(offset + (long) length << 1, '\0');
+        setUTF16(offset + ((long) length << 1), '\0');
     }
 
     /**
@@ -2293,10 +2802,44 @@ public abstract class MemoryHandle implements Comparable<MemoryHandle>, AutoClos
 
     public abstract long indexOf(long offset, Object valueArray, int valueArrayOffset, int valueSize, long maxLength);
 
+    /**
+     * Returns the location of a precompiled byte pattern within the memory area represented by this {@code MemoryHandle}.
+     *
+     * @param offset the offset from the start of the memory location this {@code MemoryHandle} represents to begin searching.
+     * @param pattern the pattern to locate.
+     * @return the offset from the start of the memory this {@code MemoryHandle} represents, or -1 if not found.
+     */
+    public abstract long indexOf(long offset, MemoryPattern pattern);
+
+    /**
+     * Returns the location of a precompiled byte pattern within the memory area represented by this {@code MemoryHandle}.
+     *
+     * @param offset the offset from the start of the memory location this {@code MemoryHandle} represents to begin searching.
+     * @param pattern the pattern to locate.
+     * @param maxLength the maximum number of bytes to search, the pattern must lie entirely within them.
+     * @return the offset from the start of the memory this {@code MemoryHandle} represents, or -1 if not found.
+     */
+    public abstract long indexOf(long offset, MemoryPattern pattern, long maxLength);
+
     public boolean hasMemory() {
         return attachment() == null;
     }
 
+    /**
+     * Passes an access pattern hint for the pages this {@code MemoryHandle} spans.
+     * Only memory returned by {@code map} or {@code allocatePages} takes hints.
+     *
+     * @param advice the hint.
+     * @return true if the hint is supported on this platform and was accepted, false otherwise.
+     */
+    public abstract boolean advise(MemoryAdvice advice);
+
+    /**
+     * Writes modified pages this {@code MemoryHandle} spans back to the mapped file, waiting for completion.
+     * Does nothing for memory not returned by {@code map}.
+     */
+    public abstract void sync();
+
     public abstract boolean isNil();
 
     @Override
@@ -0,0 +1,171 @@
+package multiffi.ffi;
+
+import io.github.multiffi.ffi.Util;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * A byte sequence prepared for repeated searches over native memory and Java arrays.
+ *
+ * <p>Compiling builds the Boyer-Moore-Horspool shift table once, so that searches skip ahead by up to the pattern size
+ * at every mismatch instead of testing each offset. Long native ranges are searched with the provider's native search
+ * (such as {@code memmem}) where it is faster. Instances are immutable and may be shared between threads.</p>
+ */
+public final class MemoryPattern {
+
+    // below this size, candidates are verified inline rather than through Memory.compare
+    private static final int COMPARE_THRESHOLD = 16;
+
+    private final byte[] bytes;
+    private final int[] shifts;
+
+    private MemoryPattern(byte[] bytes) {
+        this.bytes = bytes;
+        int last = bytes.length - 1;
+        if (last < 1) this.shifts = null;
+        else {
+            this.shifts = new int[256];
+            Arrays.fill(shifts, bytes.length);
+            for (int i = 0; i < last; i ++) {
+                shifts[bytes[i] & 0xFF] = last - i;
+            }
+        }
+    }
+
+    public static MemoryPattern compile(byte[] array) {
+        return compile(array, 0, array.length);
+    }
+
+    public static MemoryPattern compile(byte[] array, int offset, int length) {
+        Objects.requireNonNull(array);
+        if (offset < 0) throw new ArrayIndexOutOfBoundsException(offset);
+        else if (length < 0) throw new ArrayIndexOutOfBoundsException(length);
+        int size = Math.addExact(offset, length);
+        if (size > array.length) throw new ArrayIndexOutOfBoundsException(size);
+        return new MemoryPattern(Arrays.copyOfRange(array, offset, size));
+    }
+
+    public static MemoryPattern compile(Object array, long arrayOffset, int size) {
+        if (size < 0) throw new IllegalArgumentException("Negative pattern size: " + size);
+        byte[] bytes = new byte[size];
+        Memory.copy(bytes, 0, array, arrayOffset, size);
+        return new MemoryPattern(bytes);
+    }
+
+    public static MemoryPattern compile(long address, int size) {
+        if (size < 0) throw new IllegalArgumentException("Negative pattern size: " + size);
+        byte[] bytes = new byte[size];
+        Memory.copy(bytes, 0, address, size);
+        return new MemoryPattern(bytes);
+    }
+
+    public int size() {
+        return bytes.length;
+    }
+
+    public byte[] toByteArray() {
+        return bytes.clone();
+    }
+
+    /**
+     * Returns the address of the first occurrence of this pattern lying entirely within {@code maxLength} bytes
+     * (an unsigned value) from {@code address}, or {@code 0} if there is none.
+     */
+    public long search(long address, long maxLength) {
+        int size = bytes.length;
+        if (size == 0) return address;
+        else if (size == 1) return Memory.search(address, bytes[0], maxLength);
+        else if (Long.compareUnsigned(maxLength, size) < 0) return 0;
+        else if (Memory.isNativeSearchPreferred(address, maxLength)) return searchNative(address, maxLength);
+        int last = size - 1;
+        byte lastByte = bytes[last];
+        long end = maxLength - size;
+        for (long i = 0; Long.compareUnsigned(i, end) <= 0; ) {
+            long index = address + i;
+            byte value = Memory.getInt8(index + last);
+            if (value == lastByte && matches(index)) return index;
+            long next = i + shifts[value & 0xFF];
+            if (Long.compareUnsigned(next, i) < 0) break;
+            i = next;
+        }
+        return 0;
+    }
+
+    public long search(long address) {
+        return search(address, Limits.ADDRESS_MAX);
+    }
+
+    private long searchNative(long address, long maxLength) {
+        Memory.pushStack();
+        try {
+            long valueAddress = Memory.allocateOnStack(bytes.length);
+            Memory.copy(valueAddress, bytes, 0, bytes.length);
+            return Memory.search(address, valueAddress, bytes.length, maxLength);
+        }
+        finally {
+            Memory.popStack();
+        }
+    }
+
+    private boolean matches(long address) {
+        int last = bytes.length - 1;
+        if (last >= COMPARE_THRESHOLD) return Memory.compare(address, bytes, 0, last) == 0;
+        for (int i = 0; i < last; i ++) {
+            if (Memory.getInt8(address + i) != bytes[i]) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the index of the first occurrence of this pattern lying entirely within {@code maxLength} bytes from
+     * {@code arrayOffset}, or {@code -1} if there is none; a negative {@code maxLength} searches to the end of the array.
+     */
+    public long search(Object array, long arrayOffset, long maxLength) {
+        long arrayLength = Util.getArrayContentSize(array);
+        if (arrayOffset < 0 || arrayOffset > arrayLength)
+            throw new ArrayIndexOutOfBoundsException("Array index out of range: " + Long.toUnsignedString(arrayOffset));
+        long remaining = arrayLength - arrayOffset;
+        if (maxLength < 0 || maxLength > remaining) maxLength = remaining;
+        int size = bytes.length;
+        if (size == 0) return arrayOffset;
+        else if (maxLength < size) return -1;
+        else if (size == 1) return Memory.search(array, arrayOffset, bytes[0], maxLength);
+        else if (array instanceof byte[]) return search((byte[]) array, (int) arrayOffset, (int) maxLength);
+        int last = size - 1;
+        byte lastByte = bytes[last];
+        long end = arrayOffset + maxLength - size;
+        for (long index = arrayOffset; index <= end; ) {
+            byte value = Memory.getInt8(array, index + last);
+            if (value == lastByte && Memory.compare(array, index, bytes, 0, last) == 0) return index;
+            index += shifts[value & 0xFF];
+        }
+        return -1;
+    }
+
+    public long search(Object array, long arrayOffset) {
+        return search(array, arrayOffset, -1);
+    }
+
+    private int search(byte[] array, int arrayOffset, int maxLength) {
+        int last = bytes.length - 1;
+        byte lastByte = bytes[last];
+        int end = arrayOffset + maxLength - bytes.length;
+        for (int index = arrayOffset; index <= end; ) {
+            byte value = array[index + last];
+            if (value == lastByte && matches(array, index)) return index;
+            index += shifts[value & 0xFF];
+        }
+        return -1;
+    }
+
+    private boolean matches(byte[] array, int index) {
+        int last = bytes.length - 1;
+        if (last >= COMPARE_THRESHOLD) return Memory.compare(array, index, bytes, 0, last) == 0;
+        for (int i = 0; i < last; i ++) {
+            if (array[index + i] != bytes[i]) return false;
+        }
+        return true;
+    }
+
+}
@@ -1,10 +1,14 @@
 package multiffi.ffi;
 
+import io.github.multiffi.ffi.MarshalTypes;
 import io.github.multiffi.ffi.Util;
 
+import java.lang.reflect.Field;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
 import java.lang.reflect.Parameter;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
@@ -33,27 +37,31 @@ public class SimpleFunctionOptionVisitor implements FunctionOptionVisitor {
         return firstVarArgIndex == null ? -1 : (firstVarArgIndex.value() < 0 ? -1 : firstVarArgIndex.value());
     }
 
+    // initialized on first use, ScalarType depends on the foreign provider
+    private static final class ScalarTypes {
+        private ScalarTypes() {
+            throw new UnsupportedOperationException();
+        }
+        private static final Map<String, ScalarType> BY_NAME = new HashMap<>();
+        static {
+            try {
+                for (Field field : ScalarType.class.getFields()) {
+                    if (Modifier.isStatic(field.getModifiers()) && field.getType() == ScalarType.class)
+                        BY_NAME.put(field.getName(), (ScalarType) field.get(null));
+                }
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException("Unexpected exception", e);
+            }
+        }
+    }
+
     private ForeignType toForeignType(Class<?> type, MarshalType marshalType) {
         String marshalTypeName = marshalType == null ? "" : marshalType.value();
         if (type == void.class) return null;
-        else if (type == boolean.class) return ScalarType.BOOLEAN;
-        else if (type == byte.class) return ScalarType.INT8;
-        else if (type == char.class) return ScalarType.UTF16;
-        else if (type == short.class) return ScalarType.INT16;
-        else if (type == int.class) {
-            if ("wchar_t".equalsIgnoreCase(marshalTypeName)) return ScalarType.WCHAR;
-            else return ScalarType.INT32;
-        }
-        else if (type == long.class) {
-            if (marshalTypeName.matches("(const\\s+)?([a-z]|[A-Z]|_)([0-9]|[a-z]|[A-Z]|_)+\\s*\\*")) return ScalarType.ADDRESS;
-            else if ("size_t".equalsIgnoreCase(marshalTypeName)) return ScalarType.SIZE;
-            else if ("long".equalsIgnoreCase(marshalTypeName)) return ScalarType.LONG;
-            else if ("int".equalsIgnoreCase(marshalTypeName)) return ScalarType.INT;
-            else if ("short".equalsIgnoreCase(marshalTypeName)) return ScalarType.SHORT;
-            else return ScalarType.INT64;
+        else if (type.isPrimitive()) {
+            String scalarTypeName = MarshalTypes.scalarTypeName(type.getName(), marshalTypeName);
+            if (scalarTypeName != null) return ScalarTypes.BY_NAME.get(scalarTypeName);
         }
-        else if (type == float.class) return ScalarType.FLOAT;
-        else if (type == double.class) return ScalarType.DOUBLE;
         else if (type == MemoryHandle.class) {
             CompoundType compoundType = typeMap.get(marshalTypeName);
             if (compoundType != null) return compoundType;
@@ -88,11 +96,8 @@ public class SimpleFunctionOptionVisitor implements FunctionOptionVisitor {
             if (callOptionStrings.length != 0 && !(callOptionStrings.length == 1 && callOptionStrings[0].isEmpty())) {
                 Set<CallOption> callOptionSet = new HashSet<>(callOptionStrings.length);
                 for (String callOptionString : callOptionStrings) {
-                    if ("dyncall".equalsIgnoreCase(callOptionString)) callOptionSet.add(StandardCallOption.DYNCALL);
-                    else if ("stdcall".equalsIgnoreCase(callOptionString)) callOptionSet.add(StandardCallOption.STDCALL);
-                    else if ("critical".equalsIgnoreCase(callOptionString)) callOptionSet.add(StandardCallOption.CRITICAL);
-                    else if ("trivial".equalsIgnoreCase(callOptionString)) callOptionSet.add(StandardCallOption.TRIVIAL);
-                    else if ("saveErrno".equalsIgnoreCase(callOptionString)) callOptionSet.add(StandardCallOption.SAVE_ERRNO);
+                    String callOptionName = MarshalTypes.callOptionName(callOptionString);
+                    if (callOptionName != null) callOptionSet.add(StandardCallOption.valueOf(callOptionName));
                 }
                 if (dyncall) callOptionSet.add(StandardCallOption.DYNCALL);
                 return callOptionSet.toArray(Util.EMPTY_CALL_OPTION_ARRAY);
@@ -1,10 +1,17 @@
 package multiffi.ffi.spi;
 
+import io.github.multiffi.ffi.MemoryMapper;
 import io.github.multiffi.ffi.StackAllocator;
+import io.github.multiffi.ffi.Strings;
+import io.github.multiffi.ffi.Util;
 import multiffi.ffi.Foreign;
 import multiffi.ffi.Limits;
+import multiffi.ffi.MemoryAdvice;
+import multiffi.ffi.MemoryPattern;
 
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
+import java.nio.file.Path;
 import java.util.Objects;
 import java.util.ServiceLoader;
 
@@ -68,6 +75,28 @@ public abstract class MemoryProvider {
     public abstract long reallocateAligned(long address, long size, long alignment);
     public abstract void freeAligned(long address);
 
+    public long allocatePages(long size, boolean hugePages) {
+        return MemoryMapper.allocatePages(size, hugePages);
+    }
+    public void freePages(long address, long size, boolean hugePages) {
+        MemoryMapper.freePages(address, size, hugePages);
+    }
+    public long hugePageSize() {
+        return MemoryMapper.hugePageSize();
+    }
+    public long map(Path path, FileChannel.MapMode mode, long offset, long size) {
+        return MemoryMapper.map(path, mode, offset, size);
+    }
+    public void unmap(long address, long size) {
+        MemoryMapper.unmap(address, size);
+    }
+    public boolean advise(long address, long size, MemoryAdvice advice) {
+        return MemoryMapper.advise(address, size, advice);
+    }
+    public void sync(long address, long size) {
+        MemoryMapper.sync(address, size);
+    }
+
     public abstract long search(long address, byte value, long maxLength);
     public long search(long address, byte value) {
         return search(address, value, Limits.ADDRESS_MAX);
@@ -88,82 +117,49 @@ public abstract class MemoryProvider {
     public long search(Object array, long arrayOffset, int value) {
         return search(array, arrayOffset, value, Limits.ADDRESS_MAX);
     }
+    /**
+     * Returns whether {@link #search(long, long, long, long)} is expected to beat a Java search over {@code maxLength}
+     * (an unsigned value) bytes at {@code address}; pattern searches over native memory then copy their pattern out of
+     * the heap and hand it over. Providers returning {@code true} must override that method.
+     */
+    public boolean isNativeSearchPreferred(long address, long maxLength) {
+        return false;
+    }
     public long search(long address, long valueAddress, long valueSize, long maxLength) {
-        if (maxLength < 0) {
-            for (long i = 0; i < Integer.MAX_VALUE; i ++) {
-                long index = address + i;
-                if (compare(index, valueAddress, valueSize) == 0) return index;
-            }
-            for (long i = Integer.MIN_VALUE; i < maxLength; i ++) {
-                long index = address + i;
-                if (compare(index, valueAddress, valueSize) == 0) return index;
-            }
-        }
-        for (long i = 0; i < maxLength; i ++) {
-            long index = address + i;
-            if (compare(index, valueAddress, valueSize) == 0) return index;
-        }
-        return 0;
+        if (valueSize < 0 || valueSize > Integer.MAX_VALUE) throw new IllegalArgumentException("Illegal value size: " + Long.toUnsignedString(valueSize));
+        return MemoryPattern.compile(valueAddress, (int) valueSize).search(address, maxLength);
     }
     public long search(long address, long valueAddress, long valueSize) {
         return search(address, valueAddress, valueSize, Limits.ADDRESS_MAX);
     }
     public long search(long address, Object valueArray, int valueArrayOffset, int valueSize, long maxLength) {
-        if (maxLength < 0) {
-            for (long i = 0; i < Integer.MAX_VALUE; i ++) {
-                long index = address + i;
-                if (compare(index, valueArray, valueArrayOffset, valueSize) == 0) return index;
-            }
-            for (long i = Integer.MIN_VALUE; i < maxLength; i ++) {
-                long index = address + i;
-                if (compare(index, valueArray, valueArrayOffset, valueSize) == 0) return index;
-            }
-        }
-        for (long i = 0; i < maxLength; i ++) {
-            long index = address + i;
-            if (compare(index, valueArray, valueArrayOffset, valueSize) == 0) return index;
+        // skips building a shift table that the native search would not use
+        if (valueSize < 2 || Long.compareUnsigned(maxLength, valueSize) < 0 || !isNativeSearchPreferred(address, maxLength))
+            return MemoryPattern.compile(valueArray, valueArrayOffset, valueSize).search(address, maxLength);
+        long arrayLength = Util.getArrayContentSize(valueArray);
+        if (valueArrayOffset < 0 || valueArrayOffset > arrayLength - valueSize)
+            throw new ArrayIndexOutOfBoundsException("Array index out of range: " + valueArrayOffset);
+        pushStack();
+        try {
+            long valueAddress = allocateOnStack(valueSize);
+            copy(valueAddress, valueArray, valueArrayOffset, valueSize);
+            return search(address, valueAddress, valueSize, maxLength);
+        }
+        finally {
+            popStack();
         }
-        return 0;
     }
     public long search(long address, Object valueArray, int valueArrayOffset, int valueSize) {
         return search(address, valueArray, valueArrayOffset, valueSize, Limits.ADDRESS_MAX);
     }
     public long search(Object array, long arrayOffset, long valueAddress, int valueSize, long maxLength) {
-        if (maxLength < 0) {
-            for (long i = 0; i < Integer.MAX_VALUE; i ++) {
-                long index = arrayOffset + i;
-                if (compare(array, index, valueAddress, valueSize) == 0) return index;
-            }
-            for (long i = Integer.MIN_VALUE; i < maxLength; i ++) {
-                long index = arrayOffset + i;
-                if (compare(array, index, valueAddress, valueSize) == 0) return index;
-            }
-        }
-        for (long i = 0; i < maxLength; i ++) {
-            long index = arrayOffset + i;
-            if (compare(array, index, valueAddress, valueSize) == 0) return index;
-        }
-        return 0;
+        return MemoryPattern.compile(valueAddress, valueSize).search(array, arrayOffset, maxLength);
     }
     public long search(Object array, long arrayOffset, long valueAddress, int valueSize) {
         return search(array, arrayOffset, valueAddress, valueSize, Limits.ADDRESS_MAX);
     }
     public long search(Object array, long arrayOffset, Object valueArray, int valueArrayOffset, int valueSize, long maxLength) {
-        if (maxLength < 0) {
-            for (long i = 0; i < Integer.MAX_VALUE; i ++) {
-                long index = arrayOffset + i;
-                if (compare(array, index, valueArray, valueArrayOffset, valueSize) == 0) return index;
-            }
-            for (long i = Integer.MIN_VALUE; i < maxLength; i ++) {
-                long index = arrayOffset + i;
-                if (compare(array, index, valueArray, valueArrayOffset, valueSize) == 0) return index;
-            }
-        }
-        for (long i = 0; i < maxLength; i ++) {
-            long index = arrayOffset + i;
-            if (compare(array, index, valueArray, valueArrayOffset, valueSize) == 0) return index;
-        }
-        return 0;
+        return MemoryPattern.compile(valueArray, valueArrayOffset, valueSize).search(array, arrayOffset, maxLength);
     }
     public long search(Object array, long arrayOffset, Object valueArray, int valueArrayOffset, int valueSize) {
         return search(array, arrayOffset, valueArray, valueArrayOffset, valueSize, Limits.ADDRESS_MAX);
@@ -276,9 +272,7 @@ public abstract class MemoryProvider {
         else if (length < 0) throw new ArrayIndexOutOfBoundsException(length);
         int size = index + length;
         if (size < 0 || size > array.length) throw new ArrayIndexOutOfBoundsException("Array index out of range: " + Integer.toUnsignedString(size));
-        for (int i = 0; i < length; i ++) {
-            array[index + i] = getInt8(address + i);
-        }
+        copy(array, index, address, length);
     }
     public void getInt8Array(long address, byte[] array) {
         getInt8Array(address, array, 0, array.length);
@@ -288,9 +282,7 @@ public abstract class MemoryProvider {
         else if (length < 0) throw new ArrayIndexOutOfBoundsException(length);
         int size = index + length;
         if (size < 0 || size > array.length) throw new ArrayIndexOutOfBoundsException("Array index out of range: " + Integer.toUnsignedString(size));
-        for (int i = 0; i < length; i ++) {
-            setInt8(address + i, array[index + i]);
-        }
+        copy(address, array, index, length);
     }
     public void setInt8Array(long address, byte[] array) {
         setInt8Array(address, array, 0, array.length);
@@ -300,9 +292,7 @@ public abstract class MemoryProvider {
         else if (length < 0) throw new ArrayIndexOutOfBoundsException(length);
         int size = index + length;
         if (size < 0 || size > array.length) throw new ArrayIndexOutOfBoundsException("Array index out of range: " + Integer.toUnsignedString(size));
-        for (int i = 0; i < length; i ++) {
-            array[index + i] = getInt16(address + (long) i << 1);
-        }
+        copy(array, (long) index << 1, address, (long) length << 1);
     }
     public void getInt16Array(long address, short[] array) {
         getInt16Array(address, array, 0, array.length);
@@ -312,9 +302,7 @@ public abstract class MemoryProvider {
         else if (length < 0) throw new ArrayIndexOutOfBoundsException(length);
         int size = index + length;
         if (size < 0 || size > array.length) throw new ArrayIndexOutOfBoundsException("Array index out of range: " + Integer.toUnsignedString(size));
-        for (int i = 0; i < length; i ++) {
-            setInt16(address + (long) i << 1, array[index + i]);
-        }
+        copy(address, array, (long) index << 1, (long) length << 1);
     }
     public void setInt16Array(long address, short[] array) {
         setInt16Array(address, array, 0, array.length);
@@ -324,9 +312,7 @@ public abstract class MemoryProvider {
         else if (length < 0) throw new ArrayIndexOutOfBoundsException(length);
         int size = index + length;
         if (size < 0 || size > array.length) throw new ArrayIndexOutOfBoundsException("Array index out of range: " + Integer.toUnsignedString(size));
-        for (int i = 0; i < length; i ++) {
-            array[index + i] = getUTF16(address + (long) i << 1);
-        }
+        copy(array, (long) index << 1, address, (long) length << 1);
     }
     public void getUTF16Array(long address, char[] array) {
         getUTF16Array(address, array, 0, array.length);
@@ -336,9 +322,7 @@ public abstract class MemoryProvider {
         else if (length < 0) throw new ArrayIndexOutOfBoundsException(length);
         int size = index + length;
         if (size < 0 || size > array.length) throw new ArrayIndexOutOfBoundsException("Array index out of range: " + Integer.toUnsignedString(size));
-        for (int i = 0; i < length; i ++) {
-            setUTF16(address + (long) i << 1, array[index + i]);
-        }
+        copy(address, array, (long) index << 1, (long) length << 1);
     }
     public void setUTF16Array(long address, char[] array) {
         setUTF16Array(address, array, 0, array.length);
@@ -348,9 +332,7 @@ public abstract class MemoryProvider {
         else if (length < 0) throw new ArrayIndexOutOfBoundsException(length);
         int size = index + length;
         if (size < 0 || size > array.length) throw new ArrayIndexOutOfBoundsException("Array index out of range: " + Integer.toUnsignedString(size));
-        for (int i = 0; i < length; i ++) {
-            array[index + i] = getInt32(address + (long) i << 2);
-        }
+        copy(array, (long) index << 2, address, (long) length << 2);
     }
     public void getInt32Array(long address, int[] array) {
         getInt32Array(address, array, 0, array.length);
@@ -360,9 +342,7 @@ public abstract class MemoryProvider {
         else if (length < 0) throw new ArrayIndexOutOfBoundsException(length);
         int size = index + length;
         if (size < 0 || size > array.length) throw new ArrayIndexOutOfBoundsException("Array index out of range: " + Integer.toUnsignedString(size));
-        for (int i = 0; i < length; i ++) {
-            setInt32(address + (long) i << 2, array[index + i]);
-        }
+        copy(address, array, (long) index << 2, (long) length << 2);
     }
     public void setInt32Array(long address, int[] array) {
         setInt32Array(address, array, 0, array.length);
@@ -372,9 +352,7 @@ public abstract class MemoryProvider {
         else if (length < 0) throw new ArrayIndexOutOfBoundsException(length);
         int size = index + length;
         if (size < 0 || size > array.length) throw new ArrayIndexOutOfBoundsException("Array index out of range: " + Integer.toUnsignedString(size));
-        for (int i = 0; i < length; i ++) {
-            array[index + i] = getInt64(address + (long) i << 3);
-        }
+        copy(array, (long) index << 3, address, (long) length << 3);
     }
     public void getInt64Array(long address, long[] array) {
         getInt64Array(address, array, 0, array.length);
@@ -384,9 +362,7 @@ public abstract class MemoryProvider {
         else if (length < 0) throw new ArrayIndexOutOfBoundsException(length);
         int size = index + length;
         if (size < 0 || size > array.length) throw new ArrayIndexOutOfBoundsException("Array index out of range: " + Integer.toUnsignedString(size));
-        for (int i = 0; i < length; i ++) {
-            setInt64(address + (long) i << 3, array[index + i]);
-        }
+        copy(address, array, (long) index << 3, (long) length << 3);
     }
     public void setInt64Array(long address, long[] array) {
         setInt64Array(address, array, 0, array.length);
@@ -396,9 +372,7 @@ public abstract class MemoryProvider {
         else if (length < 0) throw new ArrayIndexOutOfBoundsException(length);
         int size = index + length;
         if (size < 0 || size > array.length) throw new ArrayIndexOutOfBoundsException("Array index out of range: " + Integer.toUnsignedString(size));
-        for (int i = 0; i < length; i ++) {
-            array[index + i] = getFloat(address + (long) i << 2);
-        }
+        copy(array, (long) index << 2, address, (long) length << 2);
     }
     public void getFloatArray(long address, float[] array) {
         getFloatArray(address, array, 0, array.length);
@@ -408,9 +382,7 @@ public abstract class MemoryProvider {
         else if (length < 0) throw new ArrayIndexOutOfBoundsException(length);
         int size = index + length;
         if (size < 0 || size > array.length) throw new ArrayIndexOutOfBoundsException("Array index out of range: " + Integer.toUnsignedString(size));
-        for (int i = 0; i < length; i ++) {
-            setFloat(address + (long) i << 2, array[index + i]);
-        }
+        copy(address, array, (long) index << 2, (long) length << 2);
     }
     public void setFloatArray(long address, float[] array) {
         setFloatArray(address, array, 0, array.length);
@@ -420,9 +392,7 @@ public abstract class MemoryProvider {
         else if (length < 0) throw new ArrayIndexOutOfBoundsException(length);
         int size = index + length;
         if (size < 0 || size > array.length) throw new ArrayIndexOutOfBoundsException("Array index out of range: " + Integer.toUnsignedString(size));
-        for (int i = 0; i < length; i ++) {
-            array[index + i] = getDouble(address + (long) i << 3);
-        }
+        copy(array, (long) index << 3, address, (long) length << 3);
     }
     public void getDoubleArray(long address, double[] array) {
         getDoubleArray(address, array, 0, array.length);
@@ -432,9 +402,7 @@ public abstract class MemoryProvider {
         else if (length < 0) throw new ArrayIndexOutOfBoundsException(length);
         int size = index + length;
         if (size < 0 || size > array.length) throw new ArrayIndexOutOfBoundsException("Array index out of range: " + Integer.toUnsignedString(size));
-        for (int i = 0; i < length; i ++) {
-            setDouble(address + (long) i << 3, array[index + i]);
-        }
+        copy(address, array, (long) index << 3, (long) length << 3);
     }
     public void setDoubleArray(long address, double[] array) {
         setDoubleArray(address, array, 0, array.length);
@@ -456,8 +424,11 @@ public abstract class MemoryProvider {
         else if (length < 0) throw new ArrayIndexOutOfBoundsException(length);
         int size = index + length;
         if (size < 0 || size > array.length) throw new ArrayIndexOutOfBoundsException("Array index out of range: " + Integer.toUnsignedString(size));
-        for (int i = 0; i < length; i ++) {
-            array[index + i] = Int32Adapter.WCHAR.get(this, address + (long) i * Foreign.wcharSize());
+        if (Foreign.wcharSize() == 4) copy(array, (long) index << 2, address, (long) length << 2);
+        else {
+            for (int i = 0; i < length; i ++) {
+                array[index + i] = Int32Adapter.WCHAR.get(this, address + (long) i * Foreign.wcharSize());
+            }
         }
     }
     public void getWCharArray(long address, int[] array) {
@@ -468,8 +439,11 @@ public abstract class MemoryProvider {
         else if (length < 0) throw new ArrayIndexOutOfBoundsException(length);
         int size = index + length;
         if (size < 0 || size > array.length) throw new ArrayIndexOutOfBoundsException("Array index out of range: " + Integer.toUnsignedString(size));
-        for (int i = 0; i < length; i ++) {
-            Int32Adapter.WCHAR.set(this, address + (long) i * Foreign.wcharSize(), array[index + i]);
+        if (Foreign.wcharSize() == 4) copy(address, array, (long) index << 2, (long) length << 2);
+        else {
+            for (int i = 0; i < length; i ++) {
+                Int32Adapter.WCHAR.set(this, address + (long) i * Foreign.wcharSize(), array[index + i]);
+            }
         }
     }
     public void setWCharArray(long address, int[] array) {
@@ -480,8 +454,11 @@ public abstract class MemoryProvider {
         else if (length < 0) throw new ArrayIndexOutOfBoundsException(length);
         int size = index + length;
         if (size < 0 || size > array.length) throw new ArrayIndexOutOfBoundsException("Array index out of range: " + Integer.toUnsignedString(size));
-        for (int i = 0; i < length; i ++) {
-            array[index + i] = Int64Adapter.SHORT.get(this, address + (long) i * Foreign.shortSize());
+        if (Foreign.shortSize() == 8) copy(array, (long) index << 3, address, (long) length << 3);
+        else {
+            for (int i = 0; i < length; i ++) {
+                array[index + i] = Int64Adapter.SHORT.get(this, address + (long) i * Foreign.shortSize());
+            }
         }
     }
     public void getShortArray(long address, long[] array) {
@@ -492,8 +469,11 @@ public abstract class MemoryProvider {
         else if (length < 0) throw new ArrayIndexOutOfBoundsException(length);
         int size = index + length;
         if (size < 0 || size > array.length) throw new ArrayIndexOutOfBoundsException("Array index out of range: " + Integer.toUnsignedString(size));
-        for (int i = 0; i < length; i ++) {
-            Int64Adapter.SHORT.set(this, address + (long) i * Foreign.shortSize(), array[index + i]);
+        if (Foreign.shortSize() == 8) copy(address, array, (long) index << 3, (long) length << 3);
+        else {
+            for (int i = 0; i < length; i ++) {
+                Int64Adapter.SHORT.set(this, address + (long) i * Foreign.shortSize(), array[index + i]);
+            }
         }
     }
     public void setShortArray(long address, long[] array) {
@@ -504,8 +484,11 @@ public abstract class MemoryProvider {
         else if (length < 0) throw new ArrayIndexOutOfBoundsException(length);
         int size = index + length;
         if (size < 0 || size > array.length) throw new ArrayIndexOutOfBoundsException("Array index out of range: " + Integer.toUnsignedString(size));
-        for (int i = 0; i < length; i ++) {
-            array[index + i] = Int64Adapter.INT.get(this, address + (long) i * Foreign.intSize());
+        if (Foreign.intSize() == 8) copy(array, (long) index << 3, address, (long) length << 3);
+        else {
+            for (int i = 0; i < length; i ++) {
+                array[index + i] = Int64Adapter.INT.get(this, address + (long) i * Foreign.intSize());
+            }
         }
     }
     public void getIntArray(long address, long[] array) {
@@ -516,8 +499,11 @@ public abstract class MemoryProvider {
         else if (length < 0) throw new ArrayIndexOutOfBoundsException(length);
         int size = index + length;
         if (size < 0 || size > array.length) throw new ArrayIndexOutOfBoundsException("Array index out of range: " + Integer.toUnsignedString(size));
-        for (int i = 0; i < length; i ++) {
-            Int64Adapter.INT.set(this, address + (long) i * Foreign.intSize(), array[index + i]);
+        if (Foreign.intSize() == 8) copy(address, array, (long) index << 3, (long) length << 3);
+        else {
+            for (int i = 0; i < length; i ++) {
+                Int64Adapter.INT.set(this, address + (long) i * Foreign.intSize(), array[index + i]);
+            }
         }
     }
     public void setIntArray(long address, long[] array) {
@@ -528,8 +514,11 @@ public abstract class MemoryProvider {
         else if (length < 0) throw new ArrayIndexOutOfBoundsException(length);
         int size = index + length;
         if (size < 0 || size > array.length) throw new ArrayIndexOutOfBoundsException("Array index out of range: " + Integer.toUnsignedString(size));
-        for (int i = 0; i < length; i ++) {
-            Int64Adapter.LONG.set(this, address + (long) i * Foreign.longSize(), array[index + i]);
+        if (Foreign.longSize() == 8) copy(array, (long) index << 3, address, (long) length << 3);
+        else {
+            for (int i = 0; i < length; i ++) {
+                array[index + i] = Int64Adapter.LONG.get(this, address + (long) i * Foreign.longSize());
+            }
         }
     }
     public void getLongArray(long address, long[] array) {
@@ -540,8 +529,11 @@ public abstract class MemoryProvider {
         else if (length < 0) throw new ArrayIndexOutOfBoundsException(length);
         int size = index + length;
         if (size < 0 || size > array.length) throw new ArrayIndexOutOfBoundsException("Array index out of range: " + Integer.toUnsignedString(size));
-        for (int i = 0; i < length; i ++) {
-            array[index + i] = Int64Adapter.LONG.get(this, address + (long) i * Foreign.longSize());
+        if (Foreign.longSize() == 8) copy(address, array, (long) index << 3, (long) length << 3);
+        else {
+            for (int i = 0; i < length; i ++) {
+                Int64Adapter.LONG.set(this, address + (long) i * Foreign.longSize(), array[index + i]);
+            }
         }
     }
     public void setLongArray(long address, long[] array) {
@@ -552,8 +544,11 @@ public abstract class MemoryProvider {
         else if (length < 0) throw new ArrayIndexOutOfBoundsException(length);
         int size = index + length;
         if (size < 0 || size > array.length) throw new ArrayIndexOutOfBoundsException("Array index out of range: " + Integer.toUnsignedString(size));
-        for (int i = 0; i < length; i ++) {
-            Int64Adapter.ADDRESS.set(this, address + (long) i * Foreign.addressSize(), array[index + i]);
+        if (Foreign.addressSize() == 8) copy(array, (long) index << 3, address, (long) length << 3);
+        else {
+            for (int i = 0; i < length; i ++) {
+                array[index + i] = Int64Adapter.ADDRESS.get(this, address + (long) i * Foreign.addressSize());
+            }
         }
     }
     public void getAddressArray(long address, long[] array) {
@@ -564,8 +559,11 @@ public abstract class MemoryProvider {
         else if (length < 0) throw new ArrayIndexOutOfBoundsException(length);
         int size = index + length;
         if (size < 0 || size > array.length) throw new ArrayIndexOutOfBoundsException("Array index out of range: " + Integer.toUnsignedString(size));
-        for (int i = 0; i < length; i ++) {
-            Int64Adapter.ADDRESS.set(this, address + (long) i * Foreign.addressSize(), array[index + i]);
+        if (Foreign.addressSize() == 8) copy(address, array, (long) index << 3, (long) length << 3);
+        else {
+            for (int i = 0; i < length; i ++) {
+                Int64Adapter.ADDRESS.set(this, address + (long) i * Foreign.addressSize(), array[index + i]);
+            }
         }
     }
     public void setAddressArray(long address, long[] array) {
@@ -587,11 +585,24 @@ public abstract class MemoryProvider {
         return getZeroTerminatedStringLength(address, Limits.ADDRESS_MAX, charset);
     }
     public long getZeroTerminatedStringLength(long address, long maxLength, Charset charset) {
-        byte[] terminator = "\0".getBytes(charset == null ? Foreign.ansiCharset() : charset);
-        return search(address, terminator, 0, terminator.length, maxLength) - address;
+        return getZeroTerminatedLength(address, maxLength, Strings.terminatorSize(charset == null ? Foreign.ansiCharset() : charset));
+    }
+    /**
+     * Returns the number of bytes before the first all-zero unit of {@code unitSize} bytes within {@code maxLength}
+     * (an unsigned value) bytes, or the size of the units that fit if there is none, like {@code strnlen}.
+     */
+    public long getZeroTerminatedLength(long address, long maxLength, int unitSize) {
+        long i = 0;
+        loop: for (; Long.compareUnsigned(maxLength - i, unitSize) >= 0; i += unitSize) {
+            for (int j = 0; j < unitSize; j ++) {
+                if (getInt8(address + i + j) != 0) continue loop;
+            }
+            return i;
+        }
+        return i;
     }
     public long getZeroTerminatedUTF16StringLength(long address) {
-        return getZeroTerminatedStringLength(address, Limits.ADDRESS_MAX);
+        return getZeroTerminatedUTF16StringLength(address, Limits.ADDRESS_MAX);
     }
     public long getZeroTerminatedUTF16StringLength(long address, long maxLength) {
         return getZeroTerminatedStringLength(address, maxLength, Foreign.utf16Charset());
@@ -614,46 +625,48 @@ public abstract class MemoryProvider {
     public byte[] getZeroTerminatedCharArray(long address, int maxLength, Charset charset) {
         int length = (int) getZeroTerminatedStringLength(address, maxLength, charset);
         byte[] array = new byte[length];
-        for (int i = 0; i < length; i ++) {
-            array[i] = getChar(address + i);
-        }
+        getInt8Array(address, array, 0, length);
         return array;
     }
     public char[] getZeroTerminatedUTF16Array(long address) {
         return getZeroTerminatedUTF16Array(address, Integer.MAX_VALUE - 8);
     }
     public char[] getZeroTerminatedUTF16Array(long address, int maxLength) {
-        int length = (int) getZeroTerminatedUTF16StringLength(address, maxLength) >>> 1;
+        int length = (int) (getZeroTerminatedUTF16StringLength(address, maxLength) >>> 1);
         char[] array = new char[length];
-        for (int i = 0; i < length; i ++) {
-            array[i] = getUTF16(address + (long) i << 1);
-        }
+        getUTF16Array(address, array, 0, length);
         return array;
     }
     public String getZeroTerminatedString(long address) {
         return getZeroTerminatedString(address, Integer.MAX_VALUE - 8);
     }
     public String getZeroTerminatedString(long address, int maxLength) {
-        return new String(getZeroTerminatedCharArray(address, maxLength), Foreign.ansiCharset());
+        return getZeroTerminatedString(address, maxLength, null);
     }
     public String getZeroTerminatedWString(long address) {
         return getZeroTerminatedWString(address, Integer.MAX_VALUE - 8);
     }
     public String getZeroTerminatedWString(long address, int maxLength) {
-        return new String(getZeroTerminatedWCharArray(address, maxLength), Foreign.wideCharset());
+        return getZeroTerminatedString(address, maxLength, Foreign.wideCharset());
     }
     public String getZeroTerminatedString(long address, Charset charset) {
         return getZeroTerminatedString(address, Integer.MAX_VALUE - 8, charset);
     }
     public String getZeroTerminatedString(long address, int maxLength, Charset charset) {
         if (charset == null) charset = Foreign.ansiCharset();
-        return new String(getZeroTerminatedCharArray(address, maxLength, charset), charset);
+        int length = (int) getZeroTerminatedStringLength(address, maxLength, charset);
+        byte[] buffer = Strings.byteScratch(length);
+        getInt8Array(address, buffer, 0, length);
+        return Strings.decode(buffer, 0, length, charset);
     }
     public String getZeroTerminatedUTF16String(long address) {
         return getZeroTerminatedUTF16String(address, Integer.MAX_VALUE - 8);
     }
     public String getZeroTerminatedUTF16String(long address, int maxLength) {
-        return new String(getZeroTerminatedUTF16Array(address, maxLength));
+        int length = (int) (getZeroTerminatedUTF16StringLength(address, maxLength) >>> 1);
+        char[] buffer = Strings.charScratch(length);
+        getUTF16Array(address, buffer, 0, length);
+        return new String(buffer, 0, length);
     }
     public void setZeroTerminatedCharArray(long address, byte[] array) {
         setZeroTerminatedCharArray(address, array, 0, array.length);
@@ -671,46 +684,78 @@ public abstract class MemoryProvider {
         setZeroTerminatedCharArray(address, array, 0, array.length, charset);
     }
     public void setZeroTerminatedCharArray(long address, byte[] array, int index, int length, Charset charset) {
-        for (int i = 0; i < length; i ++) {
-            setChar(address + i, array[index + i]);
+        setInt8Array(address, array, index, length);
+        setTerminator(address + length, Strings.terminatorSize(charset == null ? Foreign.ansiCharset() : charset));
+    }
+    private void setTerminator(long address, int size) {
+        for (int i = 0; i < size; i ++) {
+            setInt8(address + i, (byte) 0);
         }
-        setCharArray(address + length, "\0".getBytes(charset == null ? Foreign.ansiCharset() : charset));
     }
     public void setZeroTerminatedUTF16Array(long address, char[] array) {
         setZeroTerminatedUTF16Array(address, array, 0, array.length);
     }
     public void setZeroTerminatedUTF16Array(long address, char[] array, int index, int length) {
-        for (int i = 0; i < length; i ++) {
-            setUTF16(address + (long) i << 1, array[index + i]);
-        }
-        setUTF16(address + (long) length << 1, '\0');
+        setUTF16Array(address, array, index, length);
+        setUTF16(address + ((long) length << 1), '\0');
+    }
+    /**
+     * Returns the exact number of bytes {@code setZeroTerminatedString} writes for {@code length} chars of {@code string}
+     * from {@code index}, terminator included, so that buffers can be sized without encoding twice.
+     */
+    public long getZeroTerminatedStringSize(CharSequence string, int index, int length, Charset charset) {
+        if (charset == null) charset = Foreign.ansiCharset();
+        Util.checkArrayRange(string.length(), index, length);
+        return Strings.encodedSize(string, index, length, charset);
+    }
+    public long getZeroTerminatedStringSize(CharSequence string, Charset charset) {
+        return getZeroTerminatedStringSize(string, 0, string.length(), charset);
+    }
+    public long getZeroTerminatedStringSize(CharSequence string) {
+        return getZeroTerminatedStringSize(string, 0, string.length(), null);
+    }
+    public long getZeroTerminatedWStringSize(CharSequence string) {
+        return getZeroTerminatedStringSize(string, 0, string.length(), Foreign.wideCharset());
+    }
+    public long getZeroTerminatedUTF16StringSize(CharSequence string) {
+        return ((long) string.length() << 1) + 2;
     }
     public void setZeroTerminatedString(long address, String string) {
         setZeroTerminatedString(address, string, 0, string.length());
     }
     public void setZeroTerminatedString(long address, String string, int index, int length) {
-        setZeroTerminatedCharArray(address, string.getBytes(Foreign.ansiCharset()), index, length);
+        setZeroTerminatedString(address, string, index, length, null);
     }
     public void setZeroTerminatedWString(long address, String string) {
         setZeroTerminatedWString(address, string, 0, string.length());
     }
     public void setZeroTerminatedWString(long address, String string, int index, int length) {
-        setZeroTerminatedWCharArray(address, string.getBytes(Foreign.wideCharset()), index, length);
+        setZeroTerminatedString(address, string, index, length, Foreign.wideCharset());
     }
     public void setZeroTerminatedString(long address, String string, Charset charset) {
         setZeroTerminatedString(address, string, 0, string.length(), charset);
     }
     public void setZeroTerminatedString(long address, String string, int index, int length, Charset charset) {
-        setZeroTerminatedCharArray(address, string.getBytes(charset == null ? Foreign.ansiCharset() : charset), index, length, charset);
+        if (charset == null) charset = Foreign.ansiCharset();
+        Util.checkArrayRange(string.length(), index, length);
+        Strings.StringEncoder encoder = Strings.encoder(string, index, length, charset);
+        for (int size; (size = encoder.next()) != -1; address += size) {
+            setInt8Array(address, encoder.array(), 0, size);
+        }
     }
     public void setZeroTerminatedUTF16String(long address, String string) {
         setZeroTerminatedUTF16String(address, string, 0, string.length());
     }
     public void setZeroTerminatedUTF16String(long address, String string, int index, int length) {
-        for (int i = 0; i < length; i ++) {
-            setUTF16(address + (long) i << 1, string.charAt(index + i));
+        Util.checkArrayRange(string.length(), index, length);
+        char[] buffer = Strings.charScratch(Math.min(length, Strings.CHUNK_SIZE));
+        for (int i = 0; i < length; ) {
+            int count = Math.min(length - i, buffer.length);
+            Strings.getChars(string, index + i, index + i + count, buffer, 0);
+            setUTF16Array(address + ((long) i << 1), buffer, 0, count);
+            i += count;
         }
-        setUTF16(address + (long) length << 1, '\0');
+        setUTF16(address + ((long) length << 1), '\0');
     }
 
     public abstract boolean getBoolean(Object array, long arrayOffset);
@@ -798,9 +843,7 @@ public abstract class MemoryProvider {
         else if (length < 0) throw new ArrayIndexOutOfBoundsException(length);
         int size = index + length;
         if (size < 0 || size > array.length) throw new ArrayIndexOutOfBoundsException("Array index out of range: " + Integer.toUnsignedString(size));
-        for (int i = 0; i < length; i ++) {
-            array[index + i] = getInt8(memoryArray, memoryArrayOffset + i);
-        }
+        copy(array, index, memoryArray, memoryArrayOffset, length);
     }
     public void getInt8Array(Object memoryArray, long memoryArrayOffset, byte[] array) {
         getInt8Array(memoryArray, memoryArrayOffset, array, 0, array.length);
@@ -810,9 +853,7 @@ public abstract class MemoryProvider {
         else if (length < 0) throw new ArrayIndexOutOfBoundsException(length);
         int size = index + length;
         if (size < 0 || size > array.length) throw new ArrayIndexOutOfBoundsException("Array index out of range: " + Integer.toUnsignedString(size));
-        for (int i = 0; i < length; i ++) {
-            setInt8(memoryArray, memoryArrayOffset + i, array[index + i]);
-        }
+        copy(memoryArray, memoryArrayOffset, array, index, length);
     }
     public void setInt8Array(Object memoryArray, long memoryArrayOffset, byte[] array) {
         setInt8Array(memoryArray, memoryArrayOffset, array, 0, array.length);
@@ -822,9 +863,7 @@ public abstract class MemoryProvider {
         else if (length < 0) throw new ArrayIndexOutOfBoundsException(length);
         int size = index + length;
         if (size < 0 || size > array.length) throw new ArrayIndexOutOfBoundsException("Array index out of range: " + Integer.toUnsignedString(size));
-        for (int i = 0; i < length; i ++) {
-            array[index + i] = getInt16(memoryArray, memoryArrayOffset + (long) i << 1);
-        }
+        copy(array, (long) index << 1, memoryArray, memoryArrayOffset, (long) length << 1);
     }
     public void getInt16Array(Object memoryArray, long memoryArrayOffset, short[] array) {
         getInt16Array(memoryArray, memoryArrayOffset, array, 0, array.length);
@@ -834,9 +873,7 @@ public abstract class MemoryProvider {
         else if (length < 0) throw new ArrayIndexOutOfBoundsException(length);
         int size = index + length;
         if (size < 0 || size > array.length) throw new ArrayIndexOutOfBoundsException("Array index out of range: " + Integer.toUnsignedString(size));
-        for (int i = 0; i < length; i ++) {
-            setInt16(memoryArray, memoryArrayOffset + (long) i << 1, array[index + i]);
-        }
+        copy(memoryArray, memoryArrayOffset, array, (long) index << 1, (long) length << 1);
     }
     public void setInt16Array(Object memoryArray, long memoryArrayOffset, short[] array) {
         setInt16Array(memoryArray, memoryArrayOffset, array, 0, array.length);
@@ -846,9 +883,7 @@ public abstract class MemoryProvider {
         else if (length < 0) throw new ArrayIndexOutOfBoundsException(length);
         int size = index + length;
         if (size < 0 || size > array.length) throw new ArrayIndexOutOfBoundsException("Array index out of range: " + Integer.toUnsignedString(size));
-        for (int i = 0; i < length; i ++) {
-            array[index + i] = getUTF16(memoryArray, memoryArrayOffset + (long) i << 1);
-        }
+        copy(array, (long) index << 1, memoryArray, memoryArrayOffset, (long) length << 1);
     }
     public void getUTF16Array(Object memoryArray, long memoryArrayOffset, char[] array) {
         getUTF16Array(memoryArray, memoryArrayOffset, array, 0, array.length);
@@ -858,9 +893,7 @@ public abstract class MemoryProvider {
         else if (length < 0) throw new ArrayIndexOutOfBoundsException(length);
         int size = index + length;
         if (size < 0 || size > array.length) throw new ArrayIndexOutOfBoundsException("Array index out of range: " + Integer.toUnsignedString(size));
-        for (int i = 0; i < length; i ++) {
-            setUTF16(memoryArray, memoryArrayOffset + (long) i << 1, array[index + i]);
-        }
+        copy(memoryArray, memoryArrayOffset, array, (long) index << 1, (long) length << 1);
     }
     public void setUTF16Array(Object memoryArray, long memoryArrayOffset, char[] array) {
         setUTF16Array(memoryArray, memoryArrayOffset, array, 0, array.length);
@@ -870,9 +903,7 @@ public abstract class MemoryProvider {
         else if (length < 0) throw new ArrayIndexOutOfBoundsException(length);
         int size = index + length;
         if (size < 0 || size > array.length) throw new ArrayIndexOutOfBoundsException("Array index out of range: " + Integer.toUnsignedString(size));
-        for (int i = 0; i < length; i ++) {
-            array[index + i] = getInt32(memoryArray, memoryArrayOffset + (long) i << 2);
-        }
+        copy(array, (long) index << 2, memoryArray, memoryArrayOffset, (long) length << 2);
     }
     public void getInt32Array(Object memoryArray, long memoryArrayOffset, int[] array) {
         getInt32Array(memoryArray, memoryArrayOffset, array, 0, array.length);
@@ -882,9 +913,7 @@ public abstract class MemoryProvider {
         else if (length < 0) throw new ArrayIndexOutOfBoundsException(length);
         int size = index + length;
         if (size < 0 || size > array.length) throw new ArrayIndexOutOfBoundsException("Array index out of range: " + Integer.toUnsignedString(size));
-        for (int i = 0; i < length; i ++) {
-            setInt32(memoryArray, memoryArrayOffset + (long) i << 2, array[index + i]);
-        }
+        copy(memoryArray, memoryArrayOffset, array, (long) index << 2, (long) length << 2);
     }
     public void setInt32Array(Object memoryArray, long memoryArrayOffset, int[] array) {
         setInt32Array(memoryArray, memoryArrayOffset, array, 0, array.length);
@@ -894,9 +923,7 @@ public abstract class MemoryProvider {
         else if (length < 0) throw new ArrayIndexOutOfBoundsException(length);
         int size = index + length;
         if (size < 0 || size > array.length) throw new ArrayIndexOutOfBoundsException("Array index out of range: " + Integer.toUnsignedString(size));
-        for (int i = 0; i < length; i ++) {
-            array[index + i] = getInt64(memoryArray, memoryArrayOffset + (long) i << 3);
-        }
+        copy(array, (long) index << 3, memoryArray, memoryArrayOffset, (long) length << 3);
     }
     public void getInt64Array(Object memoryArray, long memoryArrayOffset, long[] array) {
         getInt64Array(memoryArray, memoryArrayOffset, array, 0, array.length);
@@ -906,9 +933,7 @@ public abstract class MemoryProvider {
         else if (length < 0) throw new ArrayIndexOutOfBoundsException(length);
         int size = index + length;
         if (size < 0 || size > array.length) throw new ArrayIndexOutOfBoundsException("Array index out of range: " + Integer.toUnsignedString(size));
-        for (int i = 0; i < length; i ++) {
-            setInt64(memoryArray, memoryArrayOffset + (long) i << 3, array[index + i]);
-        }
+        copy(memoryArray, memoryArrayOffset, array, (long) index << 3, (long) length << 3);
     }
     public void setInt64Array(Object memoryArray, long memoryArrayOffset, long[] array) {
         setInt64Array(memoryArray, memoryArrayOffset, array, 0, array.length);
@@ -918,9 +943,7 @@ public abstract class MemoryProvider {
         else if (length < 0) throw new ArrayIndexOutOfBoundsException(length);
         int size = index + length;
         if (size < 0 || size > array.length) throw new ArrayIndexOutOfBoundsException("Array index out of range: " + Integer.toUnsignedString(size));
-        for (int i = 0; i < length; i ++) {
-            array[index + i] = getFloat(memoryArray, memoryArrayOffset + (long) i << 2);
-        }
+        copy(array, (long) index << 2, memoryArray, memoryArrayOffset, (long) length << 2);
     }
     public void getFloatArray(Object memoryArray, long memoryArrayOffset, float[] array) {
         getFloatArray(memoryArray, memoryArrayOffset, array, 0, array.length);
@@ -930,9 +953,7 @@ public abstract class MemoryProvider {
         else if (length < 0) throw new ArrayIndexOutOfBoundsException(length);
         int size = index + length;
         if (size < 0 || size > array.length) throw new ArrayIndexOutOfBoundsException("Array index out of range: " + Integer.toUnsignedString(size));
-        for (int i = 0; i < length; i ++) {
-            setFloat(memoryArray, memoryArrayOffset + (long) i << 2, array[index + i]);
-        }
+        copy(memoryArray, memoryArrayOffset, array, (long) index << 2, (long) length << 2);
     }
     public void setFloatArray(Object memoryArray, long memoryArrayOffset, float[] array) {
         setFloatArray(memoryArray, memoryArrayOffset, array, 0, array.length);
@@ -942,9 +963,7 @@ public abstract class MemoryProvider {
         else if (length < 0) throw new ArrayIndexOutOfBoundsException(length);
         int size = index + length;
         if (size < 0 || size > array.length) throw new ArrayIndexOutOfBoundsException("Array index out of range: " + Integer.toUnsignedString(size));
-        for (int i = 0; i < length; i ++) {
-            array[index + i] = getDouble(memoryArray, memoryArrayOffset + (long) i << 3);
-        }
+        copy(array, (long) index << 3, memoryArray, memoryArrayOffset, (long) length << 3);
     }
     public void getDoubleArray(Object memoryArray, long memoryArrayOffset, double[] array) {
         getDoubleArray(memoryArray, memoryArrayOffset, array, 0, array.length);
@@ -954,9 +973,7 @@ public abstract class MemoryProvider {
         else if (length < 0) throw new ArrayIndexOutOfBoundsException(length);
         int size = index + length;
         if (size < 0 || size > array.length) throw new ArrayIndexOutOfBoundsException("Array index out of range: " + Integer.toUnsignedString(size));
-        for (int i = 0; i < length; i ++) {
-            setDouble(memoryArray, memoryArrayOffset + (long) i << 3, array[index + i]);
-        }
+        copy(memoryArray, memoryArrayOffset, array, (long) index << 3, (long) length << 3);
     }
     public void setDoubleArray(Object memoryArray, long memoryArrayOffset, double[] array) {
         setDoubleArray(memoryArray, memoryArrayOffset, array, 0, array.length);
@@ -978,8 +995,11 @@ public abstract class MemoryProvider {
         else if (length < 0) throw new ArrayIndexOutOfBoundsException(length);
         int size = index + length;
         if (size < 0 || size > array.length) throw new ArrayIndexOutOfBoundsException("Array index out of range: " + Integer.toUnsignedString(size));
-        for (int i = 0; i < length; i ++) {
-            array[index + i] = Int64Adapter.SHORT.get(this, memoryArray, memoryArrayOffset + (long) i * Foreign.shortSize());
+        if (Foreign.shortSize() == 8) copy(array, (long) index << 3, memoryArray, memoryArrayOffset, (long) length << 3);
+        else {
+            for (int i = 0; i < length; i ++) {
+                array[index + i] = Int64Adapter.SHORT.get(this, memoryArray, memoryArrayOffset + (long) i * Foreign.shortSize());
+            }
         }
     }
     public void getShortArray(Object memoryArray, long memoryArrayOffset, long[] array) {
@@ -990,8 +1010,11 @@ public abstract class MemoryProvider {
         else if (length < 0) throw new ArrayIndexOutOfBoundsException(length);
         int size = index + length;
         if (size < 0 || size > array.length) throw new ArrayIndexOutOfBoundsException("Array index out of range: " + Integer.toUnsignedString(size));
-        for (int i = 0; i < length; i ++) {
-            Int64Adapter.SHORT.set(this, memoryArray, memoryArrayOffset + (long) i * Foreign.shortSize(), array[index + i]);
+        if (Foreign.shortSize() == 8) copy(memoryArray, memoryArrayOffset, array, (long) index << 3, (long) length << 3);
+        else {
+            for (int i = 0; i < length; i ++) {
+                Int64Adapter.SHORT.set(this, memoryArray, memoryArrayOffset + (long) i * Foreign.shortSize(), array[index + i]);
+            }
         }
     }
     public void setShortArray(Object memoryArray, long memoryArrayOffset, long[] array) {
@@ -1002,8 +1025,11 @@ public abstract class MemoryProvider {
         else if (length < 0) throw new ArrayIndexOutOfBoundsException(length);
         int size = index + length;
         if (size < 0 || size > array.length) throw new ArrayIndexOutOfBoundsException("Array index out of range: " + Integer.toUnsignedString(size));
-        for (int i = 0; i < length; i ++) {
-            array[index + i] = Int64Adapter.INT.get(this, memoryArray, memoryArrayOffset + (long) i * Foreign.intSize());
+        if (Foreign.intSize() == 8) copy(array, (long) index << 3, memoryArray, memoryArrayOffset, (long) length << 3);
+        else {
+            for (int i = 0; i < length; i ++) {
+                array[index + i] = Int64Adapter.INT.get(this, memoryArray, memoryArrayOffset + (long) i * Foreign.intSize());
+            }
         }
     }
     public void getIntArray(Object memoryArray, long memoryArrayOffset, long[] array) {
@@ -1014,8 +1040,11 @@ public abstract class MemoryProvider {
         else if (length < 0) throw new ArrayIndexOutOfBoundsException(length);
         int size = index + length;
         if (size < 0 || size > array.length) throw new ArrayIndexOutOfBoundsException("Array index out of range: " + Integer.toUnsignedString(size));
-        for (int i = 0; i < length; i ++) {
-            Int64Adapter.INT.set(this, memoryArray, memoryArrayOffset + (long) i * Foreign.intSize(), array[index + i]);
+        if (Foreign.intSize() == 8) copy(memoryArray, memoryArrayOffset, array, (long) index << 3, (long) length << 3);
+        else {
+            for (int i = 0; i < length; i ++) {
+                Int64Adapter.INT.set(this, memoryArray, memoryArrayOffset + (long) i * Foreign.intSize(), array[index + i]);
+            }
         }
     }
     public void setIntArray(Object memoryArray, long memoryArrayOffset, long[] array) {
@@ -1026,8 +1055,11 @@ public abstract class MemoryProvider {
         else if (length < 0) throw new ArrayIndexOutOfBoundsException(length);
         int size = index + length;
         if (size < 0 || size > array.length) throw new ArrayIndexOutOfBoundsException("Array index out of range: " + Integer.toUnsignedString(size));
-        for (int i = 0; i < length; i ++) {
-            Int64Adapter.LONG.set(this, memoryArray, memoryArrayOffset + (long) i * Foreign.longSize(), array[index + i]);
+        if (Foreign.longSize() == 8) copy(array, (long) index << 3, memoryArray, memoryArrayOffset, (long) length << 3);
+        else {
+            for (int i = 0; i < length; i ++) {
+                array[index + i] = Int64Adapter.LONG.get(this, memoryArray, memoryArrayOffset + (long) i * Foreign.longSize());
+            }
         }
     }
     public void getLongArray(Object memoryArray, long memoryArrayOffset, long[] array) {
@@ -1038,8 +1070,11 @@ public abstract class MemoryProvider {
         else if (length < 0) throw new ArrayIndexOutOfBoundsException(length);
         int size = index + length;
         if (size < 0 || size > array.length) throw new ArrayIndexOutOfBoundsException("Array index out of range: " + Integer.toUnsignedString(size));
-        for (int i = 0; i < length; i ++) {
-            array[index + i] = Int64Adapter.LONG.get(this, memoryArray, memoryArrayOffset + (long) i * Foreign.longSize());
+        if (Foreign.longSize() == 8) copy(memoryArray, memoryArrayOffset, array, (long) index << 3, (long) length << 3);
+        else {
+            for (int i = 0; i < length; i ++) {
+                Int64Adapter.LONG.set(this, memoryArray, memoryArrayOffset + (long) i * Foreign.longSize(), array[index + i]);
+            }
         }
     }
     public void setLongArray(Object memoryArray, long memoryArrayOffset, long[] array) {
@@ -1050,8 +1085,11 @@ public abstract class MemoryProvider {
         else if (length < 0) throw new ArrayIndexOutOfBoundsException(length);
         int size = index + length;
         if (size < 0 || size > array.length) throw new ArrayIndexOutOfBoundsException("Array index out of range: " + Integer.toUnsignedString(size));
-        for (int i = 0; i < length; i ++) {
-            Int64Adapter.ADDRESS.set(this, memoryArray, memoryArrayOffset + (long) i * Foreign.addressSize(), array[index + i]);
+        if (Foreign.addressSize() == 8) copy(array, (long) index << 3, memoryArray, memoryArrayOffset, (long) length << 3);
+        else {
+            for (int i = 0; i < length; i ++) {
+                array[index + i] = Int64Adapter.ADDRESS.get(this, memoryArray, memoryArrayOffset + (long) i * Foreign.addressSize());
+            }
         }
     }
     public void getAddressArray(Object memoryArray, long memoryArrayOffset, long[] array) {
@@ -1062,8 +1100,11 @@ public abstract class MemoryProvider {
         else if (length < 0) throw new ArrayIndexOutOfBoundsException(length);
         int size = index + length;
         if (size < 0 || size > array.length) throw new ArrayIndexOutOfBoundsException("Array index out of range: " + Integer.toUnsignedString(size));
-        for (int i = 0; i < length; i ++) {
-            Int64Adapter.ADDRESS.set(this, memoryArray, memoryArrayOffset + (long) i * Foreign.addressSize(), array[index + i]);
+        if (Foreign.addressSize() == 8) copy(memoryArray, memoryArrayOffset, array, (long) index << 3, (long) length << 3);
+        else {
+            for (int i = 0; i < length; i ++) {
+                Int64Adapter.ADDRESS.set(this, memoryArray, memoryArrayOffset + (long) i * Foreign.addressSize(), array[index + i]);
+            }
         }
     }
     public void setAddressArray(Object memoryArray, long memoryArrayOffset, long[] array) {
@@ -1085,36 +1126,45 @@ public abstract class MemoryProvider {
         return getZeroTerminatedStringLength(memoryArray, memoryArrayOffset, Limits.ADDRESS_MAX, charset);
     }
     public long getZeroTerminatedStringLength(Object memoryArray, long memoryArrayOffset, long maxLength, Charset charset) {
-        byte[] terminator = "\0".getBytes(charset == null ? Foreign.ansiCharset() : charset);
-        return search(memoryArray, memoryArrayOffset, terminator, 0, terminator.length, maxLength) - memoryArrayOffset;
+        return getZeroTerminatedLength(memoryArray, memoryArrayOffset, maxLength,
+                Strings.terminatorSize(charset == null ? Foreign.ansiCharset() : charset));
+    }
+    /**
+     * Returns the number of bytes before the first all-zero unit of {@code unitSize} bytes within {@code maxLength} bytes,
+     * or the size of the units that fit if there is none; a negative {@code maxLength} searches to the end of the array.
+     */
+    public long getZeroTerminatedLength(Object memoryArray, long memoryArrayOffset, long maxLength, int unitSize) {
+        long arrayLength = Util.getArrayContentSize(memoryArray);
+        if (memoryArrayOffset < 0 || memoryArrayOffset > arrayLength)
+            throw new ArrayIndexOutOfBoundsException("Array index out of range: " + Long.toUnsignedString(memoryArrayOffset));
+        long remaining = arrayLength - memoryArrayOffset;
+        if (maxLength < 0 || maxLength > remaining) maxLength = remaining;
+        long i = 0;
+        loop: for (; maxLength - i >= unitSize; i += unitSize) {
+            for (int j = 0; j < unitSize; j ++) {
+                if (getInt8(memoryArray, memoryArrayOffset + i + j) != 0) continue loop;
+            }
+            return i;
+        }
+        return i;
     }
     public long getZeroTerminatedUTF16StringLength(Object memoryArray, long memoryArrayOffset) {
-        return getZeroTerminatedStringLength(memoryArray, memoryArrayOffset, Limits.ADDRESS_MAX);
+        return getZeroTerminatedUTF16StringLength(memoryArray, memoryArrayOffset, Limits.ADDRESS_MAX);
     }
     public long getZeroTerminatedUTF16StringLength(Object memoryArray, long memoryArrayOffset, long maxLength) {
-        return getZeroTerminatedStringLength(memoryArray, memoryArrayOffset, maxLength, Foreign.utf16Charset()) >>> 1;
+        return getZeroTerminatedStringLength(memoryArray, memoryArrayOffset, maxLength, Foreign.utf16Charset());
     }
     public byte[] getZeroTerminatedCharArray(Object memoryArray, long memoryArrayOffset) {
         return getZeroTerminatedCharArray(memoryArray, memoryArrayOffset, Integer.MAX_VALUE - 8);
     }
     public byte[] getZeroTerminatedCharArray(Object memoryArray, long memoryArrayOffset, int maxLength) {
-        int length = (int) getZeroTerminatedStringLength(memoryArray, memoryArrayOffset, maxLength);
-        byte[] array = new byte[length];
-        for (int i = 0; i < length; i ++) {
-            array[i] = getChar(memoryArray, memoryArrayOffset + i);
-        }
-        return array;
+        return getZeroTerminatedCharArray(memoryArray, memoryArrayOffset, maxLength, null);
     }
     public byte[] getZeroTerminatedWCharArray(Object memoryArray, long memoryArrayOffset) {
         return getZeroTerminatedWCharArray(memoryArray, memoryArrayOffset, Integer.MAX_VALUE - 8);
     }
     public byte[] getZeroTerminatedWCharArray(Object memoryArray, long memoryArrayOffset, int maxLength) {
-        int length = (int) getZeroTerminatedWStringLength(memoryArray, memoryArrayOffset, maxLength);
-        byte[] array = new byte[length];
-        for (int i = 0; i < length; i ++) {
-            array[i] = getChar(memoryArray, memoryArrayOffset + i);
-        }
-        return array;
+        return getZeroTerminatedCharArray(memoryArray, memoryArrayOffset, maxLength, Foreign.wideCharset());
     }
     public byte[] getZeroTerminatedCharArray(Object memoryArray, long memoryArrayOffset, Charset charset) {
         return getZeroTerminatedCharArray(memoryArray, memoryArrayOffset, Integer.MAX_VALUE - 8, charset);
@@ -1122,109 +1172,118 @@ public abstract class MemoryProvider {
     public byte[] getZeroTerminatedCharArray(Object memoryArray, long memoryArrayOffset, int maxLength, Charset charset) {
         int length = (int) getZeroTerminatedStringLength(memoryArray, memoryArrayOffset, maxLength, charset);
         byte[] array = new byte[length];
-        for (int i = 0; i < length; i ++) {
-            array[i] = getChar(memoryArray, memoryArrayOffset + i);
-        }
+        getInt8Array(memoryArray, memoryArrayOffset, array, 0, length);
         return array;
     }
     public char[] getZeroTerminatedUTF16Array(Object memoryArray, long memoryArrayOffset) {
         return getZeroTerminatedUTF16Array(memoryArray, memoryArrayOffset, Integer.MAX_VALUE - 8);
     }
     public char[] getZeroTerminatedUTF16Array(Object memoryArray, long memoryArrayOffset, int maxLength) {
-        int length = (int) getZeroTerminatedUTF16StringLength(memoryArray, memoryArrayOffset, maxLength);
+        int length = (int) (getZeroTerminatedUTF16StringLength(memoryArray, memoryArrayOffset, maxLength) >>> 1);
         char[] array = new char[length];
-        for (int i = 0; i < length; i ++) {
-            array[i] = getUTF16(memoryArray, memoryArrayOffset + (long) i << 1);
-        }
+        getUTF16Array(memoryArray, memoryArrayOffset, array, 0, length);
         return array;
     }
     public String getZeroTerminatedString(Object memoryArray, long memoryArrayOffset) {
         return getZeroTerminatedString(memoryArray, memoryArrayOffset, Integer.MAX_VALUE - 8);
     }
     public String getZeroTerminatedString(Object memoryArray, long memoryArrayOffset, int maxLength) {
-        return new String(getZeroTerminatedCharArray(memoryArray, memoryArrayOffset, maxLength), Foreign.ansiCharset());
+        return getZeroTerminatedString(memoryArray, memoryArrayOffset, maxLength, null);
     }
     public String getZeroTerminatedWString(Object memoryArray, long memoryArrayOffset) {
         return getZeroTerminatedWString(memoryArray, memoryArrayOffset, Integer.MAX_VALUE - 8);
     }
     public String getZeroTerminatedWString(Object memoryArray, long memoryArrayOffset, int maxLength) {
-        return new String(getZeroTerminatedWCharArray(memoryArray, memoryArrayOffset, maxLength), Foreign.wideCharset());
+        return getZeroTerminatedString(memoryArray, memoryArrayOffset, maxLength, Foreign.wideCharset());
     }
     public String getZeroTerminatedString(Object memoryArray, long memoryArrayOffset, Charset charset) {
         return getZeroTerminatedString(memoryArray, memoryArrayOffset, Integer.MAX_VALUE - 8, charset);
     }
     public String getZeroTerminatedString(Object memoryArray, long memoryArrayOffset, int maxLength, Charset charset) {
         if (charset == null) charset = Foreign.ansiCharset();
-        return new String(getZeroTerminatedCharArray(memoryArray, memoryArrayOffset, maxLength, charset), charset);
+        int length = (int) getZeroTerminatedStringLength(memoryArray, memoryArrayOffset, maxLength, charset);
+        // byte arrays are decoded in place
+        if (memoryArray instanceof byte[]) return Strings.decode((byte[]) memoryArray, (int) memoryArrayOffset, length, charset);
+        byte[] buffer = Strings.byteScratch(length);
+        getInt8Array(memoryArray, memoryArrayOffset, buffer, 0, length);
+        return Strings.decode(buffer, 0, length, charset);
     }
     public String getZeroTerminatedUTF16String(Object memoryArray, long memoryArrayOffset) {
         return getZeroTerminatedUTF16String(memoryArray, memoryArrayOffset, Integer.MAX_VALUE - 8);
     }
     public String getZeroTerminatedUTF16String(Object memoryArray, long memoryArrayOffset, int maxLength) {
-        return new String(getZeroTerminatedUTF16Array(memoryArray, memoryArrayOffset, maxLength));
+        int length = (int) (getZeroTerminatedUTF16StringLength(memoryArray, memoryArrayOffset, maxLength) >>> 1);
+        char[] buffer = Strings.charScratch(length);
+        getUTF16Array(memoryArray, memoryArrayOffset, buffer, 0, length);
+        return new String(buffer, 0, length);
     }
     public void setZeroTerminatedCharArray(Object memoryArray, long memoryArrayOffset, byte[] array) {
         setZeroTerminatedCharArray(memoryArray, memoryArrayOffset, array, 0, array.length);
     }
     public void setZeroTerminatedCharArray(Object memoryArray, long memoryArrayOffset, byte[] array, int index, int length) {
-        for (int i = 0; i < length; i ++) {
-            setChar(memoryArray, memoryArrayOffset + i, array[index + i]);
-        }
-        setCharArray(memoryArray, memoryArrayOffset + length, "\0".getBytes(Foreign.ansiCharset()));
+        setZeroTerminatedCharArray(memoryArray, memoryArrayOffset, array, index, length, null);
     }
     public void setZeroTerminatedWCharArray(Object memoryArray, long memoryArrayOffset, byte[] array) {
         setZeroTerminatedWCharArray(memoryArray, memoryArrayOffset, array, 0, array.length);
     }
     public void setZeroTerminatedWCharArray(Object memoryArray, long memoryArrayOffset, byte[] array, int index, int length) {
-        for (int i = 0; i < length; i ++) {
-            setChar(memoryArray, memoryArrayOffset + i, array[index + i]);
-        }
-        setCharArray(memoryArray, memoryArrayOffset + length, "\0".getBytes(Foreign.wideCharset()));
+        setZeroTerminatedCharArray(memoryArray, memoryArrayOffset, array, index, length, Foreign.wideCharset());
     }
     public void setZeroTerminatedCharArray(Object memoryArray, long memoryArrayOffset, byte[] array, Charset charset) {
         setZeroTerminatedCharArray(memoryArray, memoryArrayOffset, array, 0, array.length, charset);
     }
     public void setZeroTerminatedCharArray(Object memoryArray, long memoryArrayOffset, byte[] array, int index, int length, Charset charset) {
-        for (int i = 0; i < length; i ++) {
-            setChar(memoryArray, memoryArrayOffset + i, array[index + i]);
+        setInt8Array(memoryArray, memoryArrayOffset, array, index, length);
+        setTerminator(memoryArray, memoryArrayOffset + length, Strings.terminatorSize(charset == null ? Foreign.ansiCharset() : charset));
+    }
+    private void setTerminator(Object memoryArray, long memoryArrayOffset, int size) {
+        for (int i = 0; i < size; i ++) {
+            setInt8(memoryArray, memoryArrayOffset + i, (byte) 0);
         }
-        setCharArray(memoryArray, memoryArrayOffset + length, "\0".getBytes(charset == null ? Foreign.ansiCharset() : charset));
     }
     public void setZeroTerminatedUTF16Array(Object memoryArray, long memoryArrayOffset, char[] array) {
         setZeroTerminatedUTF16Array(memoryArray, memoryArrayOffset, array, 0, array.length);
     }
     public void setZeroTerminatedUTF16Array(Object memoryArray, long memoryArrayOffset, char[] array, int index, int length) {
-        for (int i = 0; i < length; i ++) {
-            setUTF16(memoryArray, memoryArrayOffset + (long) i << 1, array[index + i]);
-        }
-        setUTF16(memoryArray, memoryArrayOffset + (long) length << 1, '\0');
+        setUTF16Array(memoryArray, memoryArrayOffset, array, index, length);
+        setUTF16(memoryArray, memoryArrayOffset + ((long) length << 1), '\0');
     }
     public void setZeroTerminatedString(Object memoryArray, long memoryArrayOffset, String string) {
         setZeroTerminatedString(memoryArray, memoryArrayOffset, string, 0, string.length());
     }
     public void setZeroTerminatedString(Object memoryArray, long memoryArrayOffset, String string, int index, int length) {
-        setZeroTerminatedCharArray(memoryArray, memoryArrayOffset, string.getBytes(Foreign.ansiCharset()), index, length);
+        setZeroTerminatedString(memoryArray, memoryArrayOffset, string, index, length, null);
     }
     public void setZeroTerminatedWString(Object memoryArray, long memoryArrayOffset, String string) {
         setZeroTerminatedWString(memoryArray, memoryArrayOffset, string, 0, string.length());
     }
     public void setZeroTerminatedWString(Object memoryArray, long memoryArrayOffset, String string, int index, int length) {
-        setZeroTerminatedWCharArray(memoryArray, memoryArrayOffset, string.getBytes(Foreign.wideCharset()), index, length);
+        setZeroTerminatedString(memoryArray, memoryArrayOffset, string, index, length, Foreign.wideCharset());
     }
     public void setZeroTerminatedString(Object memoryArray, long memoryArrayOffset, String string, Charset charset) {
         setZeroTerminatedString(memoryArray, memoryArrayOffset, string, 0, string.length(), charset);
     }
     public void setZeroTerminatedString(Object memoryArray, long memoryArrayOffset, String string, int index, int length, Charset charset) {
-        setZeroTerminatedCharArray(memoryArray, memoryArrayOffset, string.getBytes(charset == null ? Foreign.ansiCharset() : charset), index, length, charset);
+        if (charset == null) charset = Foreign.ansiCharset();
+        Util.checkArrayRange(string.length(), index, length);
+        Strings.StringEncoder encoder = Strings.encoder(string, index, length, charset);
+        for (int size; (size = encoder.next()) != -1; memoryArrayOffset += size) {
+            setInt8Array(memoryArray, memoryArrayOffset, encoder.array(), 0, size);
+        }
     }
     public void setZeroTerminatedUTF16String(Object memoryArray, long memoryArrayOffset, String string) {
         setZeroTerminatedUTF16String(memoryArray, memoryArrayOffset, string, 0, string.length());
     }
     public void setZeroTerminatedUTF16String(Object memoryArray, long memoryArrayOffset, String string, int index, int length) {
-        for (int i = 0; i < length; i ++) {
-            setUTF16(memoryArray, memoryArrayOffset + (long) i << 1, string.charAt(index + i));
-        }
-        setUTF16(memoryArray, memoryArrayOffset + (long) length << 1, '\0');
+        Util.checkArrayRange(string.length(), index, length);
+        char[] buffer = Strings.charScratch(Math.min(length, Strings.CHUNK_SIZE));
+        for (int i = 0; i < length; ) {
+            int count = Math.min(length - i, buffer.length);
+            Strings.getChars(string, index + i, index + i + count, buffer, 0);
+            setUTF16Array(memoryArray, memoryArrayOffset + ((long) i << 1), buffer, 0, count);
+            i += count;
+        }
+        setUTF16(memoryArray, memoryArrayOffset + ((long) length << 1), '\0');
     }
 
     private interface Int64Adapter {
@@ -20,6 +20,9 @@ public final class FFMAlignedAllocator {
         long applyAsLong(long first, long second, long third);
     }
     
+    // the alignment guaranteed by malloc on all supported platforms
+    private static final long MALLOC_ALIGNMENT = FFMUtil.ADDRESS_SIZE * 2L;
+
     private static final LongBinaryOperator allocateAlignedFunction;
     private static final LongTernaryOperator reallocateAlignedFunction;
     private static final LongConsumer freeAlignedFunction;
@@ -80,6 +83,41 @@ public final class FFMAlignedAllocator {
                 };
             }
         }
+        else {
+            MemorySegment aligned_allocAddress = FFMUtil.DEFAULT_LOOKUP.find("aligned_alloc").orElse(null);
+            if (aligned_allocAddress != null) {
+                FunctionDescriptor signature = FunctionDescriptor.of(ValueLayout.ADDRESS, FFMUtil.SIZE_T, FFMUtil.SIZE_T);
+                MethodHandle aligned_alloc = MethodHandles.filterReturnValue(
+                        FFMMethodFilters.filterSizeArgument(
+                                FFMMethodFilters.filterSizeArgument(
+                                        FFMUtil.LINKER.downcallHandle(aligned_allocAddress, signature), 0, false), 1, false),
+                        FFMMethodFilters.SEGMENT_TO_INT64);
+                LongBinaryOperator allocateNativeAligned = (size, alignment) -> {
+                    if (alignment <= MALLOC_ALIGNMENT) return FFMAllocator.allocate(size);
+                    // Darwin enforces the C11 requirement that size is a multiple of alignment
+                    if (FFMUtil.IS_MAC) size = Util.unsignedAddExact(size, alignment - 1) & -alignment;
+                    try {
+                        return (long) aligned_alloc.invokeExact(alignment, size);
+                    } catch (RuntimeException | Error e) {
+                        throw e;
+                    } catch (Throwable e) {
+                        throw new IllegalStateException(e);
+                    }
+                };
+                _allocateAlignedFunction = allocateNativeAligned;
+                _reallocateAlignedFunction = (address, size, alignment) -> {
+                    long reallocated = FFMAllocator.reallocate(address, size);
+                    if (reallocated == 0L || (reallocated & (alignment - 1)) == 0L) return reallocated;
+                    // realloc does not preserve the alignment, the block has to be moved once more
+                    long aligned = allocateNativeAligned.applyAsLong(size, alignment);
+                    if (aligned != 0L) FFMUtil.UNSAFE.copyMemory(reallocated, aligned, size);
+                    FFMAllocator.free(reallocated);
+                    if (aligned == 0L) throw new OutOfMemoryError("Failed to reallocate " + size + " bytes aligned to " + alignment);
+                    return aligned;
+                };
+                _freeAlignedFunction = FFMAllocator::free;
+            }
+        }
         if (_allocateAlignedFunction == null) _allocateAlignedFunction = (size, alignment) -> {
             long original;
             long offset = alignment - 1 + FFMUtil.ADDRESS_SIZE;
@@ -90,13 +128,14 @@ public final class FFMAlignedAllocator {
             return aligned;
         };
         if (_reallocateAlignedFunction == null) _reallocateAlignedFunction = (address, size, alignment) -> {
-            long aligned = FFMUtil.UNSAFE.getAddress(address - FFMUtil.ADDRESS_SIZE);
-            long original;
+            long original = FFMUtil.UNSAFE.getAddress(address - FFMUtil.ADDRESS_SIZE);
+            long shift = address - original;
             long offset = alignment - 1 + FFMUtil.ADDRESS_SIZE;
-            if ((original = FFMAllocator.reallocate(aligned, Util.unsignedAddExact(size, offset))) == 0L)
+            if ((original = FFMAllocator.reallocate(original, Util.unsignedAddExact(size, offset))) == 0L)
                 return 0L;
-            if (original != aligned) FFMAllocator.free(aligned);
-            aligned = (original + offset) & -alignment;
+            long aligned = (original + offset) & -alignment;
+            // realloc keeps the data at the old shift, which may not match the new base address
+            if (aligned - original != shift) FFMUtil.UNSAFE.copyMemory(original + shift, aligned, size);
             FFMUtil.UNSAFE.putAddress(aligned - FFMUtil.ADDRESS_SIZE, original);
             return aligned;
         };
@@ -115,8 +154,9 @@ public final class FFMAlignedAllocator {
     
     public static long allocateInitialized(long count, long size, long alignment) {
         if (alignment == 0 || (alignment & (alignment - 1)) != 0) throw new IllegalArgumentException("alignment must be a power-of-two value");
-        long address = allocateAlignedFunction.applyAsLong(FFMUtil.unsignedMultiplyExact(count, size), alignment);
-        FFMUtil.UNSAFE.setMemory(address, size, (byte) 0);
+        size = FFMUtil.unsignedMultiplyExact(count, size);
+        long address = allocateAlignedFunction.applyAsLong(size, alignment);
+        if (address != 0L) FFMUtil.UNSAFE.setMemory(address, size, (byte) 0);
         return address;
     }
     
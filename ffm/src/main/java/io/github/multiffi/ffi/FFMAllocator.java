@@ -1,10 +1,12 @@
 package io.github.multiffi.ffi;
 
 import java.lang.foreign.FunctionDescriptor;
+import java.lang.foreign.Linker;
 import java.lang.foreign.MemorySegment;
 import java.lang.foreign.ValueLayout;
 import java.lang.invoke.MethodHandle;
 import java.lang.invoke.MethodHandles;
+import java.util.function.UnaryOperator;
 
 public final class FFMAllocator {
 
@@ -12,60 +14,103 @@ public final class FFMAllocator {
         throw new AssertionError("No io.github.multiffi.ffi.FFMAllocator instances for you!");
     }
 
+    public static final boolean CRITICAL = Util.getBooleanProperty("multiffi.allocator.critical", true);
+    // larger requests may mmap, memset or memcpy long enough to hold up safepoints, so they keep the thread transition
+    public static final long CRITICAL_THRESHOLD = Math.max(0, Util.getIntProperty("multiffi.allocator.criticalThreshold", 65536));
+    // below this length, comparing or searching in Java is cheaper than any downcall
+    public static final long JAVA_THRESHOLD = 16;
+
     private static final MethodHandle mallocMethodHandle;
+    private static final MethodHandle criticalMallocMethodHandle;
     private static final MethodHandle freeMethodHandle;
     private static final MethodHandle callocMethodHandle;
+    private static final MethodHandle criticalCallocMethodHandle;
     private static final MethodHandle reallocMethodHandle;
+    private static final MethodHandle criticalReallocMethodHandle;
     private static final MethodHandle memchrMethodHandle;
+    private static final MethodHandle criticalMemchrMethodHandle;
     private static final MethodHandle memcmpMethodHandle;
+    private static final MethodHandle criticalMemcmpMethodHandle;
+    // memmem is a GNU/BSD extension, missing from the Windows C runtime
+    private static final MethodHandle memmemMethodHandle;
+    private static final MethodHandle criticalMemmemMethodHandle;
+    public static final boolean MEMMEM_SUPPORTED;
+
+    // returns the regular and the critical downcall handle, the latter only when enabled
+    private static MethodHandle[] downcallHandles(String name, FunctionDescriptor signature, UnaryOperator<MethodHandle> filter) {
+        MemorySegment address = FFMUtil.DEFAULT_LOOKUP.find(name)
+                .orElseThrow(() -> new UnsatisfiedLinkError("Failed to get symbol: `" + name + "`"));
+        MethodHandle methodHandle = filter.apply(FFMUtil.LINKER.downcallHandle(address, signature));
+        MethodHandle criticalMethodHandle = CRITICAL ?
+                filter.apply(FFMUtil.LINKER.downcallHandle(address, signature, Linker.Option.critical(false))) : methodHandle;
+        return new MethodHandle[] { methodHandle, criticalMethodHandle };
+    }
+
     static {
-        MemorySegment address = FFMUtil.DEFAULT_LOOKUP.find("malloc")
-                .orElseThrow(() -> new UnsatisfiedLinkError("Failed to get symbol: `malloc`"));
-        FunctionDescriptor signature = FunctionDescriptor.of(ValueLayout.ADDRESS, FFMUtil.SIZE_T);
-        mallocMethodHandle = MethodHandles.filterReturnValue(
-                FFMMethodFilters.filterSizeArgument(FFMUtil.LINKER.downcallHandle(address, signature), 0, false),
-                FFMMethodFilters.SEGMENT_TO_INT64);
-        address = FFMUtil.DEFAULT_LOOKUP.find("free")
-                .orElseThrow(() -> new UnsatisfiedLinkError("Failed to get symbol: `free`"));
-        signature = FunctionDescriptor.ofVoid(ValueLayout.ADDRESS);
-        freeMethodHandle = MethodHandles.filterArguments(FFMUtil.LINKER.downcallHandle(address, signature), 0,
-                FFMMethodFilters.INT64_TO_SEGMENT);
-        address = FFMUtil.DEFAULT_LOOKUP.find("calloc")
-                .orElseThrow(() -> new UnsatisfiedLinkError("Failed to get symbol: `calloc`"));
-        signature = FunctionDescriptor.of(ValueLayout.ADDRESS, FFMUtil.SIZE_T, FFMUtil.SIZE_T);
-        callocMethodHandle = MethodHandles.filterReturnValue(
-                FFMMethodFilters.filterSizeArgument(
-                        FFMMethodFilters.filterSizeArgument(FFMUtil.LINKER.downcallHandle(address, signature), 0, false), 1, false),
-                FFMMethodFilters.SEGMENT_TO_INT64);
-        address = FFMUtil.DEFAULT_LOOKUP.find("realloc")
-                .orElseThrow(() -> new UnsatisfiedLinkError("Failed to get symbol: `realloc`"));
-        signature = FunctionDescriptor.of(ValueLayout.ADDRESS, ValueLayout.ADDRESS, FFMUtil.SIZE_T);
-        reallocMethodHandle = MethodHandles.filterReturnValue(
-                FFMMethodFilters.filterSizeArgument(
-                        MethodHandles.filterArguments(FFMUtil.LINKER.downcallHandle(address, signature), 0,
-                                FFMMethodFilters.INT64_TO_SEGMENT), 1, false),
-                FFMMethodFilters.SEGMENT_TO_INT64);
-        address = FFMUtil.DEFAULT_LOOKUP.find("memchr")
-                .orElseThrow(() -> new UnsatisfiedLinkError("Failed to get symbol: `memchr`"));
-        signature = FunctionDescriptor.of(ValueLayout.ADDRESS, ValueLayout.ADDRESS, FFMUtil.INT, FFMUtil.SIZE_T);
-        memchrMethodHandle = MethodHandles.filterReturnValue(
-                FFMMethodFilters.filterSizeArgument(
-                        FFMMethodFilters.filterIntArgument(
-                                MethodHandles.filterArguments(FFMUtil.LINKER.downcallHandle(address, signature), 0,
-                                        FFMMethodFilters.INT64_TO_SEGMENT), 1, false), 2, false), FFMMethodFilters.SEGMENT_TO_INT64);
-        address = FFMUtil.DEFAULT_LOOKUP.find("memcmp")
-                .orElseThrow(() -> new UnsatisfiedLinkError("Failed to get symbol: `memcmp`"));
-        signature = FunctionDescriptor.of(FFMUtil.INT, ValueLayout.ADDRESS, ValueLayout.ADDRESS, FFMUtil.SIZE_T);
-        memcmpMethodHandle = FFMMethodFilters.filterIntReturnValue(
-                FFMMethodFilters.filterSizeArgument(
+        MethodHandle[] methodHandles = downcallHandles("malloc", FunctionDescriptor.of(ValueLayout.ADDRESS, FFMUtil.SIZE_T),
+                methodHandle -> MethodHandles.filterReturnValue(
+                        FFMMethodFilters.filterSizeArgument(methodHandle, 0, false),
+                        FFMMethodFilters.SEGMENT_TO_INT64));
+        mallocMethodHandle = methodHandles[0];
+        criticalMallocMethodHandle = methodHandles[1];
+        // the size of the freed block is unknown, and free may take arena locks or munmap it, so it keeps the thread transition
+        freeMethodHandle = MethodHandles.filterArguments(FFMUtil.LINKER.downcallHandle(FFMUtil.DEFAULT_LOOKUP.find("free")
+                        .orElseThrow(() -> new UnsatisfiedLinkError("Failed to get symbol: `free`")), FunctionDescriptor.ofVoid(ValueLayout.ADDRESS)),
+                0, FFMMethodFilters.INT64_TO_SEGMENT);
+        methodHandles = downcallHandles("calloc", FunctionDescriptor.of(ValueLayout.ADDRESS, FFMUtil.SIZE_T, FFMUtil.SIZE_T),
+                methodHandle -> MethodHandles.filterReturnValue(
+                        FFMMethodFilters.filterSizeArgument(
+                                FFMMethodFilters.filterSizeArgument(methodHandle, 0, false), 1, false),
+                        FFMMethodFilters.SEGMENT_TO_INT64));
+        callocMethodHandle = methodHandles[0];
+        criticalCallocMethodHandle = methodHandles[1];
+        methodHandles = downcallHandles("realloc", FunctionDescriptor.of(ValueLayout.ADDRESS, ValueLayout.ADDRESS, FFMUtil.SIZE_T),
+                methodHandle -> MethodHandles.filterReturnValue(
+                        FFMMethodFilters.filterSizeArgument(
+                                MethodHandles.filterArguments(methodHandle, 0, FFMMethodFilters.INT64_TO_SEGMENT), 1, false),
+                        FFMMethodFilters.SEGMENT_TO_INT64));
+        reallocMethodHandle = methodHandles[0];
+        criticalReallocMethodHandle = methodHandles[1];
+        methodHandles = downcallHandles("memchr", FunctionDescriptor.of(ValueLayout.ADDRESS, ValueLayout.ADDRESS, FFMUtil.INT, FFMUtil.SIZE_T),
+                methodHandle -> MethodHandles.filterReturnValue(
+                        FFMMethodFilters.filterSizeArgument(
+                                FFMMethodFilters.filterIntArgument(
+                                        MethodHandles.filterArguments(methodHandle, 0, FFMMethodFilters.INT64_TO_SEGMENT), 1, false), 2, false),
+                        FFMMethodFilters.SEGMENT_TO_INT64));
+        memchrMethodHandle = methodHandles[0];
+        criticalMemchrMethodHandle = methodHandles[1];
+        methodHandles = downcallHandles("memcmp", FunctionDescriptor.of(FFMUtil.INT, ValueLayout.ADDRESS, ValueLayout.ADDRESS, FFMUtil.SIZE_T),
+                methodHandle -> FFMMethodFilters.filterSizeArgument(
                         MethodHandles.filterArguments(
-                                MethodHandles.filterArguments(FFMUtil.LINKER.downcallHandle(address, signature)
-                                        , 0, FFMMethodFilters.INT64_TO_SEGMENT), 1, FFMMethodFilters.INT64_TO_SEGMENT), 2, false), false);
+                                MethodHandles.filterArguments(methodHandle, 0, FFMMethodFilters.INT64_TO_SEGMENT),
+                                1, FFMMethodFilters.INT64_TO_SEGMENT), 2, false));
+        memcmpMethodHandle = methodHandles[0];
+        criticalMemcmpMethodHandle = methodHandles[1];
+        if (FFMUtil.DEFAULT_LOOKUP.find("memmem").isPresent()) {
+            methodHandles = downcallHandles("memmem", FunctionDescriptor.of(ValueLayout.ADDRESS,
+                            ValueLayout.ADDRESS, FFMUtil.SIZE_T, ValueLayout.ADDRESS, FFMUtil.SIZE_T),
+                    methodHandle -> MethodHandles.filterReturnValue(
+                            FFMMethodFilters.filterSizeArgument(
+                                    MethodHandles.filterArguments(
+                                            FFMMethodFilters.filterSizeArgument(
+                                                    MethodHandles.filterArguments(methodHandle, 0, FFMMethodFilters.INT64_TO_SEGMENT),
+                                                    1, false), 2, FFMMethodFilters.INT64_TO_SEGMENT), 3, false),
+                            FFMMethodFilters.SEGMENT_TO_INT64));
+            memmemMethodHandle = methodHandles[0];
+            criticalMemmemMethodHandle = methodHandles[1];
+        }
+        else memmemMethodHandle = criticalMemmemMethodHandle = null;
+        MEMMEM_SUPPORTED = memmemMethodHandle != null;
+    }
+
+    private static boolean isCritical(long size) {
+        return Long.compareUnsigned(size, CRITICAL_THRESHOLD) <= 0;
     }
     
     public static long allocate(long size) {
         try {
-            return (long) mallocMethodHandle.invokeExact(size);
+            if (isCritical(size)) return (long) criticalMallocMethodHandle.invokeExact(size);
+            else return (long) mallocMethodHandle.invokeExact(size);
         } catch (RuntimeException | Error e) {
             throw e;
         } catch (Throwable e) {
@@ -75,7 +120,9 @@ public final class FFMAllocator {
     
     public static long allocateInitialized(long count, long size) {
         try {
-            return (long) callocMethodHandle.invokeExact(count, size);
+            if (isCritical(count) && isCritical(size) && isCritical(count * size))
+                return (long) criticalCallocMethodHandle.invokeExact(count, size);
+            else return (long) callocMethodHandle.invokeExact(count, size);
         } catch (RuntimeException | Error e) {
             throw e;
         } catch (Throwable e) {
@@ -85,7 +132,8 @@ public final class FFMAllocator {
     
     public static long reallocate(long address, long size) {
         try {
-            return (long) reallocMethodHandle.invokeExact(address, size);
+            if (isCritical(size)) return (long) criticalReallocMethodHandle.invokeExact(address, size);
+            else return (long) reallocMethodHandle.invokeExact(address, size);
         } catch (RuntimeException | Error e) {
             throw e;
         } catch (Throwable e) {
@@ -104,8 +152,16 @@ public final class FFMAllocator {
     }
     
     public static long search(long address, byte value, long maxLength) {
+        if (Long.compareUnsigned(maxLength, JAVA_THRESHOLD) <= 0) {
+            for (long i = 0; i < maxLength; i ++) {
+                if (FFMUtil.UNSAFE.getByte(address + i) == value) return address + i;
+            }
+            return 0L;
+        }
+        long intValue = value & 0xFF;
         try {
-            return (long) memchrMethodHandle.invokeExact(address, value, maxLength);
+            if (isCritical(maxLength)) return (long) criticalMemchrMethodHandle.invokeExact(address, intValue, maxLength);
+            else return (long) memchrMethodHandle.invokeExact(address, intValue, maxLength);
         } catch (RuntimeException | Error e) {
             throw e;
         } catch (Throwable e) {
@@ -113,9 +169,28 @@ public final class FFMAllocator {
         }
     }
     
+    public static long search(long address, long maxLength, long valueAddress, long valueSize) {
+        try {
+            if (isCritical(maxLength)) return (long) criticalMemmemMethodHandle.invokeExact(address, maxLength, valueAddress, valueSize);
+            else return (long) memmemMethodHandle.invokeExact(address, maxLength, valueAddress, valueSize);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
     public static int compare(long aAddress, long bAddress, long size) {
+        if (Long.compareUnsigned(size, JAVA_THRESHOLD) <= 0) {
+            for (long i = 0; i < size; i ++) {
+                int cmp = Byte.compareUnsigned(FFMUtil.UNSAFE.getByte(aAddress + i), FFMUtil.UNSAFE.getByte(bAddress + i));
+                if (cmp != 0) return cmp;
+            }
+            return 0;
+        }
         try {
-            return (int) memcmpMethodHandle.invokeExact(aAddress, bAddress, size);
+            if (isCritical(size)) return (int) criticalMemcmpMethodHandle.invokeExact(aAddress, bAddress, size);
+            else return (int) memcmpMethodHandle.invokeExact(aAddress, bAddress, size);
         } catch (RuntimeException | Error e) {
             throw e;
         } catch (Throwable e) {
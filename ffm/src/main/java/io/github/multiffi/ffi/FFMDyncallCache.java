@@ -0,0 +1,100 @@
+package io.github.multiffi.ffi;
+
+import java.lang.foreign.MemoryLayout;
+import java.lang.invoke.MethodHandle;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+public final class FFMDyncallCache {
+
+    public static final int CAPACITY = Math.max(0, Util.getIntProperty("multiffi.foreign.dyncallCacheCapacity", 64));
+
+    private static final LongAdder HITS = new LongAdder();
+    private static final LongAdder MISSES = new LongAdder();
+    private static final LongAdder EVICTIONS = new LongAdder();
+
+    public static long hitCount() {
+        return HITS.sum();
+    }
+
+    public static long missCount() {
+        return MISSES.sum();
+    }
+
+    public static long evictionCount() {
+        return EVICTIONS.sum();
+    }
+
+    public static final class Linkage {
+        private final MethodHandle methodHandle;
+        private final FFMFunctionHandle.Invoker invoker;
+        public Linkage(MethodHandle methodHandle, FFMFunctionHandle.Invoker invoker) {
+            this.methodHandle = methodHandle;
+            this.invoker = invoker;
+        }
+        public MethodHandle methodHandle() {
+            return methodHandle;
+        }
+        public FFMFunctionHandle.Invoker invoker() {
+            return invoker;
+        }
+    }
+
+    private static final class Shape {
+        private final MemoryLayout[] layouts;
+        private final int hashCode;
+        private Shape(MemoryLayout[] layouts) {
+            this.layouts = layouts;
+            this.hashCode = Arrays.hashCode(layouts);
+        }
+        @Override
+        public boolean equals(Object object) {
+            if (this == object) return true;
+            if (!(object instanceof Shape)) return false;
+            Shape that = (Shape) object;
+            return hashCode == that.hashCode && Arrays.equals(layouts, that.layouts);
+        }
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+
+    private final ConcurrentHashMap<Shape, Linkage> linkages = new ConcurrentHashMap<>();
+    private final Function<MemoryLayout[], Linkage> linker;
+
+    public FFMDyncallCache(Function<MemoryLayout[], Linkage> linker) {
+        this.linker = linker;
+    }
+
+    public Linkage get(MemoryLayout[] varargLayouts) {
+        Shape shape = new Shape(varargLayouts);
+        Linkage linkage = linkages.get(shape);
+        if (linkage != null) {
+            HITS.increment();
+            return linkage;
+        }
+        MISSES.increment();
+        linkage = linker.apply(varargLayouts);
+        if (CAPACITY == 0) return linkage;
+        while (linkages.size() >= CAPACITY) {
+            Iterator<Shape> iterator = linkages.keySet().iterator();
+            if (!iterator.hasNext()) break;
+            if (linkages.remove(iterator.next()) != null) EVICTIONS.increment();
+        }
+        Linkage previous = linkages.putIfAbsent(shape, linkage);
+        return previous == null ? linkage : previous;
+    }
+
+    public int size() {
+        return linkages.size();
+    }
+
+    public void clear() {
+        linkages.clear();
+    }
+
+}
@@ -0,0 +1,185 @@
+package io.github.multiffi.ffi;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.MemoryAddress;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+public class FFMEvents extends ForeignEvents {
+
+    @Name("multiffi.SymbolLookup")
+    @Label("Symbol Lookup")
+    @Category({"Multiffi", "FFI"})
+    private static final class SymbolLookupEvent extends Event {
+        @Label("Symbol")
+        String symbol;
+        @Label("Address")
+        @MemoryAddress
+        long address;
+        @Label("Elapsed")
+        @Timespan
+        long elapsed;
+    }
+
+    @Name("multiffi.DowncallLink")
+    @Label("Downcall Link")
+    @Category({"Multiffi", "FFI"})
+    private static final class DowncallLinkEvent extends Event {
+        @Label("Symbol")
+        String symbol;
+        @Label("Address")
+        @MemoryAddress
+        long address;
+        @Label("Signature")
+        String signature;
+        @Label("Elapsed")
+        @Timespan
+        long elapsed;
+    }
+
+    @Name("multiffi.Downcall")
+    @Label("Downcall")
+    @Category({"Multiffi", "FFI"})
+    @StackTrace(false)
+    private static final class DowncallEvent extends Event {
+        @Label("Symbol")
+        String symbol;
+        @Label("Address")
+        @MemoryAddress
+        long address;
+        @Label("Elapsed")
+        @Timespan
+        long elapsed;
+    }
+
+    @Name("multiffi.UpcallStub")
+    @Label("Upcall Stub Creation")
+    @Category({"Multiffi", "FFI"})
+    private static final class UpcallStubEvent extends Event {
+        @Label("Method")
+        String method;
+        @Label("Address")
+        @MemoryAddress
+        long address;
+        @Label("Elapsed")
+        @Timespan
+        long elapsed;
+    }
+
+    @Name("multiffi.Upcall")
+    @Label("Upcall")
+    @Category({"Multiffi", "FFI"})
+    @StackTrace(false)
+    private static final class UpcallEvent extends Event {
+        @Label("Method")
+        String method;
+        @Label("Elapsed")
+        @Timespan
+        long elapsed;
+    }
+
+    @Name("multiffi.NativeAllocation")
+    @Label("Native Allocation")
+    @Category({"Multiffi", "Memory"})
+    private static final class NativeAllocationEvent extends Event {
+        @Label("Kind")
+        String kind;
+        @Label("Address")
+        @MemoryAddress
+        long address;
+        @Label("Size")
+        @DataAmount
+        long size;
+    }
+
+    @Name("multiffi.NativeFree")
+    @Label("Native Free")
+    @Category({"Multiffi", "Memory"})
+    private static final class NativeFreeEvent extends Event {
+        @Label("Kind")
+        String kind;
+        @Label("Address")
+        @MemoryAddress
+        long address;
+    }
+
+    // symbol names by address, so that link and call events of handles created from raw addresses can still be attributed
+    private static final ConcurrentHashMap<Long, String> SYMBOLS = new ConcurrentHashMap<>();
+
+    @Override
+    protected void onSymbolLookup(String symbolName, long address, long elapsedNanos) {
+        SYMBOLS.putIfAbsent(address, symbolName);
+        SymbolLookupEvent event = new SymbolLookupEvent();
+        if (!event.shouldCommit()) return;
+        event.symbol = symbolName;
+        event.address = address;
+        event.elapsed = elapsedNanos;
+        event.commit();
+    }
+
+    @Override
+    protected void onAllocate(MemoryAccounting.Kind kind, long address, long size) {
+        NativeAllocationEvent event = new NativeAllocationEvent();
+        if (!event.shouldCommit()) return;
+        event.kind = kind.name();
+        event.address = address;
+        event.size = size;
+        event.commit();
+    }
+
+    @Override
+    protected void onFree(MemoryAccounting.Kind kind, long address) {
+        NativeFreeEvent event = new NativeFreeEvent();
+        if (!event.shouldCommit()) return;
+        event.kind = kind.name();
+        event.address = address;
+        event.commit();
+    }
+
+    @Override
+    protected void onDowncallLink(long address, String signature, long elapsedNanos) {
+        DowncallLinkEvent event = new DowncallLinkEvent();
+        if (!event.shouldCommit()) return;
+        event.symbol = SYMBOLS.get(address);
+        event.address = address;
+        event.signature = signature;
+        event.elapsed = elapsedNanos;
+        event.commit();
+    }
+
+    @Override
+    protected void onDowncall(long address, long elapsedNanos) {
+        DowncallEvent event = new DowncallEvent();
+        if (!event.shouldCommit()) return;
+        event.symbol = SYMBOLS.get(address);
+        event.address = address;
+        event.elapsed = elapsedNanos;
+        event.commit();
+    }
+
+    @Override
+    protected void onUpcallStub(String method, long address, long elapsedNanos) {
+        UpcallStubEvent event = new UpcallStubEvent();
+        if (!event.shouldCommit()) return;
+        event.method = method;
+        event.address = address;
+        event.elapsed = elapsedNanos;
+        event.commit();
+    }
+
+    @Override
+    protected void onUpcall(String method, long elapsedNanos) {
+        UpcallEvent event = new UpcallEvent();
+        if (!event.shouldCommit()) return;
+        event.method = method;
+        event.elapsed = elapsedNanos;
+        event.commit();
+    }
+
+}
@@ -16,7 +16,6 @@ import java.lang.foreign.Linker;
 import java.lang.foreign.MemoryLayout;
 import java.lang.invoke.MethodHandle;
 import java.lang.invoke.MethodHandles;
-import java.lang.ref.Cleaner;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.lang.reflect.Proxy;
@@ -206,12 +205,25 @@ public class FFMForeignProvider extends ForeignProvider {
     public Object downcallProxy(ClassLoader classLoader, Class<?>[] classes, FunctionOptionVisitor functionOptionVisitor) {
         if (functionOptionVisitor == null) functionOptionVisitor = Util.DEFAULT_SIGNATURE_VISITOR;
         if (classLoader == null) classLoader = ClassLoader.getSystemClassLoader();
+        if (proxyIntrinsics && FFMUtil.PROXY_INTRINSICS && FFMUtil.LAZY_LINKING) return newProxy(classLoader, classes, functionOptionVisitor);
+        else return proxyCache.get(classLoader, classes, functionOptionVisitor,
+                functionOptionVisitor == Util.DEFAULT_SIGNATURE_VISITOR ? this::newDefaultProxy : this::newProxy);
+    }
+
+    private final ProxyCache proxyCache = new ProxyCache();
+    // proxies pregenerated for the default signature rules stand in for the eagerly linked generated ones
+    private Object newDefaultProxy(ClassLoader classLoader, Class<?>[] classes, FunctionOptionVisitor functionOptionVisitor) {
+        Object proxy = (proxyIntrinsics && FFMUtil.PROXY_INTRINSICS) ? Util.newPregeneratedProxy(this, classLoader, classes) : null;
+        return proxy == null ? newProxy(classLoader, classes, functionOptionVisitor) : proxy;
+    }
+    private Object newProxy(ClassLoader classLoader, Class<?>[] classes, FunctionOptionVisitor functionOptionVisitor) {
         return (proxyIntrinsics && FFMUtil.PROXY_INTRINSICS) ? FFMASMRuntime.generateProxy(classLoader, classes, functionOptionVisitor) :
                 classes == null || classes.length == 0 ? null : Proxy.newProxyInstance(classLoader, classes, new ForeignInvocationHandler(this, classes, functionOptionVisitor));
     }
 
     @Override
     public MemoryHandle upcallStub(Object object, Method method, int firstVarArgIndex, ForeignType returnType, ForeignType[] parameterTypes, CallOption... options) {
+        long start = ForeignEvents.ENABLED ? System.nanoTime() : 0;
         MethodHandle methodHandle;
         try {
             methodHandle = FFMUtil.IMPL_LOOKUP.unreflect(method);
@@ -264,21 +276,23 @@ public class FFMForeignProvider extends ForeignProvider {
             methodHandle = MethodHandles.filterReturnValue(methodHandle, FFMMethodFilters.HANDLE_TO_SEGMENT);
         if (Modifier.isStatic(method.getModifiers())) object = method.getDeclaringClass();
         else methodHandle = methodHandle.bindTo(object);
+        if (ForeignEvents.ENABLED) methodHandle = ForeignEvents.timeUpcall(methodHandle, method);
         long address = FFMUtil.LINKER.upcallStub(methodHandle, returnType == null ?
                 FunctionDescriptor.ofVoid(parameterLayouts) : FunctionDescriptor.of(returnLayout, parameterLayouts), arena,
                 linkerOptions).address();
-        Cleaner.Cleanable cleanup = FFMCleaner.register(object, arena::close);
+        if (ForeignEvents.ENABLED) ForeignEvents.upcallStub(method, address, System.nanoTime() - start);
+        Runnable cleanup = ShardedCleaner.register(object, arena::close);
         return new DirectWrapperMemoryHandle(address, 0) {
             @Override
             protected void free(long address) {
-                cleanup.clean();
+                cleanup.run();
             }
         };
     }
 
     @Override
     public Runnable registerCleaner(Object object, Runnable cleanup) {
-        return FFMCleaner.register(object, cleanup)::clean;
+        return ShardedCleaner.register(object, cleanup);
     }
 
 }
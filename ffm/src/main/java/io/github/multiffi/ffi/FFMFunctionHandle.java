@@ -15,6 +15,7 @@ import java.lang.foreign.SegmentAllocator;
 import java.lang.foreign.ValueLayout;
 import java.lang.invoke.MethodHandle;
 import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.invoke.WrongMethodTypeException;
 import java.lang.reflect.Array;
 import java.util.ArrayList;
@@ -32,6 +33,7 @@ public class FFMFunctionHandle extends FunctionHandle {
     private final List<ForeignType> parameterTypes;
     private final ForeignType returnType;
     private final Function<Object[], Object> invokeFunction;
+    private final MethodHandle methodHandle;
     private final boolean dyncall;
     private final boolean critical;
     private final boolean trivial;
@@ -97,158 +99,51 @@ public class FFMFunctionHandle extends FunctionHandle {
         if (linkerOptionSet != null && this.firstVarArgIndex >= 0) linkerOptionSet.add(Linker.Option.firstVariadicArg(this.firstVarArgIndex));
         Linker.Option[] linkerOptions = linkerOptionSet == null ? FFMUtil.EMPTY_LINKER_OPTION_ARRAY : linkerOptionSet.toArray(FFMUtil.EMPTY_LINKER_OPTION_ARRAY);
         if (dyncall) {
-            if (saveErrno) invokeFunction = args -> {
-                if (args == null || args.length != this.parameterTypes.size() + 1) throw new ArrayIndexOutOfBoundsException("length mismatch");
-                int fixedArgsLength = args.length - 1;
-                Object varargs = args[fixedArgsLength];
-                if (!varargs.getClass().isArray()) throw new IllegalArgumentException("Last argument must be array as variadic arguments");
-                int varargsLength = Array.getLength(varargs);
-                Object[] arguments = new Object[args.length + varargsLength];
-                System.arraycopy(args, 0, arguments, 1, fixedArgsLength);
-                if (varargs instanceof Object[]) System.arraycopy(varargs, 0, arguments, args.length, varargsLength);
-                else {
-                    int offset = args.length;
-                    for (int i = 0; i < varargsLength; i ++) {
-                        arguments[offset + i] = Array.get(varargs, i);
-                    }
-                }
-                arguments[addReturnMemoryParameter ? 1 : 0] = FFMLastErrno.segment();
-                MemoryLayout[] newParameterLayouts = new MemoryLayout[parameterCount + varargsLength];
+            this.methodHandle = null;
+            FFMDyncallCache cache = new FFMDyncallCache(varargLayouts -> {
+                MemoryLayout[] newParameterLayouts = new MemoryLayout[parameterCount + varargLayouts.length];
                 System.arraycopy(parameterLayouts, 0, newParameterLayouts, 0, parameterCount);
-                for (int i = 0; i < varargsLength; i ++) {
-                    Object vararg = arguments[parameterCount + i];
-                    if (vararg instanceof Boolean) newParameterLayouts[parameterCount + i] = FFMUtil.BOOL;
-                    else if (vararg instanceof Byte) newParameterLayouts[parameterCount + i] = ValueLayout.JAVA_BYTE;
-                    else if (vararg instanceof Character) newParameterLayouts[parameterCount + i] = ValueLayout.JAVA_CHAR;
-                    else if (vararg instanceof Short) newParameterLayouts[parameterCount + i] = ValueLayout.JAVA_SHORT;
-                    else if (vararg instanceof Integer) newParameterLayouts[parameterCount + i] = ValueLayout.JAVA_INT;
-                    else if (vararg instanceof Long) newParameterLayouts[parameterCount + i] = ValueLayout.JAVA_LONG;
-                    else if (vararg instanceof Float) newParameterLayouts[parameterCount + i] = ValueLayout.JAVA_FLOAT;
-                    else if (vararg instanceof Double) newParameterLayouts[parameterCount + i] = ValueLayout.JAVA_DOUBLE;
-                    else if (vararg instanceof MemoryHandle memoryHandle) {
-                        long size = memoryHandle.size();
-                        if (size < 0) {
-                            long remaining = size - Long.MAX_VALUE;
-                            newParameterLayouts[parameterCount + i] =
-                                    MemoryLayout.structLayout(MemoryLayout.sequenceLayout(Long.MAX_VALUE, ValueLayout.JAVA_BYTE),
-                                            MemoryLayout.sequenceLayout(remaining, ValueLayout.JAVA_BYTE));
-                        }
-                        else newParameterLayouts[parameterCount + i] =
-                                MemoryLayout.structLayout(MemoryLayout.sequenceLayout(size, ValueLayout.JAVA_BYTE));
-                    }
-                    else throw new IllegalArgumentException("Illegal argument: " + vararg);
-                }
+                System.arraycopy(varargLayouts, 0, newParameterLayouts, parameterCount, varargLayouts.length);
+                long start = ForeignEvents.ENABLED ? System.nanoTime() : 0;
                 MethodHandle methodHandle = FFMUtil.LINKER.downcallHandle(MemorySegment.ofAddress(address), returnType == null ?
-                                FunctionDescriptor.ofVoid(newParameterLayouts) : FunctionDescriptor.of(returnLayout, newParameterLayouts), linkerOptions);
-                for (int i = (addReturnMemoryParameter ? 1 : 0); i < this.parameterTypes.size(); i ++) {
-                    ForeignType parameterType = this.parameterTypes.get(i);
-                    if (parameterType == ScalarType.SHORT) methodHandle = FFMMethodFilters.filterShortArgument(methodHandle, i + 1, false);
-                    else if (parameterType == ScalarType.INT) methodHandle = FFMMethodFilters.filterIntArgument(methodHandle, i + 1, false);
-                    else if (parameterType == ScalarType.LONG) methodHandle = FFMMethodFilters.filterLongArgument(methodHandle, i + 1, false);
-                    else if (parameterType == ScalarType.SIZE) methodHandle = FFMMethodFilters.filterSizeArgument(methodHandle, i + 1, false);
-                    else if (parameterType == ScalarType.ADDRESS) methodHandle = MethodHandles
-                            .filterArguments(methodHandle, i + 1, FFMMethodFilters.INT64_TO_SEGMENT);
-                    else if (parameterType == ScalarType.WCHAR) methodHandle = FFMMethodFilters.filterWCharArgument(methodHandle, i + 1, false);
-                    else if (parameterType == ScalarType.BOOLEAN) methodHandle = FFMMethodFilters.filterBooleanArgument(methodHandle, i + 1, false);
-                    else if (parameterType.isCompound()) methodHandle = MethodHandles
-                            .filterArguments(methodHandle, i + 1, FFMMethodFilters.HANDLE_TO_SEGMENT);
+                        FunctionDescriptor.ofVoid(newParameterLayouts) : FunctionDescriptor.of(returnLayout, newParameterLayouts), linkerOptions);
+                if (ForeignEvents.ENABLED) {
+                    ForeignEvents.downcallLink(address, methodHandle.type(), System.nanoTime() - start);
+                    methodHandle = ForeignEvents.timeDowncall(methodHandle, address);
                 }
-                if (returnType == ScalarType.SHORT) methodHandle = FFMMethodFilters.filterShortReturnValue(methodHandle, false);
-                else if (returnType == ScalarType.INT) methodHandle = FFMMethodFilters.filterIntReturnValue(methodHandle, false);
-                else if (returnType == ScalarType.LONG) methodHandle = FFMMethodFilters.filterLongReturnValue(methodHandle, false);
-                else if (returnType == ScalarType.SIZE) methodHandle = FFMMethodFilters.filterSizeReturnValue(methodHandle, false);
-                else if (returnType == ScalarType.ADDRESS) methodHandle = MethodHandles.filterReturnValue(methodHandle, FFMMethodFilters.SEGMENT_TO_INT64);
-                else if (returnType == ScalarType.WCHAR) methodHandle = FFMMethodFilters.filterWCharReturnValue(methodHandle, false);
-                else if (returnType == ScalarType.BOOLEAN) methodHandle = FFMMethodFilters.filterBooleanReturnValue(methodHandle, false);
-                Invoker invoker = FFMASMRuntime.generateInvoker(arguments.length);
-                Object result;
-                try {
-                    if (addReturnMemoryParameter) {
-                        result = args[0];
-                        arguments[0] = SegmentAllocator.slicingAllocator(FFMMethodFilters.handleToSegment((MemoryHandle) result));
-                        invoker.invoke(methodHandle, arguments);
-                    }
-                    else result = invoker.invoke(methodHandle, arguments);
-                } catch (ClassCastException | WrongMethodTypeException e) {
-                    throw new IllegalArgumentException(e);
-                } catch (RuntimeException | Error e) {
-                    throw e;
-                } catch (Throwable e) {
-                    throw new IllegalStateException(e);
-                }
-                return result;
-            };
-            else invokeFunction = args -> {
+                methodHandle = filterMethodHandle(methodHandle, returnType, this.parameterTypes, addReturnMemoryParameter, this.saveErrno);
+                methodHandle = methodHandle.asType(methodHandle.type().erase());
+                return new FFMDyncallCache.Linkage(methodHandle, getInvoker(methodHandle.type()));
+            });
+            invokeFunction = args -> {
                 if (args == null || args.length != this.parameterTypes.size() + 1) throw new ArrayIndexOutOfBoundsException("length mismatch");
                 int fixedArgsLength = args.length - 1;
                 Object varargs = args[fixedArgsLength];
                 if (!varargs.getClass().isArray()) throw new IllegalArgumentException("Last argument must be array as variadic arguments");
                 int varargsLength = Array.getLength(varargs);
-                Object[] arguments = new Object[fixedArgsLength + varargsLength];
-                System.arraycopy(args, 0, arguments, 0, fixedArgsLength);
-                if (varargs instanceof Object[]) System.arraycopy(varargs, 0, arguments, fixedArgsLength, varargsLength);
+                int varargsOffset = fixedArgsLength + (this.saveErrno ? 1 : 0);
+                Object[] arguments = new Object[varargsOffset + varargsLength];
+                System.arraycopy(args, 0, arguments, this.saveErrno ? 1 : 0, fixedArgsLength);
+                if (varargs instanceof Object[]) System.arraycopy(varargs, 0, arguments, varargsOffset, varargsLength);
                 else {
-                    int offset = fixedArgsLength;
                     for (int i = 0; i < varargsLength; i ++) {
-                        arguments[offset + i] = Array.get(varargs, i);
+                        arguments[varargsOffset + i] = Array.get(varargs, i);
                     }
                 }
-                MemoryLayout[] newParameterLayouts = new MemoryLayout[parameterCount + varargsLength];
-                System.arraycopy(parameterLayouts, 0, newParameterLayouts, 0, parameterCount);
+                if (this.saveErrno) arguments[addReturnMemoryParameter ? 1 : 0] = FFMLastErrno.segment();
+                MemoryLayout[] varargLayouts = new MemoryLayout[varargsLength];
                 for (int i = 0; i < varargsLength; i ++) {
-                    Object vararg = arguments[parameterCount + i];
-                    if (vararg instanceof Boolean) newParameterLayouts[parameterCount + i] = FFMUtil.BOOL;
-                    else if (vararg instanceof Byte) newParameterLayouts[parameterCount + i] = ValueLayout.JAVA_BYTE;
-                    else if (vararg instanceof Character) newParameterLayouts[parameterCount + i] = ValueLayout.JAVA_CHAR;
-                    else if (vararg instanceof Short) newParameterLayouts[parameterCount + i] = ValueLayout.JAVA_SHORT;
-                    else if (vararg instanceof Integer) newParameterLayouts[parameterCount + i] = ValueLayout.JAVA_INT;
-                    else if (vararg instanceof Long) newParameterLayouts[parameterCount + i] = ValueLayout.JAVA_LONG;
-                    else if (vararg instanceof Float) newParameterLayouts[parameterCount + i] = ValueLayout.JAVA_FLOAT;
-                    else if (vararg instanceof Double) newParameterLayouts[parameterCount + i] = ValueLayout.JAVA_DOUBLE;
-                    else if (vararg instanceof MemoryHandle memoryHandle) {
-                        long size = memoryHandle.size();
-                        if (size < 0) {
-                            long remaining = size - Long.MAX_VALUE;
-                            newParameterLayouts[parameterCount + i] =
-                                    MemoryLayout.structLayout(MemoryLayout.sequenceLayout(Long.MAX_VALUE, ValueLayout.JAVA_BYTE),
-                                            MemoryLayout.sequenceLayout(remaining, ValueLayout.JAVA_BYTE));
-                        }
-                        else newParameterLayouts[parameterCount + i] =
-                                MemoryLayout.structLayout(MemoryLayout.sequenceLayout(size, ValueLayout.JAVA_BYTE));
-                    }
-                    else throw new IllegalArgumentException("Illegal argument: " + vararg);
+                    varargLayouts[i] = toVarargLayout(arguments[varargsOffset + i]);
                 }
-                MethodHandle methodHandle = FFMUtil.LINKER.downcallHandle(MemorySegment.ofAddress(address), returnType == null ?
-                                FunctionDescriptor.ofVoid(newParameterLayouts) : FunctionDescriptor.of(returnLayout, newParameterLayouts), linkerOptions);
-                for (int i = (addReturnMemoryParameter ? 1 : 0); i < this.parameterTypes.size(); i ++) {
-                    ForeignType parameterType = this.parameterTypes.get(i);
-                    if (parameterType == ScalarType.SHORT) methodHandle = FFMMethodFilters.filterShortArgument(methodHandle, i, false);
-                    else if (parameterType == ScalarType.INT) methodHandle = FFMMethodFilters.filterIntArgument(methodHandle, i, false);
-                    else if (parameterType == ScalarType.LONG) methodHandle = FFMMethodFilters.filterLongArgument(methodHandle, i, false);
-                    else if (parameterType == ScalarType.SIZE) methodHandle = FFMMethodFilters.filterSizeArgument(methodHandle, i, false);
-                    else if (parameterType == ScalarType.ADDRESS) methodHandle = MethodHandles
-                            .filterArguments(methodHandle, i, FFMMethodFilters.INT64_TO_SEGMENT);
-                    else if (parameterType == ScalarType.WCHAR) methodHandle = FFMMethodFilters.filterWCharArgument(methodHandle, i, false);
-                    else if (parameterType == ScalarType.BOOLEAN) methodHandle = FFMMethodFilters.filterBooleanArgument(methodHandle, i, false);
-                    else if (parameterType.isCompound()) methodHandle = MethodHandles
-                            .filterArguments(methodHandle, i, FFMMethodFilters.HANDLE_TO_SEGMENT);
-                }
-                if (returnType == ScalarType.SHORT) methodHandle = FFMMethodFilters.filterShortReturnValue(methodHandle, false);
-                else if (returnType == ScalarType.INT) methodHandle = FFMMethodFilters.filterIntReturnValue(methodHandle, false);
-                else if (returnType == ScalarType.LONG) methodHandle = FFMMethodFilters.filterLongReturnValue(methodHandle, false);
-                else if (returnType == ScalarType.SIZE) methodHandle = FFMMethodFilters.filterSizeReturnValue(methodHandle, false);
-                else if (returnType == ScalarType.ADDRESS) methodHandle = MethodHandles.filterReturnValue(methodHandle, FFMMethodFilters.SEGMENT_TO_INT64);
-                else if (returnType == ScalarType.WCHAR) methodHandle = FFMMethodFilters.filterWCharReturnValue(methodHandle, false);
-                else if (returnType == ScalarType.BOOLEAN) methodHandle = FFMMethodFilters.filterBooleanReturnValue(methodHandle, false);
-                Invoker invoker = FFMASMRuntime.generateInvoker(arguments.length);
+                FFMDyncallCache.Linkage linkage = cache.get(varargLayouts);
                 Object result;
                 try {
                     if (addReturnMemoryParameter) {
                         result = args[0];
                         arguments[0] = SegmentAllocator.slicingAllocator(FFMMethodFilters.handleToSegment((MemoryHandle) result));
-                        invoker.invoke(methodHandle, arguments);
+                        linkage.invoker().invoke(linkage.methodHandle(), arguments);
                     }
-                    else result = invoker.invoke(methodHandle, arguments);
+                    else result = linkage.invoker().invoke(linkage.methodHandle(), arguments);
                 } catch (ClassCastException | WrongMethodTypeException e) {
                     throw new IllegalArgumentException(e);
                 } catch (RuntimeException | Error e) {
@@ -261,32 +156,19 @@ public class FFMFunctionHandle extends FunctionHandle {
         }
         else {
             MethodHandle methodHandle;
+            long start = ForeignEvents.ENABLED ? System.nanoTime() : 0;
             if (parameterCount == 0) methodHandle = FFMUtil.LINKER.downcallHandle(MemorySegment.ofAddress(address), returnType == null ?
                             FunctionDescriptor.ofVoid() : FunctionDescriptor.of(returnLayout), linkerOptions);
             else methodHandle = FFMUtil.LINKER.downcallHandle(MemorySegment.ofAddress(address), returnType == null ?
                             FunctionDescriptor.ofVoid(parameterLayouts) : FunctionDescriptor.of(returnLayout, parameterLayouts), linkerOptions);
-            for (int i = (addReturnMemoryParameter ? 1 : 0); i < this.parameterTypes.size(); i ++) {
-                ForeignType parameterType = this.parameterTypes.get(i);
-                if (parameterType == ScalarType.SHORT) methodHandle = FFMMethodFilters.filterShortArgument(methodHandle, i + (saveErrno ? 1 : 0), false);
-                else if (parameterType == ScalarType.INT) methodHandle = FFMMethodFilters.filterIntArgument(methodHandle, i + (saveErrno ? 1 : 0), false);
-                else if (parameterType == ScalarType.LONG) methodHandle = FFMMethodFilters.filterLongArgument(methodHandle, i + (saveErrno ? 1 : 0), false);
-                else if (parameterType == ScalarType.SIZE) methodHandle = FFMMethodFilters.filterSizeArgument(methodHandle, i + (saveErrno ? 1 : 0), false);
-                else if (parameterType == ScalarType.ADDRESS) methodHandle = MethodHandles
-                        .filterArguments(methodHandle, i + (saveErrno ? 1 : 0), FFMMethodFilters.INT64_TO_SEGMENT);
-                else if (parameterType == ScalarType.WCHAR) methodHandle = FFMMethodFilters.filterWCharArgument(methodHandle, i + (saveErrno ? 1 : 0), false);
-                else if (parameterType == ScalarType.BOOLEAN) methodHandle = FFMMethodFilters.filterBooleanArgument(methodHandle, i + (saveErrno ? 1 : 0), false);
-                else if (parameterType.isCompound()) methodHandle = MethodHandles
-                        .filterArguments(methodHandle, i + (saveErrno ? 1 : 0), FFMMethodFilters.HANDLE_TO_SEGMENT);
+            if (ForeignEvents.ENABLED) {
+                ForeignEvents.downcallLink(address, methodHandle.type(), System.nanoTime() - start);
+                methodHandle = ForeignEvents.timeDowncall(methodHandle, address);
             }
-            if (returnType == ScalarType.SHORT) methodHandle = FFMMethodFilters.filterShortReturnValue(methodHandle, false);
-            else if (returnType == ScalarType.INT) methodHandle = FFMMethodFilters.filterIntReturnValue(methodHandle, false);
-            else if (returnType == ScalarType.LONG) methodHandle = FFMMethodFilters.filterLongReturnValue(methodHandle, false);
-            else if (returnType == ScalarType.SIZE) methodHandle = FFMMethodFilters.filterSizeReturnValue(methodHandle, false);
-            else if (returnType == ScalarType.ADDRESS) methodHandle = MethodHandles.filterReturnValue(methodHandle, FFMMethodFilters.SEGMENT_TO_INT64);
-            else if (returnType == ScalarType.WCHAR) methodHandle = FFMMethodFilters.filterWCharReturnValue(methodHandle, false);
-            else if (returnType == ScalarType.BOOLEAN) methodHandle = FFMMethodFilters.filterBooleanReturnValue(methodHandle, false);
-            Invoker invoker = FFMASMRuntime.generateInvoker(this.parameterTypes.size() + (saveErrno ? 1 : 0));
-            MethodHandle function = methodHandle;
+            methodHandle = filterMethodHandle(methodHandle, returnType, this.parameterTypes, addReturnMemoryParameter, saveErrno);
+            this.methodHandle = methodHandle;
+            MethodHandle function = methodHandle.asType(methodHandle.type().erase());
+            Invoker invoker = getInvoker(function.type());
             if (addReturnMemoryParameter) {
                 if (saveErrno) {
                     if (parameterCount == 0) invokeFunction = args -> {
@@ -411,12 +293,74 @@ public class FFMFunctionHandle extends FunctionHandle {
         }
     }
 
+    private static MemoryLayout toVarargLayout(Object vararg) {
+        if (vararg instanceof Boolean) return FFMUtil.BOOL;
+        else if (vararg instanceof Byte) return ValueLayout.JAVA_BYTE;
+        else if (vararg instanceof Character) return ValueLayout.JAVA_CHAR;
+        else if (vararg instanceof Short) return ValueLayout.JAVA_SHORT;
+        else if (vararg instanceof Integer) return ValueLayout.JAVA_INT;
+        else if (vararg instanceof Long) return ValueLayout.JAVA_LONG;
+        else if (vararg instanceof Float) return ValueLayout.JAVA_FLOAT;
+        else if (vararg instanceof Double) return ValueLayout.JAVA_DOUBLE;
+        else if (vararg instanceof MemoryHandle memoryHandle) {
+            long size = memoryHandle.size();
+            if (size < 0) {
+                long remaining = size - Long.MAX_VALUE;
+                return MemoryLayout.structLayout(MemoryLayout.sequenceLayout(Long.MAX_VALUE, ValueLayout.JAVA_BYTE),
+                        MemoryLayout.sequenceLayout(remaining, ValueLayout.JAVA_BYTE));
+            }
+            else return MemoryLayout.structLayout(MemoryLayout.sequenceLayout(size, ValueLayout.JAVA_BYTE));
+        }
+        else throw new IllegalArgumentException("Illegal argument: " + vararg);
+    }
+
+    private static MethodHandle filterMethodHandle(MethodHandle methodHandle, ForeignType returnType, List<ForeignType> parameterTypes,
+                                                   boolean addReturnMemoryParameter, boolean saveErrno) {
+        for (int i = (addReturnMemoryParameter ? 1 : 0); i < parameterTypes.size(); i ++) {
+            ForeignType parameterType = parameterTypes.get(i);
+            int pos = i + (saveErrno ? 1 : 0);
+            if (parameterType == ScalarType.SHORT) methodHandle = FFMMethodFilters.filterShortArgument(methodHandle, pos, false);
+            else if (parameterType == ScalarType.INT) methodHandle = FFMMethodFilters.filterIntArgument(methodHandle, pos, false);
+            else if (parameterType == ScalarType.LONG) methodHandle = FFMMethodFilters.filterLongArgument(methodHandle, pos, false);
+            else if (parameterType == ScalarType.SIZE) methodHandle = FFMMethodFilters.filterSizeArgument(methodHandle, pos, false);
+            else if (parameterType == ScalarType.ADDRESS) methodHandle = MethodHandles
+                    .filterArguments(methodHandle, pos, FFMMethodFilters.INT64_TO_SEGMENT);
+            else if (parameterType == ScalarType.WCHAR) methodHandle = FFMMethodFilters.filterWCharArgument(methodHandle, pos, false);
+            else if (parameterType == ScalarType.BOOLEAN) methodHandle = FFMMethodFilters.filterBooleanArgument(methodHandle, pos, false);
+            else if (parameterType.isCompound()) methodHandle = MethodHandles
+                    .filterArguments(methodHandle, pos, FFMMethodFilters.HANDLE_TO_SEGMENT);
+        }
+        if (returnType == ScalarType.SHORT) methodHandle = FFMMethodFilters.filterShortReturnValue(methodHandle, false);
+        else if (returnType == ScalarType.INT) methodHandle = FFMMethodFilters.filterIntReturnValue(methodHandle, false);
+        else if (returnType == ScalarType.LONG) methodHandle = FFMMethodFilters.filterLongReturnValue(methodHandle, false);
+        else if (returnType == ScalarType.SIZE) methodHandle = FFMMethodFilters.filterSizeReturnValue(methodHandle, false);
+        else if (returnType == ScalarType.ADDRESS) methodHandle = MethodHandles.filterReturnValue(methodHandle, FFMMethodFilters.SEGMENT_TO_INT64);
+        else if (returnType == ScalarType.WCHAR) methodHandle = FFMMethodFilters.filterWCharReturnValue(methodHandle, false);
+        else if (returnType == ScalarType.BOOLEAN) methodHandle = FFMMethodFilters.filterBooleanReturnValue(methodHandle, false);
+        return methodHandle;
+    }
+
+    @Override
+    protected MethodHandle createMethodHandle() {
+        if (dyncall) return super.createMethodHandle();
+        MethodHandle methodHandle = this.methodHandle;
+        boolean addReturnMemoryParameter = returnType != null && returnType.isCompound();
+        if (saveErrno) methodHandle = MethodHandles.collectArguments(methodHandle, addReturnMemoryParameter ? 1 : 0, FFMMethodFilters.ERRNO_SEGMENT);
+        if (addReturnMemoryParameter) {
+            methodHandle = MethodHandles.filterArguments(methodHandle.asType(methodHandle.type().changeReturnType(void.class)),
+                    0, FFMMethodFilters.HANDLE_TO_ALLOCATOR);
+            methodHandle = MethodHandles.foldArguments(MethodHandles.dropArguments(MethodHandles.identity(MemoryHandle.class),
+                    1, methodHandle.type().dropParameterTypes(0, 1).parameterList()), methodHandle);
+        }
+        return methodHandle.asType(getMethodType());
+    }
+
     public interface Invoker {
         Object invoke(MethodHandle methodHandle, Object... args) throws Throwable;
     }
 
-    public static Invoker getInvoker(int parameterCount) {
-        if (FFMUtil.PROXY_INTRINSICS) return FFMASMRuntime.generateInvoker(parameterCount);
+    public static Invoker getInvoker(MethodType methodType) {
+        if (FFMUtil.PROXY_INTRINSICS) return FFMASMRuntime.generateInvoker(methodType);
         else return MethodHandle::invokeWithArguments;
     }
 
@@ -3,6 +3,7 @@ package io.github.multiffi.ffi;
 import multiffi.ffi.spi.MemoryProvider;
 
 import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
 
 @SuppressWarnings({"deprecation", "removal"})
 public class FFMMemoryProvider extends MemoryProvider {
@@ -67,10 +68,37 @@ public class FFMMemoryProvider extends MemoryProvider {
         long remaining = arrayLength - arrayOffset;
         if (maxLength < 0 || maxLength > remaining) maxLength = remaining;
         long arrayBaseOffset = FFMUtil.UNSAFE.arrayBaseOffset(array.getClass());
-        for (long i = 0; i < maxLength; i ++) {
-            if (FFMUtil.UNSAFE.getByte(array, arrayBaseOffset + arrayOffset + i) == value) return arrayOffset + i;
-        }
-        return -1;
+        long index = UnsafeMemory.search(array, arrayBaseOffset + arrayOffset, value, maxLength);
+        return index == -1 ? -1 : arrayOffset + index;
+    }
+
+    @Override
+    public long getZeroTerminatedLength(long address, long maxLength, int unitSize) {
+        return UnsafeMemory.zeroTerminatedLength(null, address, unitSize, maxLength);
+    }
+
+    @Override
+    public long getZeroTerminatedLength(Object memoryArray, long memoryArrayOffset, long maxLength, int unitSize) {
+        long arrayLength = Util.getArrayContentSize(memoryArray);
+        if (memoryArrayOffset < 0 || memoryArrayOffset > arrayLength)
+            throw new ArrayIndexOutOfBoundsException("Array index out of range: " + Long.toUnsignedString(memoryArrayOffset));
+        long remaining = arrayLength - memoryArrayOffset;
+        if (maxLength < 0 || maxLength > remaining) maxLength = remaining;
+        long arrayBaseOffset = FFMUtil.UNSAFE.arrayBaseOffset(memoryArray.getClass());
+        return UnsafeMemory.zeroTerminatedLength(memoryArray, arrayBaseOffset + memoryArrayOffset, unitSize, maxLength);
+    }
+
+    @Override
+    public boolean isNativeSearchPreferred(long address, long maxLength) {
+        // an unbounded search cannot be expressed as a memmem haystack
+        return FFMAllocator.MEMMEM_SUPPORTED && Long.compareUnsigned(maxLength, FFMAllocator.JAVA_THRESHOLD) > 0
+                && Long.compareUnsigned(address + maxLength, address) >= 0;
+    }
+
+    @Override
+    public long search(long address, long valueAddress, long valueSize, long maxLength) {
+        if (isNativeSearchPreferred(address, maxLength)) return FFMAllocator.search(address, maxLength, valueAddress, valueSize);
+        else return super.search(address, valueAddress, valueSize, maxLength);
     }
 
     @Override
@@ -85,13 +113,12 @@ public class FFMMemoryProvider extends MemoryProvider {
         if (index < 0 || index > arrayLength)
             throw new ArrayIndexOutOfBoundsException("Array index out of range: " + Long.toUnsignedString(index));
         Util.unsignedAddExact(aAddress, size);
-        long arrayBaseOffset = FFMUtil.UNSAFE.arrayBaseOffset(bArray.getClass());
-        for (long i = 0; i < size; i ++) {
-            int cmp = Byte.compareUnsigned(FFMUtil.UNSAFE.getByte(aAddress + i), 
-                    FFMUtil.UNSAFE.getByte(bArray, arrayBaseOffset + bArrayOffset + i));
-            if (cmp != 0) return cmp;
+        MemorySegment bSegment = FFMUtil.ofArray(bArray);
+        if (bSegment == null || size <= FFMAllocator.JAVA_THRESHOLD) {
+            long arrayBaseOffset = FFMUtil.UNSAFE.arrayBaseOffset(bArray.getClass());
+            return UnsafeMemory.compare(null, aAddress, bArray, arrayBaseOffset + bArrayOffset, size);
         }
-        return 0;
+        return mismatch(MemorySegment.ofAddress(aAddress).reinterpret(size), 0, bSegment, bArrayOffset, size);
     }
 
     @Override
@@ -101,13 +128,12 @@ public class FFMMemoryProvider extends MemoryProvider {
         if (index < 0 || index > arrayLength)
             throw new ArrayIndexOutOfBoundsException("Array index out of range: " + Long.toUnsignedString(index));
         Util.unsignedAddExact(bAddress, size);
-        long arrayBaseOffset = FFMUtil.UNSAFE.arrayBaseOffset(aArray.getClass());
-        for (long i = 0; i < size; i ++) {
-            int cmp = Byte.compareUnsigned(FFMUtil.UNSAFE.getByte(aArray, arrayBaseOffset + aArrayOffset + i),
-                    FFMUtil.UNSAFE.getByte(bAddress + i));
-            if (cmp != 0) return cmp;
+        MemorySegment aSegment = FFMUtil.ofArray(aArray);
+        if (aSegment == null || size <= FFMAllocator.JAVA_THRESHOLD) {
+            long arrayBaseOffset = FFMUtil.UNSAFE.arrayBaseOffset(aArray.getClass());
+            return UnsafeMemory.compare(aArray, arrayBaseOffset + aArrayOffset, null, bAddress, size);
         }
-        return 0;
+        return mismatch(aSegment, aArrayOffset, MemorySegment.ofAddress(bAddress).reinterpret(size), 0, size);
     }
 
     @Override
@@ -120,14 +146,21 @@ public class FFMMemoryProvider extends MemoryProvider {
         index = Util.unsignedAddExact(bArrayOffset, size);
         if (index < 0 || index > bArrayLength)
             throw new ArrayIndexOutOfBoundsException("Array index out of range: " + Long.toUnsignedString(index));
-        long aArrayBaseOffset = FFMUtil.UNSAFE.arrayBaseOffset(aArray.getClass());
-        long bArrayBaseOffset = FFMUtil.UNSAFE.arrayBaseOffset(aArray.getClass());
-        for (long i = 0; i < size; i ++) {
-            int cmp = Byte.compareUnsigned(FFMUtil.UNSAFE.getByte(aArray, aArrayBaseOffset + aArrayOffset + i),
-                    FFMUtil.UNSAFE.getByte(bArray, bArrayBaseOffset + bArrayOffset + i));
-            if (cmp != 0) return cmp;
+        MemorySegment aSegment = FFMUtil.ofArray(aArray);
+        MemorySegment bSegment = FFMUtil.ofArray(bArray);
+        if (aSegment == null || bSegment == null || size <= FFMAllocator.JAVA_THRESHOLD) {
+            long aArrayBaseOffset = FFMUtil.UNSAFE.arrayBaseOffset(aArray.getClass());
+            long bArrayBaseOffset = FFMUtil.UNSAFE.arrayBaseOffset(bArray.getClass());
+            return UnsafeMemory.compare(aArray, aArrayBaseOffset + aArrayOffset, bArray, bArrayBaseOffset + bArrayOffset, size);
         }
-        return 0;
+        return mismatch(aSegment, aArrayOffset, bSegment, bArrayOffset, size);
+    }
+
+    // MemorySegment.mismatch is vectorized by the JDK and works across heap and native segments alike
+    private static int mismatch(MemorySegment aSegment, long aOffset, MemorySegment bSegment, long bOffset, long size) {
+        long mismatch = MemorySegment.mismatch(aSegment, aOffset, aOffset + size, bSegment, bOffset, bOffset + size);
+        return mismatch == -1 ? 0 : Byte.compareUnsigned(aSegment.get(ValueLayout.JAVA_BYTE, aOffset + mismatch),
+                bSegment.get(ValueLayout.JAVA_BYTE, bOffset + mismatch));
     }
 
     @Override
@@ -175,7 +208,7 @@ public class FFMMemoryProvider extends MemoryProvider {
             }
             return destAddress;
         }
-        MemorySegment.ofAddress(destAddress).reinterpret(size).copyFrom(memorySegment.asSlice(srcArrayOffset));
+        MemorySegment.copy(memorySegment, srcArrayOffset, MemorySegment.ofAddress(destAddress).reinterpret(size), 0, size);
         return destAddress;
     }
 
@@ -202,7 +235,7 @@ public class FFMMemoryProvider extends MemoryProvider {
             }
             return destArray;
         }
-        memorySegment.asSlice(destArrayOffset).copyFrom(MemorySegment.ofAddress(srcAddress).reinterpret(size));
+        MemorySegment.copy(MemorySegment.ofAddress(srcAddress).reinterpret(size), 0, memorySegment, destArrayOffset, size);
         return destArray;
     }
 
@@ -4,6 +4,7 @@ import multiffi.ffi.Foreign;
 import multiffi.ffi.MemoryHandle;
 
 import java.lang.foreign.MemorySegment;
+import java.lang.foreign.SegmentAllocator;
 import java.lang.invoke.MethodHandle;
 import java.lang.invoke.MethodHandles;
 import java.lang.invoke.MethodType;
@@ -50,6 +51,9 @@ public final class FFMMethodFilters {
             };
         }
     }
+    public static SegmentAllocator handleToAllocator(MemoryHandle handle) {
+        return SegmentAllocator.slicingAllocator(handleToSegment(handle));
+    }
     public static long segmentToInt64(MemorySegment segment) {
         return segment == null ? 0L : segment.address();
     }
@@ -166,6 +170,8 @@ public final class FFMMethodFilters {
     }
 
     public static final MethodHandle HANDLE_TO_SEGMENT;
+    public static final MethodHandle HANDLE_TO_ALLOCATOR;
+    public static final MethodHandle ERRNO_SEGMENT;
     public static final MethodHandle SEGMENT_TO_HANDLE;
     public static final MethodHandle INT16_TO_INT64;
     public static final MethodHandle INT32_TO_INT64;
@@ -185,6 +191,10 @@ public final class FFMMethodFilters {
         try {
             HANDLE_TO_SEGMENT = MethodHandles.lookup().findStatic(FFMMethodFilters.class, "handleToSegment",
                     MethodType.methodType(MemorySegment.class, MemoryHandle.class));
+            HANDLE_TO_ALLOCATOR = MethodHandles.lookup().findStatic(FFMMethodFilters.class, "handleToAllocator",
+                    MethodType.methodType(SegmentAllocator.class, MemoryHandle.class));
+            ERRNO_SEGMENT = MethodHandles.lookup().findStatic(FFMLastErrno.class, "segment",
+                    MethodType.methodType(MemorySegment.class));
             SEGMENT_TO_HANDLE = MethodHandles.lookup().findStatic(FFMMethodFilters.class, "segmentToHandle",
                     MethodType.methodType(MemoryHandle.class, MemorySegment.class));
             INT16_TO_INT64 = MethodHandles.lookup().findStatic(FFMMethodFilters.class, "int16ToInt64",
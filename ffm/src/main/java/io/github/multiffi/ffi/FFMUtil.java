@@ -34,6 +34,7 @@ public final class FFMUtil {
     }
 
     public static final boolean PROXY_INTRINSICS = Util.getBooleanProperty("multiffi.foreign.proxyIntrinsics", true);
+    public static final boolean LAZY_LINKING = Util.getBooleanProperty("multiffi.foreign.lazyLinking", false);
 
     public static final Unsafe UNSAFE;
     public static final MethodHandles.Lookup IMPL_LOOKUP;
@@ -197,6 +198,20 @@ public final class FFMUtil {
         };
     }
 
+    /**
+     * Returns a heap segment over a primitive array, or {@code null} for {@code boolean[]}, which segments cannot wrap.
+     */
+    public static MemorySegment ofArray(Object array) {
+        if (array instanceof byte[]) return MemorySegment.ofArray((byte[]) array);
+        else if (array instanceof char[]) return MemorySegment.ofArray((char[]) array);
+        else if (array instanceof short[]) return MemorySegment.ofArray((short[]) array);
+        else if (array instanceof int[]) return MemorySegment.ofArray((int[]) array);
+        else if (array instanceof long[]) return MemorySegment.ofArray((long[]) array);
+        else if (array instanceof float[]) return MemorySegment.ofArray((float[]) array);
+        else if (array instanceof double[]) return MemorySegment.ofArray((double[]) array);
+        else return null;
+    }
+
     public static String mapLibraryName(String libraryName) {
         if (libraryName == null) return null;
         else if (new File(libraryName).isAbsolute()) return libraryName;
@@ -7,15 +7,23 @@ import com.sun.jna.SymbolProvider;
 import multiffi.ffi.CallOption;
 import multiffi.ffi.FunctionOptionVisitor;
 import multiffi.ffi.ForeignType;
+import multiffi.ffi.FunctionHandle;
 import multiffi.ffi.MemoryHandle;
 import multiffi.ffi.ScalarType;
 import multiffi.ffi.StandardCallOption;
 import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Handle;
 import org.objectweb.asm.Label;
 import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.Type;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.CallSite;
+import java.lang.invoke.ConstantCallSite;
+import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.util.Collections;
@@ -116,10 +124,85 @@ public final class JNAASMRuntime {
     }
 
     private static final AtomicLong nextSerialNumber = new AtomicLong();
+    private static final Handle DOWNCALL_BOOTSTRAP = new Handle(Opcodes.H_INVOKESTATIC, "io/github/multiffi/ffi/JNAASMRuntime",
+            "bootstrapDowncall", "(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;Ljava/lang/invoke/MethodType;Ljava/lang/Class;)Ljava/lang/invoke/CallSite;",
+            false);
+    public static CallSite bootstrapDowncall(MethodHandles.Lookup lookup, String methodName, MethodType methodType, Class<?> declaringClass) throws Throwable {
+        Method method = declaringClass.getMethod(methodName, methodType.parameterArray());
+        FunctionOptionVisitor functionOptionVisitor = (FunctionOptionVisitor) lookup.findStaticGetter(lookup.lookupClass(),
+                "functionOptionVisitor", FunctionOptionVisitor.class).invoke();
+        return new ConstantCallSite(linkMethod(method, functionOptionVisitor).asType(methodType));
+    }
+
+    private static MethodHandle linkMethod(Method method, FunctionOptionVisitor functionOptionVisitor) {
+        return DowncallLinker.linkMethod(new JNAFunctionHandle(functionOptionVisitor.visitAddress(method),
+                functionOptionVisitor.visitFirstVarArgIndex(method), functionOptionVisitor.visitReturnType(method),
+                functionOptionVisitor.visitParameterTypes(method), functionOptionVisitor.visitCallOptions(method)), method);
+    }
+
+    private static Object generateLazyProxy(ClassLoader classLoader, Class<?>[] classes, FunctionOptionVisitor functionOptionVisitor) {
+        String proxyName = "multiffi.ffi.jna.Proxy$" + nextSerialNumber.getAndIncrement();
+        String proxyInternalName = proxyName.replace('.', '/');
+        String[] classInternalNames = new String[classes.length];
+        for (int i = 0; i < classes.length; i ++) {
+            classInternalNames[i] = Type.getInternalName(classes[i]);
+        }
+
+        ClassWriter classWriter = new ClassWriter(ClassWriter.COMPUTE_MAXS | ClassWriter.COMPUTE_FRAMES);
+
+        classWriter.visit(Opcodes.V1_8, Opcodes.ACC_PRIVATE | Opcodes.ACC_SUPER,
+                proxyInternalName, null, "java/lang/Object", classInternalNames);
+
+        classWriter.visitField(Opcodes.ACC_PRIVATE | Opcodes.ACC_STATIC,
+                "functionOptionVisitor", "Lmultiffi/ffi/FunctionOptionVisitor;", null, null).visitEnd();
+
+        MethodVisitor objectInit = classWriter.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "()V", null, null);
+        objectInit.visitCode();
+        objectInit.visitVarInsn(Opcodes.ALOAD, 0);
+        objectInit.visitMethodInsn(Opcodes.INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+        objectInit.visitInsn(Opcodes.RETURN);
+        objectInit.visitMaxs(0, 0);
+        objectInit.visitEnd();
+
+        for (Class<?> clazz : classes) {
+            for (Method method : clazz.getMethods()) {
+                if (method.isDefault() || method.getDeclaringClass() == Object.class || Modifier.isStatic(method.getModifiers())) continue;
+                String methodDescriptor = Type.getMethodDescriptor(method);
+                MethodVisitor methodVisitor = classWriter.visitMethod(Opcodes.ACC_PUBLIC, method.getName(), methodDescriptor,
+                        null, null);
+                methodVisitor.visitCode();
+                int index = 1;
+                for (Class<?> parameterType : method.getParameterTypes()) {
+                    dumpLoadOpcode(methodVisitor, parameterType, index ++);
+                    if (parameterType == long.class || parameterType == double.class) index ++;
+                }
+                methodVisitor.visitInvokeDynamicInsn(method.getName(), methodDescriptor, DOWNCALL_BOOTSTRAP,
+                        Type.getType(method.getDeclaringClass()));
+                dumpReturnOpcode(methodVisitor, method.getReturnType());
+                methodVisitor.visitMaxs(0, 0);
+                methodVisitor.visitEnd();
+            }
+        }
+
+        classWriter.visitEnd();
+        try {
+            Class<?> proxyClass = JNAUtil.defineClass(classLoader, proxyName, classWriter.toByteArray());
+            Field field = proxyClass.getDeclaredField("functionOptionVisitor");
+            field.setAccessible(true);
+            field.set(null, functionOptionVisitor);
+            return JNAUtil.newInstance(proxyClass.getConstructor());
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
     public static Object generateProxy(ClassLoader classLoader, Class<?>[] classes, FunctionOptionVisitor functionOptionVisitor) {
         if (classes == null || classes.length == 0) return null;
         else if (classes.length > 65535) throw new IllegalArgumentException("interface limit exceeded: " + classes.length);
         checkProxyClasses(classLoader, classes);
+        if (JNAUtil.LAZY_LINKING) return generateLazyProxy(classLoader, classes, functionOptionVisitor);
         String proxyName = "multiffi.ffi.jna.Proxy$" + nextSerialNumber.getAndIncrement();
         String proxyInternalName = proxyName.replace('.', '/');
         String[] classInternalNames = new String[classes.length];
@@ -461,6 +544,49 @@ public final class JNAASMRuntime {
         }
     }
 
+    public static MethodHandle generateDirectMethodHandle(ClassLoader classLoader, long address, MethodType methodType, boolean stdcall) {
+        String directName = "multiffi.ffi.jna.Direct$" + nextSerialNumber.getAndIncrement();
+        String directInternalName = directName.replace('.', '/');
+        String methodDescriptor = methodType.toMethodDescriptorString();
+
+        ClassWriter classWriter = new ClassWriter(ClassWriter.COMPUTE_MAXS | ClassWriter.COMPUTE_FRAMES);
+
+        classWriter.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_FINAL | Opcodes.ACC_SUPER,
+                directInternalName, null, "java/lang/Object", null);
+
+        classWriter.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC | Opcodes.ACC_NATIVE,
+                "function", methodDescriptor, null, null).visitEnd();
+
+        MethodVisitor classInit = classWriter.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC,
+                "<clinit>", "()V", null, null);
+        classInit.visitCode();
+        visitLdcInsn(classInit, "function");
+        visitLdcInsn(classInit, address);
+        classInit.visitMethodInsn(Opcodes.INVOKESTATIC, "java/lang/Long", "valueOf", "(J)Ljava/lang/Long;", false);
+        classInit.visitMethodInsn(Opcodes.INVOKESTATIC, "java/util/Collections", "singletonMap",
+                "(Ljava/lang/Object;Ljava/lang/Object;)Ljava/util/Map;", false);
+        classInit.visitMethodInsn(Opcodes.INVOKESTATIC, "io/github/multiffi/ffi/JNAASMRuntime",
+                stdcall ? "getStdCallNativeLibrary" : "getNativeLibrary", "(Ljava/util/Map;)Lcom/sun/jna/NativeLibrary;", false);
+        classInit.visitVarInsn(Opcodes.ASTORE, 0);
+        visitLdcInsn(classInit, Type.getType("L" + directInternalName + ";"));
+        classInit.visitVarInsn(Opcodes.ALOAD, 0);
+        classInit.visitMethodInsn(Opcodes.INVOKESTATIC, "com/sun/jna/Native",
+                "register", "(Ljava/lang/Class;Lcom/sun/jna/NativeLibrary;)V", false);
+        classInit.visitInsn(Opcodes.RETURN);
+        classInit.visitMaxs(0, 0);
+        classInit.visitEnd();
+
+        classWriter.visitEnd();
+        try {
+            Class<?> clazz = JNAUtil.defineClass(classLoader, directName, classWriter.toByteArray());
+            return MethodHandles.publicLookup().findStatic(Class.forName(directName, true, clazz.getClassLoader()), "function", methodType);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
     private static void visitLdcInsn(MethodVisitor methodVisitor, Object value) {
         if (value instanceof Long) {
             long lVal = (long) value;
@@ -11,12 +11,24 @@ public final class JNAAlignedAllocator {
         throw new AssertionError("No io.github.multiffi.ffi.JNAAlignedAllocator instances for you!");
     }
 
+    private static final class AlignedAlloc {
+        private AlignedAlloc() {
+            throw new AssertionError("No io.github.multiffi.ffi.JNAAlignedAllocator.AlignedAlloc instances for you!");
+        }
+        private static native Pointer aligned_alloc(PointerSize alignment, PointerSize size);
+    }
+
+    // the alignment guaranteed by malloc on all supported platforms
+    private static final long MALLOC_ALIGNMENT = Native.POINTER_SIZE * 2L;
+
     private static final boolean SUPPORTED;
+    private static final boolean ALIGNED_ALLOC_SUPPORTED;
     private static native Pointer _aligned_malloc(PointerSize size, PointerSize alignment);
     private static native Pointer _aligned_realloc(Pointer address, PointerSize size, PointerSize alignment);
     private static native void _aligned_free(Pointer address);
     static {
         boolean supported = false;
+        boolean alignedAllocSupported = false;
         if (Platform.isWindows()) {
             try {
                 Native.register(JNAAlignedAllocator.class, Platform.C_LIBRARY_NAME);
@@ -24,12 +36,28 @@ public final class JNAAlignedAllocator {
             } catch (Throwable ignored) {
             }
         }
+        else {
+            try {
+                Native.register(AlignedAlloc.class, Platform.C_LIBRARY_NAME);
+                alignedAllocSupported = true;
+            } catch (Throwable ignored) {
+            }
+        }
         SUPPORTED = supported;
+        ALIGNED_ALLOC_SUPPORTED = alignedAllocSupported;
+    }
+
+    private static long allocateNativeAligned(long size, long alignment) {
+        if (alignment <= MALLOC_ALIGNMENT) return Native.malloc(size);
+        // Darwin enforces the C11 requirement that size is a multiple of alignment
+        if (Platform.isMac()) size = Util.unsignedAddExact(size, alignment - 1) & -alignment;
+        return Pointer.nativeValue(AlignedAlloc.aligned_alloc(new PointerSize(alignment), new PointerSize(size)));
     }
 
     public static long allocate(long size, long alignment) {
         if (alignment == 0 || (alignment & (alignment - 1)) != 0) throw new IllegalArgumentException("alignment must be a power-of-two value");
         if (SUPPORTED) return Pointer.nativeValue(_aligned_malloc(new PointerSize(size), new PointerSize(alignment)));
+        else if (ALIGNED_ALLOC_SUPPORTED) return allocateNativeAligned(size, alignment);
         else {
             long original;
             long offset = alignment - 1 + Native.POINTER_SIZE;
@@ -41,22 +69,34 @@ public final class JNAAlignedAllocator {
     }
 
     public static long allocateInitialized(long count, long size, long alignment) {
-        long address = allocate(Util.unsignedMultiplyExact(count, size), alignment);
-        JNAUtil.UNSAFE.setMemory(address, size, (byte) 0);
+        size = Util.unsignedMultiplyExact(count, size);
+        long address = allocate(size, alignment);
+        if (address != 0L) JNAUtil.UNSAFE.setMemory(address, size, (byte) 0);
         return address;
     }
 
     public static long reallocate(long address, long size, long alignment) {
         if (alignment == 0 || (alignment & (alignment - 1)) != 0) throw new IllegalArgumentException("alignment must be a power-of-two value");
         if (SUPPORTED) return Pointer.nativeValue(_aligned_realloc(new Pointer(address), new PointerSize(size), new PointerSize(alignment)));
+        else if (ALIGNED_ALLOC_SUPPORTED) {
+            long reallocated = JNAAllocator.reallocate(address, size);
+            if (reallocated == 0L || (reallocated & (alignment - 1)) == 0L) return reallocated;
+            // realloc does not preserve the alignment, the block has to be moved once more
+            long aligned = allocateNativeAligned(size, alignment);
+            if (aligned != 0L) JNAUtil.UNSAFE.copyMemory(reallocated, aligned, size);
+            Native.free(reallocated);
+            if (aligned == 0L) throw new OutOfMemoryError("Failed to reallocate " + size + " bytes aligned to " + alignment);
+            return aligned;
+        }
         else {
-            long aligned = JNAUtil.UNSAFE.getAddress(address - Native.POINTER_SIZE);
-            long original;
+            long original = JNAUtil.UNSAFE.getAddress(address - Native.POINTER_SIZE);
+            long shift = address - original;
             long offset = alignment - 1 + Native.POINTER_SIZE;
-            if ((original = JNAAllocator.reallocate(aligned, Util.unsignedAddExact(size, offset))) == 0L)
+            if ((original = JNAAllocator.reallocate(original, Util.unsignedAddExact(size, offset))) == 0L)
                 return 0L;
-            if (original != aligned) Native.free(aligned);
-            aligned = (original + offset) & -alignment;
+            long aligned = (original + offset) & -alignment;
+            // realloc keeps the data at the old shift, which may not match the new base address
+            if (aligned - original != shift) JNAUtil.UNSAFE.copyMemory(original + shift, aligned, size);
             JNAUtil.UNSAFE.putAddress(aligned - Native.POINTER_SIZE, original);
             return aligned;
         }
@@ -64,6 +104,7 @@ public final class JNAAlignedAllocator {
 
     public static void free(long address) {
         if (SUPPORTED) _aligned_free(new Pointer(address));
+        else if (ALIGNED_ALLOC_SUPPORTED) Native.free(address);
         else {
             Native.free(JNAUtil.UNSAFE.getAddress(address - Native.POINTER_SIZE));
         }
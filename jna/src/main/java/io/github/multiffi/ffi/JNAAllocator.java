@@ -15,9 +15,31 @@ public final class JNAAllocator {
     private static native Pointer memchr(Pointer address, int value, PointerSize maxLength);
     private static native int memcmp(Pointer aAddress, Pointer bAddress, PointerSize size);
     static {
-        Native.register(JNAMemoryProvider.class, Platform.C_LIBRARY_NAME);
+        Native.register(JNAAllocator.class, Platform.C_LIBRARY_NAME);
     }
 
+    // memmem is a GNU/BSD extension, missing from the Windows C runtime, so it is bound on its own
+    private static final class MemMem {
+        private MemMem() {
+            throw new AssertionError("No io.github.multiffi.ffi.JNAAllocator.MemMem instances for you!");
+        }
+        private static native Pointer memmem(Pointer address, PointerSize maxLength, Pointer valueAddress, PointerSize valueSize);
+    }
+    public static final boolean MEMMEM_SUPPORTED;
+    static {
+        boolean supported;
+        try {
+            Native.register(MemMem.class, Platform.C_LIBRARY_NAME);
+            supported = true;
+        }
+        catch (UnsatisfiedLinkError e) {
+            supported = false;
+        }
+        MEMMEM_SUPPORTED = supported;
+    }
+    // below this length, searching in Java is cheaper than a JNA downcall
+    public static final long JAVA_THRESHOLD = 256;
+
     public static long allocate(long size) {
         return Native.malloc(size);
     }
@@ -38,6 +60,11 @@ public final class JNAAllocator {
         return Pointer.nativeValue(memchr(new Pointer(address), value & 0xFF, new PointerSize(maxLength)));
     }
 
+    public static long search(long address, long maxLength, long valueAddress, long valueSize) {
+        return Pointer.nativeValue(MemMem.memmem(new Pointer(address), new PointerSize(maxLength),
+                new Pointer(valueAddress), new PointerSize(valueSize)));
+    }
+
     public static int compare(long aAddress, long bAddress, long size) {
         return memcmp(new Pointer(aAddress), new Pointer(bAddress), new PointerSize(size));
     }
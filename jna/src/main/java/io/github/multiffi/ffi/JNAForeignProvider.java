@@ -4,7 +4,6 @@ import com.sun.jna.CallbackProxy;
 import com.sun.jna.CallbackReference;
 import com.sun.jna.Native;
 import com.sun.jna.Pointer;
-import com.sun.jna.internal.Cleaner;
 import com.sun.jna.win32.StdCallLibrary;
 import multiffi.ffi.CallOption;
 import multiffi.ffi.FunctionOptionVisitor;
@@ -204,6 +203,18 @@ public class JNAForeignProvider extends ForeignProvider {
     public Object downcallProxy(ClassLoader classLoader, Class<?>[] classes, FunctionOptionVisitor functionOptionVisitor) {
         if (functionOptionVisitor == null) functionOptionVisitor = Util.DEFAULT_SIGNATURE_VISITOR;
         if (classLoader == null) classLoader = ClassLoader.getSystemClassLoader();
+        if (proxyIntrinsics && JNAUtil.PROXY_INTRINSICS && JNAUtil.LAZY_LINKING) return newProxy(classLoader, classes, functionOptionVisitor);
+        else return proxyCache.get(classLoader, classes, functionOptionVisitor,
+                functionOptionVisitor == Util.DEFAULT_SIGNATURE_VISITOR ? this::newDefaultProxy : this::newProxy);
+    }
+
+    private final ProxyCache proxyCache = new ProxyCache();
+    // proxies pregenerated for the default signature rules stand in for the eagerly linked generated ones
+    private Object newDefaultProxy(ClassLoader classLoader, Class<?>[] classes, FunctionOptionVisitor functionOptionVisitor) {
+        Object proxy = (proxyIntrinsics && JNAUtil.PROXY_INTRINSICS) ? Util.newPregeneratedProxy(this, classLoader, classes) : null;
+        return proxy == null ? newProxy(classLoader, classes, functionOptionVisitor) : proxy;
+    }
+    private Object newProxy(ClassLoader classLoader, Class<?>[] classes, FunctionOptionVisitor functionOptionVisitor) {
         return (proxyIntrinsics && JNAUtil.PROXY_INTRINSICS) ? JNAASMRuntime.generateProxy(classLoader, classes, functionOptionVisitor) :
                 classes == null || classes.length == 0 ? null : Proxy.newProxyInstance(classLoader, classes, new ForeignInvocationHandler(this, classes, functionOptionVisitor));
     }
@@ -223,6 +234,8 @@ public class JNAForeignProvider extends ForeignProvider {
 
     @Override
     public MemoryHandle upcallStub(Object object, Method method, int firstVarArgIndex, ForeignType returnType, ForeignType[] parameterTypes, CallOption... options) {
+        long start = ForeignEvents.ENABLED ? System.nanoTime() : 0;
+        String methodName = ForeignEvents.ENABLED ? method.toString() : null;
         boolean stdcall = false;
         if (options != null) {
             for (CallOption option : options) {
@@ -250,6 +263,7 @@ public class JNAForeignProvider extends ForeignProvider {
         CallbackProxy callbackHandler = new CallbackProxy() {
             @Override
             public Object callback(Object[] args) {
+                long start = ForeignEvents.ENABLED ? ForeignEvents.beginCall() : 0;
                 try {
                     for (int i = 0; i < args.length; i ++) {
                         Object arg = args[i];
@@ -269,6 +283,8 @@ public class JNAForeignProvider extends ForeignProvider {
                     throw e;
                 } catch (Throwable e) {
                     throw new IllegalStateException(e);
+                } finally {
+                    if (ForeignEvents.ENABLED) ForeignEvents.endUpcall(methodName, start);
                 }
             }
             @Override
@@ -294,20 +310,21 @@ public class JNAForeignProvider extends ForeignProvider {
                 return callbackHandler.getReturnType();
             }
         } : callbackHandler;
-        Cleaner.Cleanable cleanup = Cleaner.getCleaner().register(Modifier.isStatic(method.getModifiers()) ? method.getDeclaringClass() : Objects.requireNonNull(object),
+        Runnable cleanup = ShardedCleaner.register(Modifier.isStatic(method.getModifiers()) ? method.getDeclaringClass() : Objects.requireNonNull(object),
                 new CallbackHolder(callback));
         long address = Pointer.nativeValue(CallbackReference.getFunctionPointer(callback));
+        if (ForeignEvents.ENABLED) ForeignEvents.upcallStub(method, address, System.nanoTime() - start);
         return new DirectWrapperMemoryHandle(address, 0) {
             @Override
             protected void free(long address) {
-                cleanup.clean();
+                cleanup.run();
             }
         };
     }
 
     @Override
     public Runnable registerCleaner(Object object, Runnable cleanup) {
-        return Cleaner.getCleaner().register(Objects.requireNonNull(object), Objects.requireNonNull(cleanup))::clean;
+        return ShardedCleaner.register(object, cleanup);
     }
 
 }
@@ -10,6 +10,9 @@ import multiffi.ffi.MemoryHandle;
 import multiffi.ffi.ScalarType;
 import multiffi.ffi.StandardCallOption;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Array;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -27,6 +30,7 @@ public class JNAFunctionHandle extends FunctionHandle {
     private final InvocationDelegate<Object[], Object> delegate;
 
     public JNAFunctionHandle(long address, int firstVarArgIndex, ForeignType returnType, ForeignType[] parameterTypes, CallOption... options) {
+        long start = ForeignEvents.ENABLED ? System.nanoTime() : 0;
         boolean dyncall = false;
         boolean stdcall = false;
         boolean saveErrno = false;
@@ -102,19 +106,26 @@ public class JNAFunctionHandle extends FunctionHandle {
             int varargsLength = Array.getLength(varargs);
             Object[] arguments = new Object[args.length - 1 + varargsLength];
             System.arraycopy(args, 0, arguments, 0, args.length - 1);
-            System.arraycopy(varargs, 0, arguments, args.length - 1, varargsLength);
+            if (varargs instanceof Object[]) System.arraycopy(varargs, 0, arguments, args.length - 1, varargsLength);
+            else {
+                for (int i = 0; i < varargsLength; i ++) {
+                    arguments[args.length - 1 + i] = Array.get(varargs, i);
+                }
+            }
             return function.invoke(arguments);
         };
         else delegate = function;
+        InvocationDelegate<Object[], Object> timedDelegate = ForeignEvents.ENABLED ? ForeignEvents.timeDowncall(delegate, address) : delegate;
         if (saveErrno) this.delegate = args -> {
             try {
-                return delegate.invoke(args);
+                return timedDelegate.invoke(args);
             }
             finally {
                 JNALastErrno.dump();
             }
         };
-        else this.delegate = delegate;
+        else this.delegate = timedDelegate;
+        if (ForeignEvents.ENABLED) ForeignEvents.downcallLink(address, getMethodType(), System.nanoTime() - start);
     }
 
     private static Object checkArgument(ForeignType type, Object argument) {
@@ -155,6 +166,33 @@ public class JNAFunctionHandle extends FunctionHandle {
         }
     }
 
+    private static final MethodHandle DUMP_ERRNO;
+    static {
+        try {
+            DUMP_ERRNO = MethodHandles.lookup().findStatic(JNALastErrno.class, "dump", MethodType.methodType(void.class));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            throw new IllegalStateException("Unexpected exception", e);
+        }
+    }
+
+    @Override
+    protected MethodHandle createMethodHandle() {
+        if (!JNAUtil.PROXY_INTRINSICS || dyncall || firstVarArgIndex != -1) return super.createMethodHandle();
+        for (ForeignType parameterType : parameterTypes) {
+            if (parameterType.isCompound()) return super.createMethodHandle();
+        }
+        MethodType methodType = getMethodType();
+        MethodHandle methodHandle = JNAASMRuntime.generateDirectMethodHandle(JNAFunctionHandle.class.getClassLoader(),
+                address(), methodType, isStdCall());
+        if (ForeignEvents.ENABLED) methodHandle = ForeignEvents.timeDowncall(methodHandle, address());
+        if (saveErrno) {
+            if (methodType.returnType() == void.class) methodHandle = MethodHandles.filterReturnValue(methodHandle, DUMP_ERRNO);
+            else methodHandle = MethodHandles.filterReturnValue(methodHandle,
+                    MethodHandles.foldArguments(MethodHandles.identity(methodType.returnType()), DUMP_ERRNO));
+        }
+        return methodHandle;
+    }
+
     @Override
     public long address() {
         return Pointer.nativeValue(function);
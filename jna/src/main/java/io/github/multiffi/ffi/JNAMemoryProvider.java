@@ -65,10 +65,37 @@ public class JNAMemoryProvider extends MemoryProvider {
         long remaining = arrayLength - arrayOffset;
         if (maxLength < 0 || maxLength > remaining) maxLength = remaining;
         long arrayBaseOffset = JNAUtil.UNSAFE.arrayBaseOffset(array.getClass());
-        for (long i = 0; i < maxLength; i ++) {
-            if (JNAUtil.UNSAFE.getByte(array, arrayBaseOffset + arrayOffset + i) == value) return arrayOffset + i;
-        }
-        return -1;
+        long index = UnsafeMemory.search(array, arrayBaseOffset + arrayOffset, value, maxLength);
+        return index == -1 ? -1 : arrayOffset + index;
+    }
+
+    @Override
+    public long getZeroTerminatedLength(long address, long maxLength, int unitSize) {
+        return UnsafeMemory.zeroTerminatedLength(null, address, unitSize, maxLength);
+    }
+
+    @Override
+    public long getZeroTerminatedLength(Object memoryArray, long memoryArrayOffset, long maxLength, int unitSize) {
+        long arrayLength = Util.getArrayContentSize(memoryArray);
+        if (memoryArrayOffset < 0 || memoryArrayOffset > arrayLength)
+            throw new ArrayIndexOutOfBoundsException("Array index out of range: " + Long.toUnsignedString(memoryArrayOffset));
+        long remaining = arrayLength - memoryArrayOffset;
+        if (maxLength < 0 || maxLength > remaining) maxLength = remaining;
+        long arrayBaseOffset = JNAUtil.UNSAFE.arrayBaseOffset(memoryArray.getClass());
+        return UnsafeMemory.zeroTerminatedLength(memoryArray, arrayBaseOffset + memoryArrayOffset, unitSize, maxLength);
+    }
+
+    @Override
+    public boolean isNativeSearchPreferred(long address, long maxLength) {
+        // an unbounded search cannot be expressed as a memmem haystack
+        return JNAAllocator.MEMMEM_SUPPORTED && Long.compareUnsigned(maxLength, JNAAllocator.JAVA_THRESHOLD) > 0
+                && Long.compareUnsigned(address + maxLength, address) >= 0;
+    }
+
+    @Override
+    public long search(long address, long valueAddress, long valueSize, long maxLength) {
+        if (isNativeSearchPreferred(address, maxLength)) return JNAAllocator.search(address, maxLength, valueAddress, valueSize);
+        else return super.search(address, valueAddress, valueSize, maxLength);
     }
 
     @Override
@@ -84,12 +111,7 @@ public class JNAMemoryProvider extends MemoryProvider {
             throw new ArrayIndexOutOfBoundsException("Array index out of range: " + Long.toUnsignedString(index));
         Util.unsignedAddExact(aAddress, size);
         long arrayBaseOffset = JNAUtil.UNSAFE.arrayBaseOffset(bArray.getClass());
-        for (long i = 0; i < size; i ++) {
-            int cmp = Util.compareUnsigned(JNAUtil.UNSAFE.getByte(aAddress + i),
-                    JNAUtil.UNSAFE.getByte(bArray, arrayBaseOffset + bArrayOffset + i));
-            if (cmp != 0) return cmp;
-        }
-        return 0;
+        return UnsafeMemory.compare(null, aAddress, bArray, arrayBaseOffset + bArrayOffset, size);
     }
 
     @Override
@@ -100,12 +122,7 @@ public class JNAMemoryProvider extends MemoryProvider {
             throw new ArrayIndexOutOfBoundsException("Array index out of range: " + Long.toUnsignedString(index));
         Util.unsignedAddExact(bAddress, size);
         long arrayBaseOffset = JNAUtil.UNSAFE.arrayBaseOffset(aArray.getClass());
-        for (long i = 0; i < size; i ++) {
-            int cmp = Util.compareUnsigned(JNAUtil.UNSAFE.getByte(aArray, arrayBaseOffset + aArrayOffset + i),
-                    JNAUtil.UNSAFE.getByte(bAddress + i));
-            if (cmp != 0) return cmp;
-        }
-        return 0;
+        return UnsafeMemory.compare(aArray, arrayBaseOffset + aArrayOffset, null, bAddress, size);
     }
 
     @Override
@@ -118,14 +135,15 @@ public class JNAMemoryProvider extends MemoryProvider {
         index = Util.unsignedAddExact(bArrayOffset, size);
         if (index < 0 || index > bArrayLength)
             throw new ArrayIndexOutOfBoundsException("Array index out of range: " + Long.toUnsignedString(index));
-        long aArrayBaseOffset = JNAUtil.UNSAFE.arrayBaseOffset(aArray.getClass());
-        long bArrayBaseOffset = JNAUtil.UNSAFE.arrayBaseOffset(aArray.getClass());
-        for (long i = 0; i < size; i ++) {
-            int cmp = Util.compareUnsigned(JNAUtil.UNSAFE.getByte(aArray, aArrayBaseOffset + aArrayOffset + i),
-                    JNAUtil.UNSAFE.getByte(bArray, bArrayBaseOffset + bArrayOffset + i));
-            if (cmp != 0) return cmp;
+        if (aArray instanceof byte[] && bArray instanceof byte[] && Words.isMismatchSupported()) {
+            byte[] aBytes = (byte[]) aArray;
+            byte[] bBytes = (byte[]) bArray;
+            int mismatch = Words.mismatch(aBytes, (int) aArrayOffset, bBytes, (int) bArrayOffset, (int) size);
+            return mismatch == -1 ? 0 : Util.compareUnsigned(aBytes[(int) aArrayOffset + mismatch], bBytes[(int) bArrayOffset + mismatch]);
         }
-        return 0;
+        long aArrayBaseOffset = JNAUtil.UNSAFE.arrayBaseOffset(aArray.getClass());
+        long bArrayBaseOffset = JNAUtil.UNSAFE.arrayBaseOffset(bArray.getClass());
+        return UnsafeMemory.compare(aArray, aArrayBaseOffset + aArrayOffset, bArray, bArrayBaseOffset + bArrayOffset, size);
     }
 
     @Override
@@ -158,10 +176,7 @@ public class JNAMemoryProvider extends MemoryProvider {
             throw new ArrayIndexOutOfBoundsException("Array index out of range: " + Long.toUnsignedString(index));
         Util.unsignedAddExact(destAddress, size);
         long arrayBaseOffset = JNAUtil.UNSAFE.arrayBaseOffset(srcArray.getClass());
-        for (long i = 0; i < size; i ++) {
-            JNAUtil.UNSAFE.putByte(destAddress + i,
-                    JNAUtil.UNSAFE.getByte(srcArray, arrayBaseOffset + srcArrayOffset + i));
-        }
+        UnsafeMemory.copyMemory(srcArray, arrayBaseOffset + srcArrayOffset, null, destAddress, size);
         return destAddress;
     }
 
@@ -173,10 +188,7 @@ public class JNAMemoryProvider extends MemoryProvider {
             throw new ArrayIndexOutOfBoundsException("Array index out of range: " + Long.toUnsignedString(index));
         Util.unsignedAddExact(srcAddress, size);
         long arrayBaseOffset = JNAUtil.UNSAFE.arrayBaseOffset(destArray.getClass());
-        for (long i = 0; i < size; i ++) {
-            JNAUtil.UNSAFE.putByte(destArray, arrayBaseOffset + destArrayOffset + i,
-                    JNAUtil.UNSAFE.getByte(srcAddress + i));
-        }
+        UnsafeMemory.copyMemory(null, srcAddress, destArray, arrayBaseOffset + destArrayOffset, size);
         return destArray;
     }
 
@@ -192,7 +204,7 @@ public class JNAMemoryProvider extends MemoryProvider {
             throw new ArrayIndexOutOfBoundsException("Array index out of range: " + Long.toUnsignedString(index));
         long destArrayBaseOffset = JNAUtil.UNSAFE.arrayBaseOffset(destArray.getClass());
         long srcArrayBaseOffset = JNAUtil.UNSAFE.arrayBaseOffset(srcArray.getClass());
-        JNAUtil.UNSAFE.copyMemory(srcArray, srcArrayBaseOffset + srcArrayOffset,
+        UnsafeMemory.copyMemory(srcArray, srcArrayBaseOffset + srcArrayOffset,
                 destArray, destArrayBaseOffset + destArrayOffset, size);
         return destArray;
     }
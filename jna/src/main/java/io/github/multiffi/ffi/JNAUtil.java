@@ -34,6 +34,7 @@ public final class JNAUtil {
     public static final boolean STDCALL_SUPPORTED = Platform.isWindows() && !Platform.isWindowsCE() && !Platform.is64Bit();
     public static final boolean PROXY_INTRINSICS = Util.getBooleanProperty("multiffi.foreign.proxyIntrinsics", true)
             && !"dalvik".equalsIgnoreCase(System.getProperty("java.vm.name"));
+    public static final boolean LAZY_LINKING = Util.getBooleanProperty("multiffi.foreign.lazyLinking", false);
     public static final ByteOrder NATIVE_ORDER = ByteOrder.nativeOrder();
     public static final boolean IS_BIG_ENDIAN = NATIVE_ORDER.equals(ByteOrder.BIG_ENDIAN);
 
@@ -22,6 +22,14 @@ public final class JNRAlignedAllocator {
         void _aligned_free(@caddr_t long address);
     }
 
+    public interface AlignedAllocLibrary {
+        @IgnoreError
+        @caddr_t long aligned_alloc(@size_t long alignment, @size_t long size);
+    }
+
+    // the alignment guaranteed by malloc on all supported platforms
+    private static final long MALLOC_ALIGNMENT = JNRUtil.ADDRESS_SIZE * 2L;
+
     private static CLibrary initializeAlignedAllocator() {
         if (JNRUtil.PLATFORM.getOS() == Platform.OS.WINDOWS) {
             try {
@@ -31,6 +39,39 @@ public final class JNRAlignedAllocator {
             catch (Throwable ignored) {
             }
         }
+        else {
+            try {
+                JNRLibraryLookup.getSymbolAddress("aligned_alloc");
+                AlignedAllocLibrary library = LibraryLoader.create(AlignedAllocLibrary.class).load(JNRUtil.PLATFORM.getStandardCLibraryName());
+                // Darwin enforces the C11 requirement that size is a multiple of alignment
+                boolean roundSize = JNRUtil.PLATFORM.getOS() == Platform.OS.DARWIN;
+                return new CLibrary() {
+                    @Override
+                    public long _aligned_malloc(long size, long alignment) {
+                        if (alignment <= MALLOC_ALIGNMENT) return JNRUtil.MEMORY_IO.allocateMemory(size, false);
+                        if (roundSize) size = Util.unsignedAddExact(size, alignment - 1) & -alignment;
+                        return library.aligned_alloc(alignment, size);
+                    }
+                    @Override
+                    public long _aligned_realloc(long address, long size, long alignment) {
+                        long reallocated = JNRAllocator.reallocate(address, size);
+                        if (reallocated == 0L || (reallocated & (alignment - 1)) == 0L) return reallocated;
+                        // realloc does not preserve the alignment, the block has to be moved once more
+                        long aligned = _aligned_malloc(size, alignment);
+                        if (aligned != 0L) JNRUtil.MEMORY_IO.copyMemory(reallocated, aligned, size);
+                        JNRUtil.MEMORY_IO.freeMemory(reallocated);
+                        if (aligned == 0L) throw new OutOfMemoryError("Failed to reallocate " + size + " bytes aligned to " + alignment);
+                        return aligned;
+                    }
+                    @Override
+                    public void _aligned_free(long address) {
+                        JNRUtil.MEMORY_IO.freeMemory(address);
+                    }
+                };
+            }
+            catch (Throwable ignored) {
+            }
+        }
         return new CLibrary() {
             @Override
             public long _aligned_malloc(long size, long alignment) {
@@ -43,12 +84,13 @@ public final class JNRAlignedAllocator {
             }
             @Override
             public long _aligned_realloc(long address, long size, long alignment) {
-                long aligned = JNRUtil.MEMORY_IO.getAddress(address - JNRUtil.ADDRESS_SIZE);
-                long original;
+                long original = JNRUtil.MEMORY_IO.getAddress(address - JNRUtil.ADDRESS_SIZE);
+                long shift = address - original;
                 long offset = alignment - 1 + JNRUtil.ADDRESS_SIZE;
-                if ((original = JNRAllocator.reallocate(aligned, Util.unsignedAddExact(size, offset))) == 0L) return 0L;
-                if (original != aligned) JNRUtil.MEMORY_IO.freeMemory(aligned);
-                aligned = (original + offset) & -alignment;
+                if ((original = JNRAllocator.reallocate(original, Util.unsignedAddExact(size, offset))) == 0L) return 0L;
+                long aligned = (original + offset) & -alignment;
+                // realloc keeps the data at the old shift, which may not match the new base address
+                if (aligned - original != shift) JNRUtil.MEMORY_IO.memmove(aligned, original + shift, size);
                 JNRUtil.MEMORY_IO.putAddress(aligned - JNRUtil.ADDRESS_SIZE, original);
                 return aligned;
             }
@@ -66,8 +108,9 @@ public final class JNRAlignedAllocator {
 
     public static long allocateInitialized(long count, long size, long alignment) {
         if (alignment == 0 || (alignment & (alignment - 1)) != 0) throw new IllegalArgumentException("alignment must be a power-of-two value");
-        long address = CLibrary.INSTANCE._aligned_malloc(Util.unsignedMultiplyExact(count, size), alignment);
-        JNRUtil.MEMORY_IO.setMemory(address, size, (byte) 0);
+        size = Util.unsignedMultiplyExact(count, size);
+        long address = CLibrary.INSTANCE._aligned_malloc(size, alignment);
+        if (address != 0L) JNRUtil.MEMORY_IO.setMemory(address, size, (byte) 0);
         return address;
     }
 
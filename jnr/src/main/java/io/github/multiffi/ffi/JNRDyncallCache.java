@@ -0,0 +1,152 @@
+package io.github.multiffi.ffi;
+
+import com.kenai.jffi.CallContext;
+import multiffi.ffi.CompoundType;
+import multiffi.ffi.ForeignType;
+import multiffi.ffi.MemoryHandle;
+import multiffi.ffi.ScalarType;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+public final class JNRDyncallCache {
+
+    public static final int CAPACITY = Math.max(0, Util.getIntProperty("multiffi.foreign.dyncallCacheCapacity", 64));
+
+    private static final LongAdder HITS = new LongAdder();
+    private static final LongAdder MISSES = new LongAdder();
+    private static final LongAdder EVICTIONS = new LongAdder();
+
+    public static long hitCount() {
+        return HITS.sum();
+    }
+
+    public static long missCount() {
+        return MISSES.sum();
+    }
+
+    public static long evictionCount() {
+        return EVICTIONS.sum();
+    }
+
+    @FunctionalInterface
+    public interface Linker {
+        Linkage link(ForeignType[] varargTypes);
+    }
+
+    public static final class Linkage {
+        private final CallContext context;
+        private final JNRInvoker invoker;
+        private final List<ForeignType> parameterTypes;
+        public Linkage(CallContext context, JNRInvoker invoker, List<ForeignType> parameterTypes) {
+            this.context = context;
+            this.invoker = invoker;
+            this.parameterTypes = parameterTypes;
+        }
+        public CallContext context() {
+            return context;
+        }
+        public JNRInvoker invoker() {
+            return invoker;
+        }
+        public List<ForeignType> parameterTypes() {
+            return parameterTypes;
+        }
+    }
+
+    // ForeignType.equals compares sizes only, so the shape is encoded as scalar tags (negative) or compound sizes
+    private static final class Shape {
+        private final long[] codes;
+        private final int hashCode;
+        private Shape(long[] codes) {
+            this.codes = codes;
+            this.hashCode = Arrays.hashCode(codes);
+        }
+        @Override
+        public boolean equals(Object object) {
+            if (this == object) return true;
+            if (!(object instanceof Shape)) return false;
+            Shape that = (Shape) object;
+            return hashCode == that.hashCode && Arrays.equals(codes, that.codes);
+        }
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+
+    private static long toCode(Object vararg) {
+        if (vararg instanceof Boolean) return -1L;
+        else if (vararg instanceof Character) return -2L;
+        else if (vararg instanceof Byte) return -3L;
+        else if (vararg instanceof Short) return -4L;
+        else if (vararg instanceof Integer) return -5L;
+        else if (vararg instanceof Long) return -6L;
+        else if (vararg instanceof Float) return -7L;
+        else if (vararg instanceof Double) return -8L;
+        else if (vararg instanceof MemoryHandle) {
+            long size = ((MemoryHandle) vararg).size();
+            if (size < 0 || size > (Integer.MAX_VALUE - 8)) throw new IndexOutOfBoundsException("Index out of range: " + Long.toUnsignedString(size));
+            return size;
+        }
+        else throw new IllegalArgumentException("Illegal argument: " + vararg);
+    }
+
+    private static ForeignType toForeignType(long code) {
+        if (code == -1L) return ScalarType.BOOLEAN;
+        else if (code == -2L) return ScalarType.UTF16;
+        else if (code == -3L) return ScalarType.INT8;
+        else if (code == -4L) return ScalarType.INT16;
+        else if (code == -5L) return ScalarType.INT32;
+        else if (code == -6L) return ScalarType.INT64;
+        else if (code == -7L) return ScalarType.FLOAT;
+        else if (code == -8L) return ScalarType.DOUBLE;
+        else return CompoundType.ofArray(ScalarType.INT8, code);
+    }
+
+    private final ConcurrentHashMap<Shape, Linkage> linkages = new ConcurrentHashMap<>();
+    private final Linker linker;
+
+    public JNRDyncallCache(Linker linker) {
+        this.linker = linker;
+    }
+
+    public Linkage get(Object[] arguments, int varargsOffset) {
+        long[] codes = new long[arguments.length - varargsOffset];
+        for (int i = 0; i < codes.length; i ++) {
+            codes[i] = toCode(arguments[varargsOffset + i]);
+        }
+        Shape shape = new Shape(codes);
+        Linkage linkage = linkages.get(shape);
+        if (linkage != null) {
+            HITS.increment();
+            return linkage;
+        }
+        MISSES.increment();
+        ForeignType[] varargTypes = new ForeignType[codes.length];
+        for (int i = 0; i < codes.length; i ++) {
+            varargTypes[i] = toForeignType(codes[i]);
+        }
+        linkage = linker.link(varargTypes);
+        if (CAPACITY == 0) return linkage;
+        while (linkages.size() >= CAPACITY) {
+            Iterator<Shape> iterator = linkages.keySet().iterator();
+            if (!iterator.hasNext()) break;
+            if (linkages.remove(iterator.next()) != null) EVICTIONS.increment();
+        }
+        Linkage previous = linkages.putIfAbsent(shape, linkage);
+        return previous == null ? linkage : previous;
+    }
+
+    public int size() {
+        return linkages.size();
+    }
+
+    public void clear() {
+        linkages.clear();
+    }
+
+}
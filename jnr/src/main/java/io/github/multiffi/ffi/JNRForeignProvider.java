@@ -4,7 +4,6 @@ import com.kenai.jffi.CallingConvention;
 import com.kenai.jffi.Closure;
 import com.kenai.jffi.ClosureManager;
 import com.kenai.jffi.Type;
-import com.kenai.jffi.internal.Cleaner;
 import multiffi.ffi.CallOption;
 import multiffi.ffi.FunctionOptionVisitor;
 import multiffi.ffi.Foreign;
@@ -205,12 +204,25 @@ public class JNRForeignProvider extends ForeignProvider {
     public Object downcallProxy(ClassLoader classLoader, Class<?>[] classes, FunctionOptionVisitor functionOptionVisitor) {
         if (functionOptionVisitor == null) functionOptionVisitor = Util.DEFAULT_SIGNATURE_VISITOR;
         if (classLoader == null) classLoader = ClassLoader.getSystemClassLoader();
+        if (proxyIntrinsics && JNRUtil.PROXY_INTRINSICS && JNRUtil.LAZY_LINKING) return newProxy(classLoader, classes, functionOptionVisitor);
+        else return proxyCache.get(classLoader, classes, functionOptionVisitor,
+                functionOptionVisitor == Util.DEFAULT_SIGNATURE_VISITOR ? this::newDefaultProxy : this::newProxy);
+    }
+
+    private final ProxyCache proxyCache = new ProxyCache();
+    // proxies pregenerated for the default signature rules stand in for the eagerly linked generated ones
+    private Object newDefaultProxy(ClassLoader classLoader, Class<?>[] classes, FunctionOptionVisitor functionOptionVisitor) {
+        Object proxy = (proxyIntrinsics && JNRUtil.PROXY_INTRINSICS) ? Util.newPregeneratedProxy(this, classLoader, classes) : null;
+        return proxy == null ? newProxy(classLoader, classes, functionOptionVisitor) : proxy;
+    }
+    private Object newProxy(ClassLoader classLoader, Class<?>[] classes, FunctionOptionVisitor functionOptionVisitor) {
         return (proxyIntrinsics && JNRUtil.PROXY_INTRINSICS) ? JNRASMRuntime.generateProxy(classLoader, classes, functionOptionVisitor) :
                 classes == null || classes.length == 0 ? null : Proxy.newProxyInstance(classLoader, classes, new ForeignInvocationHandler(this, classes, functionOptionVisitor));
     }
 
     @Override
     public MemoryHandle upcallStub(Object object, Method method, int firstVarArgIndex, ForeignType returnType, ForeignType[] parameterTypes, CallOption... options) {
+        long start = ForeignEvents.ENABLED ? System.nanoTime() : 0;
         boolean isStatic = Modifier.isStatic(method.getModifiers());
         if (!isStatic) Objects.requireNonNull(object);
         boolean stdcall = false;
@@ -307,11 +319,25 @@ public class JNRForeignProvider extends ForeignProvider {
                 }
             }
         };
+        if (ForeignEvents.ENABLED) {
+            Closure target = closure;
+            String methodName = method.toString();
+            closure = buffer -> {
+                long callStart = ForeignEvents.beginCall();
+                try {
+                    target.invoke(buffer);
+                }
+                finally {
+                    ForeignEvents.endUpcall(methodName, callStart);
+                }
+            };
+        }
         Closure.Handle handle = ClosureManager.getInstance().newClosure(closure,
                 returnFFIType, parameterFFITypes, stdcall ? CallingConvention.STDCALL : CallingConvention.DEFAULT);
         handle.setAutoRelease(false);
-        Runnable cleanup = Cleaner.register(isStatic ? method.getDeclaringClass() : object, handle::dispose);
+        Runnable cleanup = ShardedCleaner.register(isStatic ? method.getDeclaringClass() : object, handle::dispose);
         long address = handle.getAddress();
+        if (ForeignEvents.ENABLED) ForeignEvents.upcallStub(method, address, System.nanoTime() - start);
         return new DirectWrapperMemoryHandle(address, 0) {
             @Override
             protected void free(long address) {
@@ -322,7 +348,7 @@ public class JNRForeignProvider extends ForeignProvider {
 
     @Override
     public Runnable registerCleaner(Object object, Runnable cleanup) {
-        return Cleaner.register(object, cleanup);
+        return ShardedCleaner.register(object, cleanup);
     }
 
 }
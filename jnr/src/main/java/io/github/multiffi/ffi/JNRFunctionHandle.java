@@ -2,14 +2,16 @@ package io.github.multiffi.ffi;
 
 import com.kenai.jffi.CallContext;
 import com.kenai.jffi.CallingConvention;
+import com.kenai.jffi.Invoker;
 import multiffi.ffi.CallOption;
-import multiffi.ffi.CompoundType;
 import multiffi.ffi.ForeignType;
 import multiffi.ffi.FunctionHandle;
 import multiffi.ffi.MemoryHandle;
-import multiffi.ffi.ScalarType;
 import multiffi.ffi.StandardCallOption;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Array;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -26,8 +28,11 @@ public class JNRFunctionHandle extends FunctionHandle {
     private final List<ForeignType> parameterTypes;
     private final ForeignType returnType;
     private final InvocationDelegate<Object[], Object> delegate;
+    private final CallContext context;
+    private final JNRInvoker invoker;
 
     public JNRFunctionHandle(long address, int firstVarArgIndex, ForeignType returnType, ForeignType[] parameterTypes, CallOption... options) {
+        long start = ForeignEvents.ENABLED ? System.nanoTime() : 0;
         boolean dyncall = false;
         boolean stdcall = false;
         boolean saveErrno = false;
@@ -57,54 +62,149 @@ public class JNRFunctionHandle extends FunctionHandle {
         this.convention = stdcall ? CallingConvention.STDCALL : CallingConvention.DEFAULT;
         this.address = address;
         InvocationDelegate<Object[], Object> delegate;
-        if (dyncall) delegate = args -> {
-            if (args == null || args.length != this.parameterTypes.size() + 1) throw new ArrayIndexOutOfBoundsException("length mismatch");
-            int fixedArgsLength = args.length - 1;
-            Object varargs = args[fixedArgsLength];
-            if (!varargs.getClass().isArray()) throw new IllegalArgumentException("Last argument must be array as variadic arguments");
-            int varargsLength = Array.getLength(varargs);
-            Object[] arguments = new Object[fixedArgsLength + varargsLength];
-            System.arraycopy(args, 0, arguments, 0, fixedArgsLength);
-            System.arraycopy(varargs, 0, arguments, fixedArgsLength, varargsLength);
-            List<ForeignType> parameterForeignTypes = new ArrayList<>(arguments.length);
-            parameterForeignTypes.addAll(JNRFunctionHandle.this.parameterTypes);
-            if (addReturnMemoryParameter) parameterForeignTypes.remove(0);
-            for (int i = JNRFunctionHandle.this.parameterTypes.size(); i < arguments.length; i ++) {
-                Object arg = arguments[i];
-                if (arg instanceof Boolean) parameterForeignTypes.add(ScalarType.BOOLEAN);
-                else if (arg instanceof Character) parameterForeignTypes.add(ScalarType.UTF16);
-                else if (arg instanceof Byte) parameterForeignTypes.add(ScalarType.INT8);
-                else if (arg instanceof Short) parameterForeignTypes.add(ScalarType.INT16);
-                else if (arg instanceof Integer) parameterForeignTypes.add(ScalarType.INT32);
-                else if (arg instanceof Long) parameterForeignTypes.add(ScalarType.INT64);
-                else if (arg instanceof Float) parameterForeignTypes.add(ScalarType.FLOAT);
-                else if (arg instanceof Double) parameterForeignTypes.add(ScalarType.DOUBLE);
+        if (dyncall) {
+            this.context = null;
+            this.invoker = null;
+            JNRDyncallCache cache = new JNRDyncallCache(varargTypes -> {
+                long linkStart = ForeignEvents.ENABLED ? System.nanoTime() : 0;
+                List<ForeignType> parameterForeignTypes = new ArrayList<>(JNRFunctionHandle.this.parameterTypes.size() + varargTypes.length);
+                parameterForeignTypes.addAll(JNRFunctionHandle.this.parameterTypes);
+                if (addReturnMemoryParameter) parameterForeignTypes.remove(0);
+                Collections.addAll(parameterForeignTypes, varargTypes);
+                CallContext context = CallContext.getCallContext(JNRUtil.toFFIType(returnType), JNRUtil.toFFITypes(parameterForeignTypes), convention, JNRFunctionHandle.this.saveErrno);
+                if (addReturnMemoryParameter) parameterForeignTypes.add(0, returnType);
+                List<ForeignType> invokerParameterTypes = Collections.unmodifiableList(parameterForeignTypes);
+                JNRInvoker invoker = JNRInvoker.getSupportedInvoker(context, returnType, invokerParameterTypes, convention);
+                if (ForeignEvents.ENABLED) ForeignEvents.downcallLink(address, toMethodType(returnType, invokerParameterTypes),
+                        System.nanoTime() - linkStart);
+                return new JNRDyncallCache.Linkage(context, invoker, invokerParameterTypes);
+            });
+            delegate = args -> {
+                if (args == null || args.length != this.parameterTypes.size() + 1) throw new ArrayIndexOutOfBoundsException("length mismatch");
+                int fixedArgsLength = args.length - 1;
+                Object varargs = args[fixedArgsLength];
+                if (!varargs.getClass().isArray()) throw new IllegalArgumentException("Last argument must be array as variadic arguments");
+                int varargsLength = Array.getLength(varargs);
+                Object[] arguments = new Object[fixedArgsLength + varargsLength];
+                System.arraycopy(args, 0, arguments, 0, fixedArgsLength);
+                if (varargs instanceof Object[]) System.arraycopy(varargs, 0, arguments, fixedArgsLength, varargsLength);
                 else {
-                    MemoryHandle memoryHandle = (MemoryHandle) arg;
-                    long size = memoryHandle.size();
-                    if (size < 0 || size > (Integer.MAX_VALUE - 8)) throw new IndexOutOfBoundsException("Index out of range: " + Long.toUnsignedString(size));
-                    parameterForeignTypes.add(CompoundType.ofArray(ScalarType.INT8, size));
+                    for (int i = 0; i < varargsLength; i ++) {
+                        arguments[fixedArgsLength + i] = Array.get(varargs, i);
+                    }
                 }
-            }
-            CallContext context = CallContext.getCallContext(JNRUtil.toFFIType(returnType), JNRUtil.toFFITypes(parameterForeignTypes), convention, JNRFunctionHandle.this.saveErrno);
-            parameterForeignTypes.add(0, returnType);
-            JNRInvoker invoker = JNRInvoker.getSupportedInvoker(context, returnType, parameterForeignTypes, convention);
-            return invoker.invoke(context, returnType, parameterForeignTypes, address, arguments);
-        };
+                JNRDyncallCache.Linkage linkage = cache.get(arguments, fixedArgsLength);
+                return linkage.invoker().invoke(linkage.context(), returnType, linkage.parameterTypes(), address, arguments);
+            };
+        }
         else {
             CallContext context = CallContext.getCallContext(JNRUtil.toFFIType(returnType), parameterTypes == null ? JNRUtil.EMPTY_TYPE_ARRAY : JNRUtil.toFFITypes(parameterTypes), convention, saveErrno);
             JNRInvoker invoker = JNRInvoker.getSupportedInvoker(context, returnType, this.parameterTypes, convention);
+            this.context = context;
+            this.invoker = invoker;
             delegate = args -> invoker.invoke(context, returnType, JNRFunctionHandle.this.parameterTypes, address, args == null ? Util.EMPTY_OBJECT_ARRAY : args.clone());
+            if (ForeignEvents.ENABLED) ForeignEvents.downcallLink(address, getMethodType(), System.nanoTime() - start);
         }
+        InvocationDelegate<Object[], Object> timedDelegate = ForeignEvents.ENABLED ? ForeignEvents.timeDowncall(delegate, address) : delegate;
         if (saveErrno) this.delegate = args -> {
             try {
-                return delegate.invoke(args);
+                return timedDelegate.invoke(args);
             }
             finally {
                 JNRLastErrno.dump();
             }
         };
-        else this.delegate = delegate;
+        else this.delegate = timedDelegate;
+    }
+
+    private static final MethodHandle FLOAT_TO_INT64;
+    private static final MethodHandle DOUBLE_TO_INT64;
+    private static final MethodHandle INT64_TO_FLOAT;
+    private static final MethodHandle INT64_TO_DOUBLE;
+    private static final MethodHandle INT32_TO_BOOLEAN;
+    private static final MethodHandle INT64_TO_BOOLEAN;
+    private static final MethodHandle DUMP_ERRNO;
+    static {
+        try {
+            FLOAT_TO_INT64 = MethodHandles.lookup().findStatic(JNRFunctionHandle.class, "floatToInt64",
+                    MethodType.methodType(long.class, float.class));
+            DOUBLE_TO_INT64 = MethodHandles.lookup().findStatic(Double.class, "doubleToRawLongBits",
+                    MethodType.methodType(long.class, double.class));
+            INT64_TO_FLOAT = MethodHandles.lookup().findStatic(JNRFunctionHandle.class, "int64ToFloat",
+                    MethodType.methodType(float.class, long.class));
+            INT64_TO_DOUBLE = MethodHandles.lookup().findStatic(Double.class, "longBitsToDouble",
+                    MethodType.methodType(double.class, long.class));
+            INT32_TO_BOOLEAN = MethodHandles.lookup().findStatic(JNRFunctionHandle.class, "int32ToBoolean",
+                    MethodType.methodType(boolean.class, int.class));
+            INT64_TO_BOOLEAN = MethodHandles.lookup().findStatic(JNRFunctionHandle.class, "int64ToBoolean",
+                    MethodType.methodType(boolean.class, long.class));
+            DUMP_ERRNO = MethodHandles.lookup().findStatic(JNRLastErrno.class, "dump", MethodType.methodType(void.class));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            throw new IllegalStateException("Unexpected exception", e);
+        }
+    }
+    private static MethodType toMethodType(ForeignType returnType, List<ForeignType> parameterTypes) {
+        Class<?>[] parameterClasses = new Class<?>[parameterTypes.size()];
+        for (int i = 0; i < parameterClasses.length; i ++) {
+            parameterClasses[i] = Util.getMappingType(parameterTypes.get(i));
+        }
+        return MethodType.methodType(Util.getMappingType(returnType), parameterClasses);
+    }
+    private static long floatToInt64(float value) {
+        return Float.floatToRawIntBits(value) & 0xFFFFFFFFL;
+    }
+    private static float int64ToFloat(long value) {
+        return Float.intBitsToFloat((int) value);
+    }
+    private static boolean int32ToBoolean(int value) {
+        return value != 0;
+    }
+    private static boolean int64ToBoolean(long value) {
+        return value != 0L;
+    }
+
+    @Override
+    protected MethodHandle createMethodHandle() {
+        String methodName;
+        if (invoker instanceof JNRInvoker.FastInt) methodName = "invokeI";
+        else if (invoker instanceof JNRInvoker.FastLong) methodName = "invokeL";
+        else if (invoker instanceof JNRInvoker.FastNumeric) methodName = "invokeN";
+        else return super.createMethodHandle();
+        Class<?> carrier = invoker instanceof JNRInvoker.FastInt ? int.class : long.class;
+        int parameterCount = parameterTypes.size();
+        Class<?>[] carriers = new Class<?>[parameterCount + 2];
+        carriers[0] = CallContext.class;
+        carriers[1] = long.class;
+        for (int i = 0; i < parameterCount; i ++) {
+            carriers[i + 2] = carrier;
+        }
+        MethodType methodType = getMethodType();
+        MethodHandle methodHandle;
+        try {
+            methodHandle = MethodHandles.publicLookup().findVirtual(Invoker.class, methodName + parameterCount,
+                    MethodType.methodType(carrier, carriers)).bindTo(Invoker.getInstance());
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            return super.createMethodHandle();
+        }
+        methodHandle = MethodHandles.insertArguments(methodHandle, 0, context, address);
+        for (int i = 0; i < parameterCount; i ++) {
+            Class<?> parameterType = methodType.parameterType(i);
+            if (parameterType == float.class) methodHandle = MethodHandles.filterArguments(methodHandle, i, FLOAT_TO_INT64);
+            else if (parameterType == double.class) methodHandle = MethodHandles.filterArguments(methodHandle, i, DOUBLE_TO_INT64);
+        }
+        Class<?> returnType = methodType.returnType();
+        if (returnType == float.class) methodHandle = MethodHandles.filterReturnValue(methodHandle, INT64_TO_FLOAT);
+        else if (returnType == double.class) methodHandle = MethodHandles.filterReturnValue(methodHandle, INT64_TO_DOUBLE);
+        else if (returnType == boolean.class) methodHandle = MethodHandles.filterReturnValue(methodHandle,
+                carrier == int.class ? INT32_TO_BOOLEAN : INT64_TO_BOOLEAN);
+        methodHandle = MethodHandles.explicitCastArguments(methodHandle, methodType);
+        if (ForeignEvents.ENABLED) methodHandle = ForeignEvents.timeDowncall(methodHandle, address);
+        if (saveErrno) {
+            if (returnType == void.class) methodHandle = MethodHandles.filterReturnValue(methodHandle, DUMP_ERRNO);
+            else methodHandle = MethodHandles.filterReturnValue(methodHandle,
+                    MethodHandles.foldArguments(MethodHandles.identity(returnType), DUMP_ERRNO));
+        }
+        return methodHandle;
     }
 
     @Override
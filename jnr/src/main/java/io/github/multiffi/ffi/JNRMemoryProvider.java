@@ -70,10 +70,24 @@ public class JNRMemoryProvider extends MemoryProvider {
         long remaining = arrayLength - arrayOffset;
         if (maxLength < 0 || maxLength > remaining) maxLength = remaining;
         long arrayBaseOffset = JNRUtil.UNSAFE.arrayBaseOffset(array.getClass());
-        for (long i = 0; i < maxLength; i ++) {
-            if (JNRUtil.UNSAFE.getByte(array, arrayBaseOffset + arrayOffset + i) == value) return arrayOffset + i;
-        }
-        return -1;
+        long index = UnsafeMemory.search(array, arrayBaseOffset + arrayOffset, value, maxLength);
+        return index == -1 ? -1 : arrayOffset + index;
+    }
+
+    @Override
+    public long getZeroTerminatedLength(long address, long maxLength, int unitSize) {
+        return UnsafeMemory.zeroTerminatedLength(null, address, unitSize, maxLength);
+    }
+
+    @Override
+    public long getZeroTerminatedLength(Object memoryArray, long memoryArrayOffset, long maxLength, int unitSize) {
+        long arrayLength = Util.getArrayContentSize(memoryArray);
+        if (memoryArrayOffset < 0 || memoryArrayOffset > arrayLength)
+            throw new ArrayIndexOutOfBoundsException("Array index out of range: " + Long.toUnsignedString(memoryArrayOffset));
+        long remaining = arrayLength - memoryArrayOffset;
+        if (maxLength < 0 || maxLength > remaining) maxLength = remaining;
+        long arrayBaseOffset = JNRUtil.UNSAFE.arrayBaseOffset(memoryArray.getClass());
+        return UnsafeMemory.zeroTerminatedLength(memoryArray, arrayBaseOffset + memoryArrayOffset, unitSize, maxLength);
     }
 
     @Override
@@ -89,12 +103,7 @@ public class JNRMemoryProvider extends MemoryProvider {
             throw new ArrayIndexOutOfBoundsException("Array index out of range: " + Long.toUnsignedString(index));
         Util.unsignedAddExact(aAddress, size);
         long arrayBaseOffset = JNRUtil.UNSAFE.arrayBaseOffset(bArray.getClass());
-        for (long i = 0; i < size; i ++) {
-            int cmp = Util.compareUnsigned(JNRUtil.MEMORY_IO.getByte(aAddress + i),
-                    JNRUtil.UNSAFE.getByte(bArray, arrayBaseOffset + bArrayOffset + i));
-            if (cmp != 0) return cmp;
-        }
-        return 0;
+        return UnsafeMemory.compare(null, aAddress, bArray, arrayBaseOffset + bArrayOffset, size);
     }
 
     @Override
@@ -105,12 +114,7 @@ public class JNRMemoryProvider extends MemoryProvider {
             throw new ArrayIndexOutOfBoundsException("Array index out of range: " + Long.toUnsignedString(index));
         Util.unsignedAddExact(bAddress, size);
         long arrayBaseOffset = JNRUtil.UNSAFE.arrayBaseOffset(aArray.getClass());
-        for (long i = 0; i < size; i ++) {
-            int cmp = Util.compareUnsigned(JNRUtil.UNSAFE.getByte(aArray, arrayBaseOffset + aArrayOffset + i),
-                    JNRUtil.MEMORY_IO.getByte(bAddress + i));
-            if (cmp != 0) return cmp;
-        }
-        return 0;
+        return UnsafeMemory.compare(aArray, arrayBaseOffset + aArrayOffset, null, bAddress, size);
     }
 
     @Override
@@ -123,14 +127,15 @@ public class JNRMemoryProvider extends MemoryProvider {
         index = Util.unsignedAddExact(bArrayOffset, size);
         if (index < 0 || index > bArrayLength)
             throw new ArrayIndexOutOfBoundsException("Array index out of range: " + Long.toUnsignedString(index));
-        long aArrayBaseOffset = JNRUtil.UNSAFE.arrayBaseOffset(aArray.getClass());
-        long bArrayBaseOffset = JNRUtil.UNSAFE.arrayBaseOffset(aArray.getClass());
-        for (long i = 0; i < size; i ++) {
-            int cmp = Util.compareUnsigned(JNRUtil.UNSAFE.getByte(aArray, aArrayBaseOffset + aArrayOffset + i),
-                    JNRUtil.UNSAFE.getByte(bArray, bArrayBaseOffset + bArrayOffset + i));
-            if (cmp != 0) return cmp;
+        if (aArray instanceof byte[] && bArray instanceof byte[] && Words.isMismatchSupported()) {
+            byte[] aBytes = (byte[]) aArray;
+            byte[] bBytes = (byte[]) bArray;
+            int mismatch = Words.mismatch(aBytes, (int) aArrayOffset, bBytes, (int) bArrayOffset, (int) size);
+            return mismatch == -1 ? 0 : Util.compareUnsigned(aBytes[(int) aArrayOffset + mismatch], bBytes[(int) bArrayOffset + mismatch]);
         }
-        return 0;
+        long aArrayBaseOffset = JNRUtil.UNSAFE.arrayBaseOffset(aArray.getClass());
+        long bArrayBaseOffset = JNRUtil.UNSAFE.arrayBaseOffset(bArray.getClass());
+        return UnsafeMemory.compare(aArray, aArrayBaseOffset + aArrayOffset, bArray, bArrayBaseOffset + bArrayOffset, size);
     }
 
     @Override
@@ -163,10 +168,7 @@ public class JNRMemoryProvider extends MemoryProvider {
             throw new ArrayIndexOutOfBoundsException("Array index out of range: " + Long.toUnsignedString(index));
         Util.unsignedAddExact(destAddress, size);
         long arrayBaseOffset = JNRUtil.UNSAFE.arrayBaseOffset(srcArray.getClass());
-        for (long i = 0; i < size; i ++) {
-            JNRUtil.MEMORY_IO.putByte(destAddress + i,
-                    JNRUtil.UNSAFE.getByte(srcArray, arrayBaseOffset + srcArrayOffset + i));
-        }
+        UnsafeMemory.copyMemory(srcArray, arrayBaseOffset + srcArrayOffset, null, destAddress, size);
         return destAddress;
     }
 
@@ -178,10 +180,7 @@ public class JNRMemoryProvider extends MemoryProvider {
             throw new ArrayIndexOutOfBoundsException("Array index out of range: " + Long.toUnsignedString(index));
         Util.unsignedAddExact(srcAddress, size);
         long arrayBaseOffset = JNRUtil.UNSAFE.arrayBaseOffset(destArray.getClass());
-        for (long i = 0; i < size; i ++) {
-            JNRUtil.UNSAFE.putByte(destArray, arrayBaseOffset + destArrayOffset + i,
-                    JNRUtil.MEMORY_IO.getByte(srcAddress + i));
-        }
+        UnsafeMemory.copyMemory(null, srcAddress, destArray, arrayBaseOffset + destArrayOffset, size);
         return destArray;
     }
 
@@ -197,7 +196,7 @@ public class JNRMemoryProvider extends MemoryProvider {
             throw new ArrayIndexOutOfBoundsException("Array index out of range: " + Long.toUnsignedString(index));
         long destArrayBaseOffset = JNRUtil.UNSAFE.arrayBaseOffset(destArray.getClass());
         long srcArrayBaseOffset = JNRUtil.UNSAFE.arrayBaseOffset(srcArray.getClass());
-        JNRUtil.UNSAFE.copyMemory(srcArray, srcArrayBaseOffset + srcArrayOffset,
+        UnsafeMemory.copyMemory(srcArray, srcArrayBaseOffset + srcArrayOffset,
                 destArray, destArrayBaseOffset + destArrayOffset, size);
         return destArray;
     }
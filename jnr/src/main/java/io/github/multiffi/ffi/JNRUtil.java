@@ -48,6 +48,7 @@ public final class JNRUtil {
     public static final boolean PROXY_INTRINSICS = Util.getBooleanProperty("multiffi.foreign.proxyIntrinsics", true)
             && Util.getBooleanProperty("jnr.ffi.asm.enabled", true)
             && !"dalvik".equalsIgnoreCase(System.getProperty("java.vm.name"));
+    public static final boolean LAZY_LINKING = Util.getBooleanProperty("multiffi.foreign.lazyLinking", false);
     public static final ByteOrder NATIVE_ORDER = ByteOrder.nativeOrder();
     public static final boolean IS_BIG_ENDIAN = NATIVE_ORDER.equals(ByteOrder.BIG_ENDIAN);
 
@@ -0,0 +1,262 @@
+package io.github.multiffi.ffi;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Generates {@code <interface>$$ForeignProxy} classes at compile time for interfaces
+ * declaring methods annotated with {@code MarshalType}, {@code RedirectTo}, {@code CallOptions}
+ * or {@code FirstVarArgIndex}, resolving signatures with the {@link MarshalTypes} rules {@code SimpleFunctionOptionVisitor} uses.
+ */
+public class ForeignProxyProcessor extends AbstractProcessor {
+
+    private static final String PROXY_SUFFIX = "$$ForeignProxy";
+
+    private static final String MARSHAL_TYPE = "multiffi.ffi.MarshalType";
+    private static final String REDIRECT_TO = "multiffi.ffi.RedirectTo";
+    private static final String CALL_OPTIONS = "multiffi.ffi.CallOptions";
+    private static final String FIRST_VAR_ARG_INDEX = "multiffi.ffi.FirstVarArgIndex";
+
+    private final Set<String> generated = new HashSet<>();
+
+    @Override
+    public Set<String> getSupportedAnnotationTypes() {
+        return new HashSet<>(Arrays.asList(MARSHAL_TYPE, REDIRECT_TO, CALL_OPTIONS, FIRST_VAR_ARG_INDEX));
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        Set<TypeElement> interfaces = new LinkedHashSet<>();
+        for (TypeElement annotation : annotations) {
+            for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+                if (element.getKind() == ElementKind.PARAMETER) element = element.getEnclosingElement();
+                if (element.getKind() != ElementKind.METHOD) continue;
+                Element enclosing = element.getEnclosingElement();
+                if (enclosing.getKind() == ElementKind.INTERFACE) interfaces.add((TypeElement) enclosing);
+            }
+        }
+        for (TypeElement element : interfaces) {
+            if (generated.add(element.getQualifiedName().toString())) generate(element);
+        }
+        return false;
+    }
+
+    private static final class Signature {
+        private final ExecutableElement method;
+        private final String address;
+        private final int firstVarArgIndex;
+        private final String returnType;
+        private final List<String> parameterTypes;
+        private final Set<String> callOptions;
+        private final boolean dyncall;
+        private Signature(ExecutableElement method, String address, int firstVarArgIndex, String returnType,
+                          List<String> parameterTypes, Set<String> callOptions, boolean dyncall) {
+            this.method = method;
+            this.address = address;
+            this.firstVarArgIndex = firstVarArgIndex;
+            this.returnType = returnType;
+            this.parameterTypes = parameterTypes;
+            this.callOptions = callOptions;
+            this.dyncall = dyncall;
+        }
+    }
+
+    private void generate(TypeElement element) {
+        if (!element.getTypeParameters().isEmpty() || !isAccessible(element)) {
+            note(element, "not pregenerated; interface must be non-generic and not private");
+            return;
+        }
+        List<Signature> signatures = new ArrayList<>();
+        for (ExecutableElement method : ElementFilter.methodsIn(processingEnv.getElementUtils().getAllMembers(element))) {
+            if (!method.getModifiers().contains(Modifier.ABSTRACT)) continue;
+            if (((TypeElement) method.getEnclosingElement()).getQualifiedName().contentEquals("java.lang.Object")) continue;
+            Signature signature = visitSignature(method);
+            if (signature == null) return;
+            signatures.add(signature);
+        }
+
+        PackageElement packageElement = processingEnv.getElementUtils().getPackageOf(element);
+        String packageName = packageElement.isUnnamed() ? "" : packageElement.getQualifiedName().toString();
+        String binaryName = processingEnv.getElementUtils().getBinaryName(element).toString();
+        String proxySimpleName = (packageName.isEmpty() ? binaryName : binaryName.substring(packageName.length() + 1)) + PROXY_SUFFIX;
+
+        StringBuilder builder = new StringBuilder();
+        if (!packageName.isEmpty()) builder.append("package ").append(packageName).append(";\n\n");
+        builder.append("public final class ").append(proxySimpleName)
+                .append(" implements ").append(element.getQualifiedName()).append(" {\n\n");
+        for (int i = 0; i < signatures.size(); i ++) {
+            Signature signature = signatures.get(i);
+            builder.append("    private static final multiffi.ffi.ForeignType[] PARAMETER_TYPES_").append(i)
+                    .append(" = new multiffi.ffi.ForeignType[] { ");
+            for (int j = 0; j < signature.parameterTypes.size(); j ++) {
+                if (j > 0) builder.append(", ");
+                builder.append("multiffi.ffi.ScalarType.").append(signature.parameterTypes.get(j));
+            }
+            builder.append(" };\n");
+            builder.append("    private static final multiffi.ffi.CallOption[] CALL_OPTIONS_").append(i)
+                    .append(" = new multiffi.ffi.CallOption[] { ");
+            int j = 0;
+            for (String callOption : signature.callOptions) {
+                if (j ++ > 0) builder.append(", ");
+                builder.append("multiffi.ffi.StandardCallOption.").append(callOption);
+            }
+            builder.append(" };\n");
+        }
+        builder.append('\n');
+        for (int i = 0; i < signatures.size(); i ++) {
+            builder.append("    private final java.lang.invoke.MethodHandle function").append(i).append(";\n");
+        }
+        builder.append('\n');
+        builder.append("    public ").append(proxySimpleName).append("(multiffi.ffi.spi.ForeignProvider foreignProvider) {\n");
+        for (int i = 0; i < signatures.size(); i ++) {
+            Signature signature = signatures.get(i);
+            builder.append("        function").append(i).append(" = foreignProvider.downcallHandle(foreignProvider.getSymbolAddress(")
+                    .append(processingEnv.getElementUtils().getConstantExpression(signature.address))
+                    .append("), ").append(signature.firstVarArgIndex).append(", ")
+                    .append(signature.returnType == null ? "null" : "multiffi.ffi.ScalarType." + signature.returnType)
+                    .append(", PARAMETER_TYPES_").append(i).append(", CALL_OPTIONS_").append(i).append(").asMethodHandle();\n");
+        }
+        builder.append("    }\n");
+        for (int i = 0; i < signatures.size(); i ++) {
+            Signature signature = signatures.get(i);
+            ExecutableElement method = signature.method;
+            TypeMirror returnType = method.getReturnType();
+            List<? extends VariableElement> parameters = method.getParameters();
+            builder.append("\n    @Override\n    public ").append(erasure(returnType)).append(' ').append(method.getSimpleName()).append('(');
+            for (int j = 0; j < parameters.size(); j ++) {
+                if (j > 0) builder.append(", ");
+                String parameterType = erasure(parameters.get(j).asType());
+                if (method.isVarArgs() && j == parameters.size() - 1)
+                    parameterType = parameterType.substring(0, parameterType.length() - 2) + "...";
+                builder.append(parameterType).append(" arg").append(j);
+            }
+            builder.append(") {\n        try {\n            ");
+            if (returnType.getKind() != TypeKind.VOID) builder.append("return (").append(erasure(returnType)).append(") ");
+            builder.append("function").append(i).append(".invokeExact(");
+            for (int j = 0; j < parameters.size(); j ++) {
+                if (j > 0) builder.append(", ");
+                builder.append("arg").append(j);
+            }
+            builder.append(");\n");
+            builder.append("        } catch (java.lang.RuntimeException | java.lang.Error e) {\n            throw e;\n");
+            builder.append("        } catch (java.lang.Throwable e) {\n");
+            builder.append("            throw new java.lang.IllegalStateException(\"Unexpected exception\", e);\n        }\n    }\n");
+        }
+        builder.append("\n}\n");
+
+        try {
+            JavaFileObject file = processingEnv.getFiler().createSourceFile(
+                    packageName.isEmpty() ? proxySimpleName : packageName + "." + proxySimpleName, element);
+            try (Writer writer = file.openWriter()) {
+                writer.write(builder.toString());
+            }
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Failed to write proxy: " + e, element);
+        }
+    }
+
+    private Signature visitSignature(ExecutableElement method) {
+        String redirectTo = (String) annotationValue(method, REDIRECT_TO);
+        String address = redirectTo == null || redirectTo.isEmpty() ? method.getSimpleName().toString() : redirectTo;
+        Integer firstVarArgIndexValue = (Integer) annotationValue(method, FIRST_VAR_ARG_INDEX);
+        int firstVarArgIndex = firstVarArgIndexValue == null || firstVarArgIndexValue < 0 ? -1 : firstVarArgIndexValue;
+
+        List<? extends VariableElement> parameters = method.getParameters();
+        boolean dyncall = !parameters.isEmpty() && parameters.get(parameters.size() - 1).asType().getKind() == TypeKind.ARRAY;
+        if (dyncall && ((ArrayType) parameters.get(parameters.size() - 1).asType()).getComponentType().getKind().isPrimitive()) {
+            note(method, "not pregenerated; primitive array varargs are adapted at runtime");
+            return null;
+        }
+        String returnType = toScalarType(method.getReturnType(), (String) annotationValue(method, MARSHAL_TYPE));
+        if (returnType == null && method.getReturnType().getKind() != TypeKind.VOID) {
+            note(method, "not pregenerated; return type not supported");
+            return null;
+        }
+        List<String> parameterTypes = new ArrayList<>();
+        for (int i = 0; i < (dyncall ? parameters.size() - 1 : parameters.size()); i ++) {
+            VariableElement parameter = parameters.get(i);
+            String parameterType = toScalarType(parameter.asType(), (String) annotationValue(parameter, MARSHAL_TYPE));
+            if (parameterType == null) {
+                note(method, "not pregenerated; parameter type not supported");
+                return null;
+            }
+            parameterTypes.add(parameterType);
+        }
+
+        Set<String> callOptions = new LinkedHashSet<>();
+        Object callOptionValues = annotationValue(method, CALL_OPTIONS);
+        if (callOptionValues instanceof List) {
+            for (Object callOptionValue : (List<?>) callOptionValues) {
+                String callOptionName = MarshalTypes.callOptionName(String.valueOf(((AnnotationValue) callOptionValue).getValue()));
+                if (callOptionName != null) callOptions.add(callOptionName);
+            }
+        }
+        if (dyncall) callOptions.add("DYNCALL");
+        return new Signature(method, address, firstVarArgIndex, returnType, parameterTypes, callOptions, dyncall);
+    }
+
+    // compound types need a runtime type map, so only primitive types are pregenerated
+    private static String toScalarType(TypeMirror type, String marshalTypeName) {
+        if (!type.getKind().isPrimitive()) return null;
+        return MarshalTypes.scalarTypeName(type.getKind().name().toLowerCase(Locale.ROOT), marshalTypeName);
+    }
+
+    private static Object annotationValue(Element element, String annotationName) {
+        for (AnnotationMirror annotation : element.getAnnotationMirrors()) {
+            if (!((TypeElement) annotation.getAnnotationType().asElement()).getQualifiedName().contentEquals(annotationName)) continue;
+            for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : annotation.getElementValues().entrySet()) {
+                if (entry.getKey().getSimpleName().contentEquals("value")) return entry.getValue().getValue();
+            }
+        }
+        return null;
+    }
+
+    private static boolean isAccessible(TypeElement element) {
+        for (Element current = element; current instanceof TypeElement; current = current.getEnclosingElement()) {
+            if (current.getModifiers().contains(Modifier.PRIVATE)) return false;
+            if (((TypeElement) current).getNestingKind() == NestingKind.LOCAL) return false;
+        }
+        return true;
+    }
+
+    private String erasure(TypeMirror type) {
+        return processingEnv.getTypeUtils().erasure(type).toString();
+    }
+
+    private void note(Element element, String message) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.NOTE, message, element);
+    }
+
+}
@@ -0,0 +1,288 @@
+package multiffi.ffi.benchmark;
+
+import io.github.multiffi.ffi.ShardedCleaner;
+import multiffi.ffi.CompoundType;
+import multiffi.ffi.Foreign;
+import multiffi.ffi.FunctionHandle;
+import multiffi.ffi.Memory;
+import multiffi.ffi.MemoryHandle;
+import multiffi.ffi.MemoryPattern;
+import multiffi.ffi.ScalarType;
+import multiffi.ffi.spi.ForeignProvider;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Timing runs that used to live in the test suite.
+ * Usage: {@code Benchmarks <ffm|jna|jnr> [benchmark...]}; runs every benchmark when none is named.
+ */
+public final class Benchmarks {
+
+    private Benchmarks() {
+        throw new AssertionError("No multiffi.ffi.benchmark.Benchmarks instances for you!");
+    }
+
+    public interface CLibrary {
+        int abs(int value);
+    }
+
+    private interface Benchmark {
+        void run() throws Throwable;
+    }
+
+    private static final Map<String, Benchmark> BENCHMARKS = new LinkedHashMap<>();
+    static {
+        BENCHMARKS.put("proxyDispatch", Benchmarks::proxyDispatch);
+        BENCHMARKS.put("alignedAllocation", Benchmarks::alignedAllocation);
+        BENCHMARKS.put("allocateFree", Benchmarks::allocateFree);
+        BENCHMARKS.put("bulkTransfer", Benchmarks::bulkTransfer);
+        BENCHMARKS.put("heapCompareSearch", Benchmarks::heapCompareSearch);
+        BENCHMARKS.put("patternSearch", Benchmarks::patternSearch);
+        BENCHMARKS.put("pages", Benchmarks::pages);
+        BENCHMARKS.put("cleaner", Benchmarks::cleaner);
+    }
+
+    public static void main(String[] args) throws Throwable {
+        if (args.length < 1) throw new IllegalArgumentException("Usage: Benchmarks <ffm|jna|jnr> [benchmark...], benchmarks: " + BENCHMARKS.keySet());
+        String backend = args[0].toUpperCase();
+        if (!Arrays.asList("FFM", "JNA", "JNR").contains(backend)) throw new IllegalArgumentException("Unknown backend: " + args[0]);
+        System.setProperty("multiffi.allocator.provider", "io.github.multiffi.ffi." + backend + "MemoryProvider");
+        System.setProperty("multiffi.buffer.provider", "io.github.multiffi.ffi." + backend + "BufferProvider");
+        System.setProperty("multiffi.foreign.provider", "io.github.multiffi.ffi." + backend + "ForeignProvider");
+        Iterable<String> names = args.length > 1 ? Arrays.asList(args).subList(1, args.length) : BENCHMARKS.keySet();
+        for (String name : names) {
+            Benchmark benchmark = BENCHMARKS.get(name);
+            if (benchmark == null) throw new IllegalArgumentException("Unknown benchmark: " + name);
+            benchmark.run();
+        }
+    }
+
+    private static void check(boolean condition) {
+        if (!condition) throw new IllegalStateException("Benchmark produced a wrong result");
+    }
+
+    private static long timeProxy(CLibrary libc, int iterations) {
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i ++) {
+            check(libc.abs(-i) == i);
+        }
+        return System.nanoTime() - start;
+    }
+
+    // run with -Dmultiffi.foreign.proxyIntrinsics=false as well to time the reflective proxy without any generated class
+    public static void proxyDispatch() throws Throwable {
+        CLibrary libc = Foreign.downcallProxy(CLibrary.class);
+        ForeignProvider reflectiveProvider = (ForeignProvider) Class.forName(System.getProperty("multiffi.foreign.provider"))
+                .getConstructor(boolean.class).newInstance(false);
+        CLibrary reflective = reflectiveProvider.downcallProxy(CLibrary.class);
+        check(Proxy.isProxyClass(reflective.getClass()));
+        MethodHandle methodHandle = Foreign.downcallHandle(Foreign.getSymbolAddress("abs"), ScalarType.INT32, ScalarType.INT32).asMethodHandle();
+        int iterations = 1000000;
+        long proxyTime = 0, reflectiveTime = 0, methodHandleTime = 0;
+        for (int round = 0; round < 5; round ++) {
+            proxyTime = timeProxy(libc, iterations);
+            reflectiveTime = timeProxy(reflective, iterations);
+            long start = System.nanoTime();
+            for (int i = 0; i < iterations; i ++) {
+                check((int) methodHandle.invokeExact(-i) == i);
+            }
+            methodHandleTime = System.nanoTime() - start;
+        }
+        System.out.printf("Proxy dispatch: default proxy (%s) %.2f ns/call, reflective proxy %.2f ns/call, method handle %.2f ns/call%n",
+                Proxy.isProxyClass(libc.getClass()) ? "reflective" : "generated", (double) proxyTime / iterations,
+                (double) reflectiveTime / iterations, (double) methodHandleTime / iterations);
+    }
+
+    // glibc only; the heap bytes in use are mallinfo2().uordblks
+    private static long heapInUse(FunctionHandle mallinfo2, MemoryHandle mallinfo) {
+        if (mallinfo2 == null) return 0;
+        return mallinfo2.invokeCompound(mallinfo).getSize(7L * Foreign.diffSize());
+    }
+
+    public static void alignedAllocation() {
+        CompoundType mallinfoType = CompoundType.ofArray(ScalarType.SIZE, 10);
+        FunctionHandle mallinfo2;
+        try {
+            mallinfo2 = Foreign.downcallHandle(Foreign.getSymbolAddress("mallinfo2"), mallinfoType);
+        }
+        catch (UnsatisfiedLinkError e) {
+            mallinfo2 = null;
+        }
+        MemoryHandle mallinfo = MemoryHandle.allocateDirect(mallinfoType);
+        // page-aligned buffers, as used for O_DIRECT I/O
+        long[] addresses = new long[1024];
+        long alignedTime = 0, plainTime = 0, alignedOverhead = 0, plainOverhead = 0;
+        for (int round = 0; round < 5; round ++) {
+            long heapInUse = heapInUse(mallinfo2, mallinfo);
+            long start = System.nanoTime();
+            for (int i = 0; i < addresses.length; i ++) {
+                addresses[i] = Memory.allocateAligned(4096, 4096);
+            }
+            alignedOverhead = heapInUse(mallinfo2, mallinfo) - heapInUse;
+            for (long address : addresses) {
+                Memory.freeAligned(address);
+            }
+            long middle = System.nanoTime();
+            heapInUse = heapInUse(mallinfo2, mallinfo);
+            for (int i = 0; i < addresses.length; i ++) {
+                addresses[i] = Memory.allocate(4096);
+            }
+            plainOverhead = heapInUse(mallinfo2, mallinfo) - heapInUse;
+            for (long address : addresses) {
+                Memory.free(address);
+            }
+            long end = System.nanoTime();
+            alignedTime = middle - start;
+            plainTime = end - middle;
+        }
+        mallinfo.close();
+        System.out.printf("Aligned allocation of 4 KiB pages: aligned %.2f ns/op, plain %.2f ns/op%n",
+                (double) alignedTime / addresses.length, (double) plainTime / addresses.length);
+        if (mallinfo2 != null) System.out.printf("Heap in use per 4 KiB block: aligned %.2f KiB, plain %.2f KiB%n",
+                alignedOverhead / 1024.0 / addresses.length, plainOverhead / 1024.0 / addresses.length);
+    }
+
+    // compare runs with -Dmultiffi.allocator.critical=false and =true on FFM
+    public static void allocateFree() {
+        int iterations = 5000000;
+        long a = Memory.allocateInitialized(1, 64);
+        long b = Memory.allocateInitialized(1, 64);
+        long allocateTime = 0, compareTime = 0;
+        try {
+            for (int round = 0; round < 5; round ++) {
+                long start = System.nanoTime();
+                for (int i = 0; i < iterations; i ++) {
+                    Memory.free(Memory.allocate(64));
+                }
+                long middle = System.nanoTime();
+                for (int i = 0; i < iterations; i ++) {
+                    check(Memory.compare(a, b, 64) == 0);
+                }
+                long end = System.nanoTime();
+                allocateTime = middle - start;
+                compareTime = end - middle;
+            }
+        }
+        finally {
+            Memory.free(a);
+            Memory.free(b);
+        }
+        System.out.printf("Allocate and free 64 bytes: %.2f ns/op, compare 64 bytes: %.2f ns/op (multiffi.allocator.critical=%s)%n",
+                (double) allocateTime / iterations, (double) compareTime / iterations,
+                System.getProperty("multiffi.allocator.critical", "true"));
+    }
+
+    public static void bulkTransfer() {
+        int maxSize = 64 << 20;
+        long address = Memory.allocate(maxSize);
+        try {
+            MemoryHandle memoryHandle = MemoryHandle.wrap(address, maxSize);
+            for (int size = 1 << 10; size <= maxSize; size <<= 4) {
+                int[] array = new int[size >>> 2];
+                int iterations = Math.max(1, (256 << 20) / size);
+                long start = System.nanoTime();
+                for (int i = 0; i < iterations; i ++) {
+                    memoryHandle.setInt32Array(0, array);
+                    memoryHandle.getInt32Array(0, array);
+                }
+                double seconds = (System.nanoTime() - start) / 1e9;
+                System.out.printf("Bulk int32 transfer of %d KiB: %.1f MiB/s%n", size >> 10,
+                        2.0 * iterations * size / (1 << 20) / seconds);
+            }
+        }
+        finally {
+            Memory.free(address);
+        }
+    }
+
+    public static void heapCompareSearch() {
+        byte[] x = new byte[16 << 20];
+        byte[] y = new byte[x.length];
+        x[x.length - 1] = 1;
+        int iterations = 16;
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i ++) {
+            check(Memory.compare(x, 0, y, 0, x.length) > 0);
+            check(Memory.search(x, 0L, (byte) 1, (long) x.length) == x.length - 1);
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("Heap compare and search: %.1f MiB/s%n", 2.0 * iterations * x.length / (1 << 20) / seconds);
+    }
+
+    public static void patternSearch() {
+        int size = 16 << 20;
+        long log = Memory.allocateInitialized(1, size);
+        try {
+            Memory.fill(log, (byte) 'x', size);
+            byte[] magic = "--multiffi-end--".getBytes(StandardCharsets.US_ASCII);
+            Memory.copy(log + size - magic.length, magic, 0, magic.length);
+            MemoryPattern pattern = MemoryPattern.compile(magic);
+            MemoryHandle memoryHandle = MemoryHandle.wrap(log, size);
+            int iterations = 16;
+            long start = System.nanoTime();
+            for (int i = 0; i < iterations; i ++) {
+                check(memoryHandle.indexOf(0, pattern) == size - magic.length);
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("Pattern search: %.1f MiB/s%n", (double) iterations * size / (1 << 20) / seconds);
+        }
+        finally {
+            Memory.free(log);
+        }
+    }
+
+    public static void pages() {
+        long size = 256L * 1024 * 1024;
+        long[] times = new long[2];
+        for (int huge = 0; huge < 2; huge ++) {
+            try (MemoryHandle memoryHandle = MemoryHandle.allocatePages(size, huge == 1)) {
+                for (long offset = 0; offset < size; offset += 4096) {
+                    memoryHandle.setInt64(offset, offset);
+                }
+                // random access across the whole region, the TLB reach decides most of the cost
+                long seed = 0x9E3779B97F4A7C15L, sum = 0;
+                int accesses = 1 << 22;
+                for (int round = 0; round < 3; round ++) {
+                    long start = System.nanoTime();
+                    for (int i = 0; i < accesses; i ++) {
+                        seed ^= seed << 13;
+                        seed ^= seed >>> 7;
+                        seed ^= seed << 17;
+                        sum += memoryHandle.getInt64((seed & (size - 1)) & -4096L);
+                    }
+                    times[huge] = System.nanoTime() - start;
+                }
+                check((sum & 4095) == 0);
+            }
+        }
+        System.out.printf("Random access: %.2f ns with normal pages, %.2f ns with huge pages (huge page size %d)%n",
+                (double) times[0] / (1 << 22), (double) times[1] / (1 << 22), Memory.hugePageSize());
+    }
+
+    public static void cleaner() throws InterruptedException {
+        AtomicInteger count = new AtomicInteger();
+        int total = 1000000;
+        long start = System.nanoTime();
+        for (int i = 0; i < total; i ++) {
+            long address = Memory.allocate(64);
+            Foreign.registerCleaner(new byte[16], () -> {
+                Memory.free(address);
+                count.incrementAndGet();
+            });
+        }
+        for (int i = 0; i < 100 && count.get() < total; i ++) {
+            System.gc();
+            ShardedCleaner.drain();
+            Thread.sleep(10);
+        }
+        System.out.printf("Cleaned %d of %d native blocks in %d ms (%d cleaner threads, %d inline)%n", count.get(), total,
+                (System.nanoTime() - start) / 1000000, ShardedCleaner.THREADS, ShardedCleaner.inlineCleanedCount());
+    }
+
+}
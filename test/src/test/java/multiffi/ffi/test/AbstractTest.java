@@ -1,19 +1,59 @@
 package multiffi.ffi.test;
 
+import io.github.multiffi.ffi.ForeignEvents;
+import io.github.multiffi.ffi.ForeignInvocationHandler;
+import io.github.multiffi.ffi.MemoryAccounting;
+import io.github.multiffi.ffi.MemoryStackPool;
+import io.github.multiffi.ffi.NativeMemoryMXBean;
+import io.github.multiffi.ffi.PooledAllocator;
+import io.github.multiffi.ffi.ShardedCleaner;
+import io.github.multiffi.ffi.StackAllocator;
 import multiffi.ffi.Memory;
 import multiffi.ffi.CompoundType;
 import multiffi.ffi.Foreign;
+import multiffi.ffi.ForeignType;
 import multiffi.ffi.FunctionHandle;
 import multiffi.ffi.MarshalType;
+import multiffi.ffi.MemoryAdvice;
+import multiffi.ffi.MemoryArena;
 import multiffi.ffi.MemoryHandle;
+import multiffi.ffi.MemoryPattern;
+import multiffi.ffi.RedirectTo;
 import multiffi.ffi.ScalarType;
+import multiffi.ffi.StandardCallOption;
+import multiffi.ffi.spi.ForeignProvider;
 import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
 import org.junit.jupiter.api.condition.OS;
 
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 public abstract class AbstractTest {
 
@@ -22,6 +62,19 @@ public abstract class AbstractTest {
         double sin(double value);
         @MarshalType("address") long fopen(@MarshalType("const char *") long filename, @MarshalType("const char *") long mode);
         @MarshalType("int") long fprintf(@MarshalType("FILE *") long fp, @MarshalType("const char *") long format, Object... args);
+        @MarshalType("int") long snprintf(@MarshalType("char *") long buffer, @MarshalType("size_t") long size,
+                                          @MarshalType("const char *") long format, int... args);
+    }
+
+    protected interface PregeneratedLibrary {
+        int abs(int value);
+        @MarshalType("int") long snprintf(@MarshalType("char *") long buffer, @MarshalType("size_t") long size,
+                                          @MarshalType("const char *") long format, Object... args);
+    }
+
+    protected interface LazyLibrary {
+        int abs(int value);
+        @RedirectTo("multiffi_missing_symbol") int missing();
     }
 
     protected volatile CLibrary libc;
@@ -52,6 +105,707 @@ public abstract class AbstractTest {
         }
     }
 
+    @Test
+    public void methodHandleTest() throws Throwable {
+        FunctionHandle abs = Foreign.downcallHandle(Foreign.getSymbolAddress("abs"), ScalarType.INT32, ScalarType.INT32);
+        MethodHandle methodHandle = abs.asMethodHandle();
+        Assertions.assertEquals(MethodType.methodType(int.class, int.class), methodHandle.type());
+        Random random = ThreadLocalRandom.current();
+        for (int i = 0; i < 1000000; i ++) {
+            int number = random.nextInt(Integer.MIN_VALUE, 0);
+            Assertions.assertEquals(Math.abs(number), (int) methodHandle.invokeExact(number));
+        }
+    }
+
+    @Test
+    public void proxyDispatchTest() {
+        Assertions.assertEquals(libc.hashCode(), libc.hashCode());
+        Assertions.assertEquals(libc, libc);
+        Assertions.assertNotNull(libc.toString());
+        Assertions.assertEquals(42, libc.abs(-42));
+    }
+
+    @Test
+    public void reflectiveProxyTest() throws ReflectiveOperationException {
+        ForeignProvider foreignProvider = (ForeignProvider) Class.forName(System.getProperty("multiffi.foreign.provider"))
+                .getConstructor(boolean.class).newInstance(false);
+        CLibrary library = foreignProvider.downcallProxy(CLibrary.class);
+        Assertions.assertTrue(Proxy.isProxyClass(library.getClass()));
+        Assertions.assertInstanceOf(ForeignInvocationHandler.class, Proxy.getInvocationHandler(library));
+        if ("false".equals(System.getProperty("multiffi.foreign.proxyIntrinsics"))) {
+            Assertions.assertTrue(Proxy.isProxyClass(libc.getClass()));
+        }
+        Assertions.assertEquals(library, library);
+        Assertions.assertNotEquals(library, libc);
+        Assertions.assertEquals(42, library.abs(-42));
+        Assertions.assertEquals(Math.sin(1.0), library.sin(1.0));
+        try (MemoryHandle hFormat = MemoryHandle.allocateDirect("%d + %d = %d");
+             MemoryHandle hBuffer = MemoryHandle.allocateDirect(64)) {
+            Assertions.assertEquals(9, library.snprintf(hBuffer.address(), hBuffer.size(), hFormat.address(), 1, 2, 3));
+            Assertions.assertEquals("1 + 2 = 3", hBuffer.getZeroTerminatedString(0));
+        }
+    }
+
+    // the dyncall caches live in the backend modules, so they are looked up after the provider under test
+    private static long dyncallCacheCount(Class<?> cacheClass, String name) throws ReflectiveOperationException {
+        return (long) cacheClass.getMethod(name).invoke(null);
+    }
+
+    @Test
+    public void dyncallCacheTest() throws ReflectiveOperationException {
+        Class<?> cacheClass;
+        try {
+            cacheClass = Class.forName(System.getProperty("multiffi.foreign.provider").replace("ForeignProvider", "DyncallCache"));
+        } catch (ClassNotFoundException e) {
+            cacheClass = null;
+        }
+        Assumptions.assumeTrue(cacheClass != null, "no dyncall cache");
+        int capacity = cacheClass.getField("CAPACITY").getInt(null);
+        long hitCount = dyncallCacheCount(cacheClass, "hitCount");
+        long missCount = dyncallCacheCount(cacheClass, "missCount");
+        long evictionCount = dyncallCacheCount(cacheClass, "evictionCount");
+        long address = Foreign.getSymbolAddress("snprintf");
+        ForeignType[] parameterTypes = new ForeignType[] {ScalarType.ADDRESS, ScalarType.SIZE, ScalarType.ADDRESS};
+        FunctionHandle snprintf = Foreign.downcallHandle(address, ScalarType.INT32, parameterTypes, StandardCallOption.DYNCALL);
+        try (MemoryHandle hFormat = MemoryHandle.allocateDirect("%d + %d = %d");
+             MemoryHandle hEmpty = MemoryHandle.allocateDirect("");
+             MemoryHandle hBuffer = MemoryHandle.allocateDirect(64)) {
+            Assertions.assertEquals(9, snprintf.invokeInt32(hBuffer.address(), hBuffer.size(), hFormat.address(), new Object[] {1, 2, 3}));
+            Assertions.assertEquals("1 + 2 = 3", hBuffer.getZeroTerminatedString(0));
+            Assertions.assertEquals(missCount + 1, dyncallCacheCount(cacheClass, "missCount"));
+            Assertions.assertEquals(9, snprintf.invokeInt32(hBuffer.address(), hBuffer.size(), hFormat.address(), new Object[] {4, 5, 9}));
+            Assertions.assertEquals("4 + 5 = 9", hBuffer.getZeroTerminatedString(0));
+            if (capacity > 0) {
+                Assertions.assertEquals(hitCount + 1, dyncallCacheCount(cacheClass, "hitCount"));
+                Assertions.assertEquals(missCount + 1, dyncallCacheCount(cacheClass, "missCount"));
+            }
+            else {
+                Assertions.assertEquals(hitCount, dyncallCacheCount(cacheClass, "hitCount"));
+                Assertions.assertEquals(missCount + 2, dyncallCacheCount(cacheClass, "missCount"));
+            }
+            // a fresh handle has an empty cache, which one more distinct shape than it holds overflows exactly once
+            snprintf = Foreign.downcallHandle(address, ScalarType.INT32, parameterTypes, StandardCallOption.DYNCALL);
+            missCount = dyncallCacheCount(cacheClass, "missCount");
+            for (int i = 0; i <= capacity; i ++) {
+                String digits = Integer.toString(i, 3);
+                Object[] varargs = new Object[digits.length()];
+                for (int j = 0; j < varargs.length; j ++) {
+                    switch (digits.charAt(j)) {
+                        case '0': varargs[j] = j; break;
+                        case '1': varargs[j] = (long) j; break;
+                        default: varargs[j] = (double) j; break;
+                    }
+                }
+                Assertions.assertEquals(0, snprintf.invokeInt32(hBuffer.address(), hBuffer.size(), hEmpty.address(), varargs));
+            }
+            Assertions.assertEquals(missCount + capacity + 1, dyncallCacheCount(cacheClass, "missCount"));
+            Assertions.assertEquals(capacity > 0 ? evictionCount + 1 : evictionCount, dyncallCacheCount(cacheClass, "evictionCount"));
+        }
+    }
+
+    @Test
+    public void batchTest() {
+        FunctionHandle abs = Foreign.downcallHandle(Foreign.getSymbolAddress("abs"), ScalarType.INT32, ScalarType.INT32);
+        Random random = ThreadLocalRandom.current();
+        long[] numbers = new long[1000000];
+        for (int i = 0; i < numbers.length; i ++) {
+            numbers[i] = random.nextInt(Integer.MIN_VALUE, 0);
+        }
+        long[] results = new long[numbers.length];
+        abs.invokeBatch(results, numbers);
+        for (int i = 0; i < numbers.length; i ++) {
+            Assertions.assertEquals(Math.abs(numbers[i]), results[i]);
+        }
+    }
+
+    @Test
+    public void pooledAllocatorTest() throws Throwable {
+        long inUseBytes = PooledAllocator.inUseBytes();
+        long[] addresses = new long[1024];
+        for (int i = 0; i < addresses.length; i ++) {
+            addresses[i] = PooledAllocator.allocate(1 + i % (int) PooledAllocator.MAX_POOLED_SIZE);
+            Assertions.assertTrue(PooledAllocator.isPooled(addresses[i]));
+            Memory.setInt64(addresses[i], i);
+        }
+        Assertions.assertTrue(PooledAllocator.inUseBytes() > inUseBytes);
+        Assertions.assertTrue(PooledAllocator.retainedBytes() >= PooledAllocator.inUseBytes());
+        addresses[0] = PooledAllocator.reallocate(addresses[0], PooledAllocator.MAX_POOLED_SIZE * 2);
+        Assertions.assertFalse(PooledAllocator.isPooled(addresses[0]));
+        Assertions.assertEquals(0, Memory.getInt64(addresses[0]));
+        PooledAllocator.free(addresses[0]);
+        runOnThreads(1, () -> {
+            for (int i = 1; i < addresses.length; i ++) {
+                Assertions.assertEquals(i, Memory.getInt64(addresses[i]));
+                PooledAllocator.free(addresses[i]);
+            }
+        });
+        Assertions.assertEquals(inUseBytes, PooledAllocator.inUseBytes());
+    }
+
+    // runs the task on new threads and rethrows the first failure, which the threads would otherwise only print
+    private static void runOnThreads(int count, Runnable task) throws Throwable {
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread[] threads = new Thread[count];
+        for (int i = 0; i < count; i ++) {
+            threads[i] = new Thread(() -> {
+                try {
+                    task.run();
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        if (failure.get() != null) throw failure.get();
+    }
+
+    // frees one block on a new thread, optionally releasing its cache, and checks that the block is handed out again elsewhere
+    private static void checkThreadCacheReclaimed(boolean release, int allocations) throws Throwable {
+        long[] freed = new long[1];
+        runOnThreads(1, () -> {
+            freed[0] = PooledAllocator.allocate(PooledAllocator.MAX_POOLED_SIZE);
+            Assertions.assertTrue(PooledAllocator.isPooled(freed[0]));
+            PooledAllocator.free(freed[0]);
+            if (release) PooledAllocator.releaseThreadCache();
+        });
+        runOnThreads(1, () -> {
+            long[] addresses = new long[allocations];
+            boolean found = false;
+            for (int i = 0; i < addresses.length; i ++) {
+                addresses[i] = PooledAllocator.allocate(PooledAllocator.MAX_POOLED_SIZE);
+                found |= addresses[i] == freed[0];
+            }
+            for (long address : addresses) {
+                PooledAllocator.free(address);
+            }
+            PooledAllocator.releaseThreadCache();
+            Assertions.assertTrue(found);
+        });
+    }
+
+    @Test
+    public void pooledThreadCacheTest() throws Throwable {
+        long inUseBytes = PooledAllocator.inUseBytes();
+        // a released block is at the top of the depot, within the first magazine a fresh thread loads
+        checkThreadCacheReclaimed(true, 128);
+        // a dead thread's cache is only reclaimed when a slab runs out, so allocate past the leftover depot and a few slabs
+        checkThreadCacheReclaimed(false, 4096);
+        Assertions.assertEquals(inUseBytes, PooledAllocator.inUseBytes());
+    }
+
+    @Test
+    public void pooledMemoryTest() {
+        Assumptions.assumeTrue(PooledAllocator.ENABLED, "multiffi.allocator.pooled is not set");
+        long address = Memory.allocate(64);
+        Assertions.assertTrue(PooledAllocator.isPooled(address));
+        Memory.setInt64(address, 0x0102030405060708L);
+        address = Memory.reallocate(address, 128);
+        Assertions.assertTrue(PooledAllocator.isPooled(address));
+        Assertions.assertEquals(0x0102030405060708L, Memory.getInt64(address));
+        address = Memory.reallocate(address, PooledAllocator.MAX_POOLED_SIZE + 1);
+        Assertions.assertFalse(PooledAllocator.isPooled(address));
+        Assertions.assertEquals(0x0102030405060708L, Memory.getInt64(address));
+        Memory.free(address);
+        address = Memory.allocateInitialized(8, 16);
+        Assertions.assertTrue(PooledAllocator.isPooled(address));
+        for (int i = 0; i < 128; i += 8) {
+            Assertions.assertEquals(0, Memory.getInt64(address + i));
+        }
+        Memory.free(address);
+        long inUseBytes = PooledAllocator.inUseBytes();
+        try (MemoryHandle memoryHandle = MemoryHandle.allocateDirect(100)) {
+            Assertions.assertTrue(PooledAllocator.isPooled(memoryHandle.address()));
+            Assertions.assertEquals(inUseBytes + 112, PooledAllocator.inUseBytes());
+        }
+        Assertions.assertEquals(inUseBytes, PooledAllocator.inUseBytes());
+    }
+
+    @Test
+    public void arenaTest() throws Throwable {
+        try (MemoryArena arena = MemoryArena.ofConfined(256)) {
+            for (int i = 0; i < 1000; i ++) {
+                MemoryHandle memoryHandle = arena.allocate(ScalarType.INT64);
+                Assertions.assertEquals(0, memoryHandle.address() & 7);
+                memoryHandle.setInt64(0, i);
+                Assertions.assertEquals(i, memoryHandle.getInt64(0));
+            }
+            Assertions.assertEquals(0, arena.allocate(4096, 64).address() & 63);
+            MemoryHandle string = arena.allocate("arena");
+            Assertions.assertEquals(6, string.size());
+            Assertions.assertEquals('a', string.getInt8(4));
+            Assertions.assertEquals(0, string.getInt8(5));
+            Assertions.assertTrue(arena.reservedBytes() >= arena.allocatedBytes());
+        }
+        MemoryArena confined = MemoryArena.ofConfined();
+        Assertions.assertSame(Thread.currentThread(), confined.owner());
+        confined.allocate(8);
+        long allocatedBytes = confined.allocatedBytes();
+        runOnThreads(1, () -> {
+            Assertions.assertThrows(IllegalStateException.class, () -> confined.allocate(8));
+            Assertions.assertThrows(IllegalStateException.class, confined::close);
+        });
+        Assertions.assertTrue(confined.isAlive());
+        Assertions.assertEquals(allocatedBytes, confined.allocatedBytes());
+        confined.close();
+        Assertions.assertFalse(confined.isAlive());
+        Assertions.assertThrows(IllegalStateException.class, confined::close);
+        Assertions.assertThrows(IllegalStateException.class, () -> confined.allocate(8));
+        MemoryArena shared = MemoryArena.ofShared();
+        int threadCount = 4;
+        runOnThreads(threadCount, () -> {
+            for (int j = 0; j < 10000; j ++) {
+                MemoryHandle memoryHandle = shared.allocateInitialized(1, 24);
+                Assertions.assertEquals(0, memoryHandle.getInt64(16));
+                memoryHandle.setInt64(16, j);
+            }
+        });
+        Assertions.assertTrue(shared.allocatedBytes() >= threadCount * 10000L * 24);
+        shared.close();
+        Assertions.assertFalse(shared.isAlive());
+        Assertions.assertThrows(IllegalStateException.class, shared::close);
+        Assertions.assertThrows(IllegalStateException.class, () -> shared.allocate(8));
+    }
+
+    @Test
+    public void alignedAllocatorTest() {
+        for (long alignment = 1; alignment <= 65536; alignment <<= 1) {
+            long address = Memory.allocateAligned(100, alignment);
+            Assertions.assertEquals(0, address & (alignment - 1));
+            for (int i = 0; i < 100; i ++) {
+                Memory.setInt8(address + i, (byte) i);
+            }
+            address = Memory.reallocateAligned(address, 100000, alignment);
+            Assertions.assertEquals(0, address & (alignment - 1));
+            address = Memory.reallocateAligned(address, 50, alignment);
+            Assertions.assertEquals(0, address & (alignment - 1));
+            for (int i = 0; i < 50; i ++) {
+                Assertions.assertEquals((byte) i, Memory.getInt8(address + i));
+            }
+            Memory.freeAligned(address);
+            address = Memory.allocateInitializedAligned(16, 64, alignment);
+            for (int i = 0; i < 16 * 64; i += 8) {
+                Assertions.assertEquals(0, Memory.getInt64(address + i));
+            }
+            Memory.freeAligned(address);
+        }
+        // page-aligned buffers, as used for O_DIRECT I/O
+        long[] addresses = new long[64];
+        for (int i = 0; i < addresses.length; i ++) {
+            addresses[i] = Memory.allocateAligned(4096, 4096);
+            Assertions.assertEquals(0, addresses[i] & 4095);
+        }
+        for (long address : addresses) {
+            Memory.freeAligned(address);
+        }
+    }
+
+    @Test
+    public void compareSearchTest() {
+        int size = 256;
+        long aAddress = Memory.allocate(size);
+        long bAddress = Memory.allocate(size);
+        try {
+            for (int i = 0; i < size; i ++) {
+                Memory.setInt8(aAddress + i, (byte) i);
+                Memory.setInt8(bAddress + i, (byte) i);
+            }
+            for (int length = 0; length < size; length ++) {
+                Assertions.assertEquals(0, Memory.compare(aAddress, bAddress, length));
+                Assertions.assertEquals(length == 0 ? 0 : aAddress + length - 1, Memory.search(aAddress, (byte) (length - 1), length));
+                if (length > 0) {
+                    Memory.setInt8(bAddress + length - 1, (byte) 0xFF);
+                    Assertions.assertTrue(Memory.compare(aAddress, bAddress, length) < 0);
+                    Assertions.assertTrue(Memory.compare(bAddress, aAddress, length) > 0);
+                    Memory.setInt8(bAddress + length - 1, (byte) (length - 1));
+                    Assertions.assertEquals(0, Memory.search(aAddress + 1, (byte) 0, length));
+                }
+            }
+        }
+        finally {
+            Memory.free(aAddress);
+            Memory.free(bAddress);
+        }
+    }
+
+    @Test
+    public void bulkArrayTest() {
+        int[] heap = new int[32];
+        MemoryHandle slice = MemoryHandle.wrap(heap, 4, 16);
+        slice.setInt32(0, 42);
+        slice.setInt32Array(4, new int[] {1, 2, 3});
+        Assertions.assertEquals(42, heap[4]);
+        Assertions.assertTrue(Arrays.equals(new int[] {1, 2, 3}, Arrays.copyOfRange(heap, 5, 8)));
+        Assertions.assertThrows(IndexOutOfBoundsException.class, () -> slice.setInt32Array(0, new int[17]));
+
+        int size = 64 << 10;
+        long address = Memory.allocate(size);
+        try {
+            MemoryHandle memoryHandle = MemoryHandle.wrap(address, size);
+            long[] longs = ThreadLocalRandom.current().longs(1000).toArray();
+            memoryHandle.setInt64Array(8, longs, 1, 998);
+            for (int i = 0; i < 998; i ++) {
+                Assertions.assertEquals(longs[i + 1], Memory.getInt64(address + 8 + ((long) i << 3)));
+            }
+            long[] copy = new long[1000];
+            memoryHandle.getInt64Array(8, copy, 1, 998);
+            Assertions.assertTrue(Arrays.equals(Arrays.copyOfRange(longs, 1, 999), Arrays.copyOfRange(copy, 1, 999)));
+
+            ByteOrder order = Foreign.endianness() == ByteOrder.BIG_ENDIAN ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN;
+            double[] doubles = ThreadLocalRandom.current().doubles(3000).toArray();
+            memoryHandle.setDoubleArray(0, doubles, order);
+            byte[] bytes = new byte[doubles.length << 3];
+            memoryHandle.getInt8Array(0, bytes);
+            for (int i = 0; i < doubles.length; i ++) {
+                Assertions.assertEquals(doubles[i], ByteBuffer.wrap(bytes).order(order).getDouble(i << 3));
+            }
+            double[] swapped = new double[doubles.length];
+            memoryHandle.getDoubleArray(0, swapped, order);
+            Assertions.assertTrue(Arrays.equals(doubles, swapped));
+
+            int[] ints = ThreadLocalRandom.current().ints(size >>> 2).toArray();
+            memoryHandle.setInt32Array(0, ints);
+            int[] read = new int[ints.length];
+            memoryHandle.getInt32Array(0, read);
+            Assertions.assertTrue(Arrays.equals(ints, read));
+        }
+        finally {
+            Memory.free(address);
+        }
+    }
+
+    @Test
+    public void heapCompareSearchTest() {
+        int size = 64;
+        byte[] a = new byte[size + 3];
+        long[] b = new long[(size + 7) >>> 3];
+        long address = Memory.allocate(size);
+        try {
+            for (int i = 0; i < size; i ++) {
+                a[i + 3] = (byte) (i + 1);
+                Memory.setInt8(b, i, (byte) (i + 1));
+                Memory.setInt8(address + i, (byte) (i + 1));
+            }
+            for (int length = 0; length <= size; length ++) {
+                Assertions.assertEquals(0, Memory.compare(a, 3, b, 0, length));
+                Assertions.assertEquals(0, Memory.compare(a, 3, address, length));
+                Assertions.assertEquals(0, Memory.compare(address, b, 0, length));
+                if (length > 0) {
+                    Assertions.assertEquals(length + 2, Memory.search(a, 3L, (byte) length, (long) size));
+                    Assertions.assertEquals(-1, Memory.search(a, 3L, (byte) length, length - 1L));
+                    Memory.setInt8(b, length - 1, (byte) 0xFF);
+                    Assertions.assertTrue(Memory.compare(a, 3, b, 0, length) < 0);
+                    Assertions.assertTrue(Memory.compare(b, 0, address, length) > 0);
+                    Assertions.assertTrue(Memory.compare(address, b, 0, length) < 0);
+                    Memory.setInt8(b, length - 1, (byte) length);
+                }
+            }
+        }
+        finally {
+            Memory.free(address);
+        }
+
+        byte[] x = new byte[64 << 10];
+        byte[] y = new byte[x.length];
+        x[x.length - 1] = 1;
+        Assertions.assertTrue(Memory.compare(x, 0, y, 0, x.length) > 0);
+        Assertions.assertEquals(x.length - 1, Memory.search(x, 0L, (byte) 1, (long) x.length));
+    }
+
+    private static int naiveIndexOf(byte[] array, byte[] pattern, int from) {
+        outer:
+        for (int i = from; i <= array.length - pattern.length; i ++) {
+            for (int j = 0; j < pattern.length; j ++) {
+                if (array[i + j] != pattern[j]) continue outer;
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    @Test
+    public void patternSearchTest() {
+        Random random = new Random(42);
+        byte[] haystack = new byte[4096];
+        // a small alphabet makes partial matches frequent
+        for (int i = 0; i < haystack.length; i ++) {
+            haystack[i] = (byte) ('a' + random.nextInt(3));
+        }
+        long address = Memory.allocate(haystack.length);
+        try {
+            Memory.copy(address, haystack, 0, haystack.length);
+            MemoryHandle direct = MemoryHandle.wrap(address, haystack.length);
+            MemoryHandle heap = MemoryHandle.wrap(haystack);
+            for (int size = 1; size <= 24; size ++) {
+                for (int trial = 0; trial < 20; trial ++) {
+                    byte[] needle = new byte[size];
+                    if (trial % 2 == 0) System.arraycopy(haystack, random.nextInt(haystack.length - size), needle, 0, size);
+                    else for (int i = 0; i < size; i ++) needle[i] = (byte) ('a' + random.nextInt(3));
+                    int from = random.nextInt(haystack.length / 2);
+                    int expected = naiveIndexOf(haystack, needle, from);
+                    MemoryPattern pattern = MemoryPattern.compile(needle);
+                    Assertions.assertEquals(expected, direct.indexOf(from, pattern));
+                    Assertions.assertEquals(expected, heap.indexOf(from, pattern));
+                    Assertions.assertEquals(expected, direct.indexOf(from, needle, 0, size));
+                    Assertions.assertEquals(expected, heap.indexOf(from, needle, 0, size));
+                    long found = Memory.search(address + from, needle, 0, size, (long) haystack.length - from);
+                    Assertions.assertEquals(expected == -1 ? 0 : address + expected, found);
+                    if (expected != -1) {
+                        // the match must lie entirely within maxLength bytes
+                        int length = expected - from + size;
+                        Assertions.assertEquals(expected, direct.indexOf(from, pattern, length));
+                        Assertions.assertEquals(naiveIndexOf(Arrays.copyOf(haystack, from + length - 1), needle, from),
+                                heap.indexOf(from, pattern, length - 1));
+                    }
+                }
+            }
+            Assertions.assertEquals(-1, MemoryHandle.wrap(new byte[] {1, 2, 3}).indexOf(0, new byte[] {3, 4}, 0, 2));
+        }
+        finally {
+            Memory.free(address);
+        }
+
+        int size = 64 << 10;
+        long log = Memory.allocateInitialized(1, size);
+        try {
+            Memory.fill(log, (byte) 'x', size);
+            byte[] magic = "--multiffi-end--".getBytes(StandardCharsets.US_ASCII);
+            Memory.copy(log + size - magic.length, magic, 0, magic.length);
+            MemoryPattern pattern = MemoryPattern.compile(magic);
+            MemoryHandle memoryHandle = MemoryHandle.wrap(log, size);
+            Assertions.assertEquals(size - magic.length, memoryHandle.indexOf(0, pattern));
+            Assertions.assertEquals(size - magic.length, memoryHandle.indexOf(0, magic, 0, magic.length));
+            Assertions.assertEquals(-1, memoryHandle.indexOf(0, pattern, size - 1));
+        }
+        finally {
+            Memory.free(log);
+        }
+    }
+
+    @Test
+    public void zeroTerminatedStringTest() {
+        String[] strings = { "", "a", "multiffi", "0123456789abcdef0123456789", "\u00e9t\u00e9", "\u4f60\u597d\ud83d\ude00" };
+        MemoryHandle memoryHandle = MemoryHandle.allocateDirect(256);
+        try {
+            for (String string : strings) {
+                byte[] utf8 = string.getBytes(StandardCharsets.UTF_8);
+                byte[] utf16 = string.getBytes(Foreign.utf16Charset());
+                for (int offset = 0; offset < 16; offset ++) {
+                    memoryHandle.fill(0, (byte) 0x7F, memoryHandle.size());
+                    memoryHandle.setInt8Array(offset, utf8);
+                    memoryHandle.setInt8(offset + utf8.length, (byte) 0);
+                    Assertions.assertEquals(utf8.length, memoryHandle.getZeroTerminatedStringLength(offset, StandardCharsets.UTF_8));
+                    Assertions.assertEquals(string, memoryHandle.getZeroTerminatedString(offset, StandardCharsets.UTF_8));
+                    Assertions.assertEquals(string, Memory.getZeroTerminatedString(memoryHandle.address() + offset, StandardCharsets.UTF_8));
+                    Assertions.assertArrayEquals(utf8, memoryHandle.getZeroTerminatedCharArray(offset, StandardCharsets.UTF_8));
+                    // without a terminator in range, the length is capped like strnlen
+                    if (utf8.length > 1) Assertions.assertEquals(utf8.length - 1,
+                            memoryHandle.getZeroTerminatedStringLength(offset, utf8.length - 1, StandardCharsets.UTF_8));
+                    memoryHandle.fill(0, (byte) 0x7F, memoryHandle.size());
+                    memoryHandle.setInt8Array(offset, utf16);
+                    memoryHandle.setInt16(offset + utf16.length, (short) 0);
+                    Assertions.assertEquals(utf16.length, memoryHandle.getZeroTerminatedUTF16StringLength(offset));
+                    Assertions.assertEquals(string, memoryHandle.getZeroTerminatedUTF16String(offset));
+                    Assertions.assertTrue(Arrays.equals(string.toCharArray(), memoryHandle.getZeroTerminatedUTF16Array(offset)));
+                }
+                byte[] array = Arrays.copyOf(utf8, utf8.length + 1);
+                Assertions.assertEquals(string, MemoryHandle.wrap(array).getZeroTerminatedString(0, StandardCharsets.UTF_8));
+                long[] words = new long[(utf16.length >>> 3) + 1];
+                Memory.setInt8Array(words, 0, utf16);
+                Assertions.assertEquals(string, Memory.getZeroTerminatedUTF16String(words, 0));
+            }
+            // a UTF-16 terminator only counts on a character boundary
+            memoryHandle.setInt16Array(0, new short[] { 0x0100, 0x0001, 0 });
+            Assertions.assertEquals(4, memoryHandle.getZeroTerminatedUTF16StringLength(0));
+        }
+        finally {
+            memoryHandle.close();
+        }
+    }
+
+    @Test
+    public void zeroTerminatedStringWriteTest() {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 5000; i ++) {
+            builder.append(i % 7 == 0 ? "\u00e9\u4f60\ud83d\ude00" : "ascii");
+        }
+        String[] strings = { "", "a", "multiffi", "caf\u00e9", "\ud800lone", "lone\udc00", "\u4f60\u597d\ud83d\ude00", "end\ud83d", "\ude00\ud83dx", builder.toString() };
+        Charset[] charsets = { StandardCharsets.UTF_8, StandardCharsets.ISO_8859_1, StandardCharsets.US_ASCII, StandardCharsets.UTF_16LE,
+                Charset.forName("UTF-32BE"), Charset.forName("windows-1252"), Charset.forName("GBK"), Foreign.ansiCharset(), Foreign.wideCharset() };
+        for (Charset charset : charsets) {
+            for (String string : strings) {
+                byte[] expected = string.getBytes(charset);
+                long size = Memory.getZeroTerminatedStringSize(string, charset);
+                Assertions.assertEquals(expected.length + "\0".getBytes(charset).length, size);
+                MemoryHandle memoryHandle = MemoryHandle.allocateDirect(string, charset);
+                try {
+                    Assertions.assertEquals(size, memoryHandle.size());
+                    Assertions.assertArrayEquals(expected, memoryHandle.getZeroTerminatedCharArray(0, charset));
+                    Assertions.assertEquals(expected.length, memoryHandle.getZeroTerminatedStringLength(0, charset));
+                }
+                finally {
+                    memoryHandle.close();
+                }
+                byte[] array = new byte[(int) size + 3];
+                Memory.setZeroTerminatedString(array, 3, string, charset);
+                Assertions.assertArrayEquals(expected, Arrays.copyOfRange(array, 3, 3 + expected.length));
+            }
+        }
+        String string = builder.toString();
+        Memory.pushStack();
+        try {
+            MemoryHandle memoryHandle = MemoryHandle.allocateOnStack(Memory.getZeroTerminatedUTF16StringSize(string));
+            memoryHandle.setZeroTerminatedUTF16String(0, string);
+            Assertions.assertEquals(string, memoryHandle.getZeroTerminatedUTF16String(0));
+            memoryHandle = MemoryHandle.allocateOnStack(Memory.getZeroTerminatedStringSize(string, 7, 100, StandardCharsets.UTF_8));
+            memoryHandle.setZeroTerminatedString(0, string, 7, 100, StandardCharsets.UTF_8);
+            Assertions.assertEquals(string.substring(7, 107), memoryHandle.getZeroTerminatedString(0, StandardCharsets.UTF_8));
+        }
+        finally {
+            Memory.popStack();
+        }
+    }
+
+    @Test
+    public void mapTest() throws IOException {
+        Path path = Files.createTempFile("multiffi", ".bin");
+        try {
+            byte[] bytes = new byte[10000];
+            for (int i = 0; i < bytes.length; i ++) {
+                bytes[i] = (byte) i;
+            }
+            Files.write(path, bytes);
+            try (MemoryHandle memoryHandle = MemoryHandle.map(path, FileChannel.MapMode.READ_ONLY, 4097, 100)) {
+                Assertions.assertEquals(100, memoryHandle.size());
+                memoryHandle.advise(MemoryAdvice.SEQUENTIAL);
+                for (int i = 0; i < 100; i ++) {
+                    Assertions.assertEquals((byte) (4097 + i), memoryHandle.getInt8(i));
+                }
+                Assertions.assertThrows(IndexOutOfBoundsException.class, () -> memoryHandle.getInt8(100));
+            }
+            try (MemoryHandle memoryHandle = MemoryHandle.map(path, FileChannel.MapMode.READ_WRITE, 9990, 20)) {
+                memoryHandle.setInt64(10, 0x0102030405060708L);
+                memoryHandle.sync();
+            }
+            try (MemoryHandle memoryHandle = MemoryHandle.allocateDirect(64)) {
+                Assertions.assertFalse(memoryHandle.advise(MemoryAdvice.DONT_NEED));
+                memoryHandle.sync();
+            }
+            Assertions.assertEquals(10010, Files.size(path));
+            Assertions.assertEquals(0x0102030405060708L, ByteBuffer.wrap(Files.readAllBytes(path), 10000, 8).order(ByteOrder.nativeOrder()).getLong());
+        }
+        finally {
+            Files.delete(path);
+        }
+    }
+
+    @Test
+    public void accountingTest() throws Exception {
+        Assumptions.assumeTrue(MemoryAccounting.ENABLED, "multiffi.memory.accounting is not set");
+        NativeMemoryMXBean counters = MemoryAccounting.counters(MemoryAccounting.Kind.ALIGNED);
+        long allocationCount = counters.getAllocationCount();
+        long liveCount = counters.getLiveCount();
+        long liveBytes = counters.getLiveBytes();
+        long[] addresses = new long[100];
+        for (int i = 0; i < addresses.length; i ++) {
+            addresses[i] = Memory.allocateAligned(1000, 64);
+        }
+        Assertions.assertEquals(allocationCount + 100, counters.getAllocationCount());
+        Assertions.assertEquals(liveCount + 100, counters.getLiveCount());
+        // sizes of aligned blocks are sampled, so their live bytes are only exact when every block is
+        if (MemoryAccounting.SIZE_SAMPLING == 1) {
+            Assertions.assertEquals(liveBytes + 100000, counters.getLiveBytes());
+            Assertions.assertTrue(counters.getPeakBytes() >= liveBytes + 100000);
+        }
+        for (long address : addresses) {
+            Memory.freeAligned(address);
+        }
+        Assertions.assertEquals(liveCount, counters.getLiveCount());
+        Assertions.assertEquals(liveBytes, counters.getLiveBytes());
+        counters = MemoryAccounting.counters(MemoryAccounting.Kind.PAGES);
+        liveBytes = counters.getLiveBytes();
+        for (int i = 0; i < addresses.length; i ++) {
+            addresses[i] = Memory.allocatePages(65536, false);
+        }
+        Assertions.assertEquals(liveBytes + 6553600, counters.getLiveBytes());
+        Assertions.assertTrue(counters.getPeakBytes() >= liveBytes + 6553600);
+        ObjectName name = new ObjectName("multiffi.ffi:type=NativeMemory,kind=PAGES");
+        Assertions.assertEquals(liveBytes + 6553600, (long) (Long) ManagementFactory.getPlatformMBeanServer().getAttribute(name, "LiveBytes"));
+        for (long address : addresses) {
+            Memory.freePages(address, 65536, false);
+        }
+        Assertions.assertEquals(liveBytes, counters.getLiveBytes());
+    }
+
+    public static long negate(long value) {
+        return -value;
+    }
+
+    @Test
+    public void eventsTest() throws Throwable {
+        Assumptions.assumeTrue(ForeignEvents.ENABLED, "multiffi.events is not set or JDK Flight Recorder is unavailable");
+        Path path = Files.createTempFile("multiffi", ".jfr");
+        try {
+            long labsAddress = Foreign.getSymbolAddress("labs");
+            try (Recording recording = new Recording()) {
+                for (String name : new String[] {"SymbolLookup", "DowncallLink", "Downcall", "UpcallStub", "Upcall", "NativeAllocation", "NativeFree"}) {
+                    recording.enable("multiffi." + name);
+                }
+                recording.start();
+                FunctionHandle labs = Foreign.downcallHandle(Foreign.getSymbolAddress("labs"), ScalarType.LONG, ScalarType.LONG);
+                MethodHandle methodHandle = labs.asMethodHandle();
+                for (int i = 0; i < 100000; i ++) {
+                    Assertions.assertEquals(i, (long) methodHandle.invokeExact((long) -i));
+                }
+                MemoryHandle hNegate = Foreign.upcallStub(AbstractTest.class, AbstractTest.class.getDeclaredMethod("negate", long.class),
+                        ScalarType.INT64, ScalarType.INT64);
+                FunctionHandle negate = Foreign.downcallHandle(hNegate.address(), ScalarType.INT64, ScalarType.INT64);
+                for (int i = 0; i < 10000; i ++) {
+                    Assertions.assertEquals(-i, negate.invokeInt64((long) i));
+                }
+                Memory.free(Memory.allocate(100));
+                recording.stop();
+                recording.dump(path);
+            }
+            Set<String> names = new HashSet<>();
+            for (RecordedEvent event : RecordingFile.readAllEvents(path)) {
+                names.add(event.getEventType().getName());
+                if (event.getEventType().getName().equals("multiffi.Downcall") && event.getLong("address") == labsAddress)
+                    Assertions.assertEquals("labs", event.getString("symbol"));
+            }
+            Assertions.assertTrue(names.containsAll(Arrays.asList("multiffi.SymbolLookup", "multiffi.DowncallLink", "multiffi.Downcall",
+                    "multiffi.UpcallStub", "multiffi.Upcall", "multiffi.NativeAllocation", "multiffi.NativeFree")), names.toString());
+        }
+        finally {
+            Files.delete(path);
+        }
+    }
+
+    @Test
+    public void pagesTest() {
+        long size = 4L * 1024 * 1024;
+        for (int huge = 0; huge < 2; huge ++) {
+            MemoryHandle memoryHandle = MemoryHandle.allocatePages(size, huge == 1);
+            try {
+                Assertions.assertEquals(0, memoryHandle.address() & (Foreign.pageSize() - 1));
+                if (huge == 1 && OS.current() == OS.LINUX) Assertions.assertEquals(0, memoryHandle.address() & (Memory.hugePageSize() - 1));
+                for (long offset = 0; offset < size; offset += 4096) {
+                    Assertions.assertEquals(0, memoryHandle.getInt64(offset));
+                    memoryHandle.setInt64(offset, offset);
+                }
+                for (long offset = 0; offset < size; offset += 4096) {
+                    Assertions.assertEquals(offset, memoryHandle.getInt64(offset));
+                }
+            }
+            finally {
+                memoryHandle.close();
+            }
+            Assertions.assertEquals(0, memoryHandle.address());
+        }
+    }
+
     protected static final String NULL_FILE_NAME = OS.current() == OS.WINDOWS ? "NUL" : "/dev/null";
     protected volatile long fpNull = 0;
 
@@ -73,6 +827,42 @@ public abstract class AbstractTest {
         }
     }
 
+    @Test
+    public void primitiveVarargsTest() {
+        try (MemoryHandle hFormat = MemoryHandle.allocateDirect("%d + %d = %d");
+             MemoryHandle hBuffer = MemoryHandle.allocateDirect(64)) {
+            Assertions.assertEquals(9, libc.snprintf(hBuffer.address(), hBuffer.size(), hFormat.address(), 1, 2, 3));
+            Assertions.assertEquals("1 + 2 = 3", hBuffer.getZeroTerminatedString(0));
+        }
+    }
+
+    @Test
+    public void pregeneratedProxyTest() {
+        PregeneratedLibrary library = Foreign.downcallProxy(PregeneratedLibrary.class);
+        boolean lazyLinking = Boolean.getBoolean("multiffi.foreign.lazyLinking");
+        // pregenerated proxies replace the eagerly linked generated ones only, and are cached like them
+        if ("false".equals(System.getProperty("multiffi.foreign.proxyIntrinsics"))) Assertions.assertTrue(Proxy.isProxyClass(library.getClass()));
+        else if (lazyLinking) Assertions.assertNotEquals(PregeneratedLibrary.class.getName() + "$$ForeignProxy", library.getClass().getName());
+        else Assertions.assertEquals(PregeneratedLibrary.class.getName() + "$$ForeignProxy", library.getClass().getName());
+        if (!lazyLinking) Assertions.assertSame(library, Foreign.downcallProxy(PregeneratedLibrary.class));
+        Assertions.assertEquals(42, library.abs(-42));
+        try (MemoryHandle hFormat = MemoryHandle.allocateDirect("%d + %d = %d");
+             MemoryHandle hBuffer = MemoryHandle.allocateDirect(64)) {
+            Assertions.assertEquals(9, library.snprintf(hBuffer.address(), hBuffer.size(), hFormat.address(), 1, 2, 3));
+            Assertions.assertEquals("1 + 2 = 3", hBuffer.getZeroTerminatedString(0));
+        }
+    }
+
+    @Test
+    public void lazyLinkingTest() {
+        Assumptions.assumeTrue(Boolean.getBoolean("multiffi.foreign.lazyLinking"), "lazy linking disabled");
+        // methods are linked on first call, so an unresolvable one only fails when called
+        LazyLibrary library = Foreign.downcallProxy(LazyLibrary.class);
+        Assertions.assertFalse(Proxy.isProxyClass(library.getClass()));
+        Assertions.assertEquals(42, library.abs(-42));
+        Assertions.assertThrows(UnsatisfiedLinkError.class, library::missing);
+    }
+
     public static MemoryHandle stub(MemoryHandle pack96) {
         return pack96;
     }
@@ -110,4 +900,137 @@ public abstract class AbstractTest {
         }
     }
 
+    @Test
+    public void stackGrowthTest() {
+        Memory.pushStack();
+        try {
+            long[] addresses = new long[1024];
+            for (int i = 0; i < addresses.length; i ++) {
+                addresses[i] = Memory.allocateAlignedOnStack(4096, 16);
+                Memory.setInt64(addresses[i], i);
+            }
+            for (int i = 0; i < addresses.length; i ++) {
+                Assertions.assertEquals(i, Memory.getInt64(addresses[i]));
+            }
+            Assertions.assertTrue(MemoryStackPool.inUseCount() > 0);
+        }
+        finally {
+            Memory.popStack();
+        }
+    }
+
+    // a transient thread holds a pooled stack only while it has open frames
+    private static void checkTransientStack() {
+        Assertions.assertEquals(0, StackAllocator.reservedBytes());
+        Assertions.assertThrows(IllegalStateException.class, () -> Memory.allocateOnStack(8));
+        int inUseCount = MemoryStackPool.inUseCount();
+        Memory.pushStack();
+        try {
+            Assertions.assertEquals(inUseCount + 1, MemoryStackPool.inUseCount());
+            Memory.allocateOnStack(StackAllocator.STACK_SIZE * 4);
+            Assertions.assertTrue(StackAllocator.reservedBytes() > StackAllocator.STACK_SIZE * 4);
+        }
+        finally {
+            Memory.popStack();
+        }
+        Assertions.assertEquals(0, StackAllocator.reservedBytes());
+        Assertions.assertEquals(inUseCount, MemoryStackPool.inUseCount());
+        if (MemoryStackPool.CAPACITY > 0) Assertions.assertTrue(MemoryStackPool.pooledCount() > 0);
+        // the released stack was trimmed back to one segment before going to the pool
+        Memory.pushStack();
+        try {
+            Assertions.assertEquals(StackAllocator.STACK_SIZE, StackAllocator.reservedBytes());
+        }
+        finally {
+            Memory.popStack();
+        }
+    }
+
+    @Test
+    public void stackPoolTest() {
+        if ("pooled".equalsIgnoreCase(System.getProperty("multiffi.allocator.stackMode"))) {
+            checkTransientStack();
+            return;
+        }
+        Memory.pushStack();
+        int inUseCount = MemoryStackPool.inUseCount();
+        try {
+            Memory.allocateOnStack(StackAllocator.STACK_SIZE * 4);
+            Assertions.assertTrue(StackAllocator.reservedBytes() > StackAllocator.STACK_SIZE * 4);
+        }
+        finally {
+            Memory.popStack();
+        }
+        // a platform thread keeps its stack, trimmed back to one segment after the last pop
+        Assertions.assertEquals(StackAllocator.STACK_SIZE, StackAllocator.reservedBytes());
+        Assertions.assertEquals(inUseCount, MemoryStackPool.inUseCount());
+    }
+
+    @Test
+    public void virtualThreadStackTest() throws Throwable {
+        Method startVirtualThread;
+        try {
+            startVirtualThread = Thread.class.getMethod("startVirtualThread", Runnable.class);
+        } catch (NoSuchMethodException e) {
+            startVirtualThread = null;
+        }
+        Assumptions.assumeTrue(startVirtualThread != null, "virtual threads not supported");
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread thread = (Thread) startVirtualThread.invoke(null, (Runnable) () -> {
+            try {
+                checkTransientStack();
+            } catch (Throwable e) {
+                failure.set(e);
+            }
+        });
+        thread.join();
+        if (failure.get() != null) throw failure.get();
+    }
+
+    @Test
+    public void cleanerTest() throws InterruptedException {
+        AtomicInteger count = new AtomicInteger();
+        Runnable cleanup = Foreign.registerCleaner(new Object(), count::incrementAndGet);
+        cleanup.run();
+        cleanup.run();
+        Assertions.assertEquals(1, count.get());
+        count.set(0);
+        int total = 1000;
+        for (int i = 0; i < total; i ++) {
+            long address = Memory.allocate(64);
+            Foreign.registerCleaner(new byte[16], () -> {
+                Memory.free(address);
+                count.incrementAndGet();
+            });
+        }
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (count.get() < total && System.nanoTime() < deadline) {
+            System.gc();
+            ShardedCleaner.drain();
+            Thread.sleep(10);
+        }
+        Assertions.assertEquals(total, count.get());
+    }
+
+    @Test
+    public void cleanerShardTest() throws InterruptedException {
+        Assumptions.assumeTrue(ShardedCleaner.THREADS > 1, "single cleaner thread");
+        Set<String> threadNames = ConcurrentHashMap.newKeySet();
+        AtomicInteger count = new AtomicInteger();
+        int total = 1000;
+        for (int i = 0; i < total; i ++) {
+            Foreign.registerCleaner(new byte[16], () -> {
+                threadNames.add(Thread.currentThread().getName());
+                count.incrementAndGet();
+            });
+        }
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (count.get() < total && System.nanoTime() < deadline) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        Assertions.assertEquals(total, count.get());
+        Assertions.assertEquals(ShardedCleaner.THREADS, threadNames.size());
+    }
+
 }
@@ -0,0 +1,15 @@
+package multiffi.ffi.test;
+
+import org.junit.jupiter.api.BeforeAll;
+
+public class JNRLazyLinkingTest extends AbstractTest {
+
+    @BeforeAll
+    public static void beforeAll() {
+        System.setProperty("multiffi.foreign.lazyLinking", "true");
+        System.setProperty("multiffi.allocator.provider", "io.github.multiffi.ffi.JNRAllocatorProvider");
+        System.setProperty("multiffi.buffer.provider", "io.github.multiffi.ffi.JNRBufferProvider");
+        System.setProperty("multiffi.foreign.provider", "io.github.multiffi.ffi.JNRForeignProvider");
+    }
+
+}